@@ -28,13 +28,16 @@ import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 import proguard.analysis.Metrics;
 import proguard.analysis.Metrics.MetricType;
+import proguard.analysis.Metrics.TimerType;
 import proguard.classfile.AccessConstants;
 import proguard.classfile.Clazz;
 import proguard.classfile.LibraryClass;
+import proguard.classfile.Method;
 import proguard.classfile.ProgramClass;
 import proguard.classfile.ProgramField;
 import proguard.classfile.ProgramMethod;
@@ -65,6 +68,7 @@ import proguard.classfile.attribute.annotation.RuntimeInvisibleAnnotationsAttrib
 import proguard.classfile.attribute.annotation.RuntimeInvisibleParameterAnnotationsAttribute;
 import proguard.classfile.attribute.annotation.RuntimeVisibleAnnotationsAttribute;
 import proguard.classfile.attribute.annotation.RuntimeVisibleParameterAnnotationsAttribute;
+import proguard.classfile.attribute.visitor.AttributeVisitor;
 import proguard.classfile.constant.MethodHandleConstant;
 import proguard.classfile.editor.AttributesEditor;
 import proguard.classfile.editor.BootstrapMethodsAttributeEditor;
@@ -73,6 +77,7 @@ import proguard.classfile.editor.CompactCodeAttributeComposer;
 import proguard.classfile.editor.ConstantPoolEditor;
 import proguard.classfile.editor.ExceptionsAttributeEditor;
 import proguard.classfile.editor.InnerClassesAttributeEditor;
+import proguard.classfile.util.ClassReferenceInitializer;
 import proguard.classfile.util.ClassUtil;
 import proguard.classfile.visitor.ClassVisitor;
 import proguard.dexfile.ir.IrMethod;
@@ -88,7 +93,9 @@ import proguard.dexfile.ir.ts.TypeTransformer;
 import proguard.dexfile.ir.ts.UnSSATransformer;
 import proguard.dexfile.ir.ts.VoidInvokeTransformer;
 import proguard.dexfile.ir.ts.ZeroTransformer;
+import proguard.dexfile.reader.DexCodeReader;
 import proguard.dexfile.reader.DexConstants;
+import proguard.dexfile.reader.DexFileReader;
 import proguard.dexfile.reader.DexType;
 import proguard.dexfile.reader.Field;
 import proguard.dexfile.reader.MethodHandle;
@@ -96,9 +103,14 @@ import proguard.dexfile.reader.Proto;
 import proguard.dexfile.reader.Visibility;
 import proguard.dexfile.reader.node.DexAnnotationNode;
 import proguard.dexfile.reader.node.DexClassNode;
+import proguard.dexfile.reader.node.DexCodeNode;
 import proguard.dexfile.reader.node.DexFieldNode;
 import proguard.dexfile.reader.node.DexFileNode;
 import proguard.dexfile.reader.node.DexMethodNode;
+import proguard.dexfile.reader.visitors.DexClassVisitor;
+import proguard.dexfile.reader.visitors.DexFieldVisitor;
+import proguard.dexfile.reader.visitors.DexFileVisitor;
+import proguard.dexfile.reader.visitors.DexMethodVisitor;
 
 // Derived from dex-translator/src/main/java/com/googlecode/d2j/dex/Dex2Asm.java
 // We're preserving the original code as much as possible, to allow comparing
@@ -135,14 +147,22 @@ public class Dex2Pro {
   private static final int MAX_STATEMENTS =
       Integer.parseInt(System.getProperty("proguard.dexconversion.maxstatements", "0"));
 
+  /**
+   * The number of classes per thread that can be decoded and waiting for conversion at the same
+   * time, when converting a dex file class by class in multithreaded mode.
+   */
+  private static final int PENDING_CLASSES_PER_THREAD = 4;
+
   private boolean usePrimitiveArrayConstants = false;
 
   // Used when multithreaded mode is enabled
   private final ExecutorService executor;
+  private final int maximumPendingClassCount;
 
   /** Create a new (single-threaded) {@link Dex2Pro} object. */
   public Dex2Pro() {
     this.executor = null;
+    this.maximumPendingClassCount = 1;
   }
 
   /**
@@ -156,6 +176,7 @@ public class Dex2Pro {
     }
 
     executor = (maximumThreads > 1) ? Executors.newFixedThreadPool(maximumThreads) : null;
+    maximumPendingClassCount = maximumThreads * PENDING_CLASSES_PER_THREAD;
   }
 
   private class Clz {
@@ -504,65 +525,107 @@ public class Dex2Pro {
   private Map<String, Clz> collectClzInfo(DexFileNode fileNode) {
     Map<String, Clz> classes = new LinkedHashMap<>();
     for (DexClassNode classNode : fileNode.clzs) {
-      Clz clz = get(classes, classNode.className);
-      clz.access = (clz.access & ~ACC_INTERFACE_ABSTRACT) | classNode.access;
-      if (classNode.anns != null) {
-        for (DexAnnotationNode ann : classNode.anns) {
-          if (ann.visibility == Visibility.SYSTEM) {
-            switch (ann.type) {
-              case DexConstants.ANNOTATION_ENCLOSING_CLASS_TYPE:
-                {
-                  DexType type = (DexType) findAnnotationAttribute(ann, "value");
-                  Clz enclosingClass = get(classes, Objects.requireNonNull(type).desc);
-                  clz.enclosingClass = enclosingClass;
-
-                  // apply patch from ChaeHoon Lim,
-                  // obfuscated code may declare itself as enclosing class
-                  // which cause dex2jar to endless loop
-                  // if(!clz.name.equals(clz.enclosingClass.name)) {
-                  //    enclosingClass.addInner(clz);
-                  // }
-                  enclosingClass.addInner(clz);
-                }
-                break;
-              case DexConstants.ANNOTATION_ENCLOSING_METHOD_TYPE:
-                {
-                  proguard.dexfile.reader.Method m =
-                      (proguard.dexfile.reader.Method) findAnnotationAttribute(ann, "value");
-                  Clz enclosingClass = get(classes, Objects.requireNonNull(m).getOwner());
-                  clz.enclosingClass = enclosingClass;
-                  clz.enclosingMethod = m;
-                  enclosingClass.addInner(clz);
-                }
-                break;
-              case DexConstants.ANNOTATION_INNER_CLASS_TYPE:
-                {
-                  for (DexAnnotationNode.Item it : ann.items) {
-                    if ("accessFlags".equals(it.name)) {
-                      clz.access |= (Integer) it.value & ~ACC_INTERFACE_ABSTRACT;
-                    } else if ("name".equals(it.name)) {
-                      clz.innerName = (String) it.value;
-                    }
+      collectClzInfo(classes, classNode);
+    }
+    return classes;
+  }
+
+  /**
+   * Collects the class information of all classes of the given dex file, reading only their
+   * annotations.
+   */
+  private Map<String, Clz> collectClzInfo(DexFileReader dexFileReader, int config) {
+    Map<String, Clz> classes = new LinkedHashMap<>();
+    dexFileReader.accept(
+        new DexFileVisitor() {
+          @Override
+          public DexClassVisitor visit(
+              int access_flags, String className, String superClass, String[] interfaceNames) {
+            return new DexClassNode(access_flags, className, superClass, interfaceNames) {
+              @Override
+              public DexFieldVisitor visitField(int accessFlags, Field field, Object value) {
+                return null;
+              }
+
+              @Override
+              public DexMethodVisitor visitMethod(
+                  int accessFlags, proguard.dexfile.reader.Method method) {
+                return null;
+              }
+
+              @Override
+              public void visitEnd() {
+                collectClzInfo(classes, this);
+              }
+            };
+          }
+        },
+        config
+            | DexFileReader.SKIP_CODE
+            | DexFileReader.SKIP_DEBUG
+            | DexFileReader.SKIP_FIELD_CONSTANT);
+    return classes;
+  }
+
+  /** Collects the class information of the given class node in the given map. */
+  private void collectClzInfo(Map<String, Clz> classes, DexClassNode classNode) {
+    Clz clz = get(classes, classNode.className);
+    clz.access = (clz.access & ~ACC_INTERFACE_ABSTRACT) | classNode.access;
+    if (classNode.anns != null) {
+      for (DexAnnotationNode ann : classNode.anns) {
+        if (ann.visibility == Visibility.SYSTEM) {
+          switch (ann.type) {
+            case DexConstants.ANNOTATION_ENCLOSING_CLASS_TYPE:
+              {
+                DexType type = (DexType) findAnnotationAttribute(ann, "value");
+                Clz enclosingClass = get(classes, Objects.requireNonNull(type).desc);
+                clz.enclosingClass = enclosingClass;
+
+                // apply patch from ChaeHoon Lim,
+                // obfuscated code may declare itself as enclosing class
+                // which cause dex2jar to endless loop
+                // if(!clz.name.equals(clz.enclosingClass.name)) {
+                //    enclosingClass.addInner(clz);
+                // }
+                enclosingClass.addInner(clz);
+              }
+              break;
+            case DexConstants.ANNOTATION_ENCLOSING_METHOD_TYPE:
+              {
+                proguard.dexfile.reader.Method m =
+                    (proguard.dexfile.reader.Method) findAnnotationAttribute(ann, "value");
+                Clz enclosingClass = get(classes, Objects.requireNonNull(m).getOwner());
+                clz.enclosingClass = enclosingClass;
+                clz.enclosingMethod = m;
+                enclosingClass.addInner(clz);
+              }
+              break;
+            case DexConstants.ANNOTATION_INNER_CLASS_TYPE:
+              {
+                for (DexAnnotationNode.Item it : ann.items) {
+                  if ("accessFlags".equals(it.name)) {
+                    clz.access |= (Integer) it.value & ~ACC_INTERFACE_ABSTRACT;
+                  } else if ("name".equals(it.name)) {
+                    clz.innerName = (String) it.value;
                   }
                 }
-                break;
-              case DexConstants.ANNOTATION_MEMBER_CLASSES_TYPE:
-                {
-                  Object[] ts = (Object[]) findAnnotationAttribute(ann, "value");
-                  for (Object v : ts) {
-                    DexType type = (DexType) v;
-                    Clz inner = get(classes, type.desc);
-                    clz.addInner(inner);
-                    inner.enclosingClass = clz;
-                  }
+              }
+              break;
+            case DexConstants.ANNOTATION_MEMBER_CLASSES_TYPE:
+              {
+                Object[] ts = (Object[]) findAnnotationAttribute(ann, "value");
+                for (Object v : ts) {
+                  DexType type = (DexType) v;
+                  Clz inner = get(classes, type.desc);
+                  clz.addInner(inner);
+                  inner.enclosingClass = clz;
                 }
-                break;
-            }
+              }
+              break;
           }
         }
       }
     }
-    return classes;
   }
 
   private static boolean isJavaIdentifier(String str) {
@@ -606,6 +669,66 @@ public class Dex2Pro {
     }
   }
 
+  /**
+   * Converts the classes of the given dex file and applies the given class visitor to them. Unlike
+   * {@link #convertDex(DexFileNode, ClassVisitor)}, this method doesn't need all classes of the dex
+   * file in memory. It first collects the inner class information from the annotations of all
+   * classes. It then reads each class, converts it, and passes it to the class visitor, before
+   * reading the next class. In multithreaded mode, it only reads a limited number of classes ahead
+   * of the conversion workers.
+   *
+   * @param dexFileReader the reader of the dex file.
+   * @param config the configuration flags for reading the dex file, like {@link
+   *     DexFileReader#SKIP_CODE}.
+   * @param classVisitor the class visitor to which converted classes will be passed.
+   */
+  public void convertDex(DexFileReader dexFileReader, int config, ClassVisitor classVisitor) {
+    Map<String, Clz> classInfo = Collections.unmodifiableMap(collectClzInfo(dexFileReader, config));
+
+    int dexVersion = dexFileReader.getDexVersion();
+    int classCount = dexFileReader.getClassSize();
+
+    if (executor != null) {
+      // Wrap the visitor in a synchronized helper class
+      ClassVisitor syncVisitor = new SynchronizedClassVisitor(classVisitor);
+
+      // Limit the number of classes that are waiting for conversion.
+      Semaphore pendingClasses = new Semaphore(maximumPendingClassCount);
+      for (int classIdx = 0; classIdx < classCount; classIdx++) {
+        pendingClasses.acquireUninterruptibly();
+
+        DexFileNode fileNode = readClass(dexFileReader, dexVersion, classIdx, config);
+        if (fileNode.clzs.isEmpty()) {
+          pendingClasses.release();
+        } else {
+          executor.execute(
+              () -> {
+                try {
+                  convertClass(fileNode, fileNode.clzs.get(0), syncVisitor, classInfo);
+                } finally {
+                  pendingClasses.release();
+                }
+              });
+        }
+      }
+    } else {
+      for (int classIdx = 0; classIdx < classCount; classIdx++) {
+        DexFileNode fileNode = readClass(dexFileReader, dexVersion, classIdx, config);
+        fileNode.clzs.forEach(
+            classNode -> convertClass(fileNode, classNode, classVisitor, classInfo));
+      }
+    }
+  }
+
+  /** Reads the class with the given index from the given dex file into a new file node. */
+  private static DexFileNode readClass(
+      DexFileReader dexFileReader, int dexVersion, int classIdx, int config) {
+    DexFileNode fileNode = new DexFileNode();
+    fileNode.visitDexFileVersion(dexVersion);
+    dexFileReader.accept(fileNode, classIdx, config);
+    return fileNode;
+  }
+
   /** Shuts down and waits for any remaining conversion workers, up to timeoutSeconds. */
   public void shutdown(int timeoutSeconds) {
     if (executor == null) {
@@ -626,7 +749,11 @@ public class Dex2Pro {
       DexClassNode classNode,
       ClassVisitor classVisitor,
       Map<String, Clz> classes) {
+    long startTime = System.nanoTime();
+
     convertClass(dfn.dexVersion, classNode, classVisitor, classes);
+
+    Metrics.recordDuration(TimerType.DEX2PRO_CLASS_CONVERSION, System.nanoTime() - startTime);
   }
 
   /** Converts the given Dex class and applies the given class visitor to it. */
@@ -1030,7 +1157,15 @@ public class Dex2Pro {
     ProgramMethod programMethod;
 
     try {
-      if (methodNode.codeNode == null) {
+      if (methodNode.codeReader != null) {
+        // Only convert the code when it is first visited.
+        programMethod = classBuilder.addAndReturnMethod(flags, name, desc);
+        new AttributesEditor(programClass, programMethod, false)
+            .addAttribute(
+                new LazyCodeAttribute(
+                    classBuilder.getConstantPoolEditor().addUtf8Constant(Attribute.CODE),
+                    methodNode));
+      } else if (methodNode.codeNode == null) {
         programMethod = classBuilder.addAndReturnMethod(flags, name, desc);
       } else {
         IrMethod irMethod = dex2ir(methodNode);
@@ -1297,6 +1432,122 @@ public class Dex2Pro {
     }
   }
 
+  /**
+   * Code attribute that only reads and converts the code of a dex method when a visitor first
+   * visits it. Until then, it is an empty code attribute. Converting the code adds constants to
+   * the constant pool of the class, so conversions for methods of the same class are synchronized
+   * on the class, and passes that read the constant pool before the code should first fill it out
+   * with a {@link LazyAttributeInitializer}. A {@link ClassReferenceInitializer} doesn't convert
+   * the code; it initializes the references of the added constants once the code is converted.
+   * Like for eager conversion, methods whose code is skipped don't get any code attribute: this
+   * attribute then deletes itself from its method.
+   */
+  private class LazyCodeAttribute extends CodeAttribute {
+    private final boolean isStatic;
+    private final proguard.dexfile.reader.Method dexMethod;
+    private volatile DexCodeReader codeReader;
+    private volatile int deletedIndex = -1;
+    private ClassReferenceInitializer referenceInitializer;
+
+    public LazyCodeAttribute(int u2attributeNameIndex, DexMethodNode methodNode) {
+      super(u2attributeNameIndex);
+      this.isStatic = 0 != (methodNode.access & DexConstants.ACC_STATIC);
+      this.dexMethod = methodNode.method;
+      this.codeReader = methodNode.codeReader;
+    }
+
+    // Implementations for Attribute.
+
+    @Override
+    public void accept(Clazz clazz, Method method, AttributeVisitor attributeVisitor) {
+      if (codeReader != null) {
+        synchronized (clazz) {
+          if (codeReader != null) {
+            if (attributeVisitor instanceof ClassReferenceInitializer) {
+              // Keep the code lazy, but remember to initialize its references.
+              referenceInitializer = (ClassReferenceInitializer) attributeVisitor;
+              return;
+            }
+
+            convertCode((ProgramClass) clazz, (ProgramMethod) method);
+          }
+        }
+      }
+
+      if (deletedIndex < 0) {
+        super.accept(clazz, method, attributeVisitor);
+      } else {
+        // The attribute that took the place of this deleted attribute would
+        // otherwise be skipped by the method's loop over its attributes.
+        ProgramMethod programMethod = (ProgramMethod) method;
+        if (deletedIndex < programMethod.u2attributesCount) {
+          programMethod.attributes[deletedIndex].accept(clazz, method, attributeVisitor);
+        }
+      }
+    }
+
+    // Small utility methods.
+
+    /**
+     * Reads and converts the code into this code attribute, or deletes this code attribute from
+     * the given method if its code is skipped.
+     */
+    private void convertCode(ProgramClass programClass, ProgramMethod programMethod) {
+      int constantPoolCount = programClass.u2constantPoolCount;
+      boolean skipped = false;
+
+      try {
+        DexCodeNode codeNode = new DexCodeNode();
+        codeReader.accept(codeNode);
+
+        IrMethod irMethod = new Dex2IRConverter().convert(isStatic, dexMethod, codeNode);
+        if (shouldSkipMethod(irMethod)) {
+          skipped = true;
+        } else {
+          CompactCodeAttributeComposer composer = new CompactCodeAttributeComposer(programClass);
+          composer.beginCodeFragment(MAX_CODE_LENGTH);
+          Dex2Pro.this.convertCode(irMethod, composer);
+          composer.endCodeFragment();
+          composer.visitCodeAttribute(programClass, programMethod, this);
+        }
+      } catch (Exception e) {
+        if (!SKIP_UNPARSEABLE_METHODS) {
+          throw e;
+        }
+
+        skipped = true;
+
+        Metrics.increaseCount(MetricType.DEX2PRO_UNPARSEABLE_METHOD_SKIPPED);
+      }
+
+      if (skipped) {
+        // Delete this attribute, like eager conversion doesn't add any code attribute.
+        int index = 0;
+        while (programMethod.attributes[index] != this) {
+          index++;
+        }
+
+        new AttributesEditor(programClass, programMethod, false).deleteAttribute(Attribute.CODE);
+
+        deletedIndex = index;
+      } else if (referenceInitializer != null) {
+        // Initialize the references of the new constants and of the code.
+        synchronized (referenceInitializer) {
+          for (int index = constantPoolCount; index < programClass.u2constantPoolCount; index++) {
+            if (programClass.constantPool[index] != null) {
+              programClass.constantPoolEntryAccept(index, referenceInitializer);
+            }
+          }
+
+          referenceInitializer.visitCodeAttribute(programClass, programMethod, this);
+        }
+      }
+
+      codeReader = null;
+      referenceInitializer = null;
+    }
+  }
+
   /** Basic helper class that allows concurrent use of a given delegate {@link ClassVisitor}. */
   private static class SynchronizedClassVisitor implements ClassVisitor {
 
@@ -86,8 +86,8 @@ public class DexFix {
       }
     }
     if (node != null) {
-      if (node.codeNode != null) {
-        node.codeNode.accept(
+      if (node.codeNode != null || node.codeReader != null) {
+        DexCodeVisitor clinitVisitor =
             new DexCodeVisitor() {
               @Override
               public void visitFieldStmt(Op op, int a, int b, Field field) {
@@ -113,7 +113,13 @@ public class DexFix {
                     break;
                 }
               }
-            });
+            };
+        if (node.codeNode != null) {
+          node.codeNode.accept(clinitVisitor);
+        } else {
+          // The code of the method is only read on demand.
+          node.codeReader.accept(clinitVisitor);
+        }
       } else {
         // has init but no code
         return;
@@ -0,0 +1,50 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package proguard.dexfile.converter;
+
+import proguard.classfile.*;
+import proguard.classfile.attribute.*;
+import proguard.classfile.attribute.visitor.*;
+import proguard.classfile.visitor.*;
+
+/**
+ * This {@link ClassVisitor} visits the attributes of the methods of the program classes that it
+ * visits, without doing anything else. Code that a {@link proguard.io.DexClassReader} reads lazily
+ * is thus converted, adding its constants to the constant pool. Visitors that read the constant
+ * pool before the code, like a {@link proguard.classfile.io.ProgramClassWriter}, a {@link
+ * proguard.classfile.editor.ConstantPoolSorter}, or a {@link
+ * proguard.classfile.visitor.ClassPrinter}, should be preceded by this visitor.
+ */
+public class LazyAttributeInitializer implements ClassVisitor, AttributeVisitor {
+  private final MemberVisitor allAttributeVisitor = new AllAttributeVisitor(this);
+
+  // Implementations for ClassVisitor.
+
+  @Override
+  public void visitAnyClass(Clazz clazz) {}
+
+  @Override
+  public void visitProgramClass(ProgramClass programClass) {
+    programClass.methodsAccept(allAttributeVisitor);
+  }
+
+  // Implementations for AttributeVisitor.
+
+  @Override
+  public void visitAnyAttribute(Clazz clazz, Attribute attribute) {}
+}
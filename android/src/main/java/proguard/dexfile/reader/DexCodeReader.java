@@ -0,0 +1,37 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package proguard.dexfile.reader;
+
+import proguard.dexfile.reader.visitors.DexCodeVisitor;
+import proguard.dexfile.reader.visitors.DexMethodVisitor;
+
+/**
+ * This interface reads the code of a method from a dex file on demand, for instance long after the
+ * method itself has been visited.
+ *
+ * @see DexFileReader#LAZY_CODE
+ * @see DexMethodVisitor#visitLazyCode(DexCodeReader)
+ */
+public interface DexCodeReader {
+  /**
+   * Makes the given visitor visit the code, including its {@link DexCodeVisitor#visitEnd()}.
+   *
+   * @param dcv the code visitor.
+   */
+  void accept(DexCodeVisitor dcv);
+}
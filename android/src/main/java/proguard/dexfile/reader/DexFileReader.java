@@ -24,8 +24,10 @@ import java.io.UTFDataFormatException;
 import java.nio.Buffer;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.BitSet;
@@ -82,6 +84,12 @@ public class DexFileReader {
   /** keep clinit method when {@link #SKIP_DEBUG} */
   public static final int SKIP_EXCEPTION = 1 << 8;
 
+  /**
+   * don't read code right away, but pass a {@link DexCodeReader} to {@link
+   * DexMethodVisitor#visitLazyCode(DexCodeReader)}, which can read the code later, on any thread.
+   */
+  public static final int LAZY_CODE = 1 << 9;
+
   // private static final int REVERSE_ENDIAN_CONSTANT = 0x78563412;
 
   static final int DBG_END_SEQUENCE = 0x00;
@@ -293,6 +301,34 @@ public class DexFileReader {
     this(toByteArray(is));
   }
 
+  /**
+   * Reads dex from the given range of a file channel, mapping it into memory instead of copying it
+   * to the heap. The operating system then pages the data in as they are read. The mapping remains
+   * valid after the channel has been closed.
+   *
+   * @param channel the file channel, for instance of a dex file or of an apk file with a stored dex
+   *     entry.
+   * @param position the offset of the dex data in the file.
+   * @param size the size of the dex data.
+   * @throws IOException
+   */
+  public DexFileReader(FileChannel channel, long position, long size) throws IOException {
+    this(channel.map(FileChannel.MapMode.READ_ONLY, position, size));
+  }
+
+  /**
+   * Reads dex from the given file, mapping it into memory instead of copying it to the heap.
+   *
+   * @param file the dex file.
+   * @return the dex file reader.
+   * @throws IOException
+   */
+  public static DexFileReader mapFile(Path file) throws IOException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      return new DexFileReader(channel, 0L, channel.size());
+    }
+  }
+
   /**
    * Reads a string index. String indices are offset by 1, and a 0 value in the stream (-1 as
    * returned by this method) means "null"
@@ -664,7 +700,7 @@ public class DexFileReader {
    * @param config config flags, {@link #SKIP_CODE}, {@link #SKIP_DEBUG}, {@link #SKIP_ANNOTATION},
    *     {@link #SKIP_FIELD_CONSTANT}
    */
-  public void accept(DexFileVisitor dv, int classIdx, int config) {
+  public synchronized void accept(DexFileVisitor dv, int classIdx, int config) {
     ((Buffer) classDefIn).position(classIdx * 32);
     int class_idx = classDefIn.getInt();
     int access_flags = classDefIn.getInt();
@@ -699,7 +735,7 @@ public class DexFileReader {
   }
 
   /** Provides the given consumer with all strings in the dex file. */
-  public void accept(Consumer<String> stringConsumer) {
+  public synchronized void accept(Consumer<String> stringConsumer) {
     for (int cid = 0; cid < string_ids_size; cid++) {
       stringConsumer.accept(this.getString(cid));
     }
@@ -1141,7 +1177,10 @@ public class DexFileReader {
           if (0 != (SKIP_CODE & config)) {
             keep = 0 != (KEEP_CLINIT & config) && method.getName().equals("<clinit>");
           }
-          if (keep) {
+          if (keep && 0 != (LAZY_CODE & config)) {
+            boolean isStatic = (method_access_flags & DexConstants.ACC_STATIC) != 0;
+            dmv.visitLazyCode(dcv -> acceptLazyCode(code_off, dcv, config, isStatic, method));
+          } else if (keep) {
             DexCodeVisitor dcv = dmv.visitCode();
             if (dcv != null) {
               try {
@@ -1476,6 +1515,20 @@ public class DexFileReader {
     }
   }
 
+  /**
+   * Makes the given visitor visit the code at the given offset, possibly from another thread while
+   * the dex file is being visited.
+   */
+  private synchronized void acceptLazyCode(
+      int code_off, DexCodeVisitor dcv, int config, boolean isStatic, Method method) {
+    try {
+      acceptCode(code_off, dcv, config, isStatic, method);
+    } catch (Exception e) {
+      throw new DexException(
+          e, "while accept code in method:[%s] @%08x", method.toString(), code_off);
+    }
+  }
+
   /* package */ void acceptCode(
       int code_off, DexCodeVisitor dcv, int config, boolean isStatic, Method method) {
     ByteBuffer in = codeItemIn;
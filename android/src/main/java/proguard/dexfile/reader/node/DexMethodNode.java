@@ -18,6 +18,7 @@ package proguard.dexfile.reader.node;
 
 import java.util.ArrayList;
 import java.util.List;
+import proguard.dexfile.reader.DexCodeReader;
 import proguard.dexfile.reader.Method;
 import proguard.dexfile.reader.Visibility;
 import proguard.dexfile.reader.visitors.*;
@@ -26,6 +27,7 @@ public class DexMethodNode extends DexMethodVisitor {
   public int access;
   public List<DexAnnotationNode> anns;
   public DexCodeNode codeNode;
+  public DexCodeReader codeReader;
   public Method method;
   public List<DexAnnotationNode>[] parameterAnns;
 
@@ -72,6 +74,9 @@ public class DexMethodNode extends DexMethodVisitor {
     if (codeNode != null) {
       codeNode.accept(mv);
     }
+    if (codeReader != null) {
+      mv.visitLazyCode(codeReader);
+    }
   }
 
   @Override
@@ -91,6 +96,11 @@ public class DexMethodNode extends DexMethodVisitor {
     return codeNode;
   }
 
+  @Override
+  public void visitLazyCode(DexCodeReader codeReader) {
+    this.codeReader = codeReader;
+  }
+
   @SuppressWarnings("unchecked")
   @Override
   public DexAnnotationAble visitParameterAnnotation(final int index) {
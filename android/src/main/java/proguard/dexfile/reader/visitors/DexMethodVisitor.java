@@ -15,6 +15,7 @@
  */
 package proguard.dexfile.reader.visitors;
 
+import proguard.dexfile.reader.DexCodeReader;
 import proguard.dexfile.reader.Visibility;
 
 /**
@@ -50,6 +51,20 @@ public class DexMethodVisitor implements DexAnnotationAble {
     return visitor.visitCode();
   }
 
+  /**
+   * Visits code that the given reader can read later, when the dex file is read with {@link
+   * proguard.dexfile.reader.DexFileReader#LAZY_CODE}. By default, reads the code right away, into
+   * the visitor returned by {@link #visitCode()}.
+   *
+   * @param codeReader the reader of the code.
+   */
+  public void visitLazyCode(DexCodeReader codeReader) {
+    DexCodeVisitor dcv = visitCode();
+    if (dcv != null) {
+      codeReader.accept(dcv);
+    }
+  }
+
   public void visitEnd() {
     if (visitor == null) {
       return;
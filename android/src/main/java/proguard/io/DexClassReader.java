@@ -18,12 +18,14 @@
 package proguard.io;
 
 import static proguard.dexfile.reader.DexFileReader.KEEP_CLINIT;
+import static proguard.dexfile.reader.DexFileReader.LAZY_CODE;
 import static proguard.dexfile.reader.DexFileReader.SKIP_CODE;
 import static proguard.dexfile.reader.DexFileReader.SKIP_DEBUG;
 
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import proguard.classfile.constant.PrimitiveArrayConstant;
 import proguard.classfile.util.PrimitiveArrayConstantReplacer;
 import proguard.classfile.visitor.ClassPrinter;
@@ -43,6 +45,9 @@ public class DexClassReader implements DataEntryReader {
   private final boolean readCode;
   private final ClassVisitor classVisitor;
   private final boolean usePrimitiveArrayConstants;
+  private final boolean memoryMap;
+  private final boolean streaming;
+  private final boolean lazyCode;
 
   /**
    * Creates a new DexClassReader.
@@ -71,8 +76,82 @@ public class DexClassReader implements DataEntryReader {
    */
   public DexClassReader(
       boolean readCode, boolean usePrimitiveArrayConstants, ClassVisitor classVisitor) {
+    this(readCode, usePrimitiveArrayConstants, false, classVisitor);
+  }
+
+  /**
+   * Creates a new DexClassReader that can optionally map dex files into memory, instead of reading
+   * them onto the heap. This is possible for dex files on disk and for dex entries that are stored
+   * uncompressed in zip files read by a {@link JarReader}. Other dex files are still read onto the
+   * heap.
+   *
+   * @param readCode specifies whether to read the actual code or just skip it.
+   * @param usePrimitiveArrayConstants specifies whether {@link PrimitiveArrayConstant} can be
+   *     generated when applicable.
+   * @param memoryMap specifies whether to map dex files into memory when possible.
+   * @param classVisitor the class visitor to which decoded classes will be passed.
+   */
+  public DexClassReader(
+      boolean readCode,
+      boolean usePrimitiveArrayConstants,
+      boolean memoryMap,
+      ClassVisitor classVisitor) {
+    this(readCode, usePrimitiveArrayConstants, memoryMap, false, classVisitor);
+  }
+
+  /**
+   * Creates a new DexClassReader that can optionally convert dex files class by class. In that
+   * case, it passes each converted class to the class visitor before decoding the next class,
+   * instead of first decoding all classes of a dex file, so only a single decoded class is kept in
+   * memory at any time.
+   *
+   * @param readCode specifies whether to read the actual code or just skip it.
+   * @param usePrimitiveArrayConstants specifies whether {@link PrimitiveArrayConstant} can be
+   *     generated when applicable.
+   * @param memoryMap specifies whether to map dex files into memory when possible.
+   * @param streaming specifies whether to convert dex files class by class.
+   * @param classVisitor the class visitor to which decoded classes will be passed.
+   */
+  public DexClassReader(
+      boolean readCode,
+      boolean usePrimitiveArrayConstants,
+      boolean memoryMap,
+      boolean streaming,
+      ClassVisitor classVisitor) {
+    this(readCode, usePrimitiveArrayConstants, memoryMap, streaming, false, classVisitor);
+  }
+
+  /**
+   * Creates a new DexClassReader that can optionally convert the code of methods lazily. In that
+   * case, the code attributes of the methods only read and convert their code when they are first
+   * visited, which saves time if only a few methods are ever analyzed. The code attributes then
+   * keep a reference to the dex file, and only the methods that accept them may access their
+   * contents. Converting the code adds constants to the constant pools of the classes, so
+   * visitors that read the constant pools before the code, like class writers, constant pool
+   * sorters, or a {@link proguard.classfile.visitor.ClassPrinter}, should be preceded by a {@link
+   * proguard.dexfile.converter.LazyAttributeInitializer}. Reference initializers don't convert the
+   * code; the references of its constants are initialized when it is converted.
+   *
+   * @param readCode specifies whether to read the actual code or just skip it.
+   * @param usePrimitiveArrayConstants specifies whether {@link PrimitiveArrayConstant} can be
+   *     generated when applicable.
+   * @param memoryMap specifies whether to map dex files into memory when possible.
+   * @param streaming specifies whether to convert dex files class by class.
+   * @param lazyCode specifies whether to convert the code of methods when it is first visited.
+   * @param classVisitor the class visitor to which decoded classes will be passed.
+   */
+  public DexClassReader(
+      boolean readCode,
+      boolean usePrimitiveArrayConstants,
+      boolean memoryMap,
+      boolean streaming,
+      boolean lazyCode,
+      ClassVisitor classVisitor) {
     this.readCode = readCode;
     this.usePrimitiveArrayConstants = usePrimitiveArrayConstants;
+    this.memoryMap = memoryMap;
+    this.streaming = streaming;
+    this.lazyCode = lazyCode;
     this.classVisitor = classVisitor;
   }
 
@@ -80,17 +159,27 @@ public class DexClassReader implements DataEntryReader {
 
   @Override
   public void read(DataEntry dataEntry) throws IOException {
-    // Get the input.
-    try (InputStream inputStream = dataEntry.getInputStream()) {
-      // Fill out a Dex2jar file node.
-      DexFileNode fileNode = new DexFileNode();
+    try {
+      // Get the input.
+      DexFileReader dexFileReader = createDexFileReader(dataEntry, memoryMap);
+
       int readerConfig = readCode ? 0 : (SKIP_CODE | KEEP_CLINIT | SKIP_DEBUG);
-      new DexFileReader(inputStream).accept(fileNode, readerConfig);
+      if (lazyCode) {
+        readerConfig |= LAZY_CODE;
+      }
+      Dex2Pro dex2Pro = new Dex2Pro().usePrimitiveArrayConstants(usePrimitiveArrayConstants);
 
-      // Convert it to classes, with the help of Dex2Pro.
-      new Dex2Pro()
-          .usePrimitiveArrayConstants(usePrimitiveArrayConstants)
-          .convertDex(fileNode, classVisitor);
+      if (streaming) {
+        // Convert the classes one by one, with the help of Dex2Pro.
+        dex2Pro.convertDex(dexFileReader, readerConfig, classVisitor);
+      } else {
+        // Fill out a Dex2jar file node.
+        DexFileNode fileNode = new DexFileNode();
+        dexFileReader.accept(fileNode, readerConfig);
+
+        // Convert it to classes, with the help of Dex2Pro.
+        dex2Pro.convertDex(fileNode, classVisitor);
+      }
     } catch (DexException e) {
       throw new IOException("Dex file conversion failed: " + e.getMessage(), e);
     }
@@ -98,6 +187,30 @@ public class DexClassReader implements DataEntryReader {
 
   // Small utility methods.
 
+  /**
+   * Creates a dex file reader for the given data entry, optionally mapping its data into memory if
+   * the entry is a file or a stored zip entry.
+   */
+  static DexFileReader createDexFileReader(DataEntry dataEntry, boolean memoryMap)
+      throws IOException {
+    if (memoryMap) {
+      if (dataEntry instanceof FileDataEntry) {
+        return DexFileReader.mapFile(((FileDataEntry) dataEntry).getFile().toPath());
+      }
+
+      if (dataEntry instanceof ZipFileDataEntry) {
+        ByteBuffer data = ((ZipFileDataEntry) dataEntry).mapData();
+        if (data != null) {
+          return new DexFileReader(data);
+        }
+      }
+    }
+
+    try (InputStream inputStream = dataEntry.getInputStream()) {
+      return new DexFileReader(inputStream);
+    }
+  }
+
   /**
    * This main method illustrates and tests the class. It reads an input dex file (or jar file with
    * a dex file) and prints out its classes.
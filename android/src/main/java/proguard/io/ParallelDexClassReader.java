@@ -18,11 +18,11 @@
 package proguard.io;
 
 import static proguard.dexfile.reader.DexFileReader.KEEP_CLINIT;
+import static proguard.dexfile.reader.DexFileReader.LAZY_CODE;
 import static proguard.dexfile.reader.DexFileReader.SKIP_CODE;
 import static proguard.dexfile.reader.DexFileReader.SKIP_DEBUG;
 
 import java.io.IOException;
-import java.io.InputStream;
 import proguard.classfile.constant.PrimitiveArrayConstant;
 import proguard.classfile.util.PrimitiveArrayConstantReplacer;
 import proguard.classfile.visitor.ClassVisitor;
@@ -38,6 +38,9 @@ import proguard.dexfile.reader.node.DexFileNode;
  */
 public class ParallelDexClassReader implements DataEntryReader {
   private final boolean readCode;
+  private final boolean memoryMap;
+  private final boolean streaming;
+  private final boolean lazyCode;
   private final ClassVisitor classVisitor;
   public final Dex2Pro dex2pro;
 
@@ -58,7 +61,92 @@ public class ParallelDexClassReader implements DataEntryReader {
       boolean usePrimitiveArrayConstants,
       ClassVisitor classVisitor,
       int maximumThreads) {
+    this(readCode, usePrimitiveArrayConstants, false, classVisitor, maximumThreads);
+  }
+
+  /**
+   * Creates a new ParallelDexClassReader that can optionally map dex files into memory, instead of
+   * reading them onto the heap. This is possible for dex files on disk and for dex entries that are
+   * stored uncompressed in zip files read by a {@link JarReader}.
+   *
+   * @param readCode specifies whether to read the actual code or just skip it.
+   * @param usePrimitiveArrayConstants specifies whether {@link PrimitiveArrayConstant} can be
+   *     generated when applicable.
+   * @param memoryMap specifies whether to map dex files into memory when possible.
+   * @param classVisitor the class visitor to which decoded classes will be passed.
+   * @param maximumThreads the maximum number of threads for converting the classes.
+   */
+  public ParallelDexClassReader(
+      boolean readCode,
+      boolean usePrimitiveArrayConstants,
+      boolean memoryMap,
+      ClassVisitor classVisitor,
+      int maximumThreads) {
+    this(readCode, usePrimitiveArrayConstants, memoryMap, false, classVisitor, maximumThreads);
+  }
+
+  /**
+   * Creates a new ParallelDexClassReader that can optionally convert dex files class by class. In
+   * that case, it decodes the classes one by one and hands them to the conversion threads, only
+   * staying a limited number of classes ahead of them, instead of first decoding all classes of a
+   * dex file. This bounds the number of decoded classes in memory.
+   *
+   * @param readCode specifies whether to read the actual code or just skip it.
+   * @param usePrimitiveArrayConstants specifies whether {@link PrimitiveArrayConstant} can be
+   *     generated when applicable.
+   * @param memoryMap specifies whether to map dex files into memory when possible.
+   * @param streaming specifies whether to convert dex files class by class.
+   * @param classVisitor the class visitor to which decoded classes will be passed.
+   * @param maximumThreads the maximum number of threads for converting the classes.
+   */
+  public ParallelDexClassReader(
+      boolean readCode,
+      boolean usePrimitiveArrayConstants,
+      boolean memoryMap,
+      boolean streaming,
+      ClassVisitor classVisitor,
+      int maximumThreads) {
+    this(
+        readCode,
+        usePrimitiveArrayConstants,
+        memoryMap,
+        streaming,
+        false,
+        classVisitor,
+        maximumThreads);
+  }
+
+  /**
+   * Creates a new ParallelDexClassReader that can optionally convert the code of methods lazily.
+   * In that case, the code attributes of the methods only read and convert their code when they
+   * are first visited, on the visiting thread, which saves time if only a few methods are ever
+   * analyzed. Converting the code adds constants to the constant pools of the classes, so
+   * visitors that read the constant pools before the code, like class writers, constant pool
+   * sorters, or a {@link proguard.classfile.visitor.ClassPrinter}, should be preceded by a {@link
+   * proguard.dexfile.converter.LazyAttributeInitializer}. Reference initializers don't convert the
+   * code; the references of its constants are initialized when it is converted.
+   *
+   * @param readCode specifies whether to read the actual code or just skip it.
+   * @param usePrimitiveArrayConstants specifies whether {@link PrimitiveArrayConstant} can be
+   *     generated when applicable.
+   * @param memoryMap specifies whether to map dex files into memory when possible.
+   * @param streaming specifies whether to convert dex files class by class.
+   * @param lazyCode specifies whether to convert the code of methods when it is first visited.
+   * @param classVisitor the class visitor to which decoded classes will be passed.
+   * @param maximumThreads the maximum number of threads for converting the classes.
+   */
+  public ParallelDexClassReader(
+      boolean readCode,
+      boolean usePrimitiveArrayConstants,
+      boolean memoryMap,
+      boolean streaming,
+      boolean lazyCode,
+      ClassVisitor classVisitor,
+      int maximumThreads) {
     this.readCode = readCode;
+    this.memoryMap = memoryMap;
+    this.streaming = streaming;
+    this.lazyCode = lazyCode;
     this.classVisitor = classVisitor;
     this.dex2pro = new Dex2Pro(maximumThreads);
     dex2pro.usePrimitiveArrayConstants(usePrimitiveArrayConstants);
@@ -68,15 +156,26 @@ public class ParallelDexClassReader implements DataEntryReader {
 
   @Override
   public void read(DataEntry dataEntry) throws IOException {
-    // Get the input.
-    try (InputStream inputStream = dataEntry.getInputStream()) {
-      // Fill out a Dex2jar file node.
-      DexFileNode fileNode = new DexFileNode();
+    try {
+      // Get the input.
+      DexFileReader dexFileReader = DexClassReader.createDexFileReader(dataEntry, memoryMap);
+
       int readerConfig = readCode ? 0 : (SKIP_CODE | KEEP_CLINIT | SKIP_DEBUG);
-      new DexFileReader(inputStream).accept(fileNode, readerConfig);
+      if (lazyCode) {
+        readerConfig |= LAZY_CODE;
+      }
+
+      if (streaming) {
+        // Convert the classes one by one, with the help of Dex2Pro.
+        dex2pro.convertDex(dexFileReader, readerConfig, classVisitor);
+      } else {
+        // Fill out a Dex2jar file node.
+        DexFileNode fileNode = new DexFileNode();
+        dexFileReader.accept(fileNode, readerConfig);
 
-      // Convert it to classes, with the help of Dex2Pro.
-      dex2pro.convertDex(fileNode, classVisitor);
+        // Convert it to classes, with the help of Dex2Pro.
+        dex2pro.convertDex(fileNode, classVisitor);
+      }
     } catch (DexException e) {
       throw new IOException("Dex file conversion failed: " + e.getMessage(), e);
     }
@@ -0,0 +1,124 @@
+package proguard.io
+
+import io.kotest.core.spec.style.FreeSpec
+import io.kotest.matchers.shouldBe
+import proguard.android.testutils.Smali2DexReader
+import proguard.classfile.ClassPool
+import proguard.classfile.Clazz
+import proguard.classfile.ProgramClass
+import proguard.classfile.ProgramMethod
+import proguard.classfile.attribute.Attribute
+import proguard.classfile.attribute.visitor.AttributeVisitor
+import proguard.classfile.editor.ConstantPoolSorter
+import proguard.classfile.visitor.ClassPoolFiller
+import proguard.classfile.visitor.ClassPrinter
+import proguard.dexfile.converter.LazyAttributeInitializer
+import java.io.File
+import java.io.PrintWriter
+import java.io.StringWriter
+
+/**
+ * Runs in the `testSkippedCode` task, which sets a maximum number of
+ * statements, so Dex2Pro skips the code of the method `skipped`.
+ */
+class DexClassReaderSkippedCodeTest : FreeSpec({
+
+    // Assemble a dex file with a method that has too many statements.
+    val instructions = (1..20).joinToString("\n            ") { "add-int/lit8 v1, v1, 0x$it" }
+    val smaliFile = File.createTempFile("Test", ".smali").apply { deleteOnExit() }
+    smaliFile.writeText(
+        """
+        .class public LTest;
+        .super Ljava/lang/Object;
+
+        .method public static answer(I)I
+            .registers 2
+
+            add-int/lit8 v0, v1, 0x2a
+
+            return v0
+        .end method
+
+        .method public static skipped(I)I
+            .registers 2
+            .annotation system Ldalvik/annotation/Throws;
+                value = {
+                    Ljava/io/IOException;
+                }
+            .end annotation
+
+            $instructions
+
+            return v1
+        .end method
+        """.trimIndent(),
+    )
+
+    val dexFile = File.createTempFile("classes", ".dex").apply { deleteOnExit() }
+    Smali2DexReader { dataEntry ->
+        dexFile.writeBytes(dataEntry.inputStream.readBytes())
+        dataEntry.closeInputStream()
+    }.read(FileDataEntry(smaliFile))
+
+    fun readClassPool(lazyCode: Boolean): ClassPool {
+        val classPool = ClassPool()
+        FileSource(dexFile).pumpDataEntries(
+            DexClassReader(true, false, false, false, lazyCode, ClassPoolFiller(classPool)),
+        )
+        return classPool
+    }
+
+    fun printClasses(classPool: ClassPool): String {
+        // Convert any lazy code and sort the constants, which lazy code adds in
+        // a different order.
+        classPool.classesAccept(LazyAttributeInitializer())
+        classPool.classesAccept(ConstantPoolSorter())
+
+        val classes = StringWriter()
+        classPool.classesAccept(ClassPrinter(PrintWriter(classes)))
+        return classes.toString()
+    }
+
+    "Given a dex file with a method whose code is skipped" - {
+        val expectedClasses = printClasses(readClassPool(false))
+
+        "When converting the code eagerly" - {
+            "Then the method doesn't have a code attribute" {
+                val classPool = readClassPool(false)
+                val clazz = classPool.getClass("Test") as ProgramClass
+                val method = clazz.findMethod("skipped", "(I)I") as ProgramMethod
+                method.attributes.take(method.u2attributesCount).map {
+                    it.getAttributeName(clazz)
+                } shouldBe listOf(Attribute.EXCEPTIONS)
+            }
+        }
+
+        "When converting the code lazily" - {
+            "Then the code attribute is deleted when it is visited" {
+                val classPool = readClassPool(true)
+                val clazz = classPool.getClass("Test") as ProgramClass
+                val method = clazz.findMethod("skipped", "(I)I") as ProgramMethod
+                method.u2attributesCount shouldBe 2
+
+                val visitedAttributes = mutableListOf<String>()
+                method.attributesAccept(
+                    clazz,
+                    object : AttributeVisitor {
+                        override fun visitAnyAttribute(clazz: Clazz, attribute: Attribute) {
+                            visitedAttributes += attribute.getAttributeName(clazz)
+                        }
+                    },
+                )
+
+                visitedAttributes shouldBe listOf(Attribute.EXCEPTIONS)
+                method.attributes.take(method.u2attributesCount).map {
+                    it.getAttributeName(clazz)
+                } shouldBe listOf(Attribute.EXCEPTIONS)
+            }
+
+            "Then the classes are the same" {
+                printClasses(readClassPool(true)) shouldBe expectedClasses
+            }
+        }
+    }
+})
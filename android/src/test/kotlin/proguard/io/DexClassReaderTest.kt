@@ -0,0 +1,286 @@
+package proguard.io
+
+import io.kotest.core.spec.style.FreeSpec
+import io.kotest.matchers.shouldBe
+import io.kotest.matchers.shouldNotBe
+import proguard.android.testutils.Smali2DexReader
+import proguard.classfile.ClassPool
+import proguard.classfile.Clazz
+import proguard.classfile.Method
+import proguard.classfile.ProgramClass
+import proguard.classfile.ProgramMethod
+import proguard.classfile.attribute.Attribute
+import proguard.classfile.attribute.CodeAttribute
+import proguard.classfile.attribute.visitor.AttributeVisitor
+import proguard.classfile.constant.Constant
+import proguard.classfile.constant.MethodrefConstant
+import proguard.classfile.constant.visitor.ConstantVisitor
+import proguard.classfile.editor.ConstantPoolSorter
+import proguard.classfile.io.ProgramClassReader
+import proguard.classfile.io.ProgramClassWriter
+import proguard.classfile.util.ClassReferenceInitializer
+import proguard.classfile.visitor.ClassPoolFiller
+import proguard.classfile.visitor.ClassPrinter
+import proguard.dexfile.converter.LazyAttributeInitializer
+import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
+import java.io.DataInputStream
+import java.io.DataOutputStream
+import java.io.File
+import java.io.PrintWriter
+import java.io.StringWriter
+import java.util.zip.CRC32
+import java.util.zip.ZipEntry
+import java.util.zip.ZipOutputStream
+
+class DexClassReaderTest : FreeSpec({
+
+    // Assemble a dex file.
+    val smaliFile = File.createTempFile("Test", ".smali").apply { deleteOnExit() }
+    smaliFile.writeText(
+        """
+        .class public LTest;
+        .super Ljava/lang/Object;
+
+        .method public static answer(I)I
+            .registers 2
+
+            add-int/lit8 v0, v1, 0x2a
+
+            return v0
+        .end method
+
+        .method public static twice(I)I
+            .registers 2
+
+            invoke-static {v1}, LTest;->answer(I)I
+            move-result v0
+            invoke-static {v0}, LTest;->answer(I)I
+            move-result v0
+
+            return v0
+        .end method
+        """.trimIndent(),
+    )
+
+    val dexFile = File.createTempFile("classes", ".dex").apply { deleteOnExit() }
+    Smali2DexReader { dataEntry ->
+        dexFile.writeBytes(dataEntry.inputStream.readBytes())
+        dataEntry.closeInputStream()
+    }.read(FileDataEntry(smaliFile))
+
+    // Put the dex file in an apk, once stored and once compressed.
+    val dexBytes = dexFile.readBytes()
+    val apkFile = File.createTempFile("test", ".apk").apply { deleteOnExit() }
+    ZipOutputStream(apkFile.outputStream()).use { zip ->
+        val storedEntry = ZipEntry("classes.dex")
+        storedEntry.method = ZipEntry.STORED
+        storedEntry.size = dexBytes.size.toLong()
+        storedEntry.crc = CRC32().apply { update(dexBytes) }.value
+        zip.putNextEntry(storedEntry)
+        zip.write(dexBytes)
+        zip.closeEntry()
+
+        zip.putNextEntry(ZipEntry("classes2.dex"))
+        zip.write(dexBytes)
+        zip.closeEntry()
+    }
+
+    // Visits attributes without doing anything, which converts any lazy code.
+    val attributeToucher = object : AttributeVisitor {
+        override fun visitAnyAttribute(clazz: Clazz, attribute: Attribute) {}
+    }
+
+    fun readClasses(
+        file: File,
+        memoryMap: Boolean,
+        dexFileName: String? = null,
+        streaming: Boolean = false,
+        maximumThreads: Int = 1,
+        lazyCode: Boolean = false,
+    ): String {
+        val classPool =
+            readClassPool(file, memoryMap, dexFileName, streaming, maximumThreads, lazyCode)
+
+        // Convert any lazy code and sort the constants, which lazy code adds in
+        // a different order.
+        classPool.classesAccept(LazyAttributeInitializer())
+        classPool.classesAccept(ConstantPoolSorter())
+
+        val classes = StringWriter()
+        classPool.classesAccept(ClassPrinter(PrintWriter(classes)))
+        return classes.toString()
+    }
+
+    fun readClassPool(
+        file: File,
+        memoryMap: Boolean,
+        dexFileName: String?,
+        streaming: Boolean,
+        maximumThreads: Int,
+        lazyCode: Boolean,
+    ): ClassPool {
+        val classPool = ClassPool()
+        val dexReader =
+            if (maximumThreads > 1) {
+                ParallelDexClassReader(
+                    true,
+                    false,
+                    memoryMap,
+                    streaming,
+                    lazyCode,
+                    ClassPoolFiller(classPool),
+                    maximumThreads,
+                )
+            } else {
+                DexClassReader(
+                    true,
+                    false,
+                    memoryMap,
+                    streaming,
+                    lazyCode,
+                    ClassPoolFiller(classPool),
+                )
+            }
+        var reader: DataEntryReader = dexReader
+        if (dexFileName != null) {
+            reader = JarReader(NameFilteredDataEntryReader(dexFileName, reader))
+        }
+        FileSource(file).pumpDataEntries(reader)
+        (dexReader as? ParallelDexClassReader)?.shutdown(60)
+        return classPool
+    }
+
+    "Given a dex file" - {
+        val expectedClasses = readClasses(dexFile, false)
+
+        "When reading it without mapping it into memory" - {
+            "Then it contains the class" {
+                expectedClasses shouldNotBe ""
+            }
+        }
+
+        "When mapping it into memory" - {
+            "Then the classes are the same" {
+                readClasses(dexFile, true) shouldBe expectedClasses
+            }
+        }
+
+        "When mapping it into memory from a stored apk entry" - {
+            "Then the classes are the same" {
+                readClasses(apkFile, true, "classes.dex") shouldBe expectedClasses
+            }
+        }
+
+        "When reading it from a compressed apk entry" - {
+            "Then the classes are the same" {
+                readClasses(apkFile, true, "classes2.dex") shouldBe expectedClasses
+            }
+        }
+
+        "When converting it class by class" - {
+            "Then the classes are the same" {
+                readClasses(dexFile, false, streaming = true) shouldBe expectedClasses
+            }
+        }
+
+        "When converting it class by class in parallel" - {
+            "Then the classes are the same" {
+                readClasses(dexFile, true, streaming = true, maximumThreads = 4) shouldBe
+                    expectedClasses
+            }
+        }
+
+        "When converting the code lazily" - {
+            "Then the classes are the same" {
+                readClasses(dexFile, false, lazyCode = true) shouldBe expectedClasses
+            }
+
+            "Then the classes are the same when converting class by class in parallel" {
+                readClasses(
+                    dexFile,
+                    true,
+                    streaming = true,
+                    maximumThreads = 4,
+                    lazyCode = true,
+                ) shouldBe expectedClasses
+            }
+
+            "Then the code is only converted when it is visited" {
+                val classPool = readClassPool(dexFile, false, null, false, 1, true)
+                val clazz = classPool.getClass("Test") as ProgramClass
+                val method = clazz.findMethod("answer", "(I)I") as ProgramMethod
+                val codeAttribute = method.attributes[0] as CodeAttribute
+                codeAttribute.u4codeLength shouldBe 0
+
+                method.attributesAccept(clazz, attributeToucher)
+                codeAttribute.u4codeLength shouldNotBe 0
+            }
+
+            "Then the classes are the same when writing them after initializing their code" {
+                val classPool = readClassPool(dexFile, false, null, false, 1, true)
+                classPool.classesAccept(LazyAttributeInitializer())
+                val writtenClassPool = ClassPool()
+                classPool.classesAccept { clazz ->
+                    val bytes = ByteArrayOutputStream()
+                    clazz.accept(ProgramClassWriter(DataOutputStream(bytes)))
+                    val input = DataInputStream(ByteArrayInputStream(bytes.toByteArray()))
+                    val writtenClass = ProgramClass()
+                    writtenClass.accept(ProgramClassReader(input))
+                    writtenClassPool.addClass(writtenClass)
+                }
+                writtenClassPool.classesAccept(ConstantPoolSorter())
+
+                val classes = StringWriter()
+                writtenClassPool.classesAccept(ClassPrinter(PrintWriter(classes)))
+                classes.toString() shouldBe expectedClasses
+            }
+
+            "Then the constants of the code are initialized when the code is converted" {
+                val classPool = readClassPool(dexFile, false, null, false, 1, true)
+                classPool.classesAccept(ClassReferenceInitializer(classPool, ClassPool()))
+
+                val clazz = classPool.getClass("Test") as ProgramClass
+                val answerMethod = clazz.findMethod("answer", "(I)I")
+                val twiceMethod = clazz.findMethod("twice", "(I)I") as ProgramMethod
+                val codeAttribute = twiceMethod.attributes[0] as CodeAttribute
+                codeAttribute.u4codeLength shouldBe 0
+
+                twiceMethod.attributesAccept(clazz, attributeToucher)
+                codeAttribute.u4codeLength shouldNotBe 0
+
+                val referencedMethods = mutableListOf<Method?>()
+                clazz.constantPoolEntriesAccept(
+                    object : ConstantVisitor {
+                        override fun visitAnyConstant(clazz: Clazz, constant: Constant) {}
+
+                        override fun visitMethodrefConstant(
+                            clazz: Clazz,
+                            methodrefConstant: MethodrefConstant,
+                        ) {
+                            referencedMethods += methodrefConstant.referencedMethod
+                        }
+                    },
+                )
+                referencedMethods shouldBe listOf(answerMethod)
+            }
+        }
+    }
+
+    "Given a stored apk entry" - {
+        "When mapping its data" - {
+            "Then the data are the same as the dex file" {
+                var data: ByteArray? = null
+                FileSource(apkFile).pumpDataEntries(
+                    JarReader(
+                        NameFilteredDataEntryReader("classes.dex") { dataEntry ->
+                            val buffer = (dataEntry as ZipFileDataEntry).mapData()
+                            data = ByteArray(buffer.remaining()).also { buffer.get(it) }
+                        },
+                    ),
+                )
+                data shouldBe dexBytes
+            }
+        }
+    }
+})
@@ -58,6 +58,7 @@ import proguard.classfile.constant.NameAndTypeConstant;
 import proguard.classfile.instruction.ConstantInstruction;
 import proguard.classfile.instruction.Instruction;
 import proguard.classfile.instruction.visitor.InstructionVisitor;
+import proguard.classfile.util.ClassHierarchyIndex;
 import proguard.classfile.util.ClassUtil;
 import proguard.classfile.visitor.ClassVisitor;
 import proguard.classfile.visitor.LineNumberFinder;
@@ -135,6 +136,7 @@ public class CallResolver implements AttributeVisitor, ClassVisitor, Instruction
   private final boolean selectiveParameterReconstruction;
   private final Set<MethodSignature> interestingMethods;
   private final Set<Predicate<Call>> interestingCallPredicates;
+  private final ClassHierarchyIndex classHierarchyIndex;
 
   private CurrentClazzMethodAttribute currentClazzMethodAttribute;
 
@@ -244,6 +246,55 @@ public class CallResolver implements AttributeVisitor, ClassVisitor, Instruction
       Set<MethodSignature> interestingMethods,
       Set<Predicate<Call>> interestingCallPredicates,
       CallVisitor... visitors) {
+    this(
+        programClassPool,
+        libraryClassPool,
+        callGraph,
+        clearCallValuesAfterVisit,
+        useDominatorAnalysis,
+        evaluateAllCode,
+        includeSubClasses,
+        maxPartialEvaluations,
+        shouldAnalyzeNextCodeAttribute,
+        skipIncompleteCalls,
+        arrayValueFactory,
+        ignoreExceptions,
+        executingInvocationUnitBuilder,
+        selectiveParameterReconstruction,
+        interestingMethods,
+        interestingCallPredicates,
+        null,
+        visitors);
+  }
+
+  /**
+   * Create a new call resolver.
+   *
+   * @param classHierarchyIndex An optional {@link ClassHierarchyIndex} of the class pools, for
+   *     resolving virtual calls without walking the class hierarchy for every call.
+   * @see #CallResolver(ClassPool, ClassPool, CallGraph, boolean, boolean, boolean, boolean, int,
+   *     Supplier, boolean, ValueFactory, boolean, ExecutingInvocationUnit.Builder, boolean, Set,
+   *     Set, CallVisitor...)
+   */
+  public CallResolver(
+      ClassPool programClassPool,
+      ClassPool libraryClassPool,
+      CallGraph callGraph,
+      boolean clearCallValuesAfterVisit,
+      boolean useDominatorAnalysis,
+      boolean evaluateAllCode,
+      boolean includeSubClasses,
+      int maxPartialEvaluations,
+      Supplier<Boolean> shouldAnalyzeNextCodeAttribute,
+      boolean skipIncompleteCalls,
+      ValueFactory arrayValueFactory,
+      boolean ignoreExceptions,
+      ExecutingInvocationUnit.Builder executingInvocationUnitBuilder,
+      boolean selectiveParameterReconstruction,
+      Set<MethodSignature> interestingMethods,
+      Set<Predicate<Call>> interestingCallPredicates,
+      ClassHierarchyIndex classHierarchyIndex,
+      CallVisitor... visitors) {
     this.programClassPool = programClassPool;
     this.libraryClassPool = libraryClassPool;
     this.callGraph = callGraph;
@@ -259,6 +310,7 @@ public class CallResolver implements AttributeVisitor, ClassVisitor, Instruction
     }
     this.interestingMethods = interestingMethods;
     this.interestingCallPredicates = interestingCallPredicates;
+    this.classHierarchyIndex = classHierarchyIndex;
     this.visitors = Arrays.asList(visitors);
     dominatorCalculator = new DominatorCalculator(ignoreExceptions);
 
@@ -847,6 +899,11 @@ public class CallResolver implements AttributeVisitor, ClassVisitor, Instruction
     String name = ref.getName(callingClass);
     String descriptor = ref.getType(callingClass);
 
+    if (classHierarchyIndex != null) {
+      // The index caches the result of the same lookup.
+      return classHierarchyIndex.resolveVirtual(thisPtrType, name, descriptor);
+    }
+
     // 1. + 2. (Search the class belonging to the this pointer type and all its transitive
     // superclasses)
     return resolveFromSuperclasses(thisPtrType, name, descriptor)
@@ -896,6 +953,10 @@ public class CallResolver implements AttributeVisitor, ClassVisitor, Instruction
    *     is implemented just in case.
    */
   private Set<String> resolveFromSuperinterfaces(Clazz start, String name, String descriptor) {
+    if (classHierarchyIndex != null) {
+      return classHierarchyIndex.resolveFromSuperInterfaces(start, name, descriptor);
+    }
+
     Set<Clazz> superInterfaces = new HashSet<>();
     getSuperinterfaces(start, superInterfaces);
     // Get all transitive superinterfaces that have a matching method.
@@ -980,6 +1041,7 @@ public class CallResolver implements AttributeVisitor, ClassVisitor, Instruction
     private boolean selectiveParameterReconstruction = false;
     private Set<MethodSignature> interestingMethods;
     private Set<Predicate<Call>> interestingCallPredicates;
+    private ClassHierarchyIndex classHierarchyIndex;
 
     private ExecutingInvocationUnit.Builder executingInvocationUnitBuilder =
         new ExecutingInvocationUnit.Builder();
@@ -1103,6 +1165,16 @@ public class CallResolver implements AttributeVisitor, ClassVisitor, Instruction
       return this;
     }
 
+    /**
+     * Resolve virtual calls with the given {@link ClassHierarchyIndex} of the class pools, instead
+     * of walking the class hierarchy for every call. The classes should not be modified while the
+     * call resolver is in use.
+     */
+    public Builder setClassHierarchyIndex(ClassHierarchyIndex classHierarchyIndex) {
+      this.classHierarchyIndex = classHierarchyIndex;
+      return this;
+    }
+
     public CallResolver build() {
       return new CallResolver(
           programClassPool,
@@ -1121,6 +1193,7 @@ public class CallResolver implements AttributeVisitor, ClassVisitor, Instruction
           selectiveParameterReconstruction,
           interestingMethods,
           interestingCallPredicates,
+          classHierarchyIndex,
           visitors);
     }
   }
@@ -1,10 +1,19 @@
 package proguard.analysis;
 
-import java.util.Collections;
+import java.util.AbstractMap;
 import java.util.EnumMap;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
 
-/** Utility to collect statistical information. */
+/**
+ * Utility to collect statistical information.
+ *
+ * <p>The counts and durations are collected in {@link LongAdder} instances, which spread their
+ * updates over separate cells for contending threads, so collecting them from many threads at once
+ * doesn't need any locking.
+ */
 public class Metrics {
 
   /** Constants which are used as metric types. */
@@ -25,20 +34,240 @@ public class Metrics {
     DEX2PRO_UNPARSEABLE_METHOD_SKIPPED
   }
 
-  public static final Map<MetricType, Integer> counts =
-      Collections.synchronizedMap(new EnumMap<>(MetricType.class));
+  /** Constants which are used as timer types. */
+  public enum TimerType {
+    PARTIAL_EVALUATION,
+    CPA_RUN,
+    DEX2PRO_CLASS_CONVERSION
+  }
+
+  private static final LongAdder[] COUNTERS = new LongAdder[MetricType.values().length];
+  private static final Timer[] TIMERS = new Timer[TimerType.values().length];
+
+  static {
+    for (int index = 0; index < COUNTERS.length; index++) {
+      COUNTERS[index] = new LongAdder();
+    }
+
+    for (int index = 0; index < TIMERS.length; index++) {
+      TIMERS[index] = new Timer();
+    }
+  }
+
+  /**
+   * A live view of the collected counts, containing the metric types that have been counted.
+   *
+   * @deprecated Use {@link #getCount(MetricType)} instead.
+   */
+  @Deprecated public static final Map<MetricType, Integer> counts = new MyCountsView();
 
   public static void increaseCount(MetricType type) {
-    counts.merge(type, 1, Integer::sum);
+    COUNTERS[type.ordinal()].increment();
+  }
+
+  /** Returns the number of times that the given metric type has been counted. */
+  public static long getCount(MetricType type) {
+    return COUNTERS[type.ordinal()].sum();
+  }
+
+  /** Records the given duration, in nanoseconds, for the given timer type. */
+  public static void recordDuration(TimerType type, long durationNanos) {
+    TIMERS[type.ordinal()].record(durationNanos);
+  }
+
+  /** Returns the number of durations that have been recorded for the given timer type. */
+  public static long getDurationCount(TimerType type) {
+    return TIMERS[type.ordinal()].count.sum();
+  }
+
+  /** Returns the sum of the durations, in nanoseconds, recorded for the given timer type. */
+  public static long getTotalDuration(TimerType type) {
+    return TIMERS[type.ordinal()].totalNanos.sum();
   }
 
   /** Get all collected data as a string and clear it afterwards. */
   public static String flush() {
     StringBuilder result = new StringBuilder("Metrics:\n");
 
-    counts.forEach(
-        (type, count) -> result.append(type.name()).append(": ").append(count).append("\n"));
-    counts.clear();
+    for (MetricType type : MetricType.values()) {
+      long count = COUNTERS[type.ordinal()].sumThenReset();
+      if (count != 0L) {
+        result.append(type.name()).append(": ").append(count).append("\n");
+      }
+    }
+
+    for (TimerType type : TimerType.values()) {
+      Timer timer = TIMERS[type.ordinal()];
+      long count = timer.count.sum();
+      if (count != 0L) {
+        result
+            .append(type.name())
+            .append(": ")
+            .append(count)
+            .append(" times, total ")
+            .append(timer.totalNanos.sum() / 1_000_000L)
+            .append(" ms, max ")
+            .append(timer.maxNanos.get() / 1_000_000L)
+            .append(" ms\n");
+      }
+      timer.reset();
+    }
+
     return result.toString();
   }
+
+  /**
+   * Returns all collected data as a JSON object, with the non-zero counts and, for each timer type
+   * with recorded durations, the number of durations, their total and maximum in nanoseconds, and a
+   * histogram. The histogram maps exclusive upper bounds, powers of two in nanoseconds, to the
+   * number of durations below them and above the previous bound.
+   */
+  public static String toJson() {
+    StringBuilder result = new StringBuilder("{\"counts\":{");
+
+    boolean first = true;
+    for (MetricType type : MetricType.values()) {
+      long count = COUNTERS[type.ordinal()].sum();
+      if (count != 0L) {
+        if (!first) {
+          result.append(',');
+        }
+        result.append('"').append(type.name()).append("\":").append(count);
+        first = false;
+      }
+    }
+
+    result.append("},\"timers\":{");
+
+    first = true;
+    for (TimerType type : TimerType.values()) {
+      Timer timer = TIMERS[type.ordinal()];
+      if (timer.count.sum() != 0L) {
+        if (!first) {
+          result.append(',');
+        }
+        result.append('"').append(type.name()).append("\":");
+        timer.appendJson(result);
+        first = false;
+      }
+    }
+
+    return result.append("}}").toString();
+  }
+
+  /** Clears all collected data. */
+  public static void clear() {
+    for (LongAdder counter : COUNTERS) {
+      counter.reset();
+    }
+
+    for (Timer timer : TIMERS) {
+      timer.reset();
+    }
+  }
+
+  /**
+   * The durations recorded for a timer type, with a histogram of buckets for durations up to
+   * increasing powers of two.
+   */
+  private static class Timer {
+    private static final int BUCKET_COUNT = 64;
+
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0L);
+    private final LongAdder[] buckets = new LongAdder[BUCKET_COUNT];
+
+    private Timer() {
+      for (int index = 0; index < BUCKET_COUNT; index++) {
+        buckets[index] = new LongAdder();
+      }
+    }
+
+    private void record(long durationNanos) {
+      if (durationNanos < 0L) {
+        durationNanos = 0L;
+      }
+
+      count.increment();
+      totalNanos.add(durationNanos);
+      maxNanos.accumulate(durationNanos);
+
+      // Durations below 2^i, down to 2^(i-1), go to bucket i.
+      buckets[BUCKET_COUNT - Long.numberOfLeadingZeros(durationNanos)].increment();
+    }
+
+    private void appendJson(StringBuilder result) {
+      result
+          .append("{\"count\":")
+          .append(count.sum())
+          .append(",\"totalNanos\":")
+          .append(totalNanos.sum())
+          .append(",\"maxNanos\":")
+          .append(maxNanos.get())
+          .append(",\"histogram\":{");
+
+      boolean first = true;
+      for (int index = 0; index < BUCKET_COUNT; index++) {
+        long bucketCount = buckets[index].sum();
+        if (bucketCount != 0L) {
+          if (!first) {
+            result.append(',');
+          }
+          long upperBound = index == BUCKET_COUNT - 1 ? Long.MAX_VALUE : 1L << index;
+          result.append('"').append(upperBound).append("\":").append(bucketCount);
+          first = false;
+        }
+      }
+
+      result.append("}}");
+    }
+
+    private void reset() {
+      count.reset();
+      totalNanos.reset();
+      maxNanos.reset();
+      for (LongAdder bucket : buckets) {
+        bucket.reset();
+      }
+    }
+  }
+
+  /** A map view of the counters, for backward compatibility. */
+  private static class MyCountsView extends AbstractMap<MetricType, Integer> {
+    @Override
+    public Integer get(Object key) {
+      if (!(key instanceof MetricType)) {
+        return null;
+      }
+
+      long count = getCount((MetricType) key);
+      return count == 0L ? null : (int) count;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+      return get(key) != null;
+    }
+
+    @Override
+    public Set<Entry<MetricType, Integer>> entrySet() {
+      Map<MetricType, Integer> snapshot = new EnumMap<>(MetricType.class);
+      for (MetricType type : MetricType.values()) {
+        long count = getCount(type);
+        if (count != 0L) {
+          snapshot.put(type, (int) count);
+        }
+      }
+
+      return snapshot.entrySet();
+    }
+
+    @Override
+    public void clear() {
+      for (LongAdder counter : COUNTERS) {
+        counter.reset();
+      }
+    }
+  }
 }
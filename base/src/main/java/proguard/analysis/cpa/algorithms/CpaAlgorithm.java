@@ -18,10 +18,12 @@
 
 package proguard.analysis.cpa.algorithms;
 
-import java.util.LinkedHashSet;
-import java.util.Set;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import proguard.analysis.cpa.defaults.MergeSepOperator;
 import proguard.analysis.cpa.defaults.PrecisionAdjustmentResult;
 import proguard.analysis.cpa.interfaces.AbortOperator;
 import proguard.analysis.cpa.interfaces.AbstractState;
@@ -50,6 +52,8 @@ public class CpaAlgorithm implements Algorithm {
   private final MergeOperator mergeOperator;
   private final StopOperator stopOperator;
   private final PrecisionAdjustment precisionAdjustment;
+  // whether the merge operator never merges, in which case the merge step can be skipped
+  private final boolean mergeSep;
 
   /**
    * Create an algorithm to run the specified CPA.
@@ -85,6 +89,7 @@ public class CpaAlgorithm implements Algorithm {
     this.mergeOperator = mergeOperator;
     this.stopOperator = stopOperator;
     this.precisionAdjustment = precisionAdjustment;
+    this.mergeSep = mergeOperator instanceof MergeSepOperator;
   }
 
   /**
@@ -94,6 +99,10 @@ public class CpaAlgorithm implements Algorithm {
    */
   @Override
   public void run(ReachedSet reachedSet, Waitlist waitlist, AbortOperator abortOperator) {
+    // abstract states to be added to the waitlist and reached set, reused across successors
+    List<AbstractState> gen = new ArrayList<>();
+    // abstract states to be removed from the waitlist and reached set, reused across successors
+    List<AbstractState> kill = new ArrayList<>();
     while (!waitlist.isEmpty()) {
       AbstractState currentState = waitlist.pop();
       try {
@@ -109,31 +118,28 @@ public class CpaAlgorithm implements Algorithm {
 
         for (AbstractState successorState :
             transferRelation.generateAbstractSuccessors(currentState, currentPrecision)) {
-          Set<AbstractState> gen =
-              new LinkedHashSet<>(); // abstract states to be added to the waitlist and reached set
-          Set<AbstractState> kill =
-              new LinkedHashSet<>(); // abstract states to be removed from the waitlist and reached
-          // set
-          for (AbstractState reachedState :
-              reachedSet.getReached(
-                  successorState)) // iterate only over the reached sets which may be merged with
-          // the successor state
-          {
-            AbstractState mergedState =
-                mergeOperator.merge(successorState, reachedState, successorState.getPrecision());
-            if (!mergedState.equals(reachedState)) {
-              gen.add(mergedState);
-              kill.add(reachedState);
+          // iterate only over the reached states which may be merged with the successor state
+          Collection<? extends AbstractState> reached = reachedSet.getReached(successorState);
+          if (!mergeSep) {
+            for (AbstractState reachedState : reached) {
+              AbstractState mergedState =
+                  mergeOperator.merge(successorState, reachedState, successorState.getPrecision());
+              if (!mergedState.equals(reachedState)) {
+                gen.add(mergedState);
+                kill.add(reachedState);
+              }
+            }
+            if (!kill.isEmpty()) {
+              reachedSet.addAll(gen);
+              reachedSet.removeAll(kill);
+              waitlist.addAll(gen);
+              waitlist.removeAll(kill);
+              gen.clear();
+              kill.clear();
+              reached = reachedSet.getReached(successorState);
             }
           }
-          reachedSet.addAll(gen);
-          reachedSet.removeAll(kill);
-          waitlist.addAll(gen);
-          waitlist.removeAll(kill);
-          if (!stopOperator.stop(
-              successorState,
-              reachedSet.getReached(successorState),
-              successorState.getPrecision())) {
+          if (!stopOperator.stop(successorState, reached, successorState.getPrecision())) {
             waitlist.add(successorState);
             reachedSet.add(successorState);
           }
@@ -141,6 +147,8 @@ public class CpaAlgorithm implements Algorithm {
       } catch (Exception exception) {
         log.error("CPA run stopped for the following error: ", exception);
         waitlist.clear();
+        gen.clear();
+        kill.clear();
       }
     }
   }
@@ -0,0 +1,246 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package proguard.analysis.cpa.algorithms;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import proguard.analysis.cpa.defaults.ConcurrentProgramLocationDependentReachedSet;
+import proguard.analysis.cpa.defaults.PrecisionAdjustmentResult;
+import proguard.analysis.cpa.interfaces.AbortOperator;
+import proguard.analysis.cpa.interfaces.AbstractState;
+import proguard.analysis.cpa.interfaces.Algorithm;
+import proguard.analysis.cpa.interfaces.ConfigurableProgramAnalysis;
+import proguard.analysis.cpa.interfaces.MergeOperator;
+import proguard.analysis.cpa.interfaces.Precision;
+import proguard.analysis.cpa.interfaces.PrecisionAdjustment;
+import proguard.analysis.cpa.interfaces.ReachedSet;
+import proguard.analysis.cpa.interfaces.StopOperator;
+import proguard.analysis.cpa.interfaces.TransferRelation;
+import proguard.analysis.cpa.interfaces.Waitlist;
+
+/**
+ * This {@link Algorithm} is a parallel variant of the {@link CpaAlgorithm}. Each abstract state
+ * taken from the waitlist is processed by a task of a work-stealing {@link ForkJoinPool}, and every
+ * successor that is added to the reached set spawns a new task. The merge and stop steps for a
+ * successor are performed atomically with respect to all other states sharing its bin of the
+ * {@link ReachedSet}, so the algorithm computes the same fixpoint as the sequential one.
+ *
+ * <p>With a {@link ConcurrentProgramLocationDependentReachedSet}, states at different program
+ * locations are merged in parallel. Any other reached set is guarded by a single lock, so that only
+ * the transfer relation and the precision adjustment run in parallel. The transfer relation, the
+ * operators, and the abort operator need to be thread-safe.
+ *
+ * <p>If the abort operator stops the analysis, the unprocessed states are put back into the
+ * waitlist, so that the analysis can be resumed. The order in which states are processed, and
+ * hence the iteration order of the waitlist, is not deterministic.
+ */
+public class ParallelCpaAlgorithm implements Algorithm {
+
+  private static final Logger log = LogManager.getLogger(ParallelCpaAlgorithm.class);
+  private final TransferRelation transferRelation;
+  private final MergeOperator mergeOperator;
+  private final StopOperator stopOperator;
+  private final PrecisionAdjustment precisionAdjustment;
+  private final int parallelism;
+
+  /**
+   * Create an algorithm to run the specified CPA in parallel.
+   *
+   * @param cpa a CPA instance wrapping the transfer relation, the merge, and the stop operator, and
+   *     the precision adjustment
+   * @param parallelism the number of worker threads
+   */
+  public ParallelCpaAlgorithm(ConfigurableProgramAnalysis cpa, int parallelism) {
+    this(
+        cpa.getTransferRelation(),
+        cpa.getMergeOperator(),
+        cpa.getStopOperator(),
+        cpa.getPrecisionAdjustment(),
+        parallelism);
+  }
+
+  /**
+   * Create a parallel CPA algorithm from CPA components.
+   *
+   * @param transferRelation a transfer relation specifying how successor states are computed
+   * @param mergeOperator a merge operator defining how (and whether) the older {@link
+   *     AbstractState} should be updated with the newly discovered {@link AbstractState}
+   * @param stopOperator a stop operator deciding whether the successor state should be added to the
+   *     {@link ReachedSet} based on the content of the latter
+   * @param precisionAdjustment a precision adjustment selecting the {@link Precision} for the
+   *     currently processed {@link AbstractState} considering the {@link ReachedSet} content
+   * @param parallelism the number of worker threads
+   */
+  public ParallelCpaAlgorithm(
+      TransferRelation transferRelation,
+      MergeOperator mergeOperator,
+      StopOperator stopOperator,
+      PrecisionAdjustment precisionAdjustment,
+      int parallelism) {
+    if (parallelism <= 0) {
+      throw new IllegalArgumentException("The parallelism must be positive");
+    }
+    this.transferRelation = transferRelation;
+    this.mergeOperator = mergeOperator;
+    this.stopOperator = stopOperator;
+    this.precisionAdjustment = precisionAdjustment;
+    this.parallelism = parallelism;
+  }
+
+  /**
+   * Drains the {@code waitlist} with a fork-join pool until the fixpoint is reached, the {@code
+   * abortOperator} requests to stop, or an error occurs.
+   */
+  @Override
+  public void run(ReachedSet reachedSet, Waitlist waitlist, AbortOperator abortOperator) {
+    Run run = new Run(reachedSet, abortOperator);
+    List<AbstractState> initialStates = new ArrayList<>(waitlist.size());
+    while (!waitlist.isEmpty()) {
+      initialStates.add(waitlist.pop());
+    }
+    run.pending.addAll(initialStates);
+
+    ForkJoinPool pool = new ForkJoinPool(parallelism);
+    try {
+      for (AbstractState state : initialStates) {
+        pool.execute(run.new StateTask(state));
+      }
+      pool.awaitQuiescence(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+    } finally {
+      pool.shutdownNow();
+    }
+
+    // Return the unprocessed states to allow resuming an aborted analysis.
+    if (!run.failed) {
+      waitlist.addAll(run.pending);
+    }
+  }
+
+  /** The state shared by the tasks of a single invocation of {@link #run}. */
+  private class Run {
+
+    private final ReachedSet reachedSet;
+    private final AbortOperator abortOperator;
+    // States that are reached but not yet processed, the concurrent counterpart of the waitlist.
+    private final Set<AbstractState> pending = ConcurrentHashMap.newKeySet();
+    private volatile boolean stopped;
+    private volatile boolean failed;
+
+    private Run(ReachedSet reachedSet, AbortOperator abortOperator) {
+      this.reachedSet = reachedSet;
+      this.abortOperator = abortOperator;
+    }
+
+    /** Returns the lock guarding the reached set bin of the given state. */
+    private Object getLock(AbstractState state) {
+      return reachedSet instanceof ConcurrentProgramLocationDependentReachedSet
+          ? ((ConcurrentProgramLocationDependentReachedSet<?, ?, ?, ?>) reachedSet).getLock(state)
+          : reachedSet;
+    }
+
+    /** Processes a single state taken from the waitlist. */
+    private class StateTask extends RecursiveAction {
+
+      private static final long serialVersionUID = 1L;
+
+      private final AbstractState state;
+
+      private StateTask(AbstractState state) {
+        this.state = state;
+      }
+
+      // implementations for RecursiveAction
+
+      @Override
+      protected void compute() {
+        // Leave the state pending if the analysis has stopped
+        // and skip it if it has been merged into another state.
+        if (stopped || !pending.remove(state)) {
+          return;
+        }
+        try {
+          if (abortOperator.abort(state)) {
+            stopped = true;
+            return;
+          }
+          AbstractState currentState = state;
+          Precision currentPrecision = currentState.getPrecision();
+          PrecisionAdjustmentResult precisionAdjustmentResult;
+          synchronized (getLock(currentState)) {
+            precisionAdjustmentResult =
+                precisionAdjustment.prec(
+                    currentState, currentPrecision, reachedSet.getReached(currentState));
+          }
+          currentState = precisionAdjustmentResult.getAbstractState();
+          currentPrecision = currentState.getPrecision();
+
+          List<StateTask> successorTasks = new ArrayList<>();
+          for (AbstractState successorState :
+              transferRelation.generateAbstractSuccessors(currentState, currentPrecision)) {
+            synchronized (getLock(successorState)) {
+              Set<AbstractState> gen = new LinkedHashSet<>();
+              Set<AbstractState> kill = new LinkedHashSet<>();
+              for (AbstractState reachedState : reachedSet.getReached(successorState)) {
+                AbstractState mergedState =
+                    mergeOperator.merge(
+                        successorState, reachedState, successorState.getPrecision());
+                if (!mergedState.equals(reachedState)) {
+                  gen.add(mergedState);
+                  kill.add(reachedState);
+                }
+              }
+              reachedSet.addAll(gen);
+              reachedSet.removeAll(kill);
+              pending.removeAll(kill);
+              for (AbstractState generatedState : gen) {
+                if (pending.add(generatedState)) {
+                  successorTasks.add(new StateTask(generatedState));
+                }
+              }
+              if (!stopOperator.stop(
+                  successorState,
+                  reachedSet.getReached(successorState),
+                  successorState.getPrecision())) {
+                reachedSet.add(successorState);
+                if (pending.add(successorState)) {
+                  successorTasks.add(new StateTask(successorState));
+                }
+              }
+            }
+          }
+          if (!stopped) {
+            successorTasks.forEach(StateTask::fork);
+          }
+        } catch (Exception exception) {
+          log.error("CPA run stopped for the following error: ", exception);
+          failed = true;
+          stopped = true;
+        }
+      }
+    }
+  }
+}
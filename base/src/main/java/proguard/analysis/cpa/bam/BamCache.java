@@ -73,4 +73,20 @@ public interface BamCache<SignatureT extends Signature> {
 
   /** Returns a set of all the methods that have an entry in the cache. */
   Set<SignatureT> getAllMethods();
+
+  /**
+   * Acquires exclusive access to the block abstraction identified by the provided keys, so that it
+   * can be computed or updated without interference from other threads. The access is reentrant
+   * and needs to be released with {@link #unlock(AbstractState, Precision, Signature)}. By default,
+   * caches are not thread-safe and the access is granted immediately.
+   *
+   * @return false if the block abstraction is being computed by another thread which, directly or
+   *     indirectly, waits for the current thread; in this case the access is not granted
+   */
+  default boolean lock(AbstractState stateKey, Precision precisionKey, SignatureT blockKey) {
+    return true;
+  }
+
+  /** Releases the access acquired by {@link #lock(AbstractState, Precision, Signature)}. */
+  default void unlock(AbstractState stateKey, Precision precisionKey, SignatureT blockKey) {}
 }
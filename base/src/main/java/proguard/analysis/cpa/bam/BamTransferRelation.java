@@ -295,110 +295,131 @@ public class BamTransferRelation<
             .map(x -> x.entryState)
             .findFirst();
 
-    // check if there are calls to the same function on the stack that cover the current call
-    if (previousCall.isPresent()) {
-      // if this is not the first call, get from the cache the result of the unrolling of the
-      // recursive procedure that has been already calculated
-      BlockAbstraction cacheEntry = cache.get(previousCall.get(), precision, currentFunction);
-      if (cacheEntry != null) {
-        reached = cacheEntry.getReachedSet();
-      }
-      // if this is the first unrolling the recursive call is not analyzed
-      else {
-        stack.peek().incompleteCallStates.add(callState);
-        fixedPointReached = false;
-      }
-    } else {
-      // get previously calculated results from the cache
-      BlockAbstraction cacheEntry = cache.get(reducedEntryState, precision, currentFunction);
-
-      if (cacheEntry != null) {
-        // TODO: these might be different waitlist/reached set types if the cache is initialized
-        // externally (things that is not currently possible). Shall we add all elements from the
-        // them
-        //  instead of copying?
-        reached = cacheEntry.getReachedSet();
-        waitlist = cacheEntry.getWaitlist();
-      } else {
-        reached.add(reducedEntryState);
-        waitlist.add(reducedEntryState);
-      }
-
-      stack.push(new StackEntry(currentFunction, reducedEntryState));
-
-      // analyze the current procedure call with the CPA algorithm, this is the recursive step of
-      // the BAM CPA
-      // n.b. if the procedure has been already analyzed completely for the input the CPA algorithm
-      // will return immediately
-      new CpaAlgorithm(
-              this,
-              wrappedCpa.getMergeOperator(),
-              wrappedCpa.getStopOperator(),
-              wrappedCpa.getPrecisionAdjustment())
-          .run(reached, waitlist, abortOperator);
-
-      StackEntry stackEntry = stack.pop();
-
-      // since the fixed point has not been reached all the calls not analyzed are added to the
-      // waitlist
-      if (!stackEntry.incompleteCallStates.isEmpty()) {
-        // the call to the current method will be added to the waitlist of the caller
+    // the block abstraction is locked while it is computed and read, so that threads sharing the
+    // cache do not compute it twice
+    boolean locked = false;
+    try {
+      // check if there are calls to the same function on the stack that cover the current call
+      if (previousCall.isPresent()) {
+        // if this is not the first call, get from the cache the result of the unrolling of the
+        // recursive procedure that has been already calculated
+        BlockAbstraction cacheEntry = cache.get(previousCall.get(), precision, currentFunction);
+        if (cacheEntry != null) {
+          reached = cacheEntry.getReachedSet();
+        }
+        // if this is the first unrolling the recursive call is not analyzed
+        else {
+          stack.peek().incompleteCallStates.add(callState);
+          fixedPointReached = false;
+        }
+      } else if (!cache.lock(reducedEntryState, precision, currentFunction)) {
+        // the block abstraction is being computed by another thread which waits for the current
+        // one, thus the call is postponed in the same way as a recursive call
         if (!stack.isEmpty()) {
           stack.peek().incompleteCallStates.add(callState);
         }
+        fixedPointReached = false;
+      } else {
+        locked = true;
+        // get previously calculated results from the cache
+        BlockAbstraction cacheEntry = cache.get(reducedEntryState, precision, currentFunction);
+
+        if (cacheEntry != null) {
+          // TODO: these might be different waitlist/reached set types if the cache is initialized
+          // externally (things that is not currently possible). Shall we add all elements from the
+          // them
+          //  instead of copying?
+          reached = cacheEntry.getReachedSet();
+          waitlist = cacheEntry.getWaitlist();
+        } else {
+          reached.add(reducedEntryState);
+          waitlist.add(reducedEntryState);
+        }
+
+        stack.push(new StackEntry(currentFunction, reducedEntryState));
+
+        // analyze the current procedure call with the CPA algorithm, this is the recursive step of
+        // the BAM CPA
+        // n.b. if the procedure has been already analyzed completely for the input the CPA
+        // algorithm will return immediately
+        new CpaAlgorithm(
+                this,
+                wrappedCpa.getMergeOperator(),
+                wrappedCpa.getStopOperator(),
+                wrappedCpa.getPrecisionAdjustment())
+            .run(reached, waitlist, abortOperator);
+
+        StackEntry stackEntry = stack.pop();
+
+        // since the fixed point has not been reached all the calls not analyzed are added to the
+        // waitlist
+        if (!stackEntry.incompleteCallStates.isEmpty()) {
+          // the call to the current method will be added to the waitlist of the caller
+          if (!stack.isEmpty()) {
+            stack.peek().incompleteCallStates.add(callState);
+          }
 
-        for (AbstractState incompleteCallState : stackEntry.incompleteCallStates) {
-          waitlist.add(incompleteCallState);
+          for (AbstractState incompleteCallState : stackEntry.incompleteCallStates) {
+            waitlist.add(incompleteCallState);
+          }
         }
-      }
 
-      cacheEntry = cache.get(reducedEntryState, precision, currentFunction);
-
-      // check if the fixed point has not been reached at this iteration (i.e. some new exit state
-      // is not covered by one already calculated)
-      if (cacheEntry != null) {
-        // TODO: as above, we might want to add all instead of copying
-        ReachedSet reachedOld = cacheEntry.getReachedSet();
-
-        for (AbstractState reachedState : reached.asCollection()) {
-          CfaNodeT reachedLocation =
-              ((ProgramLocationDependent<CfaNodeT, CfaEdgeT, SignatureT>) reachedState)
-                  .getProgramLocation();
-          if (reachedLocation.getSignature().equals(currentFunction)
-              && reachedLocation.isExitNode()
-              && !(fixedPointStopOperator.stop(reachedState, reachedOld.asCollection(), null))) {
-            if (!stack.isEmpty()) {
-              stack.peek().incompleteCallStates.add(callState);
+        cacheEntry = cache.get(reducedEntryState, precision, currentFunction);
+
+        // check if the fixed point has not been reached at this iteration (i.e. some new exit state
+        // is not covered by one already calculated)
+        if (cacheEntry != null) {
+          // TODO: as above, we might want to add all instead of copying
+          ReachedSet reachedOld = cacheEntry.getReachedSet();
+
+          for (AbstractState reachedState : reached.asCollection()) {
+            CfaNodeT reachedLocation =
+                ((ProgramLocationDependent<CfaNodeT, CfaEdgeT, SignatureT>) reachedState)
+                    .getProgramLocation();
+            if (reachedLocation.getSignature().equals(currentFunction)
+                && reachedLocation.isExitNode()
+                && !(fixedPointStopOperator.stop(reachedState, reachedOld.asCollection(), null))) {
+              if (!stack.isEmpty()) {
+                stack.peek().incompleteCallStates.add(callState);
+              }
+              fixedPointReached = false;
+              break;
             }
-            fixedPointReached = false;
-            break;
           }
         }
+
+        cache.put(
+            reducedEntryState, precision, currentFunction, new BlockAbstraction(reached, waitlist));
       }
 
-      cache.put(
-          reducedEntryState, precision, currentFunction, new BlockAbstraction(reached, waitlist));
-    }
+      Collection<? extends AbstractState> exitStates = reached.asCollection();
+      // TODO: as before, maybe we can have a better way to identify that the function was called
+      // from fixedPoint
+      if (call != null) {
+        // reconstruct the next state of the caller procedure applying the expand and reduce
+        // operators.
+        exitStates =
+            exitStates.stream()
+                .filter(
+                    e ->
+                        ((ProgramLocationDependent<CfaNodeT, CfaEdgeT, SignatureT>) e)
+                            .getProgramLocation()
+                            .isExitNode())
+                .map(e -> wrappedCpa.getExpandOperator().expand(callState, e, entryNode, call))
+                .map(e -> wrappedCpa.getRebuildOperator().rebuild(callState, e))
+                .collect(Collectors.toCollection(LinkedHashSet::new));
+      } else {
+        // copy the states while the block is locked, since the reached set may be extended by
+        // other threads analyzing the same block afterwards
+        exitStates = new ArrayList<>(exitStates);
+      }
 
-    Collection<? extends AbstractState> exitStates = reached.asCollection();
-    // TODO: as before, maybe we can have a better way to identify that the function was called from
-    // fixedPoint
-    if (call != null) {
-      // reconstruct the next state of the caller procedure applying the expand and reduce
-      // operators.
-      exitStates =
-          exitStates.stream()
-              .filter(
-                  e ->
-                      ((ProgramLocationDependent<CfaNodeT, CfaEdgeT, SignatureT>) e)
-                          .getProgramLocation()
-                          .isExitNode())
-              .map(e -> wrappedCpa.getExpandOperator().expand(callState, e, entryNode, call))
-              .map(e -> wrappedCpa.getRebuildOperator().rebuild(callState, e))
-              .collect(Collectors.toCollection(LinkedHashSet::new));
+      return exitStates;
+    } finally {
+      if (locked) {
+        cache.unlock(reducedEntryState, precision, currentFunction);
+      }
     }
-
-    return exitStates;
   }
 
   private class StackEntry {
@@ -0,0 +1,105 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package proguard.analysis.cpa.bam;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectStreamClass;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+
+/**
+ * This class creates the object streams with which a {@link BlockAbstractionStore} writes and reads
+ * block abstractions. By default, plain Java serialization is used, so that only reached sets and
+ * abstract states which are entirely {@link java.io.Serializable} can be stored. Domains whose
+ * states refer to objects that cannot or should not be serialized, like the nodes of a control flow
+ * automaton, override the streams to replace them by symbolic handles, e.g., {@link
+ * proguard.analysis.cpa.jvm.util.JvmBlockAbstractionCodec}.
+ *
+ * <p>Since the stored block abstractions are read back from files, the input streams only
+ * deserialize the classes accepted by {@link #isDeserializable(String)}, i.e., the classes of
+ * ProGuardCORE and the {@code java.lang} and {@code java.util} classes the abstract states are
+ * built of. Domains with abstract states of other packages extend the accepted classes.
+ */
+public class BlockAbstractionCodec {
+
+  /** A codec using plain Java serialization. */
+  public static final BlockAbstractionCodec JAVA_SERIALIZATION = new BlockAbstractionCodec();
+
+  /** Returns a stream writing block abstractions and their keys to the given stream. */
+  public ObjectOutputStream createOutputStream(OutputStream outputStream) throws IOException {
+    return new ObjectOutputStream(outputStream);
+  }
+
+  /** Returns a stream reading block abstractions and their keys from the given stream. */
+  public ObjectInputStream createInputStream(InputStream inputStream) throws IOException {
+    return new FilteringInputStream(inputStream);
+  }
+
+  /**
+   * Returns whether the input streams may deserialize instances of the class with the given name.
+   * Array classes are accepted if their element classes are.
+   */
+  protected boolean isDeserializable(String className) {
+    return className.startsWith("proguard.")
+        || className.startsWith("java.lang.")
+        || className.startsWith("java.util.");
+  }
+
+  /**
+   * This stream rejects the classes which are not accepted by {@link #isDeserializable(String)},
+   * so that reading a tampered store can't instantiate arbitrary classes.
+   */
+  protected class FilteringInputStream extends ObjectInputStream {
+
+    protected FilteringInputStream(InputStream inputStream) throws IOException {
+      super(inputStream);
+    }
+
+    @Override
+    protected Class<?> resolveClass(ObjectStreamClass objectStreamClass)
+        throws IOException, ClassNotFoundException {
+      String className = objectStreamClass.getName();
+      String elementClassName = className.substring(className.lastIndexOf('[') + 1);
+      // Primitive array classes are always accepted.
+      boolean isPrimitiveArray = className.startsWith("[") && elementClassName.length() == 1;
+      if (elementClassName.startsWith("L") && elementClassName.endsWith(";")) {
+        elementClassName = elementClassName.substring(1, elementClassName.length() - 1);
+      }
+      if (!isPrimitiveArray && !isDeserializable(elementClassName)) {
+        throw new InvalidClassException(className, "Class is not accepted for deserialization");
+      }
+      return super.resolveClass(objectStreamClass);
+    }
+
+    @Override
+    protected Class<?> resolveProxyClass(String[] interfaceNames)
+        throws IOException, ClassNotFoundException {
+      for (String interfaceName : interfaceNames) {
+        if (!isDeserializable(interfaceName)) {
+          throw new InvalidClassException(
+              interfaceName, "Proxy interface is not accepted for deserialization");
+        }
+      }
+      return super.resolveProxyClass(interfaceNames);
+    }
+  }
+}
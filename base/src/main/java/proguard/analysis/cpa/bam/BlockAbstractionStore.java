@@ -0,0 +1,60 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package proguard.analysis.cpa.bam;
+
+import java.io.IOException;
+import java.util.Collection;
+import proguard.analysis.cpa.interfaces.AbstractState;
+import proguard.analysis.cpa.interfaces.Precision;
+import proguard.classfile.Signature;
+
+/**
+ * A secondary storage for {@link BlockAbstraction}s, e.g., for the ones evicted from a {@link
+ * BoundedBamCache} or persisted by a {@link PersistentBamCache}. Block abstractions are identified
+ * by the same triple as in the {@link BamCache}.
+ */
+public interface BlockAbstractionStore<SignatureT extends Signature> {
+
+  /**
+   * Stores the block abstraction identified by the provided keys.
+   *
+   * @return false if the block abstraction cannot be stored, in which case it needs to be
+   *     recomputed when it is requested again
+   */
+  boolean store(
+      AbstractState stateKey,
+      Precision precisionKey,
+      SignatureT blockKey,
+      BlockAbstraction blockAbstraction);
+
+  /**
+   * Loads the block abstraction identified by the provided keys. Transient stores may remove it.
+   *
+   * @return the block abstraction, null if it has not been stored or cannot be loaded
+   */
+  BlockAbstraction load(AbstractState stateKey, Precision precisionKey, SignatureT blockKey);
+
+  /**
+   * Removes the stored block abstractions of all blocks except the given ones, e.g., of methods
+   * which changed or were removed since they were stored. By default, nothing is removed.
+   *
+   * @param blockKeys the blocks whose block abstractions should be retained
+   */
+  default void retainAll(Collection<SignatureT> blockKeys) throws IOException {}
+}
@@ -0,0 +1,86 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package proguard.analysis.cpa.bam;
+
+import java.util.Objects;
+import proguard.analysis.cpa.bam.BamCacheImpl.HashKey;
+import proguard.analysis.cpa.interfaces.AbstractState;
+import proguard.analysis.cpa.interfaces.Precision;
+import proguard.classfile.Signature;
+
+/**
+ * The full identifier of a block abstraction in a {@link BamCache}, i.e., the signature of the
+ * block together with the entry state and precision.
+ */
+class BlockKey {
+
+  private final Signature blockKey;
+  private final HashKey hashKey;
+
+  /**
+   * Create a block key from its components.
+   *
+   * @param blockKey the signature of the block
+   * @param hashKey the entry state and precision of the block
+   */
+  BlockKey(Signature blockKey, HashKey hashKey) {
+    this.blockKey = blockKey;
+    this.hashKey = hashKey;
+  }
+
+  /**
+   * Create a block key from its components.
+   *
+   * @param stateKey the entry abstract state of a method
+   * @param precisionKey a precision
+   * @param blockKey the signature of the block
+   */
+  BlockKey(AbstractState stateKey, Precision precisionKey, Signature blockKey) {
+    this(blockKey, new HashKey(stateKey, precisionKey));
+  }
+
+  /** Returns the signature of the block. */
+  Signature getBlockKey() {
+    return blockKey;
+  }
+
+  /** Returns the entry state and precision of the block. */
+  HashKey getHashKey() {
+    return hashKey;
+  }
+
+  // Implementations for Object
+
+  @Override
+  public boolean equals(Object o) {
+    if (o == this) {
+      return true;
+    }
+    if (!(o instanceof BlockKey)) {
+      return false;
+    }
+    BlockKey other = (BlockKey) o;
+    return Objects.equals(blockKey, other.blockKey) && Objects.equals(hashKey, other.hashKey);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(blockKey, hashKey);
+  }
+}
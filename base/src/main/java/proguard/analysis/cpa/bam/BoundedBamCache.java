@@ -0,0 +1,245 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package proguard.analysis.cpa.bam;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.ToLongFunction;
+import java.util.stream.Collectors;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import proguard.analysis.cpa.interfaces.AbstractState;
+import proguard.analysis.cpa.interfaces.Precision;
+import proguard.classfile.Signature;
+
+/**
+ * A {@link BamCache} with a bounded total weight. By default, the weight of a block abstraction is
+ * the number of states in its reached set. When the budget is exceeded, the least recently used
+ * block abstractions are evicted. Block abstractions locked by the {@link BamTransferRelation},
+ * i.e., the ones being computed, are never evicted.
+ *
+ * <p>Evicted block abstractions are either dropped, so that they are recomputed when requested
+ * again, or spilled to a {@link BlockAbstractionStore}, from which they are reloaded on demand.
+ * Block abstractions the store cannot write are dropped. The states of the JVM domains are spilled
+ * with a {@link FileBlockAbstractionStore} using the codec of the analysis, e.g., {@link
+ * proguard.analysis.cpa.jvm.domain.taint.JvmTaintBamCpaRun#createBlockAbstractionCodec()}.
+ * Note that analyses reading the cache after the BAM CPA run, like the trace reconstruction of
+ * {@link proguard.analysis.cpa.jvm.domain.memory.JvmMemoryLocationBamCpaRun}, only see the block
+ * abstractions which have not been dropped.
+ *
+ * <p>The cache records hit, miss, and eviction counts. It is not thread-safe.
+ */
+public class BoundedBamCache<SignatureT extends Signature> implements BamCache<SignatureT> {
+
+  private static final Logger log = LogManager.getLogger(BoundedBamCache.class);
+
+  private final long maxWeight;
+  private final ToLongFunction<BlockAbstraction> weigher;
+  private final BlockAbstractionStore<SignatureT> store;
+
+  // The resident block abstractions in access order.
+  private final LinkedHashMap<BlockKey, WeightedBlockAbstraction> cache =
+      new LinkedHashMap<>(16, 0.75f, true);
+  private final Set<BlockKey> spilledKeys = new HashSet<>();
+  private final Map<BlockKey, Integer> lockCounts = new HashMap<>();
+  private final Set<SignatureT> methods = new LinkedHashSet<>();
+  private long weight;
+
+  private long hitCount;
+  private long missCount;
+  private long evictionCount;
+
+  /**
+   * Create a cache dropping evicted block abstractions.
+   *
+   * @param maxWeight the maximum total number of reached states of the resident block abstractions
+   */
+  public BoundedBamCache(long maxWeight) {
+    this(maxWeight, b -> b.getReachedSet().asCollection().size(), null);
+  }
+
+  /**
+   * Create a cache.
+   *
+   * @param maxWeight the maximum total weight of the resident block abstractions
+   * @param weigher a function computing the weight of a block abstraction
+   * @param store a store for evicted block abstractions, or null to drop them
+   */
+  public BoundedBamCache(
+      long maxWeight,
+      ToLongFunction<BlockAbstraction> weigher,
+      BlockAbstractionStore<SignatureT> store) {
+    this.maxWeight = maxWeight;
+    this.weigher = weigher;
+    this.store = store;
+  }
+
+  // Implementations for BamCache
+
+  @Override
+  public void put(
+      AbstractState stateKey,
+      Precision precisionKey,
+      SignatureT blockKey,
+      BlockAbstraction blockAbstraction) {
+    BlockKey key = new BlockKey(stateKey, precisionKey, blockKey);
+    long blockWeight = weigher.applyAsLong(blockAbstraction);
+    WeightedBlockAbstraction previous =
+        cache.put(key, new WeightedBlockAbstraction(blockAbstraction, blockWeight));
+    weight += blockWeight - (previous == null ? 0 : previous.weight);
+    methods.add(blockKey);
+    evict();
+  }
+
+  @Override
+  public BlockAbstraction get(AbstractState stateKey, Precision precisionKey, SignatureT blockKey) {
+    BlockKey key = new BlockKey(stateKey, precisionKey, blockKey);
+    WeightedBlockAbstraction entry = cache.get(key);
+    if (entry != null) {
+      hitCount++;
+      return entry.blockAbstraction;
+    }
+
+    BlockAbstraction blockAbstraction =
+        spilledKeys.remove(key) ? store.load(stateKey, precisionKey, blockKey) : null;
+    if (blockAbstraction == null) {
+      missCount++;
+      return null;
+    }
+
+    hitCount++;
+    put(stateKey, precisionKey, blockKey, blockAbstraction);
+    return blockAbstraction;
+  }
+
+  @Override
+  public Collection<BlockAbstraction> get(SignatureT blockKey) {
+    return cache.entrySet().stream()
+        .filter(e -> e.getKey().getBlockKey().equals(blockKey))
+        .map(e -> e.getValue().blockAbstraction)
+        .collect(Collectors.toList());
+  }
+
+  @Override
+  public Collection<BlockAbstraction> get(Precision precision, SignatureT blockKey) {
+    return cache.entrySet().stream()
+        .filter(
+            e ->
+                e.getKey().getBlockKey().equals(blockKey)
+                    && e.getKey().getHashKey().getPrecisionKey().equals(precision))
+        .map(e -> e.getValue().blockAbstraction)
+        .collect(Collectors.toSet());
+  }
+
+  @Override
+  public Collection<BlockAbstraction> values() {
+    return cache.values().stream().map(e -> e.blockAbstraction).collect(Collectors.toSet());
+  }
+
+  @Override
+  public int size() {
+    return cache.size();
+  }
+
+  @Override
+  public Set<SignatureT> getAllMethods() {
+    return Collections.unmodifiableSet(methods);
+  }
+
+  @Override
+  public boolean lock(AbstractState stateKey, Precision precisionKey, SignatureT blockKey) {
+    lockCounts.merge(new BlockKey(stateKey, precisionKey, blockKey), 1, Integer::sum);
+    return true;
+  }
+
+  @Override
+  public void unlock(AbstractState stateKey, Precision precisionKey, SignatureT blockKey) {
+    lockCounts.computeIfPresent(
+        new BlockKey(stateKey, precisionKey, blockKey), (k, count) -> count > 1 ? count - 1 : null);
+    evict();
+  }
+
+  /** Returns the number of requests for which a block abstraction was found or reloaded. */
+  public long getHitCount() {
+    return hitCount;
+  }
+
+  /** Returns the number of requests for which no block abstraction was available. */
+  public long getMissCount() {
+    return missCount;
+  }
+
+  /** Returns the number of evicted block abstractions, whether dropped or spilled. */
+  public long getEvictionCount() {
+    return evictionCount;
+  }
+
+  /** Returns the total weight of the resident block abstractions. */
+  public long getWeight() {
+    return weight;
+  }
+
+  /** Evicts least recently used, unlocked block abstractions until the budget is respected. */
+  private void evict() {
+    Iterator<Map.Entry<BlockKey, WeightedBlockAbstraction>> iterator =
+        cache.entrySet().iterator();
+    while (weight > maxWeight && iterator.hasNext()) {
+      Map.Entry<BlockKey, WeightedBlockAbstraction> entry = iterator.next();
+      BlockKey key = entry.getKey();
+      if (lockCounts.containsKey(key)) {
+        continue;
+      }
+      iterator.remove();
+      weight -= entry.getValue().weight;
+      evictionCount++;
+
+      // The keys of this cache are only created from block keys of type SignatureT.
+      @SuppressWarnings("unchecked")
+      SignatureT blockKey = (SignatureT) key.getBlockKey();
+      if (store != null
+          && store.store(
+              key.getHashKey().getStateKey(),
+              key.getHashKey().getPrecisionKey(),
+              blockKey,
+              entry.getValue().blockAbstraction)) {
+        spilledKeys.add(key);
+      }
+      log.trace("Evicted the block abstraction of {}", blockKey);
+    }
+  }
+
+  /** A block abstraction with its weight at the time it was put into the cache. */
+  private static class WeightedBlockAbstraction {
+
+    private final BlockAbstraction blockAbstraction;
+    private final long weight;
+
+    private WeightedBlockAbstraction(BlockAbstraction blockAbstraction, long weight) {
+      this.blockAbstraction = blockAbstraction;
+      this.weight = weight;
+    }
+  }
+}
@@ -0,0 +1,195 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package proguard.analysis.cpa.bam;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import proguard.analysis.cpa.bam.BamCacheImpl.HashKey;
+import proguard.analysis.cpa.interfaces.AbstractState;
+import proguard.analysis.cpa.interfaces.Precision;
+import proguard.classfile.Signature;
+
+/**
+ * A thread-safe {@link BamCache} which can be shared by BAM CPA runs executed in parallel, e.g.,
+ * for independent entry points.
+ *
+ * <p>Besides storing block abstractions in concurrent maps, the cache grants exclusive access to
+ * each block abstraction while it is being computed. A thread requesting a block abstraction
+ * computed by another thread waits until the computation is finished and then reuses its result,
+ * so that no block abstraction is computed twice. If waiting would result in a deadlock, i.e., if
+ * the owning thread waits for the requesting one (e.g., because of mutually recursive calls
+ * analyzed from different entry points), the access is refused and the {@link BamTransferRelation}
+ * postpones the call in the same way it postpones recursive calls.
+ */
+public class ConcurrentBamCache<SignatureT extends Signature> implements BamCache<SignatureT> {
+
+  private static final Logger log = LogManager.getLogger(ConcurrentBamCache.class);
+
+  private final Map<SignatureT, Map<HashKey, BlockAbstraction>> cache = new ConcurrentHashMap<>();
+  private final AtomicInteger size = new AtomicInteger();
+
+  // The lock table is guarded by its own monitor.
+  private final Map<BlockKey, BlockLock> locks = new HashMap<>();
+  private final Map<Thread, BlockKey> waitingThreads = new HashMap<>();
+
+  // Implementations for BamCache
+
+  @Override
+  public void put(
+      AbstractState stateKey,
+      Precision precisionKey,
+      SignatureT blockKey,
+      BlockAbstraction blockAbstraction) {
+    if (cache
+            .computeIfAbsent(blockKey, k -> new ConcurrentHashMap<>())
+            .put(new HashKey(stateKey, precisionKey), blockAbstraction)
+        == null) {
+      log.trace("BamCacheSize: {}", size.incrementAndGet());
+    }
+  }
+
+  @Override
+  public BlockAbstraction get(AbstractState stateKey, Precision precisionKey, SignatureT blockKey) {
+    return cache
+        .getOrDefault(blockKey, Collections.emptyMap())
+        .get(new HashKey(stateKey, precisionKey));
+  }
+
+  @Override
+  public Collection<BlockAbstraction> get(SignatureT blockKey) {
+    return cache.getOrDefault(blockKey, Collections.emptyMap()).values();
+  }
+
+  @Override
+  public Collection<BlockAbstraction> get(Precision precision, SignatureT blockKey) {
+    return cache.getOrDefault(blockKey, Collections.emptyMap()).entrySet().stream()
+        .filter(e -> e.getKey().getPrecisionKey().equals(precision))
+        .map(Entry::getValue)
+        .collect(Collectors.toSet());
+  }
+
+  @Override
+  public Collection<BlockAbstraction> values() {
+    return cache.values().stream()
+        .map(Map::values)
+        .flatMap(Collection::stream)
+        .collect(Collectors.toSet());
+  }
+
+  @Override
+  public int size() {
+    return size.get();
+  }
+
+  @Override
+  public Set<SignatureT> getAllMethods() {
+    return Collections.unmodifiableSet(cache.keySet());
+  }
+
+  @Override
+  public boolean lock(AbstractState stateKey, Precision precisionKey, SignatureT blockKey) {
+    BlockKey key = new BlockKey(stateKey, precisionKey, blockKey);
+    Thread currentThread = Thread.currentThread();
+    synchronized (locks) {
+      BlockLock lock = locks.computeIfAbsent(key, k -> new BlockLock());
+      lock.waiters.add(currentThread);
+      try {
+        while (lock.owner != null && lock.owner != currentThread
+            || lock.owner == null && lock.waiters.peek() != currentThread) {
+          if (waitsFor(lock.owner, currentThread)) {
+            log.debug("Postponing the analysis of {} to avoid a deadlock", blockKey);
+            return false;
+          }
+          waitingThreads.put(currentThread, key);
+          try {
+            locks.wait();
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for a block abstraction", e);
+          } finally {
+            waitingThreads.remove(currentThread);
+          }
+        }
+        lock.owner = currentThread;
+        lock.holdCount++;
+        return true;
+      } finally {
+        lock.waiters.remove(currentThread);
+        if (lock.owner == null && lock.waiters.isEmpty()) {
+          locks.remove(key);
+        }
+        // A refused or granted request may unblock the next waiter.
+        locks.notifyAll();
+      }
+    }
+  }
+
+  @Override
+  public void unlock(AbstractState stateKey, Precision precisionKey, SignatureT blockKey) {
+    BlockKey key = new BlockKey(stateKey, precisionKey, blockKey);
+    synchronized (locks) {
+      BlockLock lock = locks.get(key);
+      if (lock == null || lock.owner != Thread.currentThread()) {
+        throw new IllegalStateException(
+            "The block abstraction is not locked by the current thread");
+      }
+      if (--lock.holdCount == 0) {
+        lock.owner = null;
+        if (lock.waiters.isEmpty()) {
+          locks.remove(key);
+        }
+        locks.notifyAll();
+      }
+    }
+  }
+
+  /**
+   * Returns whether the given thread, following the chain of block abstractions threads are waiting
+   * for, waits for the target thread.
+   */
+  private boolean waitsFor(Thread thread, Thread target) {
+    for (int steps = 0; thread != null && steps <= waitingThreads.size(); steps++) {
+      if (thread == target) {
+        return true;
+      }
+      BlockKey key = waitingThreads.get(thread);
+      BlockLock lock = key == null ? null : locks.get(key);
+      thread = lock == null ? null : lock.owner;
+    }
+    return false;
+  }
+
+  /** The exclusive access to a block abstraction, with its owner and queued threads. */
+  private static class BlockLock {
+
+    private final ArrayDeque<Thread> waiters = new ArrayDeque<>();
+    private Thread owner;
+    private int holdCount;
+  }
+}
@@ -0,0 +1,255 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package proguard.analysis.cpa.bam;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import proguard.analysis.cpa.defaults.BreadthFirstWaitlist;
+import proguard.analysis.cpa.interfaces.AbstractState;
+import proguard.analysis.cpa.interfaces.Precision;
+import proguard.analysis.cpa.interfaces.ReachedSet;
+import proguard.analysis.cpa.interfaces.Waitlist;
+import proguard.classfile.Signature;
+
+/**
+ * This {@link BlockAbstractionStore} persists block abstractions in a directory, so that they can
+ * be reused across analysis runs. Block abstractions are addressed by a content hash of their
+ * block, e.g., a hash of the bytecode of a method and of all the methods it transitively calls, as
+ * computed by {@link proguard.analysis.cpa.jvm.util.JvmMethodContentHasher}. A block abstraction
+ * is thus only found again if neither its method nor any of its callees changed.
+ *
+ * <p>Block abstractions also depend on the configuration of the analysis, e.g., on its taint
+ * sources or heap model. The store therefore keeps one subdirectory per hash of a textual
+ * description of the configuration, so that runs with different configurations can share the root
+ * directory without seeing each other's block abstractions.
+ *
+ * <p>Each block abstraction is written by a {@link BlockAbstractionCodec} to its own file in the
+ * subdirectory of its content hash, together with its entry state and precision. Block
+ * abstractions which the codec cannot write are not stored. Waitlists are restored as {@link
+ * BreadthFirstWaitlist}s, the default of the {@link BamTransferRelation}.
+ */
+public class ContentAddressedBlockAbstractionStore<SignatureT extends Signature>
+    implements BlockAbstractionStore<SignatureT> {
+
+  private static final Logger log =
+      LogManager.getLogger(ContentAddressedBlockAbstractionStore.class);
+
+  private static final String EXTENSION = ".bin";
+
+  private final Path directory;
+  private final Function<SignatureT, String> contentHasher;
+  private final BlockAbstractionCodec codec;
+
+  /**
+   * Create a store in the given directory, which is created if needed, using Java serialization.
+   *
+   * @param directory the root directory of the store
+   * @param configuration a description of the analysis configuration the block abstractions
+   *     depend on
+   * @param contentHasher a function computing the content hash of a block, to be used as a file
+   *     name
+   */
+  public ContentAddressedBlockAbstractionStore(
+      Path directory, String configuration, Function<SignatureT, String> contentHasher)
+      throws IOException {
+    this(directory, configuration, contentHasher, BlockAbstractionCodec.JAVA_SERIALIZATION);
+  }
+
+  /**
+   * Create a store in the given directory, which is created if needed.
+   *
+   * @param directory the root directory of the store
+   * @param configuration a description of the analysis configuration the block abstractions
+   *     depend on
+   * @param contentHasher a function computing the content hash of a block, to be used as a file
+   *     name
+   * @param codec the codec writing and reading the block abstractions
+   */
+  public ContentAddressedBlockAbstractionStore(
+      Path directory,
+      String configuration,
+      Function<SignatureT, String> contentHasher,
+      BlockAbstractionCodec codec)
+      throws IOException {
+    this.directory = Files.createDirectories(directory.resolve(hash(configuration)));
+    this.contentHasher = contentHasher;
+    this.codec = codec;
+  }
+
+  // Implementations for BlockAbstractionStore
+
+  @Override
+  public boolean store(
+      AbstractState stateKey,
+      Precision precisionKey,
+      SignatureT blockKey,
+      BlockAbstraction blockAbstraction) {
+    try {
+      Path blockDirectory =
+          Files.createDirectories(directory.resolve(contentHasher.apply(blockKey)));
+      if (find(blockDirectory, stateKey, precisionKey) != null) {
+        return true;
+      }
+      Path path = createFile(blockDirectory);
+      try (ObjectOutputStream output =
+          codec.createOutputStream(Files.newOutputStream(path, StandardOpenOption.WRITE))) {
+        output.writeObject(stateKey);
+        output.writeObject(precisionKey);
+        output.writeObject(blockAbstraction.getReachedSet());
+        ArrayList<AbstractState> waitlist = new ArrayList<>(blockAbstraction.getWaitlist().size());
+        blockAbstraction.getWaitlist().forEach(waitlist::add);
+        output.writeObject(waitlist);
+      } catch (IOException e) {
+        Files.deleteIfExists(path);
+        throw e;
+      }
+      return true;
+    } catch (IOException e) {
+      log.debug("Cannot persist the block abstraction of {}: {}", blockKey, e.getMessage());
+      return false;
+    }
+  }
+
+  @Override
+  public BlockAbstraction load(
+      AbstractState stateKey, Precision precisionKey, SignatureT blockKey) {
+    Path blockDirectory = directory.resolve(contentHasher.apply(blockKey));
+    if (!Files.isDirectory(blockDirectory)) {
+      return null;
+    }
+    try {
+      return find(blockDirectory, stateKey, precisionKey);
+    } catch (IOException e) {
+      log.debug("Cannot load the block abstraction of {}: {}", blockKey, e.getMessage());
+      return null;
+    }
+  }
+
+  /**
+   * Deletes the block abstractions of the configuration of this store for all blocks except the
+   * given ones, e.g., of methods which changed or were removed since they were stored.
+   *
+   * @param blockKeys the blocks whose block abstractions should be retained
+   */
+  @Override
+  public void retainAll(Collection<SignatureT> blockKeys) throws IOException {
+    Set<String> contentHashes = blockKeys.stream().map(contentHasher).collect(Collectors.toSet());
+    try (DirectoryStream<Path> blockDirectories = Files.newDirectoryStream(directory)) {
+      for (Path blockDirectory : blockDirectories) {
+        if (!contentHashes.contains(blockDirectory.getFileName().toString())) {
+          delete(blockDirectory);
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns the block abstraction stored in the given directory for the given entry state and
+   * precision, or null.
+   */
+  private BlockAbstraction find(Path blockDirectory, AbstractState stateKey, Precision precisionKey)
+      throws IOException {
+    try (DirectoryStream<Path> paths = Files.newDirectoryStream(blockDirectory, "*" + EXTENSION)) {
+      for (Path path : paths) {
+        try (InputStream bytes = Files.newInputStream(path);
+            ObjectInputStream input = codec.createInputStream(bytes)) {
+          if (!stateKey.equals(input.readObject())
+              || !Objects.equals(precisionKey, input.readObject())) {
+            continue;
+          }
+          ReachedSet reachedSet = (ReachedSet) input.readObject();
+          Waitlist waitlist = new BreadthFirstWaitlist();
+          for (Object state : (List<?>) input.readObject()) {
+            waitlist.add((AbstractState) state);
+          }
+          return new BlockAbstraction(reachedSet, waitlist);
+        } catch (IOException | ClassNotFoundException | ClassCastException e) {
+          log.debug("Skipping the unreadable block abstraction {}: {}", path, e.getMessage());
+        }
+      }
+    }
+    return null;
+  }
+
+  /** Creates a fresh file in the given directory. */
+  private static Path createFile(Path blockDirectory) throws IOException {
+    Set<String> names = new HashSet<>();
+    try (Stream<Path> paths = Files.list(blockDirectory)) {
+      paths.forEach(path -> names.add(path.getFileName().toString()));
+    }
+    for (int index = names.size(); ; index++) {
+      String name = index + EXTENSION;
+      if (!names.contains(name)) {
+        try {
+          return Files.createFile(blockDirectory.resolve(name));
+        } catch (FileAlreadyExistsException e) {
+          // Another store in the same directory was faster, try the next index.
+        }
+      }
+    }
+  }
+
+  /** Returns the hexadecimal SHA-256 hash of the given configuration. */
+  private static String hash(String configuration) {
+    try {
+      byte[] bytes =
+          MessageDigest.getInstance("SHA-256")
+              .digest(configuration.getBytes(StandardCharsets.UTF_8));
+      StringBuilder builder = new StringBuilder(bytes.length * 2);
+      for (byte b : bytes) {
+        builder.append(Character.forDigit((b >> 4) & 0xf, 16));
+        builder.append(Character.forDigit(b & 0xf, 16));
+      }
+      return builder.toString();
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 is not supported", e);
+    }
+  }
+
+  /** Deletes the given directory with its files. */
+  private static void delete(Path blockDirectory) throws IOException {
+    try (DirectoryStream<Path> paths = Files.newDirectoryStream(blockDirectory)) {
+      for (Path path : paths) {
+        Files.delete(path);
+      }
+    }
+    Files.delete(blockDirectory);
+  }
+}
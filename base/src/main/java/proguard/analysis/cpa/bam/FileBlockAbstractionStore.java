@@ -0,0 +1,170 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package proguard.analysis.cpa.bam;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import proguard.analysis.cpa.defaults.BreadthFirstWaitlist;
+import proguard.analysis.cpa.interfaces.AbstractState;
+import proguard.analysis.cpa.interfaces.Precision;
+import proguard.analysis.cpa.interfaces.ReachedSet;
+import proguard.analysis.cpa.interfaces.Waitlist;
+import proguard.classfile.Signature;
+
+/**
+ * This {@link BlockAbstractionStore} spills block abstractions to a local file with Java
+ * serialization. Only the reached set and the content of the waitlist are written to the file, the
+ * keys stay in memory. Waitlists are restored as {@link BreadthFirstWaitlist}s, the default of the
+ * {@link BamTransferRelation}. The streams are created by a {@link BlockAbstractionCodec}, e.g., a
+ * {@link proguard.analysis.cpa.jvm.util.JvmBlockAbstractionCodec} for the states of the JVM
+ * domains. Block abstractions which the codec cannot serialize are not stored, with a warning, so
+ * that they are recomputed when needed.
+ *
+ * <p>The space of loaded block abstractions is not reclaimed until the store is closed, which
+ * deletes the file.
+ */
+public class FileBlockAbstractionStore<SignatureT extends Signature>
+    implements BlockAbstractionStore<SignatureT>, Closeable {
+
+  private static final Logger log = LogManager.getLogger(FileBlockAbstractionStore.class);
+
+  private final Path path;
+  private final RandomAccessFile file;
+  private final BlockAbstractionCodec codec;
+  private final Map<BlockKey, long[]> offsetsAndLengths = new HashMap<>();
+
+  /** Create a store in a fresh temporary file, using plain Java serialization. */
+  public FileBlockAbstractionStore() throws IOException {
+    this(BlockAbstractionCodec.JAVA_SERIALIZATION);
+  }
+
+  /**
+   * Create a store in a fresh temporary file.
+   *
+   * @param codec the codec serializing the block abstractions
+   */
+  public FileBlockAbstractionStore(BlockAbstractionCodec codec) throws IOException {
+    this(Files.createTempFile("bam-cache", ".bin"), codec);
+  }
+
+  /**
+   * Create a store in the given file, using plain Java serialization. Existing content is
+   * discarded.
+   *
+   * @param path the path of the file
+   */
+  public FileBlockAbstractionStore(Path path) throws IOException {
+    this(path, BlockAbstractionCodec.JAVA_SERIALIZATION);
+  }
+
+  /**
+   * Create a store in the given file. Existing content is discarded.
+   *
+   * @param path the path of the file
+   * @param codec the codec serializing the block abstractions
+   */
+  public FileBlockAbstractionStore(Path path, BlockAbstractionCodec codec) throws IOException {
+    this.path = path;
+    this.file = new RandomAccessFile(path.toFile(), "rw");
+    this.codec = codec;
+    file.setLength(0);
+  }
+
+  // Implementations for BlockAbstractionStore
+
+  @Override
+  public boolean store(
+      AbstractState stateKey,
+      Precision precisionKey,
+      SignatureT blockKey,
+      BlockAbstraction blockAbstraction) {
+    try {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      try (ObjectOutputStream output = codec.createOutputStream(bytes)) {
+        output.writeObject(blockAbstraction.getReachedSet());
+        ArrayList<AbstractState> waitlist = new ArrayList<>(blockAbstraction.getWaitlist().size());
+        blockAbstraction.getWaitlist().forEach(waitlist::add);
+        output.writeObject(waitlist);
+      }
+      long offset = file.length();
+      file.seek(offset);
+      file.write(bytes.toByteArray());
+      offsetsAndLengths.put(
+          new BlockKey(stateKey, precisionKey, blockKey), new long[] {offset, bytes.size()});
+      return true;
+    } catch (IOException e) {
+      log.warn(
+          "Cannot spill the block abstraction of {}, it will be recomputed when requested: {}",
+          blockKey,
+          e.toString());
+      return false;
+    }
+  }
+
+  @Override
+  public BlockAbstraction load(
+      AbstractState stateKey, Precision precisionKey, SignatureT blockKey) {
+    long[] offsetAndLength =
+        offsetsAndLengths.remove(new BlockKey(stateKey, precisionKey, blockKey));
+    if (offsetAndLength == null) {
+      return null;
+    }
+    try {
+      byte[] bytes = new byte[(int) offsetAndLength[1]];
+      file.seek(offsetAndLength[0]);
+      file.readFully(bytes);
+      try (ObjectInputStream input = codec.createInputStream(new ByteArrayInputStream(bytes))) {
+        ReachedSet reachedSet = (ReachedSet) input.readObject();
+        Waitlist waitlist = new BreadthFirstWaitlist();
+        for (Object state : (List<?>) input.readObject()) {
+          waitlist.add((AbstractState) state);
+        }
+        return new BlockAbstraction(reachedSet, waitlist);
+      }
+    } catch (IOException | ClassNotFoundException | ClassCastException e) {
+      log.warn(
+          "Cannot reload the block abstraction of {}, it will be recomputed: {}",
+          blockKey,
+          e.toString());
+      return null;
+    }
+  }
+
+  // Implementations for Closeable
+
+  @Override
+  public void close() throws IOException {
+    offsetsAndLengths.clear();
+    file.close();
+    Files.deleteIfExists(path);
+  }
+}
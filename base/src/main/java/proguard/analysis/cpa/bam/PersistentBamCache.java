@@ -0,0 +1,191 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package proguard.analysis.cpa.bam;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import proguard.analysis.cpa.interfaces.AbstractState;
+import proguard.analysis.cpa.interfaces.Precision;
+import proguard.classfile.Signature;
+
+/**
+ * A {@link BamCache} reusing block abstractions of previous analysis runs. Block abstractions
+ * missing from the delegate cache are looked up in a persistent {@link BlockAbstractionStore},
+ * typically a {@link ContentAddressedBlockAbstractionStore}, so that only the blocks that changed
+ * since the previous run, and the ones depending on them, are analyzed again.
+ *
+ * <p>Since the {@link BamTransferRelation} updates block abstractions until their fixed point is
+ * reached, newly computed block abstractions are only written to the store by {@link #persist()},
+ * which should be called after the analysis terminated successfully. {@link
+ * #persist(Collection)} additionally removes the outdated block abstractions from the store. {@link
+ * proguard.analysis.cpa.jvm.domain.taint.JvmTaintBamCpaRun} does so after its execution.
+ */
+public class PersistentBamCache<SignatureT extends Signature> implements BamCache<SignatureT> {
+
+  private static final Logger log = LogManager.getLogger(PersistentBamCache.class);
+
+  private final BamCache<SignatureT> delegate;
+  private final BlockAbstractionStore<SignatureT> store;
+
+  private final Set<BlockKey> computedKeys = new LinkedHashSet<>();
+  private final Set<BlockKey> missingKeys = new HashSet<>();
+  private long loadCount;
+
+  /**
+   * Create a persistent cache.
+   *
+   * @param delegate the cache holding the block abstractions of the current run
+   * @param store the store holding the block abstractions of previous runs
+   */
+  public PersistentBamCache(
+      BamCache<SignatureT> delegate, BlockAbstractionStore<SignatureT> store) {
+    this.delegate = delegate;
+    this.store = store;
+  }
+
+  // Implementations for BamCache
+
+  @Override
+  public void put(
+      AbstractState stateKey,
+      Precision precisionKey,
+      SignatureT blockKey,
+      BlockAbstraction blockAbstraction) {
+    delegate.put(stateKey, precisionKey, blockKey, blockAbstraction);
+    computedKeys.add(new BlockKey(stateKey, precisionKey, blockKey));
+  }
+
+  @Override
+  public BlockAbstraction get(AbstractState stateKey, Precision precisionKey, SignatureT blockKey) {
+    BlockAbstraction blockAbstraction = delegate.get(stateKey, precisionKey, blockKey);
+    if (blockAbstraction != null) {
+      return blockAbstraction;
+    }
+
+    BlockKey key = new BlockKey(stateKey, precisionKey, blockKey);
+    if (missingKeys.contains(key)) {
+      return null;
+    }
+    blockAbstraction = store.load(stateKey, precisionKey, blockKey);
+    if (blockAbstraction == null) {
+      missingKeys.add(key);
+      return null;
+    }
+
+    log.trace("Reusing the persisted block abstraction of {}", blockKey);
+    loadCount++;
+    delegate.put(stateKey, precisionKey, blockKey, blockAbstraction);
+    return blockAbstraction;
+  }
+
+  @Override
+  public Collection<BlockAbstraction> get(SignatureT blockKey) {
+    return delegate.get(blockKey);
+  }
+
+  @Override
+  public Collection<BlockAbstraction> get(Precision precision, SignatureT blockKey) {
+    return delegate.get(precision, blockKey);
+  }
+
+  @Override
+  public Collection<BlockAbstraction> values() {
+    return delegate.values();
+  }
+
+  @Override
+  public int size() {
+    return delegate.size();
+  }
+
+  @Override
+  public Set<SignatureT> getAllMethods() {
+    return delegate.getAllMethods();
+  }
+
+  @Override
+  public boolean lock(AbstractState stateKey, Precision precisionKey, SignatureT blockKey) {
+    return delegate.lock(stateKey, precisionKey, blockKey);
+  }
+
+  @Override
+  public void unlock(AbstractState stateKey, Precision precisionKey, SignatureT blockKey) {
+    delegate.unlock(stateKey, precisionKey, blockKey);
+  }
+
+  /**
+   * Writes the block abstractions computed in the current run to the store.
+   *
+   * @return the number of block abstractions that could be stored
+   */
+  public int persist() {
+    int storedCount = 0;
+    for (BlockKey key : computedKeys) {
+      AbstractState stateKey = key.getHashKey().getStateKey();
+      Precision precisionKey = key.getHashKey().getPrecisionKey();
+      // The computed keys are only created from block keys of type SignatureT.
+      @SuppressWarnings("unchecked")
+      SignatureT blockKey = (SignatureT) key.getBlockKey();
+      BlockAbstraction blockAbstraction = delegate.get(stateKey, precisionKey, blockKey);
+      if (blockAbstraction != null
+          && store.store(stateKey, precisionKey, blockKey, blockAbstraction)) {
+        storedCount++;
+      }
+    }
+    if (storedCount < computedKeys.size()) {
+      log.warn(
+          "Only {} of {} block abstractions could be persisted, the others will be recomputed",
+          storedCount,
+          computedKeys.size());
+    } else {
+      log.debug("Persisted {} block abstractions", storedCount);
+    }
+    computedKeys.clear();
+    return storedCount;
+  }
+
+  /**
+   * Writes the block abstractions computed in the current run to the store and removes the stored
+   * block abstractions of all blocks except the given ones, e.g., of methods which changed or were
+   * removed since previous runs.
+   *
+   * @param retainedBlockKeys the blocks whose stored block abstractions should be retained,
+   *     typically all methods of the analyzed program
+   * @return the number of block abstractions that could be stored
+   */
+  public int persist(Collection<SignatureT> retainedBlockKeys) {
+    int storedCount = persist();
+    try {
+      store.retainAll(retainedBlockKeys);
+    } catch (IOException e) {
+      log.warn("Cannot remove the outdated block abstractions: {}", e.getMessage());
+    }
+    return storedCount;
+  }
+
+  /** Returns the number of block abstractions reused from the store. */
+  public long getLoadCount() {
+    return loadCount;
+  }
+}
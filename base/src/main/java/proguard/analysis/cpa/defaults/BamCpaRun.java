@@ -18,10 +18,19 @@
 
 package proguard.analysis.cpa.defaults;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import proguard.analysis.cpa.bam.BamCache;
 import proguard.analysis.cpa.bam.BamCacheImpl;
 import proguard.analysis.cpa.bam.BamCpa;
+import proguard.analysis.cpa.bam.ConcurrentBamCache;
 import proguard.analysis.cpa.bam.CpaWithBamOperators;
 import proguard.analysis.cpa.bam.ExpandOperator;
 import proguard.analysis.cpa.bam.NoOpRebuildOperator;
@@ -32,6 +41,7 @@ import proguard.analysis.cpa.interfaces.AbstractState;
 import proguard.analysis.cpa.interfaces.CfaEdge;
 import proguard.analysis.cpa.interfaces.CfaNode;
 import proguard.analysis.cpa.interfaces.ConfigurableProgramAnalysis;
+import proguard.analysis.cpa.interfaces.ReachedSet;
 import proguard.classfile.Signature;
 
 /**
@@ -51,6 +61,7 @@ public abstract class BamCpaRun<
 
   private final int maxCallStackDepth;
   protected final boolean reduceHeap;
+  protected BamCache<SignatureT> cache;
 
   /**
    * Create a BAM CPA run.
@@ -112,9 +123,9 @@ public abstract class BamCpaRun<
     return new NoOpRebuildOperator();
   }
 
-  /** Returns a fresh BAM cache. */
+  /** Returns the BAM cache shared with other runs, if set, or a fresh BAM cache otherwise. */
   public BamCache<SignatureT> createCache() {
-    return new BamCacheImpl<>();
+    return cache == null ? new BamCacheImpl<>() : cache;
   }
 
   /** Returns the CFA. */
@@ -134,6 +145,66 @@ public abstract class BamCpaRun<
     return getCpa().getCache().getAllMethods();
   }
 
+  /**
+   * BAM runs are always sequential, since the {@link proguard.analysis.cpa.bam.BamTransferRelation}
+   * with its call stack is not thread-safe. Independent runs can be executed in parallel with
+   * {@link #executeInParallel(List, int)} instead.
+   *
+   * @throws IllegalArgumentException if the parallelism is not one
+   */
+  @Override
+  public void setParallelism(int parallelism) {
+    if (parallelism != 1) {
+      throw new IllegalArgumentException("BAM runs can only run on a single thread");
+    }
+    super.setParallelism(parallelism);
+  }
+
+  /**
+   * Executes the given runs, e.g., for independent entry points of a program, on a pool of threads
+   * and returns their reached sets in the same order. Runs may share a {@link ConcurrentBamCache},
+   * so that the block abstractions of common callees are computed only once. Other caches must not
+   * be shared. Runs may also share a {@link Cfa}, since its nodes, including the exit nodes that the
+   * expand operators create on demand, are looked up and added atomically. Any other state shared
+   * by the runs, like custom operators or abort operators, must be thread-safe.
+   *
+   * @param runs the runs to execute
+   * @param parallelism the number of threads
+   */
+  public static List<ReachedSet> executeInParallel(
+      List<? extends BamCpaRun<?, ?, ?, ?, ?>> runs, int parallelism) {
+    Set<BamCache<?>> caches = Collections.newSetFromMap(new IdentityHashMap<>());
+    for (BamCpaRun<?, ?, ?, ?, ?> run : runs) {
+      BamCache<?> runCache = run.getCpa().getCache();
+      if (!caches.add(runCache) && !(runCache instanceof ConcurrentBamCache)) {
+        throw new IllegalArgumentException(
+            "Runs executed in parallel can only share a " + ConcurrentBamCache.class.getName());
+      }
+    }
+
+    ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+    try {
+      List<Future<ReachedSet>> futures = new ArrayList<>(runs.size());
+      for (BamCpaRun<?, ?, ?, ?, ?> run : runs) {
+        futures.add(executor.submit(run::execute));
+      }
+      List<ReachedSet> reachedSets = new ArrayList<>(runs.size());
+      for (Future<ReachedSet> future : futures) {
+        reachedSets.add(future.get());
+      }
+      return reachedSets;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException("Parallel execution was interrupted", e);
+    } catch (ExecutionException e) {
+      throw e.getCause() instanceof RuntimeException
+          ? (RuntimeException) e.getCause()
+          : new RuntimeException(e.getCause());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
   /**
    * A builder for {@link BamCpaRun}. It assumes either the best performing parameters or the most
    * basic one, if there is no absolute benefit.
@@ -145,6 +216,7 @@ public abstract class BamCpaRun<
     protected int maxCallStackDepth = -1;
     protected AbortOperator abortOperator = NeverAbortOperator.INSTANCE;
     protected boolean reduceHeap = true;
+    protected BamCache<?> cache;
 
     /** Returns the {@link BamCpaRun} for given parameters. */
     public abstract BamCpaRun<?, ?, ?, ?, ?> build();
@@ -166,5 +238,14 @@ public abstract class BamCpaRun<
       this.reduceHeap = reduceHeap;
       return this;
     }
+
+    /**
+     * Sets the BAM cache, e.g., a {@link ConcurrentBamCache} shared among runs executed with {@link
+     * #executeInParallel(List, int)}. By default, every run creates its own cache.
+     */
+    public Builder setCache(BamCache<?> cache) {
+      this.cache = cache;
+      return this;
+    }
   }
 }
@@ -20,9 +20,10 @@ package proguard.analysis.cpa.defaults;
 
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import proguard.analysis.cpa.interfaces.CfaEdge;
@@ -36,6 +37,9 @@ import proguard.classfile.Signature;
  * <CfaEdgeT>}. It can be used for different programming languages with functions identified by
  * {@code <SignatureT>}.
  *
+ * <p>Nodes can be looked up and added concurrently, so analyses running on multiple threads can
+ * share the CFA, even if they lazily create nodes like the exit nodes of functions.
+ *
  * @author Carlo Alberto Pozzoli
  */
 public abstract class Cfa<
@@ -43,7 +47,8 @@ public abstract class Cfa<
     CfaEdgeT extends CfaEdge<CfaNodeT>,
     SignatureT extends Signature> {
 
-  protected final Map<SignatureT, Map<Integer, CfaNodeT>> functionNodes = new HashMap<>();
+  protected final Map<SignatureT, Map<Integer, CfaNodeT>> functionNodes =
+      new ConcurrentHashMap<>();
 
   /** Returns true if there are no nodes in the CFA, false otherwise. */
   public boolean isEmpty() {
@@ -132,6 +137,21 @@ public abstract class Cfa<
    * @param node The node to add.
    */
   public void addFunctionNode(SignatureT signature, CfaNodeT node, int offset) {
-    functionNodes.computeIfAbsent(signature, x -> new HashMap<>()).put(offset, node);
+    functionNodes.computeIfAbsent(signature, x -> new ConcurrentHashMap<>()).put(offset, node);
+  }
+
+  /**
+   * Returns the node of a function at a specific code offset, after atomically adding the node
+   * created by the given supplier if it is not in the graph yet.
+   *
+   * @param signature The signature of the function.
+   * @param offset The offset of the code location represented by the node.
+   * @param nodeSupplier The supplier of the node to add if it is absent.
+   */
+  protected CfaNodeT addFunctionNodeIfAbsent(
+      SignatureT signature, int offset, Supplier<CfaNodeT> nodeSupplier) {
+    return functionNodes
+        .computeIfAbsent(signature, x -> new ConcurrentHashMap<>())
+        .computeIfAbsent(offset, x -> nodeSupplier.get());
   }
 }
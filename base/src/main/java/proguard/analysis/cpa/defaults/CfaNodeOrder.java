@@ -0,0 +1,221 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package proguard.analysis.cpa.defaults;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import proguard.analysis.cpa.interfaces.AbstractState;
+import proguard.analysis.cpa.interfaces.CfaEdge;
+import proguard.analysis.cpa.interfaces.CfaNode;
+import proguard.analysis.cpa.interfaces.ProgramLocationDependent;
+import proguard.classfile.Signature;
+
+/**
+ * This class computes the reverse postorder and the loop depth of the nodes of a {@link Cfa}, e.g.,
+ * for prioritizing abstract states in a {@link PriorityWaitlist}. Both are computed once per
+ * function, the first time one of its nodes is queried, over the intraprocedural edges of the
+ * function.
+ *
+ * <p>The reverse postorder is computed by a depth first traversal starting from the function entry.
+ * Nodes not reachable from the entry, like exception handlers, are ordered after the reachable
+ * ones. The loop depth of a node is the number of natural loops, identified by their header,
+ * containing it.
+ */
+public class CfaNodeOrder<
+    CfaNodeT extends CfaNode<CfaEdgeT, SignatureT>,
+    CfaEdgeT extends CfaEdge<CfaNodeT>,
+    SignatureT extends Signature> {
+
+  private final Cfa<CfaNodeT, CfaEdgeT, SignatureT> cfa;
+  private final Map<SignatureT, FunctionOrder> functionOrders = new ConcurrentHashMap<>();
+
+  /**
+   * Create the order of the nodes of the given CFA.
+   *
+   * @param cfa a control flow automaton
+   */
+  public CfaNodeOrder(Cfa<CfaNodeT, CfaEdgeT, SignatureT> cfa) {
+    this.cfa = cfa;
+  }
+
+  /**
+   * Returns the index of the node in the reverse postorder of its function, the entry node having
+   * index 0, or {@link Integer#MAX_VALUE} if the node is not in the CFA.
+   */
+  public int getReversePostorderIndex(CfaNodeT node) {
+    return getFunctionOrder(node.getSignature())
+        .reversePostorderIndices
+        .getOrDefault(node, Integer.MAX_VALUE);
+  }
+
+  /** Returns the number of loops containing the node. */
+  public int getLoopDepth(CfaNodeT node) {
+    return getFunctionOrder(node.getSignature()).loopDepths.getOrDefault(node, 0);
+  }
+
+  /**
+   * Returns a comparator ordering program location dependent abstract states by the reverse
+   * postorder of their locations. Other abstract states are ordered last.
+   */
+  public Comparator<AbstractState> reversePostorderComparator() {
+    return Comparator.comparingInt(this::getStateReversePostorderIndex);
+  }
+
+  /**
+   * Returns a comparator ordering program location dependent abstract states by decreasing loop
+   * depth of their locations, i.e., stabilizing inner loops first, and then by reverse postorder.
+   * Other abstract states are ordered last.
+   */
+  public Comparator<AbstractState> loopDepthComparator() {
+    return Comparator.comparingInt((AbstractState state) -> -getStateLoopDepth(state))
+        .thenComparing(reversePostorderComparator());
+  }
+
+  private int getStateReversePostorderIndex(AbstractState state) {
+    CfaNodeT node = getLocation(state);
+    return node == null ? Integer.MAX_VALUE : getReversePostorderIndex(node);
+  }
+
+  private int getStateLoopDepth(AbstractState state) {
+    CfaNodeT node = getLocation(state);
+    return node == null ? 0 : getLoopDepth(node);
+  }
+
+  @SuppressWarnings("unchecked")
+  private CfaNodeT getLocation(AbstractState state) {
+    // The located states being ordered are states of the CFA of this order.
+    return state instanceof ProgramLocationDependent
+        ? ((ProgramLocationDependent<CfaNodeT, CfaEdgeT, SignatureT>) state).getProgramLocation()
+        : null;
+  }
+
+  private FunctionOrder getFunctionOrder(SignatureT signature) {
+    return functionOrders.computeIfAbsent(signature, FunctionOrder::new);
+  }
+
+  /** The reverse postorder and loop depths of the nodes of a function. */
+  private class FunctionOrder {
+
+    private final Map<CfaNodeT, Integer> reversePostorderIndices = new HashMap<>();
+    private final Map<CfaNodeT, Integer> loopDepths = new HashMap<>();
+
+    private FunctionOrder(SignatureT signature) {
+      Map<CfaNodeT, Set<CfaNodeT>> loopTails = new LinkedHashMap<>();
+      Set<CfaNodeT> visited = new HashSet<>();
+      List<CfaNodeT> roots = new ArrayList<>();
+      CfaNodeT entryNode = cfa.getFunctionEntryNode(signature);
+      if (entryNode != null) {
+        roots.add(entryNode);
+      }
+      roots.addAll(cfa.getFunctionNodes(signature));
+
+      // The nodes reachable from the entry come first, followed by the ones of each further root.
+      int index = 0;
+      for (CfaNodeT root : roots) {
+        if (visited.contains(root)) {
+          continue;
+        }
+        List<CfaNodeT> postorder = traverse(root, signature, visited, loopTails);
+        for (int i = postorder.size() - 1; i >= 0; i--) {
+          reversePostorderIndices.put(postorder.get(i), index++);
+        }
+      }
+
+      loopTails.forEach(
+          (header, tails) -> {
+            for (CfaNodeT node : loopBody(header, tails, signature)) {
+              loopDepths.merge(node, 1, Integer::sum);
+            }
+          });
+    }
+
+    /**
+     * Traverses the unvisited nodes reachable from the given root depth first, returning them in
+     * postorder and recording the back edges, grouped by their target, i.e., the loop header.
+     */
+    private List<CfaNodeT> traverse(
+        CfaNodeT root,
+        SignatureT signature,
+        Set<CfaNodeT> visited,
+        Map<CfaNodeT, Set<CfaNodeT>> loopTails) {
+      List<CfaNodeT> postorder = new ArrayList<>();
+      Set<CfaNodeT> onStack = new HashSet<>();
+      Deque<CfaNodeT> nodes = new ArrayDeque<>();
+      Deque<Iterator<CfaEdgeT>> edges = new ArrayDeque<>();
+      visited.add(root);
+      onStack.add(root);
+      nodes.push(root);
+      edges.push(root.getLeavingEdges().iterator());
+      while (!nodes.isEmpty()) {
+        CfaNodeT node = nodes.peek();
+        Iterator<CfaEdgeT> iterator = edges.peek();
+        if (iterator.hasNext()) {
+          CfaNodeT target = iterator.next().getTarget();
+          if (target == null || !signature.equals(target.getSignature())) {
+            continue;
+          }
+          if (onStack.contains(target)) {
+            loopTails.computeIfAbsent(target, k -> new HashSet<>()).add(node);
+          } else if (visited.add(target)) {
+            onStack.add(target);
+            nodes.push(target);
+            edges.push(target.getLeavingEdges().iterator());
+          }
+        } else {
+          nodes.pop();
+          edges.pop();
+          onStack.remove(node);
+          postorder.add(node);
+        }
+      }
+      return postorder;
+    }
+
+    /** Returns the header and the nodes reaching one of the tails without passing the header. */
+    private Set<CfaNodeT> loopBody(CfaNodeT header, Set<CfaNodeT> tails, SignatureT signature) {
+      Set<CfaNodeT> body = new HashSet<>();
+      body.add(header);
+      Deque<CfaNodeT> worklist = new ArrayDeque<>();
+      for (CfaNodeT tail : tails) {
+        if (body.add(tail)) {
+          worklist.push(tail);
+        }
+      }
+      while (!worklist.isEmpty()) {
+        for (CfaEdgeT edge : worklist.pop().getEnteringEdges()) {
+          CfaNodeT source = edge.getSource();
+          if (source != null && signature.equals(source.getSignature()) && body.add(source)) {
+            worklist.push(source);
+          }
+        }
+      }
+      return body;
+    }
+  }
+}
@@ -0,0 +1,98 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2022 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package proguard.analysis.cpa.defaults;
+
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+import proguard.analysis.cpa.algorithms.ParallelCpaAlgorithm;
+import proguard.analysis.cpa.interfaces.AbstractState;
+import proguard.analysis.cpa.interfaces.CfaEdge;
+import proguard.analysis.cpa.interfaces.CfaNode;
+import proguard.analysis.cpa.interfaces.ProgramLocationDependent;
+import proguard.classfile.Signature;
+
+/**
+ * This {@link ProgramLocationDependentReachedSet} can be accessed by multiple threads. Its bins are
+ * concurrent sets, so that they can be iterated while being modified. Additionally, it provides
+ * lock objects striped by program location. The {@link ParallelCpaAlgorithm} holds the lock of a
+ * location while it merges a successor into the bin of that location, so that updates of
+ * different locations proceed in parallel.
+ *
+ * <p>Unlike {@link ProgramLocationDependentReachedSet}, the iteration order is not deterministic.
+ */
+public final class ConcurrentProgramLocationDependentReachedSet<
+        CfaNodeT extends CfaNode<CfaEdgeT, SignatureT>,
+        CfaEdgeT extends CfaEdge<CfaNodeT>,
+        AbstractStateT extends
+            AbstractState & ProgramLocationDependent<CfaNodeT, CfaEdgeT, SignatureT>,
+        SignatureT extends Signature>
+    extends ProgramLocationDependentReachedSet<CfaNodeT, CfaEdgeT, AbstractStateT, SignatureT> {
+
+  private static final long serialVersionUID = 1L;
+
+  private static final int DEFAULT_LOCK_STRIPES = 64;
+
+  private final Object[] locks;
+
+  /** Create an empty reached set with the default number of lock stripes. */
+  public ConcurrentProgramLocationDependentReachedSet() {
+    this(DEFAULT_LOCK_STRIPES);
+  }
+
+  /**
+   * Create an empty reached set.
+   *
+   * @param lockStripes the number of locks the program locations are distributed over
+   */
+  public ConcurrentProgramLocationDependentReachedSet(int lockStripes) {
+    super(new ConcurrentHashMap<>(), ConcurrentHashMap::newKeySet);
+    if (lockStripes <= 0) {
+      throw new IllegalArgumentException("The number of lock stripes must be positive");
+    }
+    locks = new Object[lockStripes];
+    for (int index = 0; index < lockStripes; index++) {
+      locks[index] = new Object();
+    }
+  }
+
+  /** Returns the lock guarding the bin of the given {@code abstractState}. */
+  public Object getLock(AbstractState abstractState) {
+    return getLockOf(((ProgramLocationDependent<?, ?, ?>) abstractState).getProgramLocation());
+  }
+
+  /** Returns the lock guarding the bin of the given {@code location}. */
+  public Object getLock(CfaNodeT location) {
+    return getLockOf(location);
+  }
+
+  // implementations for Serializable
+
+  @Override
+  protected Object writeReplace() {
+    return new SerializedReachedSet(new ArrayList<>(asCollection()), true);
+  }
+
+  // Small utility methods.
+
+  private Object getLockOf(Object location) {
+    int hash = location.hashCode();
+    hash ^= hash >>> 16;
+    return locks[(hash & Integer.MAX_VALUE) % locks.length];
+  }
+}
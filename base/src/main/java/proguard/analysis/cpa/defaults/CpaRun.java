@@ -19,9 +19,13 @@
 package proguard.analysis.cpa.defaults;
 
 import java.util.Collection;
+import proguard.analysis.Metrics;
+import proguard.analysis.Metrics.TimerType;
 import proguard.analysis.cpa.algorithms.CpaAlgorithm;
+import proguard.analysis.cpa.algorithms.ParallelCpaAlgorithm;
 import proguard.analysis.cpa.interfaces.AbortOperator;
 import proguard.analysis.cpa.interfaces.AbstractState;
+import proguard.analysis.cpa.interfaces.Algorithm;
 import proguard.analysis.cpa.interfaces.ConfigurableProgramAnalysis;
 import proguard.analysis.cpa.interfaces.ReachedSet;
 import proguard.analysis.cpa.interfaces.Waitlist;
@@ -37,22 +41,38 @@ public abstract class CpaRun<
 
   protected CpaT cpa;
   protected AbortOperator abortOperator = NeverAbortOperator.INSTANCE;
+  protected int parallelism = 1;
 
   /**
-   * Sets up the {@link CpaAlgorithm}, runs it, and returns the {@link ReachedSet} with the result
-   * of the analysis.
+   * Sets up the {@link Algorithm}, runs it, and returns the {@link ReachedSet} with the result of
+   * the analysis. The duration of the algorithm is recorded in the {@link Metrics}.
    */
   public ReachedSet execute() {
-    CpaAlgorithm cpaAlgorithm = new CpaAlgorithm(getCpa());
+    Algorithm cpaAlgorithm = createAlgorithm();
     Waitlist waitList = createWaitlist();
     ReachedSet reachedSet = createReachedSet();
     Collection<AbstractStateT> initialStates = getInitialStates();
     waitList.addAll(initialStates);
     reachedSet.addAll(initialStates);
-    cpaAlgorithm.run(reachedSet, waitList, getAbortOperator());
+    long startTime = System.nanoTime();
+    try {
+      cpaAlgorithm.run(reachedSet, waitList, getAbortOperator());
+    } finally {
+      Metrics.recordDuration(TimerType.CPA_RUN, System.nanoTime() - startTime);
+    }
     return reachedSet;
   }
 
+  /**
+   * Returns the {@link Algorithm} computing the reached set. This is a {@link ParallelCpaAlgorithm}
+   * if the parallelism is greater than one, and a {@link CpaAlgorithm} otherwise.
+   */
+  protected Algorithm createAlgorithm() {
+    return parallelism > 1
+        ? new ParallelCpaAlgorithm(getCpa(), parallelism)
+        : new CpaAlgorithm(getCpa());
+  }
+
   /** Returns an empty {@link ReachedSet}. */
   protected ReachedSet createReachedSet() {
     return new DefaultReachedSet();
@@ -75,4 +95,22 @@ public abstract class CpaRun<
   public AbortOperator getAbortOperator() {
     return abortOperator;
   }
+
+  /** Returns the number of threads the CPA algorithm runs on. */
+  public int getParallelism() {
+    return parallelism;
+  }
+
+  /**
+   * Sets the number of threads the CPA algorithm runs on. With a parallelism greater than one, the
+   * analysis is run by a {@link ParallelCpaAlgorithm}.
+   *
+   * @param parallelism the number of worker threads
+   */
+  public void setParallelism(int parallelism) {
+    if (parallelism <= 0) {
+      throw new IllegalArgumentException("The parallelism must be positive");
+    }
+    this.parallelism = parallelism;
+  }
 }
@@ -0,0 +1,38 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package proguard.analysis.cpa.defaults;
+
+import proguard.analysis.cpa.interfaces.Waitlist;
+
+/**
+ * This {@link Waitlist} pops the state whose location is nested in the most loops of the {@link
+ * Cfa}, breaking ties by reverse postorder. Inner loops are thus stabilized before the states
+ * leaving them are processed.
+ */
+public class LoopDepthWaitlist extends PriorityWaitlist {
+
+  /**
+   * Create a waitlist ordered by loop depth.
+   *
+   * @param cfaNodeOrder the order of the CFA nodes, which can be shared among waitlists
+   */
+  public LoopDepthWaitlist(CfaNodeOrder<?, ?, ?> cfaNodeOrder) {
+    super(cfaNodeOrder.loopDepthComparator());
+  }
+}
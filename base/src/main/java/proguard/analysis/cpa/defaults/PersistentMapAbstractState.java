@@ -0,0 +1,700 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package proguard.analysis.cpa.defaults;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.BiFunction;
+
+/**
+ * This {@link PersistentMapAbstractState} represents a map to {@link LatticeAbstractState}s with
+ * the semilattice operators lifted to the map. It is backed by a hash array mapped trie whose nodes
+ * are never modified, so that copies share the whole trie and take constant time. Updates only
+ * copy the path from the root to the updated entry. Joins of maps sharing parts of their tries,
+ * e.g., copies of a common ancestor, skip the shared subtrees.
+ *
+ * <p>As for the other map abstract states, copies are shallow, i.e., the values are shared. The map
+ * is serialized as the list of its entries, from which the trie is rebuilt when it is deserialized.
+ */
+public class PersistentMapAbstractState<
+        KeyT, AbstractSpaceT extends LatticeAbstractState<AbstractSpaceT>>
+    extends AbstractMap<KeyT, AbstractSpaceT>
+    implements MapAbstractState<KeyT, AbstractSpaceT>, Serializable {
+
+  private static final long serialVersionUID = 1L;
+
+  private static final int BITS = 5;
+  private static final int MASK = (1 << BITS) - 1;
+  // Hashes are exhausted below this depth, where colliding entries are stored in a list.
+  private static final int MAX_SHIFT = 30;
+
+  private static final BitmapNode<?, ?> EMPTY = new BitmapNode<>(0, new Object[0], 0);
+
+  private transient Node<KeyT, AbstractSpaceT> root;
+
+  /** Create an empty persistent map abstract state. */
+  public PersistentMapAbstractState() {
+    this(PersistentMapAbstractState.<KeyT, AbstractSpaceT>emptyNode());
+  }
+
+  /**
+   * Create a persistent map abstract state from another map.
+   *
+   * @param m map which elements are used for initialization
+   */
+  public PersistentMapAbstractState(Map<? extends KeyT, ? extends AbstractSpaceT> m) {
+    this();
+    if (m instanceof PersistentMapAbstractState) {
+      // The trie is never modified, so it can be shared with the more specific map.
+      @SuppressWarnings("unchecked")
+      PersistentMapAbstractState<KeyT, AbstractSpaceT> map =
+          (PersistentMapAbstractState<KeyT, AbstractSpaceT>) m;
+      root = map.root;
+    } else {
+      putAll(m);
+    }
+  }
+
+  private PersistentMapAbstractState(Node<KeyT, AbstractSpaceT> root) {
+    this.root = root;
+  }
+
+  // implementations for Map
+
+  @Override
+  public int size() {
+    return root.size;
+  }
+
+  @Override
+  public boolean containsKey(Object key) {
+    return root.find(key, hash(key), 0) != null;
+  }
+
+  @Override
+  public AbstractSpaceT get(Object key) {
+    Leaf<KeyT, AbstractSpaceT> leaf = root.find(key, hash(key), 0);
+    return leaf == null ? null : leaf.value;
+  }
+
+  @Override
+  public AbstractSpaceT put(KeyT key, AbstractSpaceT value) {
+    int hash = hash(key);
+    Leaf<KeyT, AbstractSpaceT> leaf = root.find(key, hash, 0);
+    root = root.put(new Leaf<>(key, hash, value), 0);
+    return leaf == null ? null : leaf.value;
+  }
+
+  @Override
+  public AbstractSpaceT remove(Object key) {
+    int hash = hash(key);
+    Leaf<KeyT, AbstractSpaceT> leaf = root.find(key, hash, 0);
+    if (leaf != null) {
+      root = asNode(root.remove(key, hash, 0), 0);
+    }
+    return leaf == null ? null : leaf.value;
+  }
+
+  @Override
+  public void clear() {
+    root = emptyNode();
+  }
+
+  @Override
+  public void replaceAll(
+      BiFunction<? super KeyT, ? super AbstractSpaceT, ? extends AbstractSpaceT> function) {
+    // The iteration is over a snapshot, so that the map can be updated on the fly.
+    for (Entry<KeyT, AbstractSpaceT> entry : entrySet()) {
+      put(entry.getKey(), function.apply(entry.getKey(), entry.getValue()));
+    }
+  }
+
+  @Override
+  public Set<Entry<KeyT, AbstractSpaceT>> entrySet() {
+    return new AbstractSet<Entry<KeyT, AbstractSpaceT>>() {
+      @Override
+      public Iterator<Entry<KeyT, AbstractSpaceT>> iterator() {
+        return new LeafIterator<>(PersistentMapAbstractState.this, root);
+      }
+
+      @Override
+      public int size() {
+        return PersistentMapAbstractState.this.size();
+      }
+    };
+  }
+
+  // implementations for LatticeAbstractState
+
+  @Override
+  public MapAbstractState<KeyT, AbstractSpaceT> join(
+      MapAbstractState<KeyT, AbstractSpaceT> abstractState) {
+    if (!(abstractState instanceof PersistentMapAbstractState)) {
+      return MapAbstractState.super.join(abstractState);
+    }
+    Node<KeyT, AbstractSpaceT> otherRoot =
+        ((PersistentMapAbstractState<KeyT, AbstractSpaceT>) abstractState).root;
+    Node<KeyT, AbstractSpaceT> joinRoot = joinNodes(root, otherRoot, 0);
+    if (joinRoot == root) {
+      return this;
+    }
+    if (joinRoot == otherRoot) {
+      return abstractState;
+    }
+    return new PersistentMapAbstractState<>(joinRoot);
+  }
+
+  @Override
+  public boolean isLessOrEqual(MapAbstractState<KeyT, AbstractSpaceT> abstractState) {
+    return abstractState instanceof PersistentMapAbstractState
+            && ((PersistentMapAbstractState<KeyT, AbstractSpaceT>) abstractState).root == root
+        || MapAbstractState.super.isLessOrEqual(abstractState);
+  }
+
+  // implementations for AbstractState
+
+  @Override
+  public PersistentMapAbstractState<KeyT, AbstractSpaceT> copy() {
+    return new PersistentMapAbstractState<>(root);
+  }
+
+  // implementations for Object
+
+  @Override
+  public boolean equals(Object o) {
+    return o instanceof PersistentMapAbstractState
+            && ((PersistentMapAbstractState<?, ?>) o).root == root
+        || super.equals(o);
+  }
+
+  @Override
+  public int hashCode() {
+    return super.hashCode();
+  }
+
+  // implementations for Serializable
+
+  private void writeObject(ObjectOutputStream output) throws IOException {
+    output.defaultWriteObject();
+    output.writeInt(size());
+    for (Entry<KeyT, AbstractSpaceT> entry : entrySet()) {
+      output.writeObject(entry.getKey());
+      output.writeObject(entry.getValue());
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private void readObject(ObjectInputStream input) throws IOException, ClassNotFoundException {
+    // The entries were written by writeObject, with keys and values of the types of the map.
+    input.defaultReadObject();
+    // The hashes of the keys may differ from the ones of the serialized trie.
+    root = emptyNode();
+    for (int size = input.readInt(); size > 0; size--) {
+      put((KeyT) input.readObject(), (AbstractSpaceT) input.readObject());
+    }
+  }
+
+  // private methods
+
+  private static int hash(Object key) {
+    int h = Objects.hashCode(key);
+    return h ^ (h >>> 16);
+  }
+
+  private static int bit(int hash, int shift) {
+    return 1 << ((hash >>> shift) & MASK);
+  }
+
+  /** Returns the empty node. */
+  @SuppressWarnings("unchecked")
+  private static <K, V> Node<K, V> emptyNode() {
+    // The empty node doesn't contain any keys or values.
+    return (Node<K, V>) EMPTY;
+  }
+
+  /** Returns the given child of a node, which is a leaf. */
+  @SuppressWarnings("unchecked")
+  private static <K, V> Leaf<K, V> leaf(Object child) {
+    // The children of the nodes of a trie only contain keys and values of the types of the trie.
+    return (Leaf<K, V>) child;
+  }
+
+  /** Returns the given child of a node, which is a node. */
+  @SuppressWarnings("unchecked")
+  private static <K, V> Node<K, V> node(Object child) {
+    // The children of the nodes of a trie only contain keys and values of the types of the trie.
+    return (Node<K, V>) child;
+  }
+
+  /** Returns an array with the given leaves. */
+  @SafeVarargs
+  private static <K, V> Leaf<K, V>[] leaves(Leaf<K, V>... leaves) {
+    return leaves;
+  }
+
+  /** Returns a node containing the given child, which is either a node or a leaf, or nothing. */
+  private static <K, V> Node<K, V> asNode(Object child, int shift) {
+    if (child == null) {
+      return emptyNode();
+    }
+    if (child instanceof Leaf) {
+      return singleton(PersistentMapAbstractState.<K, V>leaf(child), shift);
+    }
+    return node(child);
+  }
+
+  /** Returns a node containing only the given leaf. */
+  private static <K, V> Node<K, V> singleton(Leaf<K, V> leaf, int shift) {
+    return shift > MAX_SHIFT
+        ? new CollisionNode<>(leaves(leaf))
+        : new BitmapNode<>(bit(leaf.hash, shift), new Object[] {leaf}, 1);
+  }
+
+  /** Returns a node containing the two given leaves with different keys. */
+  private static <K, V> Node<K, V> pair(Leaf<K, V> leaf1, Leaf<K, V> leaf2, int shift) {
+    if (shift > MAX_SHIFT) {
+      return new CollisionNode<>(leaves(leaf1, leaf2));
+    }
+    int bit1 = bit(leaf1.hash, shift);
+    int bit2 = bit(leaf2.hash, shift);
+    if (bit1 == bit2) {
+      return new BitmapNode<>(bit1, new Object[] {pair(leaf1, leaf2, shift + BITS)}, 2);
+    }
+    return Integer.compareUnsigned(bit1, bit2) < 0
+        ? new BitmapNode<>(bit1 | bit2, new Object[] {leaf1, leaf2}, 2)
+        : new BitmapNode<>(bit1 | bit2, new Object[] {leaf2, leaf1}, 2);
+  }
+
+  /**
+   * Returns the join of the given nodes, reusing the left node if it is not changed by the join
+   * and the right node if the join is equal to it.
+   */
+  private static <K, V extends LatticeAbstractState<V>> Node<K, V> joinNodes(
+      Node<K, V> left, Node<K, V> right, int shift) {
+    if (left == right || right.size == 0) {
+      return left;
+    }
+    if (left.size == 0) {
+      return right;
+    }
+    if (left instanceof CollisionNode) {
+      return joinCollisionNodes((CollisionNode<K, V>) left, (CollisionNode<K, V>) right);
+    }
+
+    BitmapNode<K, V> leftNode = (BitmapNode<K, V>) left;
+    BitmapNode<K, V> rightNode = (BitmapNode<K, V>) right;
+    int bitmap = leftNode.bitmap | rightNode.bitmap;
+    Object[] children = new Object[Integer.bitCount(bitmap)];
+    boolean sameAsLeft = bitmap == leftNode.bitmap;
+    boolean sameAsRight = bitmap == rightNode.bitmap;
+    int size = 0;
+    int index = 0;
+    for (int remaining = bitmap; remaining != 0; remaining &= remaining - 1) {
+      int bit = remaining & -remaining;
+      Object leftChild = leftNode.child(bit);
+      Object rightChild = rightNode.child(bit);
+      Object child = joinChildren(leftChild, rightChild, shift + BITS);
+      sameAsLeft &= child == leftChild;
+      sameAsRight &= child == rightChild;
+      children[index++] = child;
+      size += child instanceof Leaf ? 1 : PersistentMapAbstractState.<K, V>node(child).size;
+    }
+    return sameAsLeft ? left : sameAsRight ? right : new BitmapNode<>(bitmap, children, size);
+  }
+
+  /** Returns the join of the given children, which are leaves, nodes, or missing. */
+  private static <K, V extends LatticeAbstractState<V>> Object joinChildren(
+      Object left, Object right, int shift) {
+    if (right == null || left == right) {
+      return left;
+    }
+    if (left == null) {
+      return right;
+    }
+    if (left instanceof Leaf && right instanceof Leaf) {
+      Leaf<K, V> leftLeaf = leaf(left);
+      Leaf<K, V> rightLeaf = leaf(right);
+      return Objects.equals(leftLeaf.key, rightLeaf.key)
+          ? joinLeaves(leftLeaf, rightLeaf)
+          : pair(leftLeaf, rightLeaf, shift);
+    }
+    return PersistentMapAbstractState.<K, V>joinNodes(
+        asNode(left, shift), asNode(right, shift), shift);
+  }
+
+  private static <K, V extends LatticeAbstractState<V>> Leaf<K, V> joinLeaves(
+      Leaf<K, V> left, Leaf<K, V> right) {
+    V value = left.value.join(right.value);
+    if (value.equals(left.value)) {
+      return left;
+    }
+    if (value.equals(right.value)) {
+      return right;
+    }
+    return new Leaf<>(left.key, left.hash, value);
+  }
+
+  private static <K, V extends LatticeAbstractState<V>> Node<K, V> joinCollisionNodes(
+      CollisionNode<K, V> left, CollisionNode<K, V> right) {
+    Leaf<K, V>[] leaves = Arrays.copyOf(left.leaves, left.leaves.length + right.leaves.length);
+    int size = left.leaves.length;
+    boolean sameAsLeft = true;
+    int fromRight = 0;
+    for (Leaf<K, V> rightLeaf : right.leaves) {
+      int index = left.indexOf(rightLeaf.key);
+      if (index < 0) {
+        leaves[size++] = rightLeaf;
+        sameAsLeft = false;
+        fromRight++;
+      } else {
+        leaves[index] = joinLeaves(left.leaves[index], rightLeaf);
+        sameAsLeft &= leaves[index] == left.leaves[index];
+        fromRight += leaves[index] == rightLeaf ? 1 : 0;
+      }
+    }
+    if (sameAsLeft) {
+      return left;
+    }
+    if (size == right.leaves.length && fromRight == size) {
+      return right;
+    }
+    return new CollisionNode<>(Arrays.copyOf(leaves, size));
+  }
+
+  /** An entry of the map. Leaves are never modified. */
+  private static final class Leaf<K, V> {
+
+    private final K key;
+    private final int hash;
+    private final V value;
+
+    private Leaf(K key, int hash, V value) {
+      this.key = key;
+      this.hash = hash;
+      this.value = value;
+    }
+  }
+
+  /** An inner node of the trie. Nodes are never modified. */
+  private abstract static class Node<K, V> {
+
+    protected final int size;
+
+    protected Node(int size) {
+      this.size = size;
+    }
+
+    /** Returns the leaf with the given key, or null. */
+    abstract Leaf<K, V> find(Object key, int hash, int shift);
+
+    /** Returns a node with the given leaf, which is this node if nothing changes. */
+    abstract Node<K, V> put(Leaf<K, V> leaf, int shift);
+
+    /**
+     * Returns this node without the given key: this node if the key is missing, null if the node
+     * becomes empty, a leaf if it contains a single leaf, or a node otherwise.
+     */
+    abstract Object remove(Object key, int hash, int shift);
+
+    /** Returns the number of children, which are leaves or nodes. */
+    abstract int childCount();
+
+    /** Returns the child at the given index. */
+    abstract Object childAt(int index);
+  }
+
+  /** A node with up to 32 children, indexed by 5 bits of the hash. */
+  private static final class BitmapNode<K, V> extends Node<K, V> {
+
+    private final int bitmap;
+    private final Object[] children;
+
+    private BitmapNode(int bitmap, Object[] children, int size) {
+      super(size);
+      this.bitmap = bitmap;
+      this.children = children;
+    }
+
+    private int index(int bit) {
+      return Integer.bitCount(bitmap & (bit - 1));
+    }
+
+    private Object child(int bit) {
+      return (bitmap & bit) == 0 ? null : children[index(bit)];
+    }
+
+    @Override
+    Leaf<K, V> find(Object key, int hash, int shift) {
+      Object child = child(bit(hash, shift));
+      if (child instanceof Leaf) {
+        Leaf<K, V> leaf = leaf(child);
+        return Objects.equals(leaf.key, key) ? leaf : null;
+      }
+      return child == null
+          ? null
+          : PersistentMapAbstractState.<K, V>node(child).find(key, hash, shift + BITS);
+    }
+
+    @Override
+    Node<K, V> put(Leaf<K, V> leaf, int shift) {
+      int bit = bit(leaf.hash, shift);
+      int index = index(bit);
+      if ((bitmap & bit) == 0) {
+        Object[] newChildren = new Object[children.length + 1];
+        System.arraycopy(children, 0, newChildren, 0, index);
+        newChildren[index] = leaf;
+        System.arraycopy(children, index, newChildren, index + 1, children.length - index);
+        return new BitmapNode<>(bitmap | bit, newChildren, size + 1);
+      }
+
+      Object child = children[index];
+      if (child instanceof Leaf) {
+        Leaf<K, V> childLeaf = leaf(child);
+        if (Objects.equals(childLeaf.key, leaf.key)) {
+          return childLeaf.value == leaf.value ? this : withChild(index, leaf, size);
+        }
+        return withChild(index, pair(childLeaf, leaf, shift + BITS), size + 1);
+      }
+      Node<K, V> childNode = node(child);
+      Node<K, V> newChildNode = childNode.put(leaf, shift + BITS);
+      return newChildNode == childNode
+          ? this
+          : withChild(index, newChildNode, size + newChildNode.size - childNode.size);
+    }
+
+    @Override
+    Object remove(Object key, int hash, int shift) {
+      int bit = bit(hash, shift);
+      if ((bitmap & bit) == 0) {
+        return this;
+      }
+      int index = index(bit);
+      Object child = children[index];
+      Object newChild;
+      if (child instanceof Leaf) {
+        if (!Objects.equals(PersistentMapAbstractState.<K, V>leaf(child).key, key)) {
+          return this;
+        }
+        newChild = null;
+      } else {
+        newChild = PersistentMapAbstractState.<K, V>node(child).remove(key, hash, shift + BITS);
+        if (newChild == child) {
+          return this;
+        }
+      }
+
+      if (newChild != null) {
+        return children.length == 1 && newChild instanceof Leaf
+            ? newChild
+            : withChild(index, newChild, size - 1);
+      }
+      if (children.length == 1) {
+        return null;
+      }
+      if (children.length == 2 && children[1 - index] instanceof Leaf) {
+        return children[1 - index];
+      }
+      Object[] newChildren = new Object[children.length - 1];
+      System.arraycopy(children, 0, newChildren, 0, index);
+      System.arraycopy(children, index + 1, newChildren, index, children.length - index - 1);
+      return new BitmapNode<>(bitmap & ~bit, newChildren, size - 1);
+    }
+
+    @Override
+    int childCount() {
+      return children.length;
+    }
+
+    @Override
+    Object childAt(int index) {
+      return children[index];
+    }
+
+    private BitmapNode<K, V> withChild(int index, Object child, int newSize) {
+      Object[] newChildren = children.clone();
+      newChildren[index] = child;
+      return new BitmapNode<>(bitmap, newChildren, newSize);
+    }
+  }
+
+  /** A node with leaves whose keys have the same hash. */
+  private static final class CollisionNode<K, V> extends Node<K, V> {
+
+    private final Leaf<K, V>[] leaves;
+
+    private CollisionNode(Leaf<K, V>[] leaves) {
+      super(leaves.length);
+      this.leaves = leaves;
+    }
+
+    private int indexOf(Object key) {
+      for (int index = 0; index < leaves.length; index++) {
+        if (Objects.equals(leaves[index].key, key)) {
+          return index;
+        }
+      }
+      return -1;
+    }
+
+    @Override
+    Leaf<K, V> find(Object key, int hash, int shift) {
+      int index = indexOf(key);
+      return index < 0 ? null : leaves[index];
+    }
+
+    @Override
+    Node<K, V> put(Leaf<K, V> leaf, int shift) {
+      int index = indexOf(leaf.key);
+      if (index < 0) {
+        Leaf<K, V>[] newLeaves = Arrays.copyOf(leaves, leaves.length + 1);
+        newLeaves[leaves.length] = leaf;
+        return new CollisionNode<>(newLeaves);
+      }
+      if (leaves[index].value == leaf.value) {
+        return this;
+      }
+      Leaf<K, V>[] newLeaves = leaves.clone();
+      newLeaves[index] = leaf;
+      return new CollisionNode<>(newLeaves);
+    }
+
+    @Override
+    Object remove(Object key, int hash, int shift) {
+      int index = indexOf(key);
+      if (index < 0) {
+        return this;
+      }
+      if (leaves.length == 1) {
+        return null;
+      }
+      if (leaves.length == 2) {
+        return leaves[1 - index];
+      }
+      Leaf<K, V>[] newLeaves = Arrays.copyOf(leaves, leaves.length - 1);
+      if (index < newLeaves.length) {
+        newLeaves[index] = leaves[leaves.length - 1];
+      }
+      return new CollisionNode<>(newLeaves);
+    }
+
+    @Override
+    int childCount() {
+      return leaves.length;
+    }
+
+    @Override
+    Object childAt(int index) {
+      return leaves[index];
+    }
+  }
+
+  /** An entry of a snapshot of the trie whose updates are written through to the map. */
+  private static final class WriteThroughEntry<K, V extends LatticeAbstractState<V>>
+      extends SimpleEntry<K, V> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final PersistentMapAbstractState<K, V> map;
+
+    private WriteThroughEntry(PersistentMapAbstractState<K, V> map, K key, V value) {
+      super(key, value);
+      this.map = map;
+    }
+
+    @Override
+    public V setValue(V value) {
+      map.put(getKey(), value);
+      return super.setValue(value);
+    }
+  }
+
+  /** An iterator over the entries of a snapshot of the trie. */
+  private static final class LeafIterator<K, V extends LatticeAbstractState<V>>
+      implements Iterator<Entry<K, V>> {
+
+    private final PersistentMapAbstractState<K, V> map;
+    private final Deque<Node<K, V>> nodes = new ArrayDeque<>();
+    private final Deque<Integer> indices = new ArrayDeque<>();
+    private Leaf<K, V> next;
+    private Leaf<K, V> last;
+
+    private LeafIterator(PersistentMapAbstractState<K, V> map, Node<K, V> root) {
+      this.map = map;
+      nodes.push(root);
+      indices.push(0);
+      advance();
+    }
+
+    @Override
+    public boolean hasNext() {
+      return next != null;
+    }
+
+    @Override
+    public Entry<K, V> next() {
+      if (next == null) {
+        throw new NoSuchElementException();
+      }
+      last = next;
+      advance();
+      return new WriteThroughEntry<>(map, last.key, last.value);
+    }
+
+    @Override
+    public void remove() {
+      if (last == null) {
+        throw new IllegalStateException();
+      }
+      map.remove(last.key);
+      last = null;
+    }
+
+    private void advance() {
+      next = null;
+      while (!nodes.isEmpty()) {
+        Node<K, V> node = nodes.peek();
+        int index = indices.pop();
+        if (index == node.childCount()) {
+          nodes.pop();
+          continue;
+        }
+        indices.push(index + 1);
+        Object child = node.childAt(index);
+        if (child instanceof Leaf) {
+          next = leaf(child);
+          return;
+        }
+        nodes.push(node(child));
+        indices.push(0);
+      }
+    }
+  }
+}
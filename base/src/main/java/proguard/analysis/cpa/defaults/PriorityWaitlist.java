@@ -0,0 +1,124 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package proguard.analysis.cpa.defaults;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeSet;
+import org.jetbrains.annotations.NotNull;
+import proguard.analysis.cpa.interfaces.AbstractState;
+import proguard.analysis.cpa.interfaces.Waitlist;
+
+/**
+ * This {@link Waitlist} pops the smallest element according to a comparator. Elements with the
+ * same priority are popped in insertion order, i.e., the waitlist degrades to a {@link
+ * BreadthFirstWaitlist} for a comparator considering all elements equal. As for the other
+ * waitlists, adding an element already present does not change its position.
+ */
+public class PriorityWaitlist implements Waitlist {
+
+  private final Map<AbstractState, Long> insertionIndices = new HashMap<>();
+  private final TreeSet<AbstractState> waitlist;
+  private long insertionCount;
+
+  /**
+   * Create a waitlist ordered by the given comparator.
+   *
+   * @param comparator the priority of the abstract states, the smallest is popped first
+   */
+  public PriorityWaitlist(Comparator<? super AbstractState> comparator) {
+    Comparator<AbstractState> priority = comparator::compare;
+    this.waitlist = new TreeSet<>(priority.thenComparingLong(insertionIndices::get));
+  }
+
+  // implementations for Waitlist
+
+  @Override
+  public void add(AbstractState abstractState) {
+    if (!insertionIndices.containsKey(abstractState)) {
+      insertionIndices.put(abstractState, insertionCount++);
+      waitlist.add(abstractState);
+    }
+  }
+
+  @Override
+  public void addAll(Collection<? extends AbstractState> abstractStates) {
+    abstractStates.forEach(this::add);
+  }
+
+  @Override
+  public void clear() {
+    waitlist.clear();
+    insertionIndices.clear();
+  }
+
+  @Override
+  public boolean contains(AbstractState abstractState) {
+    return insertionIndices.containsKey(abstractState);
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return waitlist.isEmpty();
+  }
+
+  @Override
+  public AbstractState pop() {
+    AbstractState result = waitlist.first();
+    remove(result);
+    return result;
+  }
+
+  @Override
+  public boolean remove(AbstractState abstractState) {
+    if (!insertionIndices.containsKey(abstractState)) {
+      return false;
+    }
+    // The insertion index is needed for locating the element in the tree.
+    waitlist.remove(abstractState);
+    insertionIndices.remove(abstractState);
+    return true;
+  }
+
+  @Override
+  public void removeAll(Collection<?> abstractStates) {
+    for (Object abstractState : abstractStates) {
+      if (abstractState instanceof AbstractState) {
+        remove((AbstractState) abstractState);
+      }
+    }
+  }
+
+  @Override
+  public int size() {
+    return waitlist.size();
+  }
+
+  // implementations for Iterable
+
+  @NotNull
+  @Override
+  public Iterator<AbstractState> iterator() {
+    return Collections.unmodifiableSet(waitlist).iterator();
+  }
+}
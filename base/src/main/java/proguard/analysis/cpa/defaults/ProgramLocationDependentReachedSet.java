@@ -18,12 +18,16 @@
 
 package proguard.analysis.cpa.defaults;
 
+import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.Supplier;
 import proguard.analysis.cpa.interfaces.AbstractState;
 import proguard.analysis.cpa.interfaces.CfaEdge;
 import proguard.analysis.cpa.interfaces.CfaNode;
@@ -36,17 +40,41 @@ import proguard.classfile.Signature;
  * assumes the analysis does merge the {@link AbstractState}s belonging to different {@link
  * CfaNode}s and stores them in separate bins.
  *
+ * <p>The reached set is serialized as the list of its abstract states, from which the bins are
+ * rebuilt when it is deserialized.
+ *
  * @author Dmitry Ivanov
  */
-public final class ProgramLocationDependentReachedSet<
+public class ProgramLocationDependentReachedSet<
         CfaNodeT extends CfaNode<CfaEdgeT, SignatureT>,
         CfaEdgeT extends CfaEdge<CfaNodeT>,
         AbstractStateT extends
             AbstractState & ProgramLocationDependent<CfaNodeT, CfaEdgeT, SignatureT>,
         SignatureT extends Signature>
-    implements ReachedSet {
+    implements ReachedSet, Serializable {
+
+  private static final long serialVersionUID = 1L;
 
-  private Map<CfaNodeT, Set<AbstractStateT>> locationToStates = new LinkedHashMap<>();
+  private final Map<CfaNodeT, Set<AbstractStateT>> locationToStates;
+  private final Supplier<Set<AbstractStateT>> binFactory;
+
+  /** Create an empty reached set with a deterministic iteration order. */
+  public ProgramLocationDependentReachedSet() {
+    this(new LinkedHashMap<>(), LinkedHashSet::new);
+  }
+
+  /**
+   * Create an empty reached set on top of the given carrier collections.
+   *
+   * @param locationToStates an empty map from program locations to their bins
+   * @param binFactory a supplier of empty bins
+   */
+  protected ProgramLocationDependentReachedSet(
+      Map<CfaNodeT, Set<AbstractStateT>> locationToStates,
+      Supplier<Set<AbstractStateT>> binFactory) {
+    this.locationToStates = locationToStates;
+    this.binFactory = binFactory;
+  }
 
   // implementations for ReachedSet
 
@@ -54,7 +82,7 @@ public final class ProgramLocationDependentReachedSet<
   public boolean add(AbstractState abstractState) {
     AbstractStateT state = (AbstractStateT) abstractState;
     return locationToStates
-        .computeIfAbsent(state.getProgramLocation(), x -> new LinkedHashSet<>())
+        .computeIfAbsent(state.getProgramLocation(), x -> binFactory.get())
         .add(state);
   }
 
@@ -72,8 +100,8 @@ public final class ProgramLocationDependentReachedSet<
   @Override
   public boolean remove(AbstractState abstractState) {
     AbstractStateT state = (AbstractStateT) abstractState;
-    CfaNodeT location = state.getProgramLocation();
-    return locationToStates.containsKey(location) && locationToStates.get(location).remove(state);
+    Set<AbstractStateT> states = locationToStates.get(state.getProgramLocation());
+    return states != null && states.remove(state);
   }
 
   @Override
@@ -108,4 +136,41 @@ public final class ProgramLocationDependentReachedSet<
   public Collection<? extends AbstractState> getReached(CfaNodeT location) {
     return locationToStates.getOrDefault(location, Collections.emptySet());
   }
+
+  // implementations for Serializable
+
+  /** Replaces the reached set by the list of its states, since the bin factory is a lambda. */
+  protected Object writeReplace() {
+    return new SerializedReachedSet(new ArrayList<>(asCollection()), false);
+  }
+
+  /** The serialized form of a {@link ProgramLocationDependentReachedSet}. */
+  protected static class SerializedReachedSet implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final List<AbstractState> states;
+    private final boolean concurrent;
+
+    /**
+     * Create the serialized form of a reached set.
+     *
+     * @param states the abstract states of the reached set
+     * @param concurrent whether the reached set is a {@link
+     *     ConcurrentProgramLocationDependentReachedSet}
+     */
+    protected SerializedReachedSet(List<AbstractState> states, boolean concurrent) {
+      this.states = states;
+      this.concurrent = concurrent;
+    }
+
+    private Object readResolve() {
+      ReachedSet reachedSet =
+          concurrent
+              ? new ConcurrentProgramLocationDependentReachedSet<>()
+              : new ProgramLocationDependentReachedSet<>();
+      reachedSet.addAll(states);
+      return reachedSet;
+    }
+  }
 }
@@ -0,0 +1,38 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package proguard.analysis.cpa.defaults;
+
+import proguard.analysis.cpa.interfaces.Waitlist;
+
+/**
+ * This {@link Waitlist} pops the state whose location comes first in the reverse postorder of the
+ * {@link Cfa}, i.e., it processes all predecessors of a location, except along back edges, before
+ * the location itself. This reduces the number of merges and of reprocessed states.
+ */
+public class ReversePostorderWaitlist extends PriorityWaitlist {
+
+  /**
+   * Create a waitlist ordered by reverse postorder.
+   *
+   * @param cfaNodeOrder the order of the CFA nodes, which can be shared among waitlists
+   */
+  public ReversePostorderWaitlist(CfaNodeOrder<?, ?, ?> cfaNodeOrder) {
+    super(cfaNodeOrder.reversePostorderComparator());
+  }
+}
@@ -20,10 +20,10 @@ package proguard.analysis.cpa.jvm.cfa;
 
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import proguard.analysis.cpa.defaults.Cfa;
@@ -57,7 +57,7 @@ import proguard.classfile.MethodSignature;
 public class JvmCfa extends Cfa<JvmCfaNode, JvmCfaEdge, MethodSignature> {
 
   private final Map<MethodSignature, Map<Integer, JvmCatchCfaNode>> functionCatchNodes =
-      new HashMap<>();
+      new ConcurrentHashMap<>();
 
   @Override
   public Stream<JvmCfaNode> getAllNodes() {
@@ -93,7 +93,9 @@ public class JvmCfa extends Cfa<JvmCfaNode, JvmCfaEdge, MethodSignature> {
    * Adds a catch node to the CFA (i.e. a node indicating the beginning of an exception handler).
    */
   public void addFunctionCatchNode(MethodSignature signature, JvmCatchCfaNode node, int offset) {
-    functionCatchNodes.computeIfAbsent(signature, x -> new HashMap<>()).put(offset, node);
+    functionCatchNodes
+        .computeIfAbsent(signature, x -> new ConcurrentHashMap<>())
+        .put(offset, node);
   }
 
   /**
@@ -110,15 +112,11 @@ public class JvmCfa extends Cfa<JvmCfaNode, JvmCfaEdge, MethodSignature> {
    * the method and returns it.
    */
   public JvmCfaNode getFunctionReturnExitNode(MethodSignature signature, Clazz clazz) {
-    // get the return exit location node
-    JvmCfaNode exitNode = getFunctionNode(signature, CfaNode.RETURN_EXIT_NODE_OFFSET);
-
-    if (exitNode == null) {
-      exitNode = new JvmCfaNode(signature, CfaNode.RETURN_EXIT_NODE_OFFSET, clazz);
-      addFunctionNode(signature, exitNode, CfaNode.RETURN_EXIT_NODE_OFFSET);
-    }
-
-    return exitNode;
+    // get the return exit location node, atomically, since analyses may run in parallel
+    return addFunctionNodeIfAbsent(
+        signature,
+        CfaNode.RETURN_EXIT_NODE_OFFSET,
+        () -> new JvmCfaNode(signature, CfaNode.RETURN_EXIT_NODE_OFFSET, clazz));
   }
 
   /**
@@ -126,15 +124,11 @@ public class JvmCfa extends Cfa<JvmCfaNode, JvmCfaEdge, MethodSignature> {
    * specified method if present, otherwise creates the exit node for the method and returns it.
    */
   public JvmCfaNode getFunctionExceptionExitNode(MethodSignature signature, Clazz clazz) {
-    // get the exit location node
-    JvmCfaNode exitNode = getFunctionNode(signature, CfaNode.EXCEPTION_EXIT_NODE_OFFSET);
-
-    if (exitNode == null) {
-      exitNode = new JvmCfaNode(signature, CfaNode.EXCEPTION_EXIT_NODE_OFFSET, clazz);
-      addFunctionNode(signature, exitNode, CfaNode.EXCEPTION_EXIT_NODE_OFFSET);
-    }
-
-    return exitNode;
+    // get the exit location node, atomically, since analyses may run in parallel
+    return addFunctionNodeIfAbsent(
+        signature,
+        CfaNode.EXCEPTION_EXIT_NODE_OFFSET,
+        () -> new JvmCfaNode(signature, CfaNode.EXCEPTION_EXIT_NODE_OFFSET, clazz));
   }
 
   /**
@@ -20,6 +20,7 @@ package proguard.analysis.cpa.jvm.domain.memory;
 
 import proguard.analysis.cpa.defaults.BamCpaRun;
 import proguard.analysis.cpa.defaults.BreadthFirstWaitlist;
+import proguard.analysis.cpa.defaults.ConcurrentProgramLocationDependentReachedSet;
 import proguard.analysis.cpa.defaults.LatticeAbstractState;
 import proguard.analysis.cpa.defaults.NeverAbortOperator;
 import proguard.analysis.cpa.defaults.ProgramLocationDependentReachedSet;
@@ -97,7 +98,9 @@ public abstract class JvmMemoryLocationBamCpaRun<
 
   @Override
   public ReachedSet createReachedSet() {
-    return new ProgramLocationDependentReachedSet<>();
+    return parallelism > 1
+        ? new ConcurrentProgramLocationDependentReachedSet<>()
+        : new ProgramLocationDependentReachedSet<>();
   }
 
   @Override
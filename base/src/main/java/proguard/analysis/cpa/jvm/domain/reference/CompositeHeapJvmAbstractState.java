@@ -18,6 +18,7 @@
 
 package proguard.analysis.cpa.jvm.domain.reference;
 
+import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.stream.Collectors;
@@ -46,7 +47,10 @@ import proguard.classfile.MethodSignature;
  */
 public class CompositeHeapJvmAbstractState extends AbstractWrapperState
     implements LatticeAbstractState<CompositeHeapJvmAbstractState>,
-        ProgramLocationDependent<JvmCfaNode, JvmCfaEdge, MethodSignature> {
+        ProgramLocationDependent<JvmCfaNode, JvmCfaEdge, MethodSignature>,
+        Serializable {
+
+  private static final long serialVersionUID = 1L;
 
   // the position of the {@link JvmReferenceAbstractState} among the wrapped {@link
   // JvmAbstractState}
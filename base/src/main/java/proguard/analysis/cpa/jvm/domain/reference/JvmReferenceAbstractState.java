@@ -41,6 +41,8 @@ import proguard.analysis.cpa.jvm.witness.JvmStaticFieldLocation;
  */
 public class JvmReferenceAbstractState extends JvmAbstractState<SetAbstractState<Reference>> {
 
+  private static final long serialVersionUID = 1L;
+
   /**
    * Create a JVM reference abstract state.
    *
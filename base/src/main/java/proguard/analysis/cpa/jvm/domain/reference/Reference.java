@@ -18,6 +18,7 @@
 
 package proguard.analysis.cpa.jvm.domain.reference;
 
+import java.io.Serializable;
 import java.util.Objects;
 import proguard.analysis.cpa.jvm.cfa.nodes.JvmCfaNode;
 import proguard.analysis.cpa.jvm.cfa.nodes.JvmUnknownCfaNode;
@@ -29,7 +30,9 @@ import proguard.analysis.cpa.jvm.witness.JvmMemoryLocation;
  *
  * @author Dmitry Ivanov
  */
-public class Reference {
+public class Reference implements Serializable {
+
+  private static final long serialVersionUID = 1L;
 
   /** The program point at which the reference was created. */
   public final JvmCfaNode creationTime;
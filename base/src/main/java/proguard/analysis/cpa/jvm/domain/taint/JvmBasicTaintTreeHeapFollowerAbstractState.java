@@ -38,6 +38,8 @@ public class JvmBasicTaintTreeHeapFollowerAbstractState
     extends JvmTreeHeapFollowerAbstractState<SetAbstractState<JvmTaintSource>>
     implements JvmTaintHeapAbstractState {
 
+  private static final long serialVersionUID = 1L;
+
   /**
    * Create a taint follower heap abstract state.
    *
@@ -33,6 +33,8 @@ import proguard.analysis.cpa.jvm.state.heap.JvmHeapAbstractState;
  */
 public class JvmTaintAbstractState extends JvmAbstractState<SetAbstractState<JvmTaintSource>> {
 
+  private static final long serialVersionUID = 1L;
+
   /**
    * Create a taint JVM abstract state.
    *
@@ -18,12 +18,23 @@
 
 package proguard.analysis.cpa.jvm.domain.taint;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Set;
+import java.util.stream.Collectors;
+import proguard.analysis.cpa.bam.BamCache;
+import proguard.analysis.cpa.bam.BamCacheImpl;
+import proguard.analysis.cpa.bam.ContentAddressedBlockAbstractionStore;
 import proguard.analysis.cpa.bam.ExpandOperator;
+import proguard.analysis.cpa.bam.PersistentBamCache;
 import proguard.analysis.cpa.bam.ReduceOperator;
 import proguard.analysis.cpa.defaults.DelegateAbstractDomain;
 import proguard.analysis.cpa.defaults.MergeJoinOperator;
@@ -33,6 +44,7 @@ import proguard.analysis.cpa.defaults.StopJoinOperator;
 import proguard.analysis.cpa.interfaces.AbortOperator;
 import proguard.analysis.cpa.interfaces.AbstractDomain;
 import proguard.analysis.cpa.interfaces.AbstractState;
+import proguard.analysis.cpa.interfaces.ReachedSet;
 import proguard.analysis.cpa.jvm.cfa.JvmCfa;
 import proguard.analysis.cpa.jvm.cfa.edges.JvmCfaEdge;
 import proguard.analysis.cpa.jvm.cfa.nodes.JvmCfaNode;
@@ -52,6 +64,8 @@ import proguard.analysis.cpa.jvm.state.heap.JvmForgetfulHeapAbstractState;
 import proguard.analysis.cpa.jvm.state.heap.tree.HeapNode;
 import proguard.analysis.cpa.jvm.state.heap.tree.JvmTreeHeapPrincipalAbstractState;
 import proguard.analysis.cpa.jvm.util.JvmBamCpaRun;
+import proguard.analysis.cpa.jvm.util.JvmBlockAbstractionCodec;
+import proguard.analysis.cpa.jvm.util.JvmMethodContentHasher;
 import proguard.analysis.cpa.state.HashMapAbstractStateFactory;
 import proguard.analysis.cpa.state.MapAbstractStateFactory;
 import proguard.classfile.MethodSignature;
@@ -64,6 +78,10 @@ import proguard.classfile.MethodSignature;
 public class JvmTaintBamCpaRun<OuterAbstractStateT extends AbstractState>
     extends JvmBamCpaRun<SimpleCpa, SetAbstractState<JvmTaintSource>, OuterAbstractStateT> {
 
+  // The version of the format of the persisted block abstractions, to be incremented whenever the
+  // serialized abstract states or the way they are looked up change.
+  private static final int CACHE_FORMAT_VERSION = 1;
+
   private final Set<? extends JvmTaintSource> taintSources;
   private final MethodSignature mainMethodSignature;
   private final MapAbstractStateFactory<String, SetAbstractState<JvmTaintSource>>
@@ -241,6 +259,98 @@ public class JvmTaintBamCpaRun<OuterAbstractStateT extends AbstractState>
     }
   }
 
+  /**
+   * Executes the analysis. If its cache is a {@link PersistentBamCache}, the computed block
+   * abstractions are persisted afterwards, and the persisted block abstractions of methods which
+   * changed or are not part of the CFA anymore are removed.
+   */
+  @Override
+  public ReachedSet execute() {
+    ReachedSet reachedSet = super.execute();
+    if (cache instanceof PersistentBamCache) {
+      ((PersistentBamCache<MethodSignature>) cache)
+          .persist(
+              cfa.getFunctionEntryNodes().stream()
+                  .map(JvmCfaNode::getSignature)
+                  .collect(Collectors.toList()));
+    }
+    return reachedSet;
+  }
+
+  /**
+   * Returns a description of the configuration of the analysis which its block abstractions depend
+   * on, i.e., the format of the persisted block abstractions, the heap model, the call stack limit,
+   * the taint sources, and the textual representations of the taint transformers and map abstract
+   * state factories. Configuration objects without a stable textual representation, like lambdas
+   * or objects without a {@link Object#toString()} implementation, make the description differ
+   * between runs, so that their block abstractions are not reused.
+   */
+  public String getConfiguration() {
+    StringBuilder builder =
+        new StringBuilder(getClass().getName())
+            .append("\ncache format version: ")
+            .append(CACHE_FORMAT_VERSION)
+            .append("\nheap model: ")
+            .append(heapModel)
+            .append("\nmaximum call stack depth: ")
+            .append(getMaxCallStackDepth())
+            .append("\nreduce heap: ")
+            .append(reduceHeap);
+    taintSources.stream()
+        .map(Object::toString)
+        .sorted()
+        .forEach(source -> builder.append("\nsource: ").append(source));
+    taintTransformers.entrySet().stream()
+        .map(e -> e.getKey().getFqn() + " -> " + configurationValue(e.getValue()))
+        .sorted()
+        .forEach(transformer -> builder.append("\ntransformer: ").append(transformer));
+    sharedFactories()
+        .forEach(
+            (key, factory) ->
+                builder
+                    .append("\n")
+                    .append(key)
+                    .append(": ")
+                    .append(configurationValue(factory)));
+    return builder.toString();
+  }
+
+  /** Returns the class and the textual representation of the given configuration object. */
+  private static String configurationValue(Object value) {
+    return value.getClass().getName() + " " + value;
+  }
+
+  /**
+   * Returns a codec for the block abstractions of this analysis, e.g., for a {@link
+   * ContentAddressedBlockAbstractionStore}. Its taint sources and map abstract state factories are
+   * shared with the deserialized abstract states.
+   */
+  public JvmBlockAbstractionCodec createBlockAbstractionCodec() {
+    Map<String, Object> sharedObjects = new HashMap<>();
+    Set<String> ambiguousKeys = new HashSet<>();
+    for (JvmTaintSource taintSource : taintSources) {
+      String key = "source: " + taintSource;
+      if (sharedObjects.putIfAbsent(key, taintSource) != null) {
+        ambiguousKeys.add(key);
+      }
+    }
+    // Sources which cannot be told apart are not shared, so that their states are not persisted.
+    sharedObjects.keySet().removeAll(ambiguousKeys);
+    sharedObjects.putAll(sharedFactories());
+    return new JvmBlockAbstractionCodec(cfa, sharedObjects);
+  }
+
+  /** Returns the map abstract state factories by their role. */
+  private Map<String, MapAbstractStateFactory<?, ?>> sharedFactories() {
+    Map<String, MapAbstractStateFactory<?, ?>> factories = new LinkedHashMap<>();
+    factories.put("static field factory", staticFieldMapAbstractStateFactory);
+    factories.put("principal heap factory", principalHeapMapAbstractStateFactory);
+    factories.put("principal heap node factory", principalHeapNodeMapAbstractStateFactory);
+    factories.put("follower heap factory", followerHeapMapAbstractStateFactory);
+    factories.put("follower heap node factory", followerHeapNodeMapAbstractStateFactory);
+    return factories;
+  }
+
   /**
    * A builder for {@link JvmTaintBamCpaRun}. It assumes either the best performing parameters or
    * the most basic one, if there is no absolute benefit.
@@ -263,6 +373,8 @@ public class JvmTaintBamCpaRun<OuterAbstractStateT extends AbstractState>
         followerHeapNodeMapAbstractStateFactory = HashMapAbstractStateFactory.getInstance();
 
     protected Map<MethodSignature, JvmTaintTransformer> taintTransformers = Collections.emptyMap();
+    protected Path cacheDirectory;
+    protected String cacheConfiguration = "";
 
     // implementations for JvmBamCpaRun.Builder
 
@@ -272,20 +384,38 @@ public class JvmTaintBamCpaRun<OuterAbstractStateT extends AbstractState>
       if (cfa == null || mainSignature == null) {
         throw new IllegalStateException("CFA and the main signature must be set");
       }
-      return new JvmTaintBamCpaRun<>(
-          cfa,
-          taintSources,
-          mainSignature,
-          maxCallStackDepth,
-          heapModel,
-          abortOperator,
-          reduceHeap,
-          staticFieldMapAbstractStateFactory,
-          principalHeapMapAbstractStateFactory,
-          principalHeapNodeMapAbstractStateFactory,
-          followerHeapMapAbstractStateFactory,
-          followerHeapNodeMapAbstractStateFactory,
-          taintTransformers);
+      JvmTaintBamCpaRun<?> run =
+          new JvmTaintBamCpaRun<>(
+              cfa,
+              taintSources,
+              mainSignature,
+              maxCallStackDepth,
+              heapModel,
+              abortOperator,
+              reduceHeap,
+              staticFieldMapAbstractStateFactory,
+              principalHeapMapAbstractStateFactory,
+              principalHeapNodeMapAbstractStateFactory,
+              followerHeapMapAbstractStateFactory,
+              followerHeapNodeMapAbstractStateFactory,
+              taintTransformers);
+      run.cache = getCache();
+      if (cacheDirectory != null) {
+        BamCache<MethodSignature> delegate = run.cache == null ? new BamCacheImpl<>() : run.cache;
+        try {
+          run.cache =
+              new PersistentBamCache<>(
+                  delegate,
+                  new ContentAddressedBlockAbstractionStore<>(
+                      cacheDirectory,
+                      run.getConfiguration() + cacheConfiguration,
+                      new JvmMethodContentHasher(cfa),
+                      run.createBlockAbstractionCodec()));
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      }
+      return run;
     }
 
     @Override
@@ -303,6 +433,11 @@ public class JvmTaintBamCpaRun<OuterAbstractStateT extends AbstractState>
       return (Builder) super.setReduceHeap(reduceHeap);
     }
 
+    @Override
+    public Builder setCache(BamCache<?> cache) {
+      return (Builder) super.setCache(cache);
+    }
+
     @Override
     public Builder setCfa(JvmCfa cfa) {
       return (Builder) super.setCfa(cfa);
@@ -386,5 +521,26 @@ public class JvmTaintBamCpaRun<OuterAbstractStateT extends AbstractState>
       this.taintTransformers = taintTransformers;
       return this;
     }
+
+    /**
+     * Sets a directory in which block abstractions are persisted, so that they are reused by
+     * later runs for methods whose code and callees did not change. The block abstractions of runs
+     * with different configurations are kept apart. The cache set with {@link #setCache(BamCache)},
+     * if any, holds the block abstractions of the current run.
+     */
+    public Builder setCacheDirectory(Path cacheDirectory) {
+      this.cacheDirectory = cacheDirectory;
+      return this;
+    }
+
+    /**
+     * Sets a description of additional configuration which the persisted block abstractions depend
+     * on, e.g., of a run wrapping this one. Runs with different descriptions don't reuse each
+     * other's block abstractions. Only relevant if a cache directory is set.
+     */
+    public Builder setCacheConfiguration(String cacheConfiguration) {
+      this.cacheConfiguration = cacheConfiguration;
+      return this;
+    }
   }
 }
@@ -18,6 +18,7 @@
 
 package proguard.analysis.cpa.jvm.domain.taint;
 
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -27,6 +28,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
+import proguard.analysis.cpa.bam.BamCache;
 import proguard.analysis.cpa.bam.BlockAbstraction;
 import proguard.analysis.cpa.defaults.NeverAbortOperator;
 import proguard.analysis.cpa.defaults.ProgramLocationDependentReachedSet;
@@ -316,6 +318,9 @@ public class JvmTaintMemoryLocationBamCpaRun
     private Collection<? extends JvmTaintSink> taintSinks = Collections.emptySet();
     private AbortOperator abortOperator = NeverAbortOperator.INSTANCE;
     private AbortOperator memoryLocationAbortOperator = NeverAbortOperator.INSTANCE;
+    private int memoryLocationParallelism = 1;
+    private BamCache<?> cache;
+    private Path cacheDirectory;
     private boolean reduceHeap = true;
     private MapAbstractStateFactory<String, SetAbstractState<JvmTaintSource>>
         staticFieldMapAbstractStateFactory = HashMapAbstractStateFactory.getInstance();
@@ -335,23 +340,34 @@ public class JvmTaintMemoryLocationBamCpaRun
       if (cfa == null || mainSignature == null) {
         throw new IllegalStateException("CFA and the main signature must be set");
       }
-      return new JvmTaintMemoryLocationBamCpaRun(
-          cfa,
-          taintSources,
-          mainSignature,
-          maxCallStackDepth,
-          heapModel,
-          threshold,
-          taintSinks,
-          abortOperator,
-          memoryLocationAbortOperator,
-          reduceHeap,
-          staticFieldMapAbstractStateFactory,
-          principalHeapMapAbstractStateFactory,
-          principalHeapNodeMapAbstractStateFactory,
-          followerHeapMapAbstractStateFactory,
-          followerHeapNodeMapAbstractStateFactory,
-          taintTransformers);
+      JvmTaintBamCpaRun<?> taintCpaRun =
+          new JvmTaintBamCpaRun.Builder()
+              .setCfa(cfa)
+              .setTaintSources(taintSources)
+              .setMainSignature(mainSignature)
+              .setMaxCallStackDepth(maxCallStackDepth)
+              .setHeapModel(heapModel)
+              .setAbortOperator(abortOperator)
+              .setReduceHeap(reduceHeap)
+              .setCache(cache)
+              .setCacheDirectory(cacheDirectory)
+              .setCacheConfiguration(
+                  taintSinks.stream()
+                      .map(sink -> "\nsink: " + sink)
+                      .sorted()
+                      .collect(Collectors.joining()))
+              .setStaticFieldMapAbstractStateFactory(staticFieldMapAbstractStateFactory)
+              .setPrincipalHeapMapAbstractStateFactory(principalHeapMapAbstractStateFactory)
+              .setPrincipalHeapNodeMapAbstractStateFactory(principalHeapNodeMapAbstractStateFactory)
+              .setFollowerHeapMapAbstractStateFactory(followerHeapMapAbstractStateFactory)
+              .setFollowerHeapNodeMapAbstractStateFactory(followerHeapNodeMapAbstractStateFactory)
+              .setTaintTransformers(taintTransformers)
+              .build();
+      JvmTaintMemoryLocationBamCpaRun run =
+          new JvmTaintMemoryLocationBamCpaRun(
+              taintCpaRun, threshold, taintSinks, memoryLocationAbortOperator);
+      run.setParallelism(memoryLocationParallelism);
+      return run;
     }
 
     /** Sets the control flow automaton. */
@@ -408,6 +424,36 @@ public class JvmTaintMemoryLocationBamCpaRun
       return this;
     }
 
+    /**
+     * Sets the number of threads used for trace reconstruction. With more than one thread, the
+     * traces are reconstructed by a {@link proguard.analysis.cpa.algorithms.ParallelCpaAlgorithm}.
+     */
+    public Builder setMemoryLocationParallelism(int memoryLocationParallelism) {
+      this.memoryLocationParallelism = memoryLocationParallelism;
+      return this;
+    }
+
+    /**
+     * Sets the cache of the taint analysis, e.g., a {@link
+     * proguard.analysis.cpa.bam.PersistentBamCache} reusing the block abstractions of previous
+     * runs. By default, a fresh {@link proguard.analysis.cpa.bam.BamCacheImpl} is used.
+     */
+    public Builder setCache(BamCache<?> cache) {
+      this.cache = cache;
+      return this;
+    }
+
+    /**
+     * Sets a directory in which the block abstractions of the taint analysis are persisted, so
+     * that they are reused by later runs for methods whose code and callees did not change. The
+     * block abstractions of runs with different sources, sinks, transformers, heap models, or call
+     * stack limits are kept apart.
+     */
+    public Builder setCacheDirectory(Path cacheDirectory) {
+      this.cacheDirectory = cacheDirectory;
+      return this;
+    }
+
     /** Sets whether the heap should be reduced before method calls. */
     public Builder setReduceHeap(boolean reduceHeap) {
       this.reduceHeap = reduceHeap;
@@ -45,6 +45,8 @@ public class JvmTaintTreeHeapFollowerAbstractState
     extends JvmTreeHeapFollowerAbstractState<SetAbstractState<JvmTaintSource>>
     implements JvmTaintHeapAbstractState {
 
+  private static final long serialVersionUID = 1L;
+
   /**
    * Create a taint follower heap abstract state.
    *
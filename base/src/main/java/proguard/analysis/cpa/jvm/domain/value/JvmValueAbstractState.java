@@ -41,6 +41,9 @@ import proguard.evaluation.value.object.AnalyzedObjectFactory;
 
 /** */
 public class JvmValueAbstractState extends JvmAbstractState<ValueAbstractState> {
+
+  private static final long serialVersionUID = 1L;
+
   private static final Logger logger = LogManager.getLogger(JvmValueAbstractState.class);
 
   private final ValueFactory valueFactory;
@@ -4,6 +4,7 @@ import static java.util.Collections.singletonList;
 import static proguard.analysis.cpa.jvm.domain.value.ValueAbstractState.UNKNOWN;
 
 import java.util.Collection;
+import proguard.analysis.cpa.bam.BamCache;
 import proguard.analysis.cpa.bam.ExpandOperator;
 import proguard.analysis.cpa.bam.ReduceOperator;
 import proguard.analysis.cpa.defaults.DelegateAbstractDomain;
@@ -150,19 +151,22 @@ public class JvmValueBamCpaRun
 
     @Override
     public JvmValueBamCpaRun build() {
-      return new JvmValueBamCpaRun(
-          cfa,
-          mainSignature,
-          valueFactory,
-          transferRelationFactory,
-          new ExecutingInvocationUnit.Builder()
-              .setEnableSameInstanceIdApproximation(true)
-              .build(valueFactory),
-          maxCallStackDepth,
-          heapModel,
-          staticFields,
-          abortOperator,
-          reduceHeap);
+      JvmValueBamCpaRun run =
+          new JvmValueBamCpaRun(
+              cfa,
+              mainSignature,
+              valueFactory,
+              transferRelationFactory,
+              new ExecutingInvocationUnit.Builder()
+                  .setEnableSameInstanceIdApproximation(true)
+                  .build(valueFactory),
+              maxCallStackDepth,
+              heapModel,
+              staticFields,
+              abortOperator,
+              reduceHeap);
+      run.cache = getCache();
+      return run;
     }
 
     @Override
@@ -205,6 +209,12 @@ public class JvmValueBamCpaRun
       return this;
     }
 
+    @Override
+    public Builder setCache(BamCache<?> cache) {
+      this.cache = cache;
+      return this;
+    }
+
     @Override
     public Builder setMaxCallStackDepth(int maxCallStackDepth) {
       return (Builder) super.setMaxCallStackDepth(maxCallStackDepth);
@@ -18,6 +18,7 @@
 
 package proguard.analysis.cpa.jvm.state;
 
+import java.io.Serializable;
 import java.util.List;
 import proguard.analysis.cpa.defaults.LatticeAbstractState;
 import proguard.analysis.cpa.defaults.MapAbstractState;
@@ -36,7 +37,11 @@ import proguard.classfile.MethodSignature;
  */
 public class JvmAbstractState<StateT extends LatticeAbstractState<StateT>>
     implements LatticeAbstractState<JvmAbstractState<StateT>>,
-        ProgramLocationDependent<JvmCfaNode, JvmCfaEdge, MethodSignature> {
+        ProgramLocationDependent<JvmCfaNode, JvmCfaEdge, MethodSignature>,
+        Serializable {
+
+  private static final long serialVersionUID = 1L;
+
   public static final String DEFAULT_FIELD = "";
 
   protected final JvmFrameAbstractState<StateT> frame;
@@ -86,6 +91,14 @@ public class JvmAbstractState<StateT extends LatticeAbstractState<StateT>>
         && staticFields.isLessOrEqual(abstractState.staticFields);
   }
 
+  /**
+   * Returns the program location of states joined from different program locations, e.g., to
+   * restore it when states are deserialized.
+   */
+  public static JvmCfaNode getTopLocation() {
+    return topLocation;
+  }
+
   // implementations for ProgramLocationDependent
 
   @Override
@@ -182,7 +195,7 @@ public class JvmAbstractState<StateT extends LatticeAbstractState<StateT>>
 
   /** Empties the operand stack. */
   public void clearOperandStack() {
-    frame.getOperandStack().clear();
+    frame.clearOperandStack();
   }
 
   /**
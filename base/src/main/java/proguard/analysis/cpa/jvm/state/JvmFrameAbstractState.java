@@ -18,6 +18,7 @@
 
 package proguard.analysis.cpa.jvm.state;
 
+import java.io.Serializable;
 import java.util.List;
 import java.util.Objects;
 import proguard.analysis.cpa.defaults.LatticeAbstractState;
@@ -30,13 +31,28 @@ import proguard.analysis.cpa.defaults.StackAbstractState;
  * restrict the way one models values, i.e., one abstract state may correspond to a byte sequence of
  * arbitrary length.
  *
+ * <p>Copies and joins share the operand stack and the local variable array with the frames they are
+ * made from. A frame copies a shared component before it first modifies it, so that, since most
+ * instructions only modify one of the two, most copying of the other one is avoided. Copying,
+ * joining, and reading a frame does not modify it, so that frames can be read concurrently, e.g.,
+ * by the threads of a parallel analysis. The frames a copy or a join is made from must not be
+ * modified afterwards, which holds for the abstract states in a reached set. The getters of the
+ * operand stack and the local variable array return the possibly shared instances, which must not
+ * be modified. Frames are modified with their own methods instead.
+ *
  * @author Dmitry Ivanov
  */
 public class JvmFrameAbstractState<StateT extends LatticeAbstractState<StateT>>
-    implements LatticeAbstractState<JvmFrameAbstractState<StateT>> {
+    implements LatticeAbstractState<JvmFrameAbstractState<StateT>>, Serializable {
+
+  private static final long serialVersionUID = 1L;
 
-  protected final ListAbstractState<StateT> localVariables;
-  protected final StackAbstractState<StateT> operandStack;
+  protected ListAbstractState<StateT> localVariables;
+  protected StackAbstractState<StateT> operandStack;
+  // whether the components may be shared with the frames this frame was made from and need to be
+  // copied before writing
+  private boolean localVariablesShared;
+  private boolean operandStackShared;
 
   /** Create an empty frame. */
   public JvmFrameAbstractState() {
@@ -59,11 +75,24 @@ public class JvmFrameAbstractState<StateT extends LatticeAbstractState<StateT>>
 
   @Override
   public JvmFrameAbstractState<StateT> join(JvmFrameAbstractState<StateT> abstractState) {
+    ListAbstractState<StateT> joinedLocalVariables =
+        localVariables.join(abstractState.localVariables);
+    StackAbstractState<StateT> joinedOperandStack = operandStack.join(abstractState.operandStack);
+    if (joinedLocalVariables == localVariables && joinedOperandStack == operandStack) {
+      return this;
+    }
     JvmFrameAbstractState<StateT> answer =
-        new JvmFrameAbstractState<>(
-            localVariables.join(abstractState.localVariables),
-            operandStack.join(abstractState.operandStack));
-    return equals(answer) ? this : answer;
+        new JvmFrameAbstractState<>(joinedLocalVariables, joinedOperandStack);
+    if (equals(answer)) {
+      return this;
+    }
+    // The join may reuse the components of either frame.
+    answer.localVariablesShared =
+        joinedLocalVariables == localVariables
+            || joinedLocalVariables == abstractState.localVariables;
+    answer.operandStackShared =
+        joinedOperandStack == operandStack || joinedOperandStack == abstractState.operandStack;
+    return answer;
   }
 
   @Override
@@ -76,9 +105,10 @@ public class JvmFrameAbstractState<StateT extends LatticeAbstractState<StateT>>
 
   @Override
   public JvmFrameAbstractState<StateT> copy() {
-    return new JvmFrameAbstractState<>(
-        (ListAbstractState<StateT>) localVariables.copy(),
-        (StackAbstractState<StateT>) operandStack.copy());
+    JvmFrameAbstractState<StateT> copy = new JvmFrameAbstractState<>(localVariables, operandStack);
+    copy.localVariablesShared = true;
+    copy.operandStackShared = true;
+    return copy;
   }
 
   @Override
@@ -110,7 +140,7 @@ public class JvmFrameAbstractState<StateT extends LatticeAbstractState<StateT>>
 
   /** Removes the top element of the operand stack end returns it. */
   public StateT pop() {
-    return operandStack.pop();
+    return ownOperandStack().pop();
   }
 
   /**
@@ -118,12 +148,12 @@ public class JvmFrameAbstractState<StateT extends LatticeAbstractState<StateT>>
    * the stack is empty.
    */
   public StateT popOrDefault(StateT defaultState) {
-    return operandStack.popOrDefault(defaultState);
+    return ownOperandStack().popOrDefault(defaultState);
   }
 
   /** Inserts {@code state} to the top of the operand stack and returns it. */
   public StateT push(StateT state) {
-    return operandStack.push(state);
+    return ownOperandStack().push(state);
   }
 
   /**
@@ -131,10 +161,20 @@ public class JvmFrameAbstractState<StateT extends LatticeAbstractState<StateT>>
    * {@code states}.
    */
   public List<StateT> pushAll(List<StateT> states) {
-    states.forEach(operandStack::push);
+    states.forEach(ownOperandStack()::push);
     return states;
   }
 
+  /** Empties the operand stack. */
+  public void clearOperandStack() {
+    if (operandStackShared) {
+      operandStack = new StackAbstractState<>();
+      operandStackShared = false;
+    } else {
+      operandStack.clear();
+    }
+  }
+
   /**
    * Returns an abstract state at the {@code index}th position of the variable array or {@code
    * defaultState} if there is no entry.
@@ -148,16 +188,34 @@ public class JvmFrameAbstractState<StateT extends LatticeAbstractState<StateT>>
    * state}. If the array has to be extended, the added cells are padded with {@code defaultState}.
    */
   public StateT setVariable(int index, StateT state, StateT defaultState) {
-    return localVariables.set(index, state, defaultState);
+    return ownLocalVariables().set(index, state, defaultState);
   }
 
-  /** Returns the variable array. */
+  /** Returns the variable array. It may be shared with other frames and must not be modified. */
   public ListAbstractState<StateT> getLocalVariables() {
     return localVariables;
   }
 
-  /** Returns the operand stack. */
+  /** Returns the operand stack. It may be shared with other frames and must not be modified. */
   public StackAbstractState<StateT> getOperandStack() {
     return operandStack;
   }
+
+  /** Returns the local variable array, copying it first if it may be shared with other frames. */
+  protected ListAbstractState<StateT> ownLocalVariables() {
+    if (localVariablesShared) {
+      localVariables = localVariables.copy();
+      localVariablesShared = false;
+    }
+    return localVariables;
+  }
+
+  /** Returns the operand stack, copying it first if it may be shared with other frames. */
+  protected StackAbstractState<StateT> ownOperandStack() {
+    if (operandStackShared) {
+      operandStack = operandStack.copy();
+      operandStackShared = false;
+    }
+    return operandStack;
+  }
 }
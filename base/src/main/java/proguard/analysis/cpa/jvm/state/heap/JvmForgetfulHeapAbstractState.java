@@ -18,6 +18,7 @@
 
 package proguard.analysis.cpa.jvm.state.heap;
 
+import java.io.Serializable;
 import java.util.List;
 import proguard.analysis.cpa.defaults.LatticeAbstractState;
 import proguard.analysis.cpa.jvm.cfa.nodes.JvmCfaNode;
@@ -29,7 +30,9 @@ import proguard.analysis.cpa.jvm.cfa.nodes.JvmCfaNode;
  * @author Dmitry Ivanov
  */
 public class JvmForgetfulHeapAbstractState<StateT extends LatticeAbstractState<StateT>>
-    implements JvmHeapAbstractState<StateT> {
+    implements JvmHeapAbstractState<StateT>, Serializable {
+
+  private static final long serialVersionUID = 1L;
 
   private final StateT defaultValue;
 
@@ -18,6 +18,7 @@
 
 package proguard.analysis.cpa.jvm.state.heap.tree;
 
+import java.io.Serializable;
 import java.util.Collection;
 import java.util.Map;
 import java.util.Set;
@@ -33,7 +34,9 @@ import proguard.analysis.cpa.defaults.MapAbstractState;
  * @author Dmitry Ivanov
  */
 public class HeapNode<StateT extends LatticeAbstractState<StateT>>
-    implements Map<String, StateT>, LatticeAbstractState<HeapNode<StateT>> {
+    implements Map<String, StateT>, LatticeAbstractState<HeapNode<StateT>>, Serializable {
+
+  private static final long serialVersionUID = 1L;
 
   private final MapAbstractState<String, StateT> fieldToAbstractState;
 
@@ -18,6 +18,7 @@
 
 package proguard.analysis.cpa.jvm.state.heap.tree;
 
+import java.io.Serializable;
 import java.util.List;
 import java.util.Objects;
 import java.util.Set;
@@ -35,7 +36,10 @@ import proguard.analysis.cpa.jvm.state.heap.JvmHeapAbstractState;
  * @author Dmitry Ivanov
  */
 public class JvmShallowHeapAbstractState<ReferenceT, StateT extends LatticeAbstractState<StateT>>
-    implements JvmHeapAbstractState<StateT> {
+    implements JvmHeapAbstractState<StateT>, Serializable {
+
+  private static final long serialVersionUID = 1L;
+
   private static final Logger logger = LogManager.getLogger(JvmShallowHeapAbstractState.class);
 
   public final MapAbstractState<ReferenceT, StateT> referenceToObject;
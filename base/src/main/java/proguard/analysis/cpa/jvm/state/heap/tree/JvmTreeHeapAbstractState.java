@@ -18,6 +18,7 @@
 
 package proguard.analysis.cpa.jvm.state.heap.tree;
 
+import java.io.Serializable;
 import proguard.analysis.cpa.defaults.LatticeAbstractState;
 import proguard.analysis.cpa.defaults.MapAbstractState;
 import proguard.analysis.cpa.defaults.SetAbstractState;
@@ -32,7 +33,9 @@ import proguard.analysis.cpa.state.MapAbstractStateFactory;
  * @author Dmitry Ivanov
  */
 public abstract class JvmTreeHeapAbstractState<StateT extends LatticeAbstractState<StateT>>
-    implements JvmHeapAbstractState<StateT> {
+    implements JvmHeapAbstractState<StateT>, Serializable {
+
+  private static final long serialVersionUID = 1L;
 
   protected final MapAbstractState<Reference, HeapNode<StateT>> referenceToObject;
   protected final MapAbstractStateFactory<String, StateT> heapNodeMapAbstractStateFactory;
@@ -43,6 +43,8 @@ import proguard.analysis.cpa.state.MapAbstractStateFactory;
 public class JvmTreeHeapFollowerAbstractState<StateT extends LatticeAbstractState<StateT>>
     extends JvmTreeHeapAbstractState<StateT> {
 
+  private static final long serialVersionUID = 1L;
+
   protected JvmReferenceAbstractState principal;
 
   /**
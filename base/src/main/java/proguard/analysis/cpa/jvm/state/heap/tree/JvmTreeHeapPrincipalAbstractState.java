@@ -46,6 +46,8 @@ import proguard.analysis.cpa.state.MapAbstractStateFactory;
 public class JvmTreeHeapPrincipalAbstractState
     extends JvmTreeHeapAbstractState<SetAbstractState<Reference>> {
 
+  private static final long serialVersionUID = 1L;
+
   /**
    * Create an empty principal heap model.
    *
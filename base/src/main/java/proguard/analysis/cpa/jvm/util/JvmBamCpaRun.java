@@ -19,6 +19,7 @@
 package proguard.analysis.cpa.jvm.util;
 
 import java.util.Arrays;
+import proguard.analysis.cpa.bam.BamCache;
 import proguard.analysis.cpa.bam.ReduceOperator;
 import proguard.analysis.cpa.defaults.BamCpaRun;
 import proguard.analysis.cpa.defaults.LatticeAbstractState;
@@ -148,6 +149,11 @@ public abstract class JvmBamCpaRun<
       return (Builder) super.setReduceHeap(reduceHeap);
     }
 
+    @Override
+    public Builder setCache(BamCache<?> cache) {
+      return (Builder) super.setCache(cache);
+    }
+
     /** Sets the control flow automaton. */
     public Builder setCfa(JvmCfa cfa) {
       this.cfa = cfa;
@@ -159,5 +165,12 @@ public abstract class JvmBamCpaRun<
       this.heapModel = heapModel;
       return this;
     }
+
+    /** Returns the BAM cache set for the runs, if any. */
+    @SuppressWarnings("unchecked")
+    protected BamCache<MethodSignature> getCache() {
+      // The blocks of JVM runs are methods, so their caches are keyed by method signatures.
+      return (BamCache<MethodSignature>) cache;
+    }
   }
 }
@@ -0,0 +1,213 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package proguard.analysis.cpa.jvm.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidObjectException;
+import java.io.NotSerializableException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import proguard.analysis.cpa.bam.BlockAbstractionCodec;
+import proguard.analysis.cpa.jvm.cfa.JvmCfa;
+import proguard.analysis.cpa.jvm.cfa.nodes.JvmCatchCfaNode;
+import proguard.analysis.cpa.jvm.cfa.nodes.JvmCfaNode;
+import proguard.analysis.cpa.jvm.cfa.nodes.JvmUnknownCfaNode;
+import proguard.analysis.cpa.jvm.state.JvmAbstractState;
+import proguard.classfile.MethodSignature;
+
+/**
+ * This {@link BlockAbstractionCodec} serializes the block abstractions of the JVM domains. The
+ * abstract states of these domains refer to the nodes of a {@link JvmCfa}, which in turn refer to
+ * the whole class pool, and to objects of the analysis configuration, like taint sources or map
+ * abstract state factories, which are not serializable and need to keep their identity. The codec
+ * writes the former as their method signature and offset, and the latter as the keys under which
+ * they are registered. When reading, the handles are resolved against the given CFA and shared
+ * objects. Block abstractions referring to nodes missing from the CFA, or to shared objects which
+ * are not registered anymore, cannot be read and are recomputed.
+ */
+public class JvmBlockAbstractionCodec extends BlockAbstractionCodec {
+
+  private final JvmCfa cfa;
+  private final Map<String, Object> sharedObjects;
+  private final Map<Object, String> sharedObjectKeys = new IdentityHashMap<>();
+
+  /**
+   * Create a codec for block abstractions without shared objects.
+   *
+   * @param cfa the control flow automaton the abstract states refer to
+   */
+  public JvmBlockAbstractionCodec(JvmCfa cfa) {
+    this(cfa, Collections.emptyMap());
+  }
+
+  /**
+   * Create a codec for block abstractions.
+   *
+   * @param cfa the control flow automaton the abstract states refer to
+   * @param sharedObjects the objects which are written as their keys, the keys need to identify
+   *     the objects across analysis runs
+   */
+  public JvmBlockAbstractionCodec(JvmCfa cfa, Map<String, ?> sharedObjects) {
+    this.cfa = cfa;
+    this.sharedObjects = new HashMap<>(sharedObjects);
+    sharedObjects.forEach((key, object) -> sharedObjectKeys.putIfAbsent(object, key));
+  }
+
+  // Implementations for BlockAbstractionCodec
+
+  @Override
+  public ObjectOutputStream createOutputStream(OutputStream outputStream) throws IOException {
+    return new HandleOutputStream(outputStream);
+  }
+
+  @Override
+  public ObjectInputStream createInputStream(InputStream inputStream) throws IOException {
+    return new HandleInputStream(inputStream);
+  }
+
+  /** This stream writes CFA nodes and shared objects as handles. */
+  private class HandleOutputStream extends ObjectOutputStream {
+
+    private HandleOutputStream(OutputStream outputStream) throws IOException {
+      super(outputStream);
+      enableReplaceObject(true);
+    }
+
+    @Override
+    protected Object replaceObject(Object object) throws IOException {
+      String key = sharedObjectKeys.get(object);
+      if (key != null) {
+        return new SharedObjectHandle(key);
+      }
+      if (object instanceof JvmCfaNode) {
+        return NodeHandle.of((JvmCfaNode) object);
+      }
+      return object;
+    }
+  }
+
+  /** This stream resolves the handles of CFA nodes and shared objects. */
+  private class HandleInputStream extends FilteringInputStream {
+
+    private HandleInputStream(InputStream inputStream) throws IOException {
+      super(inputStream);
+      enableResolveObject(true);
+    }
+
+    @Override
+    protected Object resolveObject(Object object) throws IOException {
+      if (object instanceof SharedObjectHandle) {
+        String key = ((SharedObjectHandle) object).key;
+        Object sharedObject = sharedObjects.get(key);
+        if (sharedObject == null) {
+          throw new InvalidObjectException("The shared object [" + key + "] is not registered");
+        }
+        return sharedObject;
+      }
+      if (object instanceof NodeHandle) {
+        return ((NodeHandle) object).resolve(cfa);
+      }
+      return object;
+    }
+  }
+
+  /** The handle of a shared object. */
+  private static class SharedObjectHandle implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String key;
+
+    private SharedObjectHandle(String key) {
+      this.key = key;
+    }
+  }
+
+  /** The handle of a CFA node, identified by its kind, method, and offset. */
+  private static class NodeHandle implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final int NODE = 0;
+    private static final int CATCH_NODE = 1;
+    private static final int UNKNOWN_NODE = 2;
+    private static final int TOP_NODE = 3;
+
+    private final int kind;
+    private final String className;
+    private final String methodName;
+    private final String descriptor;
+    private final int offset;
+
+    private NodeHandle(
+        int kind, String className, String methodName, String descriptor, int offset) {
+      this.kind = kind;
+      this.className = className;
+      this.methodName = methodName;
+      this.descriptor = descriptor;
+      this.offset = offset;
+    }
+
+    private static NodeHandle of(JvmCfaNode node) throws NotSerializableException {
+      if (node == JvmUnknownCfaNode.INSTANCE) {
+        return new NodeHandle(UNKNOWN_NODE, null, null, null, -1);
+      }
+      if (node == JvmAbstractState.getTopLocation()) {
+        return new NodeHandle(TOP_NODE, null, null, null, -1);
+      }
+      MethodSignature signature = node.getSignature();
+      if (signature == null || signature.descriptor == null) {
+        throw new NotSerializableException("The CFA node " + node + " has no method");
+      }
+      return new NodeHandle(
+          node instanceof JvmCatchCfaNode ? CATCH_NODE : NODE,
+          signature.getClassName(),
+          signature.method,
+          signature.descriptor.toString(),
+          node.getOffset());
+    }
+
+    private JvmCfaNode resolve(JvmCfa cfa) throws InvalidObjectException {
+      switch (kind) {
+        case UNKNOWN_NODE:
+          return JvmUnknownCfaNode.INSTANCE;
+        case TOP_NODE:
+          return JvmAbstractState.getTopLocation();
+        default:
+          MethodSignature signature = new MethodSignature(className, methodName, descriptor);
+          JvmCfaNode node =
+              kind == CATCH_NODE
+                  ? cfa.getFunctionCatchNode(signature, offset)
+                  : cfa.getFunctionNode(signature, offset);
+          if (node == null) {
+            throw new InvalidObjectException(
+                "The CFA node " + signature + ":" + offset + " is missing");
+          }
+          return node;
+      }
+    }
+  }
+}
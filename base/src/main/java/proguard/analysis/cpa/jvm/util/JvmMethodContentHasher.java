@@ -0,0 +1,228 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package proguard.analysis.cpa.jvm.util;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import proguard.analysis.cpa.jvm.cfa.JvmCfa;
+import proguard.analysis.cpa.jvm.cfa.edges.JvmCallCfaEdge;
+import proguard.analysis.cpa.jvm.cfa.edges.JvmCfaEdge;
+import proguard.analysis.cpa.jvm.cfa.nodes.JvmCfaNode;
+import proguard.classfile.Clazz;
+import proguard.classfile.Method;
+import proguard.classfile.MethodSignature;
+import proguard.classfile.attribute.Attribute;
+import proguard.classfile.attribute.CodeAttribute;
+import proguard.classfile.attribute.ExceptionInfo;
+import proguard.classfile.attribute.visitor.AllAttributeVisitor;
+import proguard.classfile.attribute.visitor.AttributeNameFilter;
+import proguard.classfile.attribute.visitor.AttributeVisitor;
+import proguard.classfile.attribute.visitor.ExceptionInfoVisitor;
+import proguard.classfile.constant.visitor.ConstantStringBuilder;
+import proguard.classfile.instruction.ConstantInstruction;
+import proguard.classfile.instruction.Instruction;
+import proguard.classfile.instruction.visitor.InstructionVisitor;
+
+/**
+ * This class computes content hashes of the methods of a {@link JvmCfa}, e.g., to address the
+ * block abstractions of a {@link proguard.analysis.cpa.bam.ContentAddressedBlockAbstractionStore}.
+ * The hash of a method covers its bytecode, with constants in readable form so that it doesn't
+ * depend on the layout of the constant pool, and the bytecode of all the methods it transitively
+ * calls in the CFA. It thus changes whenever the method or one of its callees changes.
+ *
+ * <p>Methods without code in the CFA, like library methods, are only hashed by their signature.
+ */
+public class JvmMethodContentHasher implements Function<MethodSignature, String> {
+
+  private static final String ALGORITHM = "SHA-256";
+
+  private final JvmCfa cfa;
+  private final Map<MethodSignature, String> codeHashes = new HashMap<>();
+  private final Map<MethodSignature, String> contentHashes = new HashMap<>();
+
+  /**
+   * Create a hasher for the methods of the given CFA.
+   *
+   * @param cfa a control flow automaton
+   */
+  public JvmMethodContentHasher(JvmCfa cfa) {
+    this.cfa = cfa;
+  }
+
+  // Implementations for Function
+
+  @Override
+  public synchronized String apply(MethodSignature signature) {
+    return contentHashes.computeIfAbsent(signature, this::computeContentHash);
+  }
+
+  /** Returns the hash of the code of the given method and of its transitive callees. */
+  private String computeContentHash(MethodSignature signature) {
+    Set<MethodSignature> callees = new LinkedHashSet<>();
+    Deque<MethodSignature> worklist = new ArrayDeque<>();
+    worklist.push(signature);
+    while (!worklist.isEmpty()) {
+      for (JvmCfaNode node : cfa.getFunctionNodes(worklist.pop())) {
+        for (JvmCfaEdge edge : node.getLeavingEdges()) {
+          if (edge instanceof JvmCallCfaEdge) {
+            MethodSignature callee = ((JvmCallCfaEdge) edge).targetSignature();
+            if (!callee.equals(signature) && callees.add(callee)) {
+              worklist.push(callee);
+            }
+          }
+        }
+      }
+    }
+
+    MessageDigest digest = createDigest();
+    update(digest, signature.getFqn());
+    update(digest, codeHash(signature));
+    callees.stream()
+        .sorted(Comparator.comparing(MethodSignature::getFqn))
+        .forEach(
+            callee -> {
+              update(digest, callee.getFqn());
+              update(digest, codeHash(callee));
+            });
+    return toHex(digest.digest());
+  }
+
+  /** Returns the hash of the code of the given method only. */
+  private String codeHash(MethodSignature signature) {
+    return codeHashes.computeIfAbsent(
+        signature,
+        s -> {
+          MessageDigest digest = createDigest();
+          JvmCfaNode entryNode = cfa.getFunctionEntryNode(s);
+          Clazz clazz = entryNode == null ? null : entryNode.getClazz();
+          Method method =
+              clazz == null ? null : clazz.findMethod(s.method, s.descriptor.toString());
+          if (method != null) {
+            update(digest, Integer.toString(method.getAccessFlags()));
+            method.accept(
+                clazz,
+                new AllAttributeVisitor(
+                    new AttributeNameFilter(Attribute.CODE, new CodeHasher(digest))));
+          }
+          return toHex(digest.digest());
+        });
+  }
+
+  private static MessageDigest createDigest() {
+    try {
+      return MessageDigest.getInstance(ALGORITHM);
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(ALGORITHM + " is not supported", e);
+    }
+  }
+
+  private static void update(MessageDigest digest, String string) {
+    digest.update(string.getBytes(StandardCharsets.UTF_8));
+    digest.update((byte) 0);
+  }
+
+  private static String toHex(byte[] bytes) {
+    StringBuilder builder = new StringBuilder(bytes.length * 2);
+    for (byte b : bytes) {
+      builder.append(Character.forDigit((b >> 4) & 0xf, 16));
+      builder.append(Character.forDigit(b & 0xf, 16));
+    }
+    return builder.toString();
+  }
+
+  /** This visitor feeds the instructions and exception handlers of a method to a digest. */
+  private static class CodeHasher
+      implements AttributeVisitor, InstructionVisitor, ExceptionInfoVisitor {
+
+    private final MessageDigest digest;
+
+    private CodeHasher(MessageDigest digest) {
+      this.digest = digest;
+    }
+
+    // Implementations for AttributeVisitor
+
+    @Override
+    public void visitAnyAttribute(Clazz clazz, Attribute attribute) {}
+
+    @Override
+    public void visitCodeAttribute(Clazz clazz, Method method, CodeAttribute codeAttribute) {
+      update(digest, codeAttribute.u2maxStack + "/" + codeAttribute.u2maxLocals);
+      codeAttribute.instructionsAccept(clazz, method, this);
+      codeAttribute.exceptionsAccept(clazz, method, this);
+    }
+
+    // Implementations for InstructionVisitor
+
+    @Override
+    public void visitAnyInstruction(
+        Clazz clazz,
+        Method method,
+        CodeAttribute codeAttribute,
+        int offset,
+        Instruction instruction) {
+      update(digest, instruction.toString(clazz, offset));
+    }
+
+    @Override
+    public void visitConstantInstruction(
+        Clazz clazz,
+        Method method,
+        CodeAttribute codeAttribute,
+        int offset,
+        ConstantInstruction constantInstruction) {
+      // Hash the referenced constant in readable form instead of its index.
+      StringBuilder builder =
+          new StringBuilder("[" + offset + "] " + constantInstruction.getName())
+              .append(", ")
+              .append(constantInstruction.constant)
+              .append(" = ");
+      clazz.constantPoolEntryAccept(
+          constantInstruction.constantIndex, new ConstantStringBuilder(builder));
+      update(digest, builder.toString());
+    }
+
+    // Implementations for ExceptionInfoVisitor
+
+    @Override
+    public void visitExceptionInfo(
+        Clazz clazz, Method method, CodeAttribute codeAttribute, ExceptionInfo exceptionInfo) {
+      update(
+          digest,
+          exceptionInfo.u2startPC
+              + "-"
+              + exceptionInfo.u2endPC
+              + ">"
+              + exceptionInfo.u2handlerPC
+              + ":"
+              + (exceptionInfo.u2catchType == 0
+                  ? ""
+                  : clazz.getClassName(exceptionInfo.u2catchType)));
+    }
+  }
+}
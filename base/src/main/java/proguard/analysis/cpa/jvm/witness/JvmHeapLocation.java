@@ -33,6 +33,8 @@ import proguard.analysis.cpa.jvm.state.JvmAbstractState;
  */
 public class JvmHeapLocation extends JvmMemoryLocation {
 
+  private static final long serialVersionUID = 1L;
+
   public final SetAbstractState<Reference> reference;
   public final String field;
 
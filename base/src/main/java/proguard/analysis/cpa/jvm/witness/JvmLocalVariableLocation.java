@@ -29,6 +29,8 @@ import proguard.analysis.cpa.jvm.state.JvmAbstractState;
  */
 public class JvmLocalVariableLocation extends JvmMemoryLocation {
 
+  private static final long serialVersionUID = 1L;
+
   public final int index;
 
   /**
@@ -18,6 +18,7 @@
 
 package proguard.analysis.cpa.jvm.witness;
 
+import java.io.Serializable;
 import proguard.analysis.cpa.defaults.LatticeAbstractState;
 import proguard.analysis.cpa.defaults.MemoryLocation;
 import proguard.analysis.cpa.jvm.cfa.edges.JvmCfaEdge;
@@ -32,4 +33,8 @@ import proguard.classfile.MethodSignature;
  */
 public abstract class JvmMemoryLocation
     extends MemoryLocation<
-        JvmCfaNode, JvmCfaEdge, MethodSignature, LatticeAbstractState, JvmAbstractState> {}
+        JvmCfaNode, JvmCfaEdge, MethodSignature, LatticeAbstractState, JvmAbstractState>
+    implements Serializable {
+
+  private static final long serialVersionUID = 1L;
+}
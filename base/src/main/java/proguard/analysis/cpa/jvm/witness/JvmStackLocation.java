@@ -30,6 +30,8 @@ import proguard.analysis.cpa.jvm.state.JvmAbstractState;
  */
 public class JvmStackLocation extends JvmMemoryLocation {
 
+  private static final long serialVersionUID = 1L;
+
   public final int index;
 
   /**
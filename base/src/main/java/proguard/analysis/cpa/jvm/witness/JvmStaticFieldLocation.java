@@ -28,6 +28,8 @@ import proguard.analysis.cpa.jvm.state.JvmAbstractState;
  */
 public class JvmStaticFieldLocation extends JvmMemoryLocation {
 
+  private static final long serialVersionUID = 1L;
+
   public final String fqn;
 
   /**
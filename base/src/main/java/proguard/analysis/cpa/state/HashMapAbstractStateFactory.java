@@ -46,4 +46,12 @@ public class HashMapAbstractStateFactory<KeyT, StateT extends LatticeAbstractSta
   public MapAbstractState<KeyT, StateT> createMapAbstractState() {
     return new HashMapAbstractState<>();
   }
+
+  // implementations for Object
+
+  @Override
+  public String toString() {
+    // The factory is stateless, so its class identifies it, also across runs.
+    return getClass().getName();
+  }
 }
@@ -28,15 +28,28 @@ import proguard.util.*;
  * @author Eric Lafortune
  */
 public class ClassPool {
-  // We're using a sorted tree map instead of a hash map to store the classes,
+  // We're using a sorted map instead of a hash map to store the classes,
   // in order to make the processing more deterministic.
-  private final TreeMap<String, Clazz> classes = new TreeMap<>();
+  private final NavigableMap<String, Clazz> classes;
 
   // Keep a separate set of the classes to speed up `contains(Clazz)`.
-  private final Set<Clazz> clazzSet = new HashSet<>();
+  private final Set<Clazz> clazzSet;
 
   /** Creates a new empty ClassPool. */
-  public ClassPool() {}
+  public ClassPool() {
+    this(new TreeMap<>(), new HashSet<>());
+  }
+
+  /**
+   * Creates a new empty ClassPool that stores its classes in the given collections.
+   *
+   * @param classes the empty map from class names to classes.
+   * @param clazzSet the empty set of classes.
+   */
+  protected ClassPool(NavigableMap<String, Clazz> classes, Set<Clazz> clazzSet) {
+    this.classes = classes;
+    this.clazzSet = clazzSet;
+  }
 
   /**
    * Creates a new ClassPool with the given classes.
@@ -44,6 +57,7 @@ public class ClassPool {
    * @param classes the classes to be added.
    */
   public ClassPool(Clazz... classes) {
+    this();
     for (Clazz clazz : classes) {
       addClass(clazz);
     }
@@ -55,6 +69,7 @@ public class ClassPool {
    * @param classes the classes to be added.
    */
   public ClassPool(Iterable<? extends Clazz> classes) {
+    this();
     for (Clazz clazz : classes) {
       addClass(clazz);
     }
@@ -94,7 +109,9 @@ public class ClassPool {
   /** Removes the Class with the specified name from the class pool. */
   public Clazz removeClass(String className) {
     Clazz removed = classes.remove(className);
-    clazzSet.remove(removed);
+    if (removed != null) {
+      clazzSet.remove(removed);
+    }
     return removed;
   }
 
@@ -0,0 +1,69 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package proguard.classfile;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * This {@link ClassPool} can be filled and queried from multiple threads at the same time, e.g.,
+ * by a {@link proguard.classfile.visitor.ClassPoolFiller} behind class readers running in parallel.
+ * Lookups don't take any locks.
+ *
+ * <p>Like the plain class pool, it iterates over its classes in sorted order, and class visitors
+ * with a name filter only traverse the classes starting with the prefix of the filter. Iterations
+ * don't throw {@link java.util.ConcurrentModificationException}s; they may or may not see classes
+ * added or removed while iterating.
+ */
+public class ConcurrentClassPool extends ClassPool {
+  /** Creates a new empty ConcurrentClassPool. */
+  public ConcurrentClassPool() {
+    super(new ConcurrentSkipListMap<>(), ConcurrentHashMap.newKeySet());
+  }
+
+  /**
+   * Creates a new ConcurrentClassPool with the given classes.
+   *
+   * @param classes the classes to be added.
+   */
+  public ConcurrentClassPool(Clazz... classes) {
+    this();
+    for (Clazz clazz : classes) {
+      addClass(clazz);
+    }
+  }
+
+  /**
+   * Creates a new ConcurrentClassPool with the given classes.
+   *
+   * @param classes the classes to be added.
+   */
+  public ConcurrentClassPool(Iterable<? extends Clazz> classes) {
+    this();
+    for (Clazz clazz : classes) {
+      addClass(clazz);
+    }
+  }
+
+  // Overridden methods of ClassPool.
+
+  @Override
+  public ClassPool refreshedCopy() {
+    return new ConcurrentClassPool(classes());
+  }
+}
@@ -65,6 +65,10 @@ public class LibraryClass extends SimpleFeatureNamedProcessable implements Clazz
 
   public int subClassCount;
 
+  // Lazily created indices of the fields and methods of large classes.
+  private MemberIndex<LibraryField> fieldIndex;
+  private MemberIndex<LibraryMethod> methodIndex;
+
   /** Creates an empty LibraryClass. */
   public LibraryClass() {}
 
@@ -148,6 +152,19 @@ public class LibraryClass extends SimpleFeatureNamedProcessable implements Clazz
     return (u2accessFlags & AccessConstants.PUBLIC) != 0;
   }
 
+  /**
+   * Invalidates the indices of the fields and methods of this class, with which {@link
+   * #findField(String, String)} and {@link #findMethod(String, String)} look up the members of
+   * large classes. The lookups detect members that have been renamed or replaced directly, but
+   * invalidating the indices after such changes saves checking this. The {@link
+   * proguard.classfile.util.MemberRenamer} and the {@link proguard.classfile.util.ClassRenamer}
+   * already do so.
+   */
+  public void invalidateMemberIndices() {
+    fieldIndex = null;
+    methodIndex = null;
+  }
+
   // Implementations for Clazz.
 
   public int getAccessFlags() {
@@ -311,6 +328,24 @@ public class LibraryClass extends SimpleFeatureNamedProcessable implements Clazz
   }
 
   public Field findField(String name, String descriptor) {
+    // Look up the field in the index, for large classes.
+    if (name != null && fields.length >= MemberIndex.MIN_MEMBER_COUNT) {
+      MemberIndex<LibraryField> index = fieldIndex;
+      if (index == null || !index.appliesTo(fields, fields.length)) {
+        fieldIndex = index = new MemberIndex<>(this, fields, fields.length);
+      }
+
+      Field field = index.findMember(this, name, descriptor);
+      if (field != null || index.isUpToDate(this)) {
+        return field;
+      }
+
+      // The fields have been renamed or reordered directly, so the index is out of date.
+      fieldIndex = index = new MemberIndex<>(this, fields, fields.length);
+
+      return index.findMember(this, name, descriptor);
+    }
+
     for (int index = 0; index < fields.length; index++) {
       Field field = fields[index];
       if (field != null
@@ -324,6 +359,24 @@ public class LibraryClass extends SimpleFeatureNamedProcessable implements Clazz
   }
 
   public Method findMethod(String name, String descriptor) {
+    // Look up the method in the index, for large classes.
+    if (name != null && methods.length >= MemberIndex.MIN_MEMBER_COUNT) {
+      MemberIndex<LibraryMethod> index = methodIndex;
+      if (index == null || !index.appliesTo(methods, methods.length)) {
+        methodIndex = index = new MemberIndex<>(this, methods, methods.length);
+      }
+
+      Method method = index.findMember(this, name, descriptor);
+      if (method != null || index.isUpToDate(this)) {
+        return method;
+      }
+
+      // The methods have been renamed or reordered directly, so the index is out of date.
+      methodIndex = index = new MemberIndex<>(this, methods, methods.length);
+
+      return index.findMember(this, name, descriptor);
+    }
+
     for (int index = 0; index < methods.length; index++) {
       Method method = methods[index];
       if (method != null
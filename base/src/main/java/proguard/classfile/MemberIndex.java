@@ -0,0 +1,112 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package proguard.classfile;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * This class indexes the fields or the methods of a class by name, so {@link
+ * Clazz#findField(String, String)} and {@link Clazz#findMethod(String, String)} don't have to scan
+ * all members of large classes.
+ *
+ * <p>The index only applies to the member array and member count it was created for, so it is
+ * recreated when members are added or removed by replacing the array. It also remembers the names
+ * of the members, so it can tell whether members have been renamed or reordered in place since it
+ * was created, e.g., by code that assigns their name indices directly. Checking this only compares
+ * the references of the names, so a miss stays cheaper than a linear scan. Code that changes
+ * members in place can still invalidate the index explicitly, with {@link
+ * ProgramClass#invalidateMemberIndices()} or {@link LibraryClass#invalidateMemberIndices()}.
+ */
+final class MemberIndex<M extends Member> {
+  /** The minimum number of members for which an index pays off compared to a linear scan. */
+  static final int MIN_MEMBER_COUNT = 16;
+
+  private static final int[] NO_POSITIONS = new int[0];
+
+  private final M[] members;
+  private final int memberCount;
+  private final String[] names;
+  private final Map<String, int[]> positionsByName;
+
+  /** Creates a new MemberIndex for the given members of the given class. */
+  MemberIndex(Clazz clazz, M[] members, int memberCount) {
+    this.members = members;
+    this.memberCount = memberCount;
+    this.names = new String[memberCount];
+    this.positionsByName = new HashMap<>(memberCount * 2);
+
+    for (int index = 0; index < memberCount; index++) {
+      M member = members[index];
+      if (member != null) {
+        String name = member.getName(clazz);
+        names[index] = name;
+        positionsByName.merge(name, new int[] {index}, MemberIndex::concatenate);
+      }
+    }
+  }
+
+  /**
+   * Returns whether the index applies to the given members, i.e. whether it was created for them.
+   */
+  boolean appliesTo(M[] members, int memberCount) {
+    return this.members == members && this.memberCount == memberCount;
+  }
+
+  /**
+   * Returns whether the members still have the names with which they were indexed, so a member
+   * that is not in the index is not in the class.
+   */
+  boolean isUpToDate(Clazz clazz) {
+    for (int index = 0; index < memberCount; index++) {
+      // Comparing the references is cheap, and conservative if names are recreated.
+      M member = members[index];
+      if ((member == null ? null : member.getName(clazz)) != names[index]) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  /**
+   * Returns the first indexed member with the given name and the given descriptor, if not null,
+   * that still has this name and descriptor, or null otherwise.
+   */
+  M findMember(Clazz clazz, String name, String descriptor) {
+    for (int position : positionsByName.getOrDefault(name, NO_POSITIONS)) {
+      M member = members[position];
+      if (member != null
+          && member.getName(clazz).equals(name)
+          && (descriptor == null || member.getDescriptor(clazz).equals(descriptor))) {
+        return member;
+      }
+    }
+
+    return null;
+  }
+
+  // Small utility methods.
+
+  private static int[] concatenate(int[] positions, int[] morePositions) {
+    int[] result = new int[positions.length + morePositions.length];
+    System.arraycopy(positions, 0, result, 0, positions.length);
+    System.arraycopy(morePositions, 0, result, positions.length, morePositions.length);
+    return result;
+  }
+}
@@ -66,6 +66,10 @@ public class ProgramClass extends SimpleFeatureNamedProcessable implements Clazz
 
   public int subClassCount;
 
+  // Lazily created indices of the fields and methods of large classes.
+  private MemberIndex<ProgramField> fieldIndex;
+  private MemberIndex<ProgramMethod> methodIndex;
+
   /** Creates an uninitialized ProgramClass. */
   public ProgramClass() {}
 
@@ -208,6 +212,22 @@ public class ProgramClass extends SimpleFeatureNamedProcessable implements Clazz
     return constantPool[constantIndex];
   }
 
+  /**
+   * Invalidates the indices of the fields and methods of this class, with which {@link
+   * #findField(String, String)} and {@link #findMethod(String, String)} look up the members of
+   * large classes. The lookups detect members that have been renamed or reordered directly, but
+   * invalidating the indices after adding, removing, reordering, or renaming members saves checking
+   * this. The {@link proguard.classfile.editor.ClassEditor}, the {@link
+   * proguard.classfile.editor.ClassMemberSorter}, the {@link
+   * proguard.classfile.editor.ClassReferenceFixer}, the {@link
+   * proguard.classfile.util.MemberRenamer}, and the {@link proguard.classfile.util.ClassRenamer}
+   * already do so.
+   */
+  public void invalidateMemberIndices() {
+    fieldIndex = null;
+    methodIndex = null;
+  }
+
   // Implementations for Clazz.
 
   public int getAccessFlags() {
@@ -464,6 +484,24 @@ public class ProgramClass extends SimpleFeatureNamedProcessable implements Clazz
   }
 
   public Field findField(String name, String descriptor) {
+    // Look up the field in the index, for large classes.
+    if (name != null && u2fieldsCount >= MemberIndex.MIN_MEMBER_COUNT) {
+      MemberIndex<ProgramField> index = fieldIndex;
+      if (index == null || !index.appliesTo(fields, u2fieldsCount)) {
+        fieldIndex = index = new MemberIndex<>(this, fields, u2fieldsCount);
+      }
+
+      Field field = index.findMember(this, name, descriptor);
+      if (field != null || index.isUpToDate(this)) {
+        return field;
+      }
+
+      // The fields have been renamed or reordered directly, so the index is out of date.
+      fieldIndex = index = new MemberIndex<>(this, fields, u2fieldsCount);
+
+      return index.findMember(this, name, descriptor);
+    }
+
     for (int index = 0; index < u2fieldsCount; index++) {
       Field field = fields[index];
       if ((name == null || field.getName(this).equals(name))
@@ -476,6 +514,24 @@ public class ProgramClass extends SimpleFeatureNamedProcessable implements Clazz
   }
 
   public Method findMethod(String name, String descriptor) {
+    // Look up the method in the index, for large classes.
+    if (name != null && u2methodsCount >= MemberIndex.MIN_MEMBER_COUNT) {
+      MemberIndex<ProgramMethod> index = methodIndex;
+      if (index == null || !index.appliesTo(methods, u2methodsCount)) {
+        methodIndex = index = new MemberIndex<>(this, methods, u2methodsCount);
+      }
+
+      Method method = index.findMember(this, name, descriptor);
+      if (method != null || index.isUpToDate(this)) {
+        return method;
+      }
+
+      // The methods have been renamed or reordered directly, so the index is out of date.
+      methodIndex = index = new MemberIndex<>(this, methods, u2methodsCount);
+
+      return index.findMember(this, name, descriptor);
+    }
+
     for (int index = 0; index < u2methodsCount; index++) {
       Method method = methods[index];
       if ((name == null || method.getName(this).equals(name))
@@ -0,0 +1,190 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package proguard.classfile.attribute.visitor;
+
+import java.util.*;
+import java.util.concurrent.*;
+import proguard.classfile.*;
+import proguard.classfile.attribute.*;
+import proguard.classfile.visitor.*;
+import proguard.util.ParallelUtil;
+
+/**
+ * This {@link ClassVisitor} lets attribute visitors visit the code attributes of the methods of the
+ * program classes that it visits, in a parallel way, like a parallel {@link AllMethodVisitor} with
+ * an {@link AllAttributeVisitor}. It thus splits up large classes over multiple threads. For each
+ * visited class and each thread that takes part, a separate {@link AttributeVisitor} is created
+ * using {@link AttributeVisitorFactory#createAttributeVisitor()}, so no attribute visitors are kept
+ * after a class has been visited. The methods are visited on a {@link ForkJoinPool}, largest code
+ * first. Unless a pool is specified explicitly, this is a long-lived pool of daemon threads shared
+ * by all instances, like the one of the {@link proguard.classfile.visitor.ParallelAllClassVisitor},
+ * with as many threads as the available processors minus one, or as set by the system property
+ * {@code parallel.threads}. Classes with only a few methods with code are visited on the calling
+ * thread. The visitor only returns after all code attributes of a class have been visited.
+ *
+ * <p>Since the code attributes of a class are visited concurrently, the attribute visitors may
+ * only:
+ *
+ * <ul>
+ *   <li>read the class, its constant pool, its members, and the classes that it references;
+ *   <li>modify the visited code attribute and the processing info of the visited method.
+ * </ul>
+ *
+ * <p>In particular, they must not add constants to the constant pool, add or remove members or
+ * attributes, or modify the processing info of the class or of other methods. Changes like these
+ * should be collected and applied after the class has been visited.
+ */
+public class ParallelAllCodeAttributeVisitor implements ClassVisitor {
+  // The minimum number of methods with code for which the class is
+  // visited in parallel.
+  private static final int MIN_PARALLEL_CODE_ATTRIBUTE_COUNT = 8;
+
+  /** A factory for {@link AttributeVisitor} objects. */
+  public interface AttributeVisitorFactory {
+    /**
+     * Creates an AttributeVisitor that will be used during parallel visiting of code attributes in
+     * a class.
+     */
+    AttributeVisitor createAttributeVisitor();
+  }
+
+  private final AttributeVisitorFactory attributeVisitorFactory;
+  private final ForkJoinPool forkJoinPool;
+
+  /**
+   * Creates a new ParallelAllCodeAttributeVisitor that will use the given factory to visit all
+   * code attributes of the visited classes on the shared pool.
+   */
+  public ParallelAllCodeAttributeVisitor(AttributeVisitorFactory attributeVisitorFactory) {
+    this(attributeVisitorFactory, SharedPool.INSTANCE);
+  }
+
+  /**
+   * Creates a new ParallelAllCodeAttributeVisitor that will use the given factory to visit all
+   * code attributes of the visited classes on the given pool.
+   */
+  public ParallelAllCodeAttributeVisitor(
+      AttributeVisitorFactory attributeVisitorFactory, ForkJoinPool forkJoinPool) {
+    this.attributeVisitorFactory = attributeVisitorFactory;
+    this.forkJoinPool = forkJoinPool;
+  }
+
+  // Implementations for ClassVisitor.
+
+  @Override
+  public void visitAnyClass(Clazz clazz) {}
+
+  @Override
+  public void visitProgramClass(ProgramClass programClass) {
+    // Collect the code attributes of all methods.
+    MyCodeAttributeCollector codeAttributeCollector = new MyCodeAttributeCollector();
+    programClass.methodsAccept(new AllAttributeVisitor(codeAttributeCollector));
+
+    List<MyCodeAttribute> codeAttributes = codeAttributeCollector.codeAttributes;
+
+    if (codeAttributes.size() < MIN_PARALLEL_CODE_ATTRIBUTE_COUNT
+        || forkJoinPool.getParallelism() <= 1) {
+      // Visit the code attributes on the calling thread.
+      AttributeVisitor attributeVisitor = attributeVisitorFactory.createAttributeVisitor();
+      for (MyCodeAttribute codeAttribute : codeAttributes) {
+        codeAttribute.accept(programClass, attributeVisitor);
+      }
+    } else {
+      // Create a separate attribute visitor for each thread that takes part.
+      Map<Thread, AttributeVisitor> attributeVisitors = new ConcurrentHashMap<>();
+
+      List<ForkJoinTask<?>> tasks = new ArrayList<>();
+      for (List<MyCodeAttribute> batch :
+          ParallelUtil.createBatches(
+              codeAttributes,
+              codeAttribute -> codeAttribute.cost,
+              forkJoinPool.getParallelism())) {
+        tasks.add(
+            forkJoinPool.submit(
+                () -> {
+                  AttributeVisitor attributeVisitor =
+                      attributeVisitors.computeIfAbsent(
+                          Thread.currentThread(),
+                          thread -> attributeVisitorFactory.createAttributeVisitor());
+                  for (MyCodeAttribute codeAttribute : batch) {
+                    codeAttribute.accept(programClass, attributeVisitor);
+                  }
+                }));
+      }
+
+      try {
+        // Rethrow any exception that was thrown in the pool threads.
+        for (ForkJoinTask<?> task : tasks) {
+          task.get();
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new RuntimeException("Parallel execution is taking too long", e);
+      } catch (ExecutionException e) {
+        // Make sure the class is no longer being visited before passing
+        // on the exception.
+        for (ForkJoinTask<?> task : tasks) {
+          task.quietlyJoin();
+        }
+
+        throw e.getCause() instanceof RuntimeException
+            ? (RuntimeException) e.getCause()
+            : new RuntimeException(e.getCause());
+      }
+    }
+  }
+
+  /** The shared pool, which is only created when it is first used. */
+  private static class SharedPool {
+    private static final ForkJoinPool INSTANCE =
+        ParallelUtil.createDaemonPool(
+            Math.max(1, ParallelUtil.defaultThreadCount()), "Parallel Code Attribute Visitor");
+  }
+
+  /** A code attribute with its method and the estimated cost of visiting it. */
+  private static class MyCodeAttribute {
+    private final Method method;
+    private final CodeAttribute codeAttribute;
+    private final long cost;
+
+    public MyCodeAttribute(Method method, CodeAttribute codeAttribute) {
+      this.method = method;
+      this.codeAttribute = codeAttribute;
+      this.cost = 1L + codeAttribute.u4codeLength;
+    }
+
+    public void accept(Clazz clazz, AttributeVisitor attributeVisitor) {
+      codeAttribute.accept(clazz, method, attributeVisitor);
+    }
+  }
+
+  /** This {@link AttributeVisitor} collects the code attributes of the methods that it visits. */
+  private static class MyCodeAttributeCollector implements AttributeVisitor {
+    private final List<MyCodeAttribute> codeAttributes = new ArrayList<>();
+
+    // Implementations for AttributeVisitor.
+
+    @Override
+    public void visitAnyAttribute(Clazz clazz, Attribute attribute) {}
+
+    @Override
+    public void visitCodeAttribute(Clazz clazz, Method method, CodeAttribute codeAttribute) {
+      codeAttributes.add(new MyCodeAttribute(method, codeAttribute));
+    }
+  }
+}
@@ -40,6 +40,8 @@ public class ClassMemberSorter implements ClassVisitor, Comparator {
 
     // Sort the methods.
     Arrays.sort(programClass.methods, 0, programClass.u2methodsCount, this);
+
+    programClass.invalidateMemberIndices();
   }
 
   // Implementations for Comparator.
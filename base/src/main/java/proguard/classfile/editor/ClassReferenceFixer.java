@@ -232,6 +232,7 @@ public class ClassReferenceFixer
         String name = programMember.getName(programClass);
         String newName = newNameStrategy.getNewName(programClass, programMember, name, descriptor);
         programMember.u2nameIndex = constantPoolEditor.addUtf8Constant(newName);
+        programClass.invalidateMemberIndices();
       }
     }
 
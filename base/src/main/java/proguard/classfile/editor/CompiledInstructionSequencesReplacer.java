@@ -0,0 +1,153 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package proguard.classfile.editor;
+
+import java.util.BitSet;
+import proguard.classfile.Clazz;
+import proguard.classfile.Method;
+import proguard.classfile.attribute.CodeAttribute;
+import proguard.classfile.constant.Constant;
+import proguard.classfile.instruction.Instruction;
+import proguard.classfile.instruction.visitor.InstructionVisitor;
+import proguard.classfile.util.BranchTargetFinder;
+import proguard.classfile.util.InstructionSequenceMatcher;
+
+/**
+ * This {@link InstructionVisitor} replaces multiple instruction sequences at once, like a list of
+ * {@link InstructionSequenceReplacer} instances, but without passing each instruction to each of
+ * them.
+ *
+ * <p>The patterns are indexed on the opcodes of their first instructions. An instruction is only
+ * passed to the replacers whose matchers are in the middle of a match, and to the replacers whose
+ * patterns may start with the instruction. The other matchers would reject the instruction based
+ * on its opcode alone, without changing their state. The matchers of the replacers then match the
+ * remaining arguments, constants, and wildcards, as before. The replacers are still applied in the
+ * order of their patterns, so the results are the same.
+ *
+ * @see InstructionSequencesReplacer
+ */
+final class CompiledInstructionSequencesReplacer implements InstructionVisitor {
+  private static final int OPCODE_COUNT = 256;
+
+  private final InstructionSequenceMatcher[] instructionSequenceMatchers;
+  private final InstructionSequenceReplacer[] instructionSequenceReplacers;
+
+  // The replacers whose patterns start with the given opcodes.
+  private final BitSet[] startingReplacers = new BitSet[OPCODE_COUNT];
+
+  // The replacers whose matchers are in the middle of a match, or that
+  // can't be indexed.
+  private final BitSet activeReplacers = new BitSet();
+  private final BitSet unindexedReplacers = new BitSet();
+
+  private final BitSet visitedReplacers = new BitSet();
+
+  /**
+   * Creates a new CompiledInstructionSequencesReplacer.
+   *
+   * @param constants any constants referenced by the pattern instructions and replacement
+   *     instructions.
+   * @param patternInstructions the pattern instruction sequences.
+   * @param replacementInstructions the corresponding replacement instruction sequences.
+   * @param branchTargetFinder a branch target finder that has been initialized to indicate branch
+   *     targets in the visited code.
+   * @param codeAttributeEditor a code editor that can be used for accumulating changes to the code.
+   * @param extraInstructionVisitor an optional extra visitor for all deleted load instructions.
+   */
+  CompiledInstructionSequencesReplacer(
+      Constant[] constants,
+      Instruction[][] patternInstructions,
+      Instruction[][] replacementInstructions,
+      BranchTargetFinder branchTargetFinder,
+      CodeAttributeEditor codeAttributeEditor,
+      InstructionVisitor extraInstructionVisitor) {
+    int count = patternInstructions.length;
+
+    instructionSequenceMatchers = new InstructionSequenceMatcher[count];
+    instructionSequenceReplacers = new InstructionSequenceReplacer[count];
+
+    for (int index = 0; index < count; index++) {
+      instructionSequenceMatchers[index] =
+          new InstructionSequenceMatcher(constants, patternInstructions[index]);
+
+      instructionSequenceReplacers[index] =
+          new InstructionSequenceReplacer(
+              instructionSequenceMatchers[index],
+              constants,
+              replacementInstructions[index],
+              branchTargetFinder,
+              codeAttributeEditor,
+              extraInstructionVisitor);
+
+      // Index the pattern on the opcode of its first instruction.
+      if (patternInstructions[index].length > 0) {
+        int opcode = patternInstructions[index][0].opcode & 0xff;
+        if (startingReplacers[opcode] == null) {
+          startingReplacers[opcode] = new BitSet(count);
+        }
+        startingReplacers[opcode].set(index);
+      } else {
+        unindexedReplacers.set(index);
+      }
+    }
+
+    activeReplacers.or(unindexedReplacers);
+  }
+
+  // Implementations for InstructionVisitor.
+
+  @Override
+  public void visitAnyInstruction(
+      Clazz clazz,
+      Method method,
+      CodeAttribute codeAttribute,
+      int offset,
+      Instruction instruction) {
+    // Collect the replacers that may match the instruction. The matchers
+    // accept the instruction if it has the same opcode as the pattern
+    // instruction, or the same canonical opcode.
+    visitedReplacers.clear();
+    visitedReplacers.or(activeReplacers);
+    addStartingReplacers(instruction.opcode);
+    addStartingReplacers(instruction.canonicalOpcode());
+
+    // Pass the instruction to these replacers, in their original order.
+    for (int index = visitedReplacers.nextSetBit(0);
+        index >= 0;
+        index = visitedReplacers.nextSetBit(index + 1)) {
+      instructionSequenceReplacers[index].visitAnyInstruction(
+          clazz, method, codeAttribute, offset, instruction);
+
+      // Remember whether the replacer should see the next instruction.
+      activeReplacers.set(
+          index,
+          instructionSequenceMatchers[index].isMatchingPartially()
+              || unindexedReplacers.get(index));
+    }
+  }
+
+  // Small utility methods.
+
+  /** Adds the replacers whose patterns start with the given opcode to the visited replacers. */
+  private void addStartingReplacers(byte opcode) {
+    BitSet replacers = startingReplacers[opcode & 0xff];
+    if (replacers != null) {
+      visitedReplacers.or(replacers);
+    }
+  }
+}
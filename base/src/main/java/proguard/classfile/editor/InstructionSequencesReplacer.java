@@ -28,6 +28,9 @@ import proguard.classfile.util.BranchTargetFinder;
  * <p>The replacement sequences are optional, defaulting to the empty sequence, to delete the
  * matched pattern sequences.
  *
+ * <p>The patterns are indexed on the opcodes of their first instructions, so the cost of matching
+ * an instruction hardly depends on the number of patterns.
+ *
  * @see InstructionSequenceReplacer
  * @author Eric Lafortune
  */
@@ -78,7 +81,7 @@ public class InstructionSequencesReplacer extends MultiInstructionVisitor
       CodeAttributeEditor codeAttributeEditor,
       InstructionVisitor extraInstructionVisitor) {
     super(
-        createInstructionSequenceReplacers(
+        createInstructionSequenceReplacer(
             constants,
             instructionSequences,
             branchTargetFinder,
@@ -87,7 +90,8 @@ public class InstructionSequencesReplacer extends MultiInstructionVisitor
   }
 
   /**
-   * Creates an array of InstructionSequenceReplacer instances.
+   * Creates a replacer for all instruction sequences, which only passes instructions to the
+   * replacers whose patterns they may match.
    *
    * @param constants any constants referenced by the pattern instructions and replacement
    *     instructions.
@@ -98,37 +102,33 @@ public class InstructionSequencesReplacer extends MultiInstructionVisitor
    * @param codeAttributeEditor a code editor that can be used for accumulating changes to the code.
    * @param extraInstructionVisitor an optional extra visitor for all deleted load instructions.
    */
-  private static InstructionVisitor[] createInstructionSequenceReplacers(
+  private static InstructionVisitor createInstructionSequenceReplacer(
       Constant[] constants,
       Instruction[][][] instructionSequences,
       BranchTargetFinder branchTargetFinder,
       CodeAttributeEditor codeAttributeEditor,
       InstructionVisitor extraInstructionVisitor) {
-    InstructionVisitor[] instructionSequenceReplacers =
-        new InstructionVisitor[instructionSequences.length];
+    Instruction[][] patternInstructions = new Instruction[instructionSequences.length][];
+    Instruction[][] replacementInstructions = new Instruction[instructionSequences.length][];
 
-    for (int index = 0; index < instructionSequenceReplacers.length; index++) {
+    for (int index = 0; index < instructionSequences.length; index++) {
       Instruction[][] instructionSequencePair = instructionSequences[index];
 
-      Instruction[] patternInstructions = instructionSequencePair[PATTERN_INDEX];
+      patternInstructions[index] = instructionSequencePair[PATTERN_INDEX];
 
       // The replacement sequence is optional.
-      Instruction[] replacementInstructions =
+      replacementInstructions[index] =
           instructionSequencePair.length > REPLACEMENT_INDEX
               ? instructionSequencePair[REPLACEMENT_INDEX]
               : EMPTY_INSTRUCTIONS;
-
-      instructionSequenceReplacers[index] =
-          new InstructionSequenceReplacer(
-              constants,
-              patternInstructions,
-              constants,
-              replacementInstructions,
-              branchTargetFinder,
-              codeAttributeEditor,
-              extraInstructionVisitor);
     }
 
-    return instructionSequenceReplacers;
+    return new CompiledInstructionSequencesReplacer(
+        constants,
+        patternInstructions,
+        replacementInstructions,
+        branchTargetFinder,
+        codeAttributeEditor,
+        extraInstructionVisitor);
   }
 }
@@ -0,0 +1,427 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package proguard.classfile.util;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import proguard.classfile.AccessConstants;
+import proguard.classfile.ClassPool;
+import proguard.classfile.Clazz;
+import proguard.classfile.Method;
+
+/**
+ * This class precomputes the class hierarchy of the classes in a program class pool and a library
+ * class pool, for answering subtype queries in constant time and for resolving virtual method
+ * calls without walking the hierarchy every time. The super hierarchy of the classes must have
+ * been initialized, e.g. by a {@link ClassSuperHierarchyInitializer}; the classes can't be
+ * modified while the index is in use.
+ *
+ * <p>The classes are numbered in preorder along their superclasses, so the subclasses of a class
+ * form a contiguous interval of numbers. The transitive superinterfaces of each class are
+ * represented as a bit set, shared with its superclass if it doesn't implement any further
+ * interfaces. Classes that are not in the class pools or reachable from their super hierarchies
+ * are handled by walking their hierarchy, as before.
+ *
+ * <p>Instances can be queried from multiple threads.
+ */
+public class ClassHierarchyIndex {
+  private static final BitSet NO_INTERFACES = new BitSet();
+
+  private final Map<Clazz, Node> nodes = new LinkedHashMap<>();
+  private final Node[] nodesByPreorder;
+  private final Clazz[] interfacesById;
+
+  private final Map<Node, List<Clazz>> interfaceSubtypes = new ConcurrentHashMap<>();
+  private final Map<VirtualCall, Set<String>> virtualTargets = new ConcurrentHashMap<>();
+
+  /**
+   * Creates a new ClassHierarchyIndex for the given class pools.
+   *
+   * @param programClassPool the program classes.
+   * @param libraryClassPool the library classes.
+   */
+  public ClassHierarchyIndex(ClassPool programClassPool, ClassPool libraryClassPool) {
+    // Collect the classes, including any classes in their super hierarchies that are not in the
+    // class pools.
+    Deque<Clazz> worklist = new ArrayDeque<>();
+    programClassPool.classes().forEach(worklist::add);
+    libraryClassPool.classes().forEach(worklist::add);
+    List<Node> interfaces = new ArrayList<>();
+    while (!worklist.isEmpty()) {
+      Clazz clazz = worklist.pop();
+      if (!nodes.containsKey(clazz)) {
+        Node node = new Node(clazz);
+        nodes.put(clazz, node);
+        if ((clazz.getAccessFlags() & AccessConstants.INTERFACE) != 0) {
+          interfaces.add(node);
+        }
+
+        Clazz superClass = clazz.getSuperClass();
+        if (superClass != null) {
+          worklist.push(superClass);
+        }
+        for (int index = 0; index < clazz.getInterfaceCount(); index++) {
+          Clazz interfaceClass = clazz.getInterface(index);
+          if (interfaceClass != null) {
+            worklist.push(interfaceClass);
+          }
+        }
+      }
+    }
+
+    // Link the classes to their superclasses, and count the implementations of the interfaces.
+    List<Node> roots = new ArrayList<>();
+    for (Node node : nodes.values()) {
+      Clazz clazz = node.clazz;
+      Clazz superClass = clazz.getSuperClass();
+      if (superClass == null) {
+        roots.add(node);
+      } else {
+        Node superNode = nodes.get(superClass);
+        node.superNode = superNode;
+        superNode.subNodes.add(node);
+      }
+      for (int index = 0; index < clazz.getInterfaceCount(); index++) {
+        Node interfaceNode = nodes.get(clazz.getInterface(index));
+        if (interfaceNode != null) {
+          interfaceNode.implementerCount++;
+        }
+      }
+    }
+
+    // Number the classes in preorder, starting from the classes without superclass. Classes in
+    // a (broken) superclass cycle become roots of their own.
+    nodesByPreorder = new Node[nodes.size()];
+    int preorder = 0;
+    for (Node root : roots) {
+      preorder = number(root, preorder);
+    }
+    for (Node node : nodes.values()) {
+      if (node.preorder < 0) {
+        node.superNode = null;
+        preorder = number(node, preorder);
+      }
+    }
+
+    // Number the interfaces, the most implemented ones first, to keep the bit sets small.
+    interfaces.sort(
+        (interface1, interface2) ->
+            Integer.compare(interface2.implementerCount, interface1.implementerCount));
+    interfacesById = new Clazz[interfaces.size()];
+    for (int id = 0; id < interfacesById.length; id++) {
+      interfaces.get(id).interfaceId = id;
+      interfacesById[id] = interfaces.get(id).clazz;
+    }
+
+    // Superclasses are numbered before their subclasses, so this computes the superinterfaces of
+    // superclasses first.
+    for (Node node : nodesByPreorder) {
+      computeInterfaces(node, new LinkedHashSet<>());
+    }
+  }
+
+  /**
+   * Returns whether the given class is the same as, extends, or implements the given other class.
+   */
+  public boolean isSubtypeOf(Clazz clazz, Clazz superType) {
+    Node node = nodes.get(clazz);
+    Node superNode = nodes.get(superType);
+    if (node == null || superNode == null) {
+      return clazz.extendsOrImplements(superType);
+    }
+
+    return superNode.interfaceId >= 0
+        ? node.interfaces.get(superNode.interfaceId)
+        : superNode.preorder <= node.preorder && node.preorder <= superNode.lastPreorder;
+  }
+
+  /** Returns the transitive superinterfaces of the given class, not including itself. */
+  public Set<Clazz> getSuperInterfaces(Clazz clazz) {
+    Set<Clazz> superInterfaces = new LinkedHashSet<>();
+    Node node = nodes.get(clazz);
+    if (node == null) {
+      collectSuperInterfaces(clazz, superInterfaces);
+    } else {
+      BitSet interfaces = node.interfaces;
+      for (int id = interfaces.nextSetBit(0); id >= 0; id = interfaces.nextSetBit(id + 1)) {
+        if (id != node.interfaceId) {
+          superInterfaces.add(interfacesById[id]);
+        }
+      }
+    }
+    return superInterfaces;
+  }
+
+  /**
+   * Returns the transitive subclasses of the given class or the transitive implementations and
+   * subinterfaces of the given interface, not including itself, in a deterministic order.
+   */
+  public List<Clazz> getSubtypes(Clazz clazz) {
+    Node node = nodes.get(clazz);
+    if (node == null) {
+      return Collections.emptyList();
+    }
+
+    if (node.interfaceId >= 0) {
+      return interfaceSubtypes.computeIfAbsent(node, this::computeInterfaceSubtypes);
+    }
+
+    List<Clazz> subtypes = new ArrayList<>(node.lastPreorder - node.preorder);
+    for (int preorder = node.preorder + 1; preorder <= node.lastPreorder; preorder++) {
+      subtypes.add(nodesByPreorder[preorder].clazz);
+    }
+    return subtypes;
+  }
+
+  /**
+   * Resolves a virtual or interface method invocation, as specified for <code>invokevirtual
+   * </code>. The result is cached.
+   *
+   * @param thisType the type of the <code>this</code> pointer of the call.
+   * @param name the name of the invoked method.
+   * @param descriptor the descriptor of the invoked method.
+   * @return the names of the classes containing the target method: the closest superclass with a
+   *     non-abstract implementation or, failing that, the maximally specific superinterfaces with a
+   *     default implementation. Empty if there is no target.
+   */
+  public Set<String> resolveVirtual(Clazz thisType, String name, String descriptor) {
+    if (thisType == null) {
+      return Collections.emptySet();
+    }
+
+    return virtualTargets.computeIfAbsent(
+        new VirtualCall(thisType, name, descriptor), this::computeVirtualTargets);
+  }
+
+  /**
+   * Returns the names of the maximally specific superinterfaces of the given class with a
+   * non-abstract, non-private, non-static implementation of the given method.
+   *
+   * @param start the class whose superinterfaces are searched.
+   * @param name the name of the method.
+   * @param descriptor the descriptor of the method.
+   */
+  public Set<String> resolveFromSuperInterfaces(Clazz start, String name, String descriptor) {
+    Set<Clazz> applicableInterfaces = new LinkedHashSet<>();
+    for (Clazz superInterface : getSuperInterfaces(start)) {
+      Method method = superInterface.findMethod(name, descriptor);
+      if (method != null
+          && (method.getAccessFlags()
+                  & (AccessConstants.PRIVATE | AccessConstants.STATIC | AccessConstants.ABSTRACT))
+              == 0) {
+        applicableInterfaces.add(superInterface);
+      }
+    }
+
+    // An applicable interface is more specific than the applicable interfaces it extends.
+    Set<String> targets = new LinkedHashSet<>();
+    for (Clazz applicableInterface : applicableInterfaces) {
+      boolean maximallySpecific = true;
+      for (Clazz otherInterface : applicableInterfaces) {
+        if (otherInterface != applicableInterface
+            && isSubtypeOf(otherInterface, applicableInterface)) {
+          maximallySpecific = false;
+          break;
+        }
+      }
+      if (maximallySpecific) {
+        targets.add(applicableInterface.getName());
+      }
+    }
+    return targets;
+  }
+
+  // Small utility methods.
+
+  /** Numbers the given class and its subclasses in preorder, returning the next number. */
+  private int number(Node root, int preorder) {
+    Deque<Node> stack = new ArrayDeque<>();
+    stack.push(root);
+    while (!stack.isEmpty()) {
+      Node node = stack.pop();
+      node.preorder = preorder;
+      nodesByPreorder[preorder++] = node;
+      // Push the subclasses in reverse, so they are numbered in their original order.
+      for (int index = node.subNodes.size() - 1; index >= 0; index--) {
+        Node subNode = node.subNodes.get(index);
+        if (subNode.preorder < 0) {
+          stack.push(subNode);
+        }
+      }
+    }
+
+    // The subclasses of each class directly follow it.
+    for (int index = preorder - 1; index >= root.preorder; index--) {
+      Node node = nodesByPreorder[index];
+      node.lastPreorder = Math.max(node.lastPreorder, index);
+      if (node != root && node.superNode != null) {
+        node.superNode.lastPreorder = Math.max(node.superNode.lastPreorder, node.lastPreorder);
+      }
+    }
+    return preorder;
+  }
+
+  /** Computes the superinterfaces of the given class, guarding against interface cycles. */
+  private BitSet computeInterfaces(Node node, Set<Node> visiting) {
+    if (node.interfaces != null) {
+      return node.interfaces;
+    }
+    if (!visiting.add(node)) {
+      return NO_INTERFACES;
+    }
+
+    BitSet inherited = node.superNode == null ? NO_INTERFACES : node.superNode.interfaces;
+    if (inherited == null) {
+      inherited = computeInterfaces(node.superNode, visiting);
+    }
+
+    BitSet interfaces = null;
+    if (node.interfaceId >= 0) {
+      interfaces = (BitSet) inherited.clone();
+      interfaces.set(node.interfaceId);
+    }
+    Clazz clazz = node.clazz;
+    for (int index = 0; index < clazz.getInterfaceCount(); index++) {
+      Node interfaceNode = nodes.get(clazz.getInterface(index));
+      if (interfaceNode != null) {
+        BitSet superInterfaces = computeInterfaces(interfaceNode, visiting);
+        BitSet current = interfaces == null ? inherited : interfaces;
+        if (!contains(current, superInterfaces)) {
+          if (interfaces == null) {
+            interfaces = (BitSet) inherited.clone();
+          }
+          interfaces.or(superInterfaces);
+        }
+      }
+    }
+
+    visiting.remove(node);
+    node.interfaces = interfaces == null ? inherited : interfaces;
+    return node.interfaces;
+  }
+
+  private static boolean contains(BitSet bitSet, BitSet otherBitSet) {
+    BitSet difference = (BitSet) otherBitSet.clone();
+    difference.andNot(bitSet);
+    return difference.isEmpty();
+  }
+
+  private List<Clazz> computeInterfaceSubtypes(Node interfaceNode) {
+    List<Clazz> subtypes = new ArrayList<>();
+    for (Node node : nodesByPreorder) {
+      if (node != interfaceNode && node.interfaces.get(interfaceNode.interfaceId)) {
+        subtypes.add(node.clazz);
+      }
+    }
+    return Collections.unmodifiableList(subtypes);
+  }
+
+  private Set<String> computeVirtualTargets(VirtualCall call) {
+    // Search the class and its superclasses.
+    for (Clazz clazz = call.thisType; clazz != null; clazz = clazz.getSuperClass()) {
+      Method method = clazz.findMethod(call.name, call.descriptor);
+      if (method != null && (method.getAccessFlags() & AccessConstants.ABSTRACT) == 0) {
+        return Collections.singleton(clazz.getName());
+      }
+    }
+
+    // Otherwise find the maximally specific default methods in the superinterfaces.
+    return Collections.unmodifiableSet(
+        resolveFromSuperInterfaces(call.thisType, call.name, call.descriptor));
+  }
+
+  /** Collects the superinterfaces of a class that is not in the index. */
+  private void collectSuperInterfaces(Clazz clazz, Set<Clazz> superInterfaces) {
+    Node node = nodes.get(clazz);
+    if (node != null) {
+      superInterfaces.addAll(getSuperInterfaces(clazz));
+      if (node.interfaceId >= 0) {
+        superInterfaces.add(clazz);
+      }
+      return;
+    }
+
+    for (int index = 0; index < clazz.getInterfaceCount(); index++) {
+      Clazz interfaceClass = clazz.getInterface(index);
+      if (interfaceClass != null && superInterfaces.add(interfaceClass)) {
+        collectSuperInterfaces(interfaceClass, superInterfaces);
+      }
+    }
+    if (clazz.getSuperClass() != null) {
+      collectSuperInterfaces(clazz.getSuperClass(), superInterfaces);
+    }
+  }
+
+  /** The position of a class in the hierarchy. */
+  private static class Node {
+    private final Clazz clazz;
+    private final List<Node> subNodes = new ArrayList<>();
+    private Node superNode;
+    private int preorder = -1;
+    private int lastPreorder = -1;
+    private int interfaceId = -1;
+    private int implementerCount;
+    private BitSet interfaces;
+
+    private Node(Clazz clazz) {
+      this.clazz = clazz;
+    }
+  }
+
+  /** The key of a cached virtual call resolution. */
+  private static class VirtualCall {
+    private final Clazz thisType;
+    private final String name;
+    private final String descriptor;
+
+    private VirtualCall(Clazz thisType, String name, String descriptor) {
+      this.thisType = thisType;
+      this.name = name;
+      this.descriptor = descriptor;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof VirtualCall)) {
+        return false;
+      }
+      VirtualCall other = (VirtualCall) o;
+      return thisType == other.thisType
+          && name.equals(other.name)
+          && descriptor.equals(other.descriptor);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(System.identityHashCode(thisType), name, descriptor);
+    }
+  }
+}
@@ -114,6 +114,7 @@ public class ClassRenamer implements ClassVisitor, MemberVisitor, ConstantVisito
     String newName = memberNameFunction.apply(programClass, programMember);
     if (newName != null && !newName.equals(name)) {
       programMember.u2nameIndex = new ConstantPoolEditor(programClass).addUtf8Constant(newName);
+      programClass.invalidateMemberIndices();
 
       if (extraMemberVisitor != null) {
         programMember.accept(programClass, extraMemberVisitor);
@@ -127,6 +128,7 @@ public class ClassRenamer implements ClassVisitor, MemberVisitor, ConstantVisito
     String newName = memberNameFunction.apply(libraryClass, libraryMember);
     if (newName != null && !newName.equals(name)) {
       libraryMember.name = newName;
+      libraryClass.invalidateMemberIndices();
 
       if (extraMemberVisitor != null) {
         libraryMember.accept(libraryClass, extraMemberVisitor);
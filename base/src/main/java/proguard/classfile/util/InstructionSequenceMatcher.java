@@ -130,6 +130,14 @@ public class InstructionSequenceMatcher implements InstructionVisitor, ConstantV
     return matching;
   }
 
+  /**
+   * Returns whether the start of the pattern sequence has been matched, so the next instruction
+   * may continue the match.
+   */
+  public boolean isMatchingPartially() {
+    return patternInstructionIndex > 0;
+  }
+
   /** Returns the number of instructions in the pattern sequence. */
   public int instructionCount() {
     return patternInstructions.length;
@@ -56,6 +56,7 @@ public class MemberRenamer implements MemberVisitor {
     String newName = memberNameFunction.apply(programClass, programMember);
     if (newName != null && !newName.equals(name)) {
       programMember.u2nameIndex = new ConstantPoolEditor(programClass).addUtf8Constant(newName);
+      programClass.invalidateMemberIndices();
 
       if (extraMemberVisitor != null) {
         programMember.accept(programClass, extraMemberVisitor);
@@ -69,6 +70,7 @@ public class MemberRenamer implements MemberVisitor {
     String newName = memberNameFunction.apply(libraryClass, libraryMember);
     if (newName != null && !newName.equals(name)) {
       libraryMember.name = newName;
+      libraryClass.invalidateMemberIndices();
 
       if (extraMemberVisitor != null) {
         libraryMember.accept(libraryClass, extraMemberVisitor);
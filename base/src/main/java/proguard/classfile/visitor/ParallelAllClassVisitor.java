@@ -20,43 +20,37 @@ package proguard.classfile.visitor;
 import java.util.*;
 import java.util.concurrent.*;
 import proguard.classfile.*;
+import proguard.classfile.attribute.*;
+import proguard.classfile.attribute.visitor.*;
+import proguard.util.ParallelUtil;
 
 /**
  * This {@link ClassPoolVisitor} will visit all Clazz instances of the class pool in a parallel way.
  * For each thread, a separate {@link ClassVisitor} will be created using {@link
  * ClassVisitorFactory#createClassVisitor()}.
  *
- * <p>The number of parallel threads is coupled to the number of available processors:
+ * <p>The classes are visited on a long-lived, work-stealing {@link ForkJoinPool}, which is shared
+ * by all visitors with the same number of threads, unless a pool is specified explicitly. The
+ * classes are ordered by the size of their code, so the largest classes are visited first, and the
+ * smaller classes are grouped in batches, so they don't each need a separate task.
+ *
+ * <p>By default, the number of parallel threads is coupled to the number of available processors:
  *
  * <pre>
  *     parallel_threads = Runtime.getRuntime().availableProcessors() - 1;
  * </pre>
  *
- * <p>It is possible to override the number of threads by setting the environment variable {@code
- * parallel.threads} to an integer > 0.
+ * <p>It is possible to override the default number of threads by setting the environment variable
+ * {@code parallel.threads} to an integer > 0, or to specify the number of threads in the
+ * constructor.
  *
  * @author Thomas Neidhart
  */
 public class ParallelAllClassVisitor implements ClassPoolVisitor {
-  private static final int THREAD_COUNT;
-
-  static {
-    Integer threads = null;
-    try {
-      String threadCountString = System.getProperty("parallel.threads");
-      if (threadCountString != null) {
-        threads = Integer.parseInt(threadCountString);
-      }
-    } catch (Exception ex) {
-    }
+  private static final int THREAD_COUNT = ParallelUtil.defaultThreadCount();
 
-    threads =
-        threads == null
-            ? Runtime.getRuntime().availableProcessors() - 1
-            : Math.min(threads.intValue(), Runtime.getRuntime().availableProcessors());
-
-    THREAD_COUNT = threads.intValue();
-  }
+  // The shared pools, by number of threads.
+  private static final Map<Integer, ForkJoinPool> SHARED_POOLS = new ConcurrentHashMap<>();
 
   /** A factory for {@link ClassVisitor} objects. */
   public interface ClassVisitorFactory {
@@ -67,91 +61,170 @@ public class ParallelAllClassVisitor implements ClassPoolVisitor {
   }
 
   private final ClassVisitorFactory classVisitorFactory;
+  private final int threadCount;
+  private final ForkJoinPool forkJoinPool;
+
+  private volatile boolean cancelled;
 
   /**
    * Create a new ParallelAllClassVisitor that will use the given factory to visit all classes in a
    * ClassPool in a parallel way.
    */
   public ParallelAllClassVisitor(ClassVisitorFactory classVisitorFactory) {
+    this(classVisitorFactory, Math.max(1, THREAD_COUNT));
+  }
+
+  /**
+   * Create a new ParallelAllClassVisitor that will use the given factory to visit all classes in a
+   * ClassPool with the given number of threads. With a single thread, the classes are visited on
+   * the calling thread.
+   */
+  public ParallelAllClassVisitor(ClassVisitorFactory classVisitorFactory, int threadCount) {
+    if (threadCount < 1) {
+      throw new IllegalArgumentException("Invalid thread count [" + threadCount + "]");
+    }
+
+    this.classVisitorFactory = classVisitorFactory;
+    this.threadCount = threadCount;
+    this.forkJoinPool = null;
+  }
+
+  /**
+   * Create a new ParallelAllClassVisitor that will use the given factory to visit all classes in a
+   * ClassPool on the given pool.
+   */
+  public ParallelAllClassVisitor(
+      ClassVisitorFactory classVisitorFactory, ForkJoinPool forkJoinPool) {
     this.classVisitorFactory = classVisitorFactory;
+    this.threadCount = forkJoinPool.getParallelism();
+    this.forkJoinPool = forkJoinPool;
+  }
+
+  /**
+   * Cancels the ongoing visit of a class pool, if any. The classes that haven't been visited yet
+   * are skipped, and {@link #visitClassPool(ClassPool)} throws a {@link CancellationException}.
+   */
+  public void cancel() {
+    cancelled = true;
   }
 
   // Implementations for ClassPoolVisitor.
 
   public void visitClassPool(ClassPool classPool) {
-    if (THREAD_COUNT <= 1) {
+    cancelled = false;
+
+    if (threadCount <= 1 && forkJoinPool == null) {
       // Fallback to single thread execution if the thread count
       // was overridden by an environment variable.
       classPool.classesAccept(classVisitorFactory.createClassVisitor());
     } else {
-      ExecutorService executor = Executors.newFixedThreadPool(THREAD_COUNT, new MyThreadFactory());
-
-      MyThreadedClassVisitor classVisitor = new MyThreadedClassVisitor(executor);
-
-      classPool.classesAccept(classVisitor);
+      ForkJoinPool pool =
+          forkJoinPool != null
+              ? forkJoinPool
+              : SHARED_POOLS.computeIfAbsent(threadCount, ParallelAllClassVisitor::createPool);
+
+      // Create a separate class visitor for each thread that takes part.
+      Map<Thread, ClassVisitor> classVisitors = new ConcurrentHashMap<>();
+
+      List<ForkJoinTask<?>> tasks = new ArrayList<>();
+      for (List<MyClassCost> batch : createBatches(classPool)) {
+        tasks.add(
+            pool.submit(
+                () -> {
+                  ClassVisitor classVisitor =
+                      classVisitors.computeIfAbsent(
+                          Thread.currentThread(),
+                          thread -> classVisitorFactory.createClassVisitor());
+
+                  for (MyClassCost classCost : batch) {
+                    if (cancelled) {
+                      break;
+                    }
+                    classCost.clazz.accept(classVisitor);
+                  }
+                }));
+      }
 
       try {
-        // Shutdown the executor service to release memory.
-        executor.shutdown();
-
-        // Rethrow any exception that was thrown in the executor threads.
-        classVisitor.awaitTermination();
+        // Rethrow any exception that was thrown in the pool threads.
+        for (ForkJoinTask<?> task : tasks) {
+          task.get();
+        }
       } catch (InterruptedException e) {
+        cancelled = true;
         Thread.currentThread().interrupt();
         throw new RuntimeException("Parallel execution is taking too long", e);
       } catch (ExecutionException e) {
+        // Stop the other tasks before passing on the exception.
+        cancelled = true;
+        for (ForkJoinTask<?> task : tasks) {
+          task.quietlyJoin();
+        }
+
         throw e.getCause() instanceof RuntimeException
             ? (RuntimeException) e.getCause()
             : new RuntimeException(e.getCause());
       }
+
+      if (cancelled) {
+        throw new CancellationException("Parallel execution was cancelled");
+      }
     }
   }
 
-  private class MyThreadFactory implements ThreadFactory {
-    private int threadCounter = 0;
+  // Small utility methods.
 
-    public Thread newThread(Runnable runnable) {
-      return new MyClassVisitorThread(++threadCounter, runnable);
+  /**
+   * Returns the classes of the given class pool, ordered by decreasing size of their code, in
+   * batches of similar total size. Large classes end up in batches of their own.
+   */
+  private List<List<MyClassCost>> createBatches(ClassPool classPool) {
+    List<MyClassCost> classCosts = new ArrayList<>(classPool.size());
+    MyCodeSizeCounter codeSizeCounter = new MyCodeSizeCounter();
+
+    for (Clazz clazz : classPool.classes()) {
+      classCosts.add(new MyClassCost(clazz, codeSizeCounter));
     }
+
+    return ParallelUtil.createBatches(classCosts, classCost -> classCost.cost, threadCount);
+  }
+
+  /** Creates a pool with the given number of daemon threads. */
+  private static ForkJoinPool createPool(int threadCount) {
+    return ParallelUtil.createDaemonPool(threadCount, "Parallel Class Visitor");
   }
 
-  private class MyClassVisitorThread extends Thread {
-    private final ClassVisitor classVisitor = classVisitorFactory.createClassVisitor();
+  /** A class with the estimated cost of visiting it. */
+  private static class MyClassCost {
+    private final Clazz clazz;
+    private final long cost;
 
-    public MyClassVisitorThread(int counter, Runnable runnable) {
-      super(runnable, "Parallel Class Visitor " + counter);
+    public MyClassCost(Clazz clazz, MyCodeSizeCounter codeSizeCounter) {
+      this.clazz = clazz;
+      this.cost = 1L + codeSizeCounter.codeSize(clazz);
     }
   }
 
-  private static class MyThreadedClassVisitor implements ClassVisitor {
-    private final ExecutorService executorService;
+  /** This {@link AttributeVisitor} computes the total code size of the classes it visits. */
+  private static class MyCodeSizeCounter implements AttributeVisitor {
+    private final ClassVisitor codeVisitor = new AllMethodVisitor(new AllAttributeVisitor(this));
 
-    private final List<Future> futures = new ArrayList<>();
+    private long codeSize;
 
-    public MyThreadedClassVisitor(ExecutorService executorService) {
-      this.executorService = executorService;
+    public long codeSize(Clazz clazz) {
+      codeSize = 0L;
+      clazz.accept(codeVisitor);
+      return codeSize;
     }
 
-    public void awaitTermination() throws ExecutionException, InterruptedException {
-      for (Future future : futures) {
-        future.get();
-      }
-    }
-
-    // Implementations for ClassVisitor.
+    // Implementations for AttributeVisitor.
 
     @Override
-    public void visitAnyClass(Clazz clazz) {
-      submitClassToExecutorService(clazz);
-    }
+    public void visitAnyAttribute(Clazz clazz, Attribute attribute) {}
 
-    private void submitClassToExecutorService(final Clazz clazz) {
-      futures.add(
-          executorService.submit(
-              () -> {
-                MyClassVisitorThread thread = (MyClassVisitorThread) Thread.currentThread();
-                clazz.accept(thread.classVisitor);
-              }));
+    @Override
+    public void visitCodeAttribute(Clazz clazz, Method method, CodeAttribute codeAttribute) {
+      codeSize += codeAttribute.u4codeLength;
     }
   }
 }
@@ -0,0 +1,231 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package proguard.evaluation;
+
+import java.util.Arrays;
+import proguard.classfile.attribute.CodeAttribute;
+import proguard.classfile.editor.ClassEstimates;
+import proguard.classfile.instruction.BranchInstruction;
+import proguard.classfile.instruction.Instruction;
+import proguard.classfile.instruction.InstructionFactory;
+import proguard.classfile.instruction.SwitchInstruction;
+import proguard.classfile.util.BranchTargetFinder;
+
+/**
+ * This class splits the code of a method into basic blocks, based on the branch targets and
+ * exception handlers found by a {@link BranchTargetFinder}, and orders the blocks in reverse
+ * postorder of the control flow graph. In this order, a block comes before its successors, except
+ * for the targets of backward branches in loops. The blocks that are only reachable from exception
+ * handlers come after the other blocks.
+ */
+final class BasicBlockOrder {
+  private int[] blockIndices = new int[ClassEstimates.TYPICAL_CODE_LENGTH];
+  private int[] blockStarts = new int[ClassEstimates.TYPICAL_CODE_LENGTH];
+  private int[] blockEnds = new int[ClassEstimates.TYPICAL_CODE_LENGTH];
+  private int[] blockRanks = new int[ClassEstimates.TYPICAL_CODE_LENGTH];
+  private int[][] blockSuccessors = new int[ClassEstimates.TYPICAL_CODE_LENGTH][];
+  private int[] postorder = new int[ClassEstimates.TYPICAL_CODE_LENGTH];
+
+  // The explicit stacks for the depth-first traversal, to support large
+  // methods.
+  private int[] blockStack = new int[ClassEstimates.TYPICAL_CODE_LENGTH];
+  private int[] successorIndexStack = new int[ClassEstimates.TYPICAL_CODE_LENGTH];
+
+  /**
+   * Computes the basic blocks of the given code and their order. The branch target finder must
+   * have visited the code.
+   */
+  void computeOrder(CodeAttribute codeAttribute, BranchTargetFinder branchTargetFinder) {
+    byte[] code = codeAttribute.code;
+    int codeLength = codeAttribute.u4codeLength;
+
+    if (blockIndices.length < codeLength) {
+      blockIndices = new int[codeLength];
+      blockStarts = new int[codeLength];
+      blockEnds = new int[codeLength];
+      blockRanks = new int[codeLength];
+      blockSuccessors = new int[codeLength][];
+      postorder = new int[codeLength];
+      blockStack = new int[codeLength];
+      successorIndexStack = new int[codeLength];
+    }
+
+    // Find the basic blocks. A block starts at the start of the code, at
+    // a branch target, at an exception handler, or after an instruction
+    // that branches or exits. A block ends at its last instruction.
+    int blockCount = 0;
+    boolean blockEnded = true;
+    int offset = 0;
+    while (offset < codeLength) {
+      Instruction instruction = InstructionFactory.create(code, offset);
+      int length = instruction.length(offset);
+
+      if (blockEnded
+          || branchTargetFinder.isBranchTarget(offset)
+          || branchTargetFinder.isExceptionHandler(offset)) {
+        blockStarts[blockCount++] = offset;
+      }
+
+      blockEnds[blockCount - 1] = offset;
+      Arrays.fill(blockIndices, offset, offset + length, blockCount - 1);
+
+      blockEnded = endsBlock(instruction);
+      offset += length;
+    }
+
+    // Find the successors of the basic blocks.
+    for (int blockIndex = 0; blockIndex < blockCount; blockIndex++) {
+      blockSuccessors[blockIndex] = successors(code, codeLength, blockEnds[blockIndex]);
+    }
+
+    // Order the blocks in reverse postorder, starting from the start of
+    // the code, and then from the exception handlers.
+    Arrays.fill(blockRanks, 0, blockCount, -1);
+
+    int postorderCount = 0;
+    for (int blockIndex = 0; blockIndex < blockCount; blockIndex++) {
+      if (blockRanks[blockIndex] < 0
+          && (blockIndex == 0
+              || branchTargetFinder.isExceptionHandler(blockStarts[blockIndex]))) {
+        postorderCount = visitBlocks(blockIndex, postorderCount);
+      }
+    }
+
+    // Put any unreachable blocks last.
+    for (int blockIndex = 0; blockIndex < blockCount; blockIndex++) {
+      if (blockRanks[blockIndex] < 0) {
+        postorderCount = visitBlocks(blockIndex, postorderCount);
+      }
+    }
+
+    for (int rank = 0; rank < blockCount; rank++) {
+      blockRanks[postorder[rank]] = rank;
+    }
+  }
+
+  /**
+   * Returns the rank of the basic block that contains the given offset, in the reverse postorder of
+   * the basic blocks.
+   */
+  int rank(int offset) {
+    return blockRanks[blockIndices[offset]];
+  }
+
+  // Small utility methods.
+
+  /**
+   * Visits the unvisited blocks that can be reached from the given block, depth first, and appends
+   * them in reverse postorder to the given number of ordered blocks. Returns the new number of
+   * ordered blocks.
+   */
+  private int visitBlocks(int startBlockIndex, int postorderCount) {
+    int stackSize = 0;
+    int visitedCount = 0;
+
+    blockRanks[startBlockIndex] = 0;
+    blockStack[stackSize] = startBlockIndex;
+    successorIndexStack[stackSize++] = 0;
+
+    while (stackSize > 0) {
+      int blockIndex = blockStack[stackSize - 1];
+      int[] successors = blockSuccessors[blockIndex];
+      int successorIndex = successorIndexStack[stackSize - 1];
+
+      if (successorIndex < successors.length) {
+        successorIndexStack[stackSize - 1]++;
+
+        int successorBlockIndex = successors[successorIndex];
+        if (blockRanks[successorBlockIndex] < 0) {
+          blockRanks[successorBlockIndex] = 0;
+          blockStack[stackSize] = successorBlockIndex;
+          successorIndexStack[stackSize++] = 0;
+        }
+      } else {
+        // All successors have been visited.
+        postorder[postorderCount + visitedCount++] = blockIndex;
+        stackSize--;
+      }
+    }
+
+    // Reverse the postorder of the visited blocks.
+    for (int index = 0; index < visitedCount / 2; index++) {
+      int blockIndex = postorder[postorderCount + index];
+      postorder[postorderCount + index] = postorder[postorderCount + visitedCount - 1 - index];
+      postorder[postorderCount + visitedCount - 1 - index] = blockIndex;
+    }
+
+    return postorderCount + visitedCount;
+  }
+
+  /** Returns the indices of the successor blocks of the instruction at the given offset. */
+  private int[] successors(byte[] code, int codeLength, int offset) {
+    Instruction instruction = InstructionFactory.create(code, offset);
+    int nextOffset = offset + instruction.length(offset);
+
+    int[] successors;
+    if (instruction instanceof BranchInstruction) {
+      int target = offset + ((BranchInstruction) instruction).branchOffset;
+
+      successors =
+          instruction.opcode == Instruction.OP_GOTO || instruction.opcode == Instruction.OP_GOTO_W
+              ? new int[] {target}
+              : new int[] {target, nextOffset};
+    } else if (instruction instanceof SwitchInstruction) {
+      SwitchInstruction switchInstruction = (SwitchInstruction) instruction;
+      int[] jumpOffsets = switchInstruction.jumpOffsets;
+
+      successors = new int[jumpOffsets.length + 1];
+      successors[0] = offset + switchInstruction.defaultOffset;
+      for (int index = 0; index < jumpOffsets.length; index++) {
+        successors[index + 1] = offset + jumpOffsets[index];
+      }
+    } else if (endsBlock(instruction)) {
+      successors = new int[0];
+    } else {
+      successors = new int[] {nextOffset};
+    }
+
+    // Convert the offsets to block indices, ignoring any invalid offsets.
+    int count = 0;
+    for (int successor : successors) {
+      if (successor >= 0 && successor < codeLength) {
+        successors[count++] = blockIndices[successor];
+      }
+    }
+
+    return count == successors.length ? successors : Arrays.copyOf(successors, count);
+  }
+
+  /** Returns whether the given instruction ends a basic block. */
+  private static boolean endsBlock(Instruction instruction) {
+    switch (instruction.opcode) {
+      case Instruction.OP_IRETURN:
+      case Instruction.OP_LRETURN:
+      case Instruction.OP_FRETURN:
+      case Instruction.OP_DRETURN:
+      case Instruction.OP_ARETURN:
+      case Instruction.OP_RETURN:
+      case Instruction.OP_ATHROW:
+      case Instruction.OP_RET:
+        return true;
+      default:
+        return instruction instanceof BranchInstruction
+            || instruction instanceof SwitchInstruction;
+    }
+  }
+}
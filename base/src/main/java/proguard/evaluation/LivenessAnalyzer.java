@@ -17,6 +17,7 @@
  */
 package proguard.evaluation;
 
+import java.util.Arrays;
 import proguard.classfile.*;
 import proguard.classfile.attribute.*;
 import proguard.classfile.attribute.visitor.*;
@@ -30,6 +31,10 @@ import proguard.util.ArrayUtil;
  * This {@link AttributeVisitor} analyzes the liveness of the variables in the code attributes that
  * it visits, based on partial evaluation.
  *
+ * <p>The liveness of the variables at each instruction is stored as a bit set of one or more 64-bit
+ * words, packed in arrays that are reused across code attributes. Methods with up to 64 variables
+ * therefore take a single word per instruction.
+ *
  * @author Eric Lafortune
  */
 public class LivenessAnalyzer
@@ -40,7 +45,7 @@ public class LivenessAnalyzer
   private static       boolean DEBUG = System.getProperty("la") != null;
   //*/
 
-  private static final int MAX_VARIABLES_SIZE = 64;
+  private static final int MAX_VARIABLES_SIZE = 1024;
 
   private final PartialEvaluator partialEvaluator;
   private final boolean runPartialEvaluator;
@@ -51,9 +56,13 @@ public class LivenessAnalyzer
   private long[] isAliveAfter = new long[ClassEstimates.TYPICAL_CODE_LENGTH];
   private long[] isCategory2 = new long[ClassEstimates.TYPICAL_CODE_LENGTH];
 
+  // The number of words per instruction in the above arrays.
+  private int wordCount = 1;
+
   // Fields acting as global temporary variables.
   private boolean checkAgain;
-  private long alive;
+  private long[] alive = new long[1];
+  private long[] handlerAlive = new long[1];
 
   /** Creates a new LivenessAnalyzer. */
   public LivenessAnalyzer() {
@@ -119,38 +128,26 @@ public class LivenessAnalyzer
 
   /** Returns whether the specified variable is alive before the instruction at the given offset. */
   public boolean isAliveBefore(int instructionOffset, int variableIndex) {
-    return variableIndex >= MAX_VARIABLES_SIZE
+    return variableIndex >= wordCount * 64
         ? partialEvaluator.getVariablesBefore(instructionOffset).getValue(variableIndex) != null
-        : (isAliveBefore[instructionOffset] & (1L << variableIndex)) != 0;
+        : isSet(isAliveBefore, instructionOffset, variableIndex);
   }
 
   /** Sets whether the specified variable is alive before the instruction at the given offset. */
   public void setAliveBefore(int instructionOffset, int variableIndex, boolean alive) {
-    if (variableIndex < MAX_VARIABLES_SIZE) {
-      if (alive) {
-        isAliveBefore[instructionOffset] |= 1L << variableIndex;
-      } else {
-        isAliveBefore[instructionOffset] &= ~(1L << variableIndex);
-      }
-    }
+    set(isAliveBefore, instructionOffset, variableIndex, alive);
   }
 
   /** Returns whether the specified variable is alive after the instruction at the given offset. */
   public boolean isAliveAfter(int instructionOffset, int variableIndex) {
-    return variableIndex >= MAX_VARIABLES_SIZE
+    return variableIndex >= wordCount * 64
         ? partialEvaluator.getVariablesAfter(instructionOffset).getValue(variableIndex) != null
-        : (isAliveAfter[instructionOffset] & (1L << variableIndex)) != 0;
+        : isSet(isAliveAfter, instructionOffset, variableIndex);
   }
 
   /** Sets whether the specified variable is alive after the instruction at the given offset. */
   public void setAliveAfter(int instructionOffset, int variableIndex, boolean alive) {
-    if (variableIndex < MAX_VARIABLES_SIZE) {
-      if (alive) {
-        isAliveAfter[instructionOffset] |= 1L << variableIndex;
-      } else {
-        isAliveAfter[instructionOffset] &= ~(1L << variableIndex);
-      }
-    }
+    set(isAliveAfter, instructionOffset, variableIndex, alive);
   }
 
   /**
@@ -158,13 +155,13 @@ public class LivenessAnalyzer
    * offset.
    */
   public boolean isCategory2(int instructionOffset, int variableIndex) {
-    return variableIndex >= MAX_VARIABLES_SIZE
+    return variableIndex >= wordCount * 64
         ? partialEvaluator.getVariablesBefore(instructionOffset).getValue(variableIndex) != null
             && partialEvaluator
                 .getVariablesBefore(instructionOffset)
                 .getValue(variableIndex)
                 .isCategory2()
-        : (isCategory2[instructionOffset] & (1L << variableIndex)) != 0;
+        : isSet(isCategory2, instructionOffset, variableIndex);
   }
 
   /**
@@ -172,13 +169,7 @@ public class LivenessAnalyzer
    * offset.
    */
   public void setCategory2(int instructionOffset, int variableIndex, boolean category2) {
-    if (variableIndex < MAX_VARIABLES_SIZE) {
-      if (category2) {
-        isCategory2[instructionOffset] |= 1L << variableIndex;
-      } else {
-        isCategory2[instructionOffset] &= ~(1L << variableIndex);
-      }
-    }
+    set(isCategory2, instructionOffset, variableIndex, category2);
   }
 
   // Implementations for AttributeVisitor.
@@ -203,10 +194,19 @@ public class LivenessAnalyzer
     int codeLength = codeAttribute.u4codeLength;
     int variablesSize = codeAttribute.u2maxLocals;
 
-    // Initialize the global arrays.
-    isAliveBefore = ArrayUtil.ensureArraySize(isAliveBefore, codeLength, 0L);
-    isAliveAfter = ArrayUtil.ensureArraySize(isAliveAfter, codeLength, 0L);
-    isCategory2 = ArrayUtil.ensureArraySize(isCategory2, codeLength, 0L);
+    // We'll only really analyze the first 1024 variables.
+    if (variablesSize > MAX_VARIABLES_SIZE) {
+      variablesSize = MAX_VARIABLES_SIZE;
+    }
+
+    // Initialize the global arrays, with enough words for all variables.
+    wordCount = Math.max(1, (variablesSize + 63) / 64);
+
+    isAliveBefore = ArrayUtil.ensureArraySize(isAliveBefore, codeLength * wordCount, 0L);
+    isAliveAfter = ArrayUtil.ensureArraySize(isAliveAfter, codeLength * wordCount, 0L);
+    isCategory2 = ArrayUtil.ensureArraySize(isCategory2, codeLength * wordCount, 0L);
+    alive = ArrayUtil.ensureArraySize(alive, wordCount, 0L);
+    handlerAlive = ArrayUtil.ensureArraySize(handlerAlive, wordCount, 0L);
 
     // Evaluate the method.
     if (runPartialEvaluator) {
@@ -217,41 +217,43 @@ public class LivenessAnalyzer
       initializationFinder.visitCodeAttribute(clazz, method, codeAttribute);
     }
 
-    // We'll only really analyze the first 64 variables.
-    if (variablesSize > MAX_VARIABLES_SIZE) {
-      variablesSize = MAX_VARIABLES_SIZE;
-    }
-
     // Mark liveness blocks, as many times as necessary.
     do {
       checkAgain = false;
-      alive = 0L;
+      Arrays.fill(alive, 0, wordCount, 0L);
 
       // Loop over all traced instructions, backward.
       for (int offset = codeLength - 1; offset >= 0; offset--) {
         if (partialEvaluator.isTraced(offset)) {
+          int wordOffset = offset * wordCount;
+
           // Update the liveness based on the branch targets.
           InstructionOffsetValue branchTargets = partialEvaluator.branchTargets(offset);
           if (branchTargets != null) {
             // Update the liveness right after the branch instruction.
-            alive = combinedLiveness(branchTargets);
+            combineLiveness(branchTargets);
           }
 
-          // Merge the current liveness.
-          alive |= isAliveAfter[offset];
-
-          // Update the liveness after the instruction.
-          isAliveAfter[offset] = alive;
+          // Merge the current liveness and update the liveness after the
+          // instruction.
+          for (int word = 0; word < wordCount; word++) {
+            isAliveAfter[wordOffset + word] = alive[word] |= isAliveAfter[wordOffset + word];
+          }
 
           // Update the current liveness based on the instruction.
           codeAttribute.instructionAccept(clazz, method, offset, this);
 
           // Merge the current liveness.
-          alive |= isAliveBefore[offset];
+          boolean changed = false;
+          for (int word = 0; word < wordCount; word++) {
+            long aliveBefore = isAliveBefore[wordOffset + word];
+            changed |= (~aliveBefore & alive[word]) != 0L;
+            alive[word] |= aliveBefore;
+          }
 
           // Update the liveness before the instruction.
-          if ((~isAliveBefore[offset] & alive) != 0L) {
-            isAliveBefore[offset] = alive;
+          if (changed) {
+            System.arraycopy(alive, 0, isAliveBefore, wordOffset, wordCount);
 
             // Do we have to check again after this loop?
             InstructionOffsetValue branchOrigins = partialEvaluator.branchOrigins(offset);
@@ -304,17 +306,12 @@ public class LivenessAnalyzer
       // Loop over all instructions.
       for (int offset = 0; offset < codeLength; offset++) {
         if (partialEvaluator.isTraced(offset)) {
-          long aliveBefore = isAliveBefore[offset];
-          long aliveAfter = isAliveAfter[offset];
-          long category2 = isCategory2[offset];
-
           // Print out the liveness of all variables before the instruction.
           for (int variableIndex = 0; variableIndex < variablesSize; variableIndex++) {
-            long variableMask = (1L << variableIndex);
             System.out.print(
-                (aliveBefore & variableMask) == 0L
+                !isAliveBefore(offset, variableIndex)
                     ? '.'
-                    : (category2 & variableMask) == 0L ? 'x' : '*');
+                    : !isCategory2(offset, variableIndex) ? 'x' : '*');
           }
 
           // Print out the instruction itself.
@@ -323,11 +320,10 @@ public class LivenessAnalyzer
 
           // Print out the liveness of all variables after the instruction.
           for (int variableIndex = 0; variableIndex < variablesSize; variableIndex++) {
-            long variableMask = (1L << variableIndex);
             System.out.print(
-                (aliveAfter & variableMask) == 0L
+                !isAliveAfter(offset, variableIndex)
                     ? '.'
-                    : (category2 & variableMask) == 0L ? 'x' : '=');
+                    : !isCategory2(offset, variableIndex) ? 'x' : '=');
           }
 
           System.out.println();
@@ -352,19 +348,20 @@ public class LivenessAnalyzer
       int offset,
       VariableInstruction variableInstruction) {
     int variableIndex = variableInstruction.variableIndex;
-    if (variableIndex < MAX_VARIABLES_SIZE) {
+    if (variableIndex < wordCount * 64) {
+      int word = variableIndex / 64;
       long livenessMask = 1L << variableIndex;
 
       // Is it a load instruction or a store instruction?
       if (variableInstruction.isLoad()) {
         // Start marking the variable before the load instruction.
-        alive |= livenessMask;
+        alive[word] |= livenessMask;
       } else {
         // Stop marking the variable before the store instruction.
-        alive &= ~livenessMask;
+        alive[word] &= ~livenessMask;
 
         // But do mark the variable right after the store instruction.
-        isAliveAfter[offset] |= livenessMask;
+        isAliveAfter[offset * wordCount + word] |= livenessMask;
       }
     }
   }
@@ -378,7 +375,7 @@ public class LivenessAnalyzer
     // Special case: variable 0 ('this') in an initializer has to be alive
     // as long as it hasn't been initialized.
     if (offset == initializationFinder.superInitializationOffset()) {
-      alive |= 1L;
+      alive[0] |= 1L;
     }
   }
 
@@ -387,20 +384,30 @@ public class LivenessAnalyzer
   public void visitExceptionInfo(
       Clazz clazz, Method method, CodeAttribute codeAttribute, ExceptionInfo exceptionInfo) {
     // Are any variables alive at the start of the handler?
-    long alive = isAliveBefore[exceptionInfo.u2handlerPC];
-    if (alive != 0L) {
+    long anyAlive = 0L;
+    for (int word = 0; word < wordCount; word++) {
+      anyAlive |=
+          handlerAlive[word] = isAliveBefore[exceptionInfo.u2handlerPC * wordCount + word];
+    }
+
+    if (anyAlive != 0L) {
       // Set the same liveness flags for the entire try block.
       int startOffset = exceptionInfo.u2startPC;
       int endOffset = exceptionInfo.u2endPC;
 
       for (int offset = startOffset; offset < endOffset; offset++) {
         if (partialEvaluator.isTraced(offset)) {
-          if ((~(isAliveBefore[offset] & isAliveAfter[offset]) & alive) != 0L) {
-            isAliveBefore[offset] |= alive;
-            isAliveAfter[offset] |= alive;
-
-            // Check again after having marked this try block.
-            checkAgain = true;
+          int wordOffset = offset * wordCount;
+          for (int word = 0; word < wordCount; word++) {
+            long alive = handlerAlive[word];
+            if ((~(isAliveBefore[wordOffset + word] & isAliveAfter[wordOffset + word]) & alive)
+                != 0L) {
+              isAliveBefore[wordOffset + word] |= alive;
+              isAliveAfter[wordOffset + word] |= alive;
+
+              // Check again after having marked this try block.
+              checkAgain = true;
+            }
           }
         }
       }
@@ -410,17 +417,36 @@ public class LivenessAnalyzer
   // Small utility methods.
 
   /**
-   * Returns the combined liveness mask of the variables right before the specified instruction
-   * offsets.
+   * Sets the current liveness to the combined liveness of the variables right before the specified
+   * instruction offsets.
    */
-  private long combinedLiveness(InstructionOffsetValue instructionOffsetValue) {
-    long alive = 0L;
+  private void combineLiveness(InstructionOffsetValue instructionOffsetValue) {
+    Arrays.fill(alive, 0, wordCount, 0L);
 
     int count = instructionOffsetValue.instructionOffsetCount();
     for (int index = 0; index < count; index++) {
-      alive |= isAliveBefore[instructionOffsetValue.instructionOffset(index)];
+      int wordOffset = instructionOffsetValue.instructionOffset(index) * wordCount;
+      for (int word = 0; word < wordCount; word++) {
+        alive[word] |= isAliveBefore[wordOffset + word];
+      }
     }
+  }
 
-    return alive;
+  /** Returns whether the specified variable is set at the given offset in the given bit sets. */
+  private boolean isSet(long[] bitSets, int instructionOffset, int variableIndex) {
+    return (bitSets[instructionOffset * wordCount + variableIndex / 64] & (1L << variableIndex))
+        != 0L;
+  }
+
+  /** Sets or clears the specified variable at the given offset in the given bit sets. */
+  private void set(long[] bitSets, int instructionOffset, int variableIndex, boolean value) {
+    if (variableIndex < wordCount * 64) {
+      int index = instructionOffset * wordCount + variableIndex / 64;
+      if (value) {
+        bitSets[index] |= 1L << variableIndex;
+      } else {
+        bitSets[index] &= ~(1L << variableIndex);
+      }
+    }
   }
 }
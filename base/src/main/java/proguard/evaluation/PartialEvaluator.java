@@ -20,6 +20,8 @@ package proguard.evaluation;
 import java.util.Arrays;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import proguard.analysis.Metrics;
+import proguard.analysis.Metrics.TimerType;
 import proguard.classfile.Clazz;
 import proguard.classfile.Method;
 import proguard.classfile.attribute.Attribute;
@@ -89,6 +91,11 @@ public class PartialEvaluator implements AttributeVisitor, ExceptionInfoVisitor
   private final boolean evaluateAllCode;
   private final int prettyInstructionBuffered;
   private final InstructionVisitor extraInstructionVisitor;
+  private final boolean recycleFrames;
+
+  // The order of the basic blocks, when evaluating the instruction blocks
+  // in reverse postorder, or null otherwise.
+  private final BasicBlockOrder basicBlockOrder;
 
   private InstructionOffsetValue[] branchOriginValues =
       new InstructionOffsetValue[ClassEstimates.TYPICAL_CODE_LENGTH];
@@ -106,6 +113,11 @@ public class PartialEvaluator implements AttributeVisitor, ExceptionInfoVisitor
   private int codeLength;
   private PartialEvaluatorStateTracker stateTracker;
 
+  // An optional cache with the results of earlier evaluations. When the
+  // arrays above are shared with the cache, they must not be reset.
+  private final PartialEvaluatorCache evaluationCache;
+  private boolean arraysShared;
+
   private final BasicBranchUnit branchUnit;
   private final BranchTargetFinder branchTargetFinder;
 
@@ -198,6 +210,9 @@ public class PartialEvaluator implements AttributeVisitor, ExceptionInfoVisitor
         callingInstructionBlockStack == null
             ? this.instructionBlockStack
             : callingInstructionBlockStack;
+    this.evaluationCache = null;
+    this.recycleFrames = false;
+    this.basicBlockOrder = null;
     if (DEBUG || DEBUG_RESULTS) {
       this.stateTracker = new DebugPrinter(DEBUG, DEBUG_RESULTS);
     }
@@ -225,6 +240,9 @@ public class PartialEvaluator implements AttributeVisitor, ExceptionInfoVisitor
             ? this.instructionBlockStack
             : builder.callingInstructionBlockStack;
     this.stopAnalysisAfterNEvaluations = builder.stopAnalysisAfterNEvaluations;
+    this.evaluationCache = builder.evaluationCache;
+    this.recycleFrames = builder.recycleFrames;
+    this.basicBlockOrder = builder.worklistEvaluation ? new BasicBlockOrder() : null;
     if (builder.stateTracker == null && (DEBUG || DEBUG_RESULTS)) {
       this.stateTracker = new DebugPrinter(DEBUG, DEBUG_RESULTS);
     } else {
@@ -244,6 +262,9 @@ public class PartialEvaluator implements AttributeVisitor, ExceptionInfoVisitor
     private java.util.Stack<InstructionBlock> callingInstructionBlockStack;
     private int stopAnalysisAfterNEvaluations = -1; // disabled by default
     private PartialEvaluatorStateTracker stateTracker;
+    private PartialEvaluatorCache evaluationCache;
+    private boolean recycleFrames;
+    private boolean worklistEvaluation;
 
     public static Builder create() {
       return new Builder();
@@ -328,6 +349,40 @@ public class PartialEvaluator implements AttributeVisitor, ExceptionInfoVisitor
       this.stopAnalysisAfterNEvaluations = stopAnalysisAfterNEvaluations;
       return this;
     }
+
+    /**
+     * An optional cache with the results of earlier evaluations, to skip evaluating unchanged
+     * methods again. See {@link PartialEvaluatorCache} for the conditions under which it may be
+     * used.
+     */
+    public Builder setEvaluationCache(PartialEvaluatorCache evaluationCache) {
+      this.evaluationCache = evaluationCache;
+      return this;
+    }
+
+    /**
+     * Specifies whether the stack and variable frames of evaluated instruction blocks should be
+     * recycled, across instruction blocks and methods on the same thread, instead of being created
+     * anew. State trackers then must not hold on to the frames that they receive.
+     */
+    public Builder setRecycleFrames(boolean recycleFrames) {
+      this.recycleFrames = recycleFrames;
+      return this;
+    }
+
+    /**
+     * Specifies whether the pending instruction blocks should be evaluated as a worklist, in
+     * reverse postorder of the basic blocks of the code, instead of depth first. Pending blocks
+     * that start at the same offset are then merged before they are evaluated, so each block is
+     * only evaluated again once its entry state has changed. This typically needs far fewer
+     * evaluations for methods with many branches in loops, at the cost of some precision of
+     * particular values, since the values of different paths are generalized earlier. Subroutines
+     * are still evaluated depth first.
+     */
+    public Builder setWorklistEvaluation(boolean worklistEvaluation) {
+      this.worklistEvaluation = worklistEvaluation;
+      return this;
+    }
   }
 
   // Implementations for AttributeVisitor.
@@ -342,8 +397,12 @@ public class PartialEvaluator implements AttributeVisitor, ExceptionInfoVisitor
     // TODO: Remove this when the partial evaluator has stabilized.
     // Catch any unexpected exceptions from the actual visiting method.
     try {
+      long startTime = System.nanoTime();
+
       // Process the code.
       visitCodeAttribute0(clazz, method, codeAttribute);
+
+      Metrics.recordDuration(TimerType.PARTIAL_EVALUATION, System.nanoTime() - startTime);
     } catch (RuntimeException ex) {
       logger.error("Unexpected error while performing partial evaluation:");
       logger.error("  Class       = [{}]", clazz.getName());
@@ -364,9 +423,22 @@ public class PartialEvaluator implements AttributeVisitor, ExceptionInfoVisitor
     if (codeAttribute.code.length == 0) {
       throw new EmptyCodeAttributeException("Empty code attribute found during partial evaluation");
     }
+
+    // Reuse the results of an earlier evaluation of the same code, if any.
+    if (evaluationCache != null) {
+      PartialEvaluatorCache.Result result = evaluationCache.get(method, codeAttribute);
+      if (result != null) {
+        restoreResult(result);
+
+        // Find all instruction offsets,...
+        codeAttribute.accept(clazz, method, branchTargetFinder);
+        return;
+      }
+    }
+
     // Reuse the existing variables and stack objects, ensuring the right size.
-    TracedVariables variables = new TracedVariables(codeAttribute.u2maxLocals);
-    TracedStack stack = new TracedStack(codeAttribute.u2maxStack);
+    TracedVariables variables = createVariables(codeAttribute.u2maxLocals);
+    TracedStack stack = createStack(codeAttribute.u2maxStack);
 
     // Initialize the reusable arrays and variables.
     initializeArrays(codeAttribute);
@@ -382,11 +454,22 @@ public class PartialEvaluator implements AttributeVisitor, ExceptionInfoVisitor
     // Find all instruction offsets,...
     codeAttribute.accept(clazz, method, branchTargetFinder);
 
+    // ...and the order of the basic blocks, if necessary.
+    if (basicBlockOrder != null) {
+      basicBlockOrder.computeOrder(codeAttribute, branchTargetFinder);
+    }
+
     // Start executing the first instruction block.
     evaluateInstructionBlockAndExceptionHandlers(
         clazz, method, codeAttribute, variables, stack, 0, codeAttribute.u4codeLength);
 
+    recycleFrames(variables, stack);
+
     if (stateTracker != null) stateTracker.evaluationResults(clazz, method, codeAttribute, this);
+
+    if (evaluationCache != null) {
+      evaluationCache.put(method, codeAttribute, createResult());
+    }
   }
 
   /** Returns whether a block of instructions is ever used. */
@@ -571,6 +654,43 @@ public class PartialEvaluator implements AttributeVisitor, ExceptionInfoVisitor
     instructionBlockStack.push(new InstructionBlock(variables, stack, startOffset));
   }
 
+  /**
+   * Removes the pending instruction block that comes first in the order of the basic blocks from
+   * the stack, merges any other pending blocks at the same offset into it, and returns it.
+   */
+  private InstructionBlock popFirstInstructionBlock() {
+    // Find the first block, preferring the most recently pushed one.
+    int firstIndex = instructionBlockStack.size() - 1;
+    int firstRank = basicBlockOrder.rank(instructionBlockStack.get(firstIndex).startOffset);
+    for (int index = firstIndex - 1; index >= 0; index--) {
+      int rank = basicBlockOrder.rank(instructionBlockStack.get(index).startOffset);
+      if (rank < firstRank) {
+        firstIndex = index;
+        firstRank = rank;
+      }
+    }
+
+    InstructionBlock firstInstructionBlock = instructionBlockStack.remove(firstIndex);
+
+    // Merge the other blocks at the same offset, unless the return
+    // addresses of subroutines might get mixed up.
+    if (!branchTargetFinder.containsSubroutines()) {
+      for (int index = instructionBlockStack.size() - 1; index >= 0; index--) {
+        InstructionBlock instructionBlock = instructionBlockStack.get(index);
+        if (instructionBlock.startOffset == firstInstructionBlock.startOffset
+            && instructionBlock.stack.size() == firstInstructionBlock.stack.size()) {
+          firstInstructionBlock.variables.generalize(instructionBlock.variables, false);
+          firstInstructionBlock.stack.generalize(instructionBlock.stack);
+
+          instructionBlockStack.remove(index);
+          recycleFrames(instructionBlock.variables, instructionBlock.stack);
+        }
+      }
+    }
+
+    return firstInstructionBlock;
+  }
+
   /**
    * Evaluates the instruction block and the exception handlers covering the given instruction range
    * in the given code.
@@ -606,7 +726,8 @@ public class PartialEvaluator implements AttributeVisitor, ExceptionInfoVisitor
     while (!instructionBlockStack.empty()) {
       if (stateTracker != null) stateTracker.startBranchCodeBlockEvaluation(instructionBlockStack);
 
-      InstructionBlock instructionBlock = instructionBlockStack.pop();
+      InstructionBlock instructionBlock =
+          basicBlockOrder == null ? instructionBlockStack.pop() : popFirstInstructionBlock();
 
       evaluateSingleInstructionBlock(
           clazz,
@@ -615,6 +736,8 @@ public class PartialEvaluator implements AttributeVisitor, ExceptionInfoVisitor
           instructionBlock.variables,
           instructionBlock.stack,
           instructionBlock.startOffset);
+
+      recycleFrames(instructionBlock.variables, instructionBlock.stack);
     }
   }
 
@@ -862,8 +985,8 @@ public class PartialEvaluator implements AttributeVisitor, ExceptionInfoVisitor
                     branchTargets.instructionOffset(index));
 
               pushInstructionBlock(
-                  new TracedVariables(variables),
-                  new TracedStack(stack),
+                  copyVariables(variables),
+                  copyStack(stack),
                   branchTargets.instructionOffset(index));
             }
 
@@ -896,7 +1019,7 @@ public class PartialEvaluator implements AttributeVisitor, ExceptionInfoVisitor
                 clazz, method, instructionOffset, variables, stack);
 
           pushCallingInstructionBlock(
-              new TracedVariables(variables), new TracedStack(stack), instructionOffset);
+              copyVariables(variables), copyStack(stack), instructionOffset);
           break;
         }
       } catch (ExcessiveComplexityException ex) {
@@ -967,6 +1090,7 @@ public class PartialEvaluator implements AttributeVisitor, ExceptionInfoVisitor
         .setBranchUnit(branchUnit)
         .setBranchTargetFinder(branchTargetFinder)
         .setCallingInstructionBlockStack(instructionBlockStack)
+        .setRecycleFrames(recycleFrames)
         .setPrettyPrinting(prettyInstructionBuffered)
         .setStateTracker(stateTracker)
         .build();
@@ -1052,8 +1176,8 @@ public class PartialEvaluator implements AttributeVisitor, ExceptionInfoVisitor
 
       // Reuse the existing variables and stack objects, ensuring the
       // right size.
-      TracedVariables variables = new TracedVariables(codeAttribute.u2maxLocals);
-      TracedStack stack = new TracedStack(codeAttribute.u2maxStack);
+      TracedVariables variables = createVariables(codeAttribute.u2maxLocals);
+      TracedStack stack = createStack(codeAttribute.u2maxStack);
 
       // Initialize the trace values.
       Value storeValue =
@@ -1075,6 +1199,8 @@ public class PartialEvaluator implements AttributeVisitor, ExceptionInfoVisitor
       // Evaluate the instructions, starting at the entry point.
       evaluateInstructionBlock(clazz, method, codeAttribute, variables, stack, handlerPC);
 
+      recycleFrames(variables, stack);
+
       // Remember to evaluate all exception handlers once more.
       if (!evaluateExceptions) {
         evaluateExceptions = evaluationCount < evaluationCounts[handlerPC];
@@ -1103,7 +1229,7 @@ public class PartialEvaluator implements AttributeVisitor, ExceptionInfoVisitor
     int newCodeLength = codeAttribute.u4codeLength;
 
     // Create new arrays for storing information at each instruction offset.
-    if (branchOriginValues.length < newCodeLength) {
+    if (arraysShared || branchOriginValues.length < newCodeLength) {
       // Create new arrays.
       branchOriginValues = new InstructionOffsetValue[newCodeLength];
       branchTargetValues = new InstructionOffsetValue[newCodeLength];
@@ -1113,6 +1239,7 @@ public class PartialEvaluator implements AttributeVisitor, ExceptionInfoVisitor
       stacksAfter = new TracedStack[newCodeLength];
       generalizedContexts = new boolean[newCodeLength];
       evaluationCounts = new int[newCodeLength];
+      arraysShared = false;
     } else {
       // Reset the old arrays.
       Arrays.fill(branchOriginValues, 0, codeLength, null);
@@ -1160,6 +1287,68 @@ public class PartialEvaluator implements AttributeVisitor, ExceptionInfoVisitor
     codeLength = newCodeLength;
   }
 
+  /**
+   * Returns the current evaluation results, to be cached. The arrays are then shared with the
+   * cache instead of being copied, so they are no longer reused.
+   */
+  private PartialEvaluatorCache.Result createResult() {
+    arraysShared = true;
+
+    return new PartialEvaluatorCache.Result(
+        codeLength,
+        branchOriginValues,
+        branchTargetValues,
+        variablesBefore,
+        stacksBefore,
+        variablesAfter,
+        stacksAfter,
+        generalizedContexts,
+        evaluationCounts);
+  }
+
+  /** Restores the given cached evaluation results. */
+  private void restoreResult(PartialEvaluatorCache.Result result) {
+    branchOriginValues = result.branchOriginValues;
+    branchTargetValues = result.branchTargetValues;
+    variablesBefore = result.variablesBefore;
+    stacksBefore = result.stacksBefore;
+    variablesAfter = result.variablesAfter;
+    stacksAfter = result.stacksAfter;
+    generalizedContexts = result.generalizedContexts;
+    evaluationCounts = result.evaluationCounts;
+    codeLength = result.codeLength;
+    arraysShared = true;
+  }
+
+  /** Returns new variables with the given size, possibly recycled. */
+  private TracedVariables createVariables(int size) {
+    return recycleFrames ? TracedFramePool.get().createVariables(size) : new TracedVariables(size);
+  }
+
+  /** Returns a copy of the given variables, possibly recycled. */
+  private TracedVariables copyVariables(TracedVariables variables) {
+    return recycleFrames
+        ? TracedFramePool.get().copyVariables(variables)
+        : new TracedVariables(variables);
+  }
+
+  /** Returns a new stack with the given maximum size, possibly recycled. */
+  private TracedStack createStack(int maxSize) {
+    return recycleFrames ? TracedFramePool.get().createStack(maxSize) : new TracedStack(maxSize);
+  }
+
+  /** Returns a copy of the given stack, possibly recycled. */
+  private TracedStack copyStack(TracedStack stack) {
+    return recycleFrames ? TracedFramePool.get().copyStack(stack) : new TracedStack(stack);
+  }
+
+  /** Recycles the given frames, if frames are recycled, once they are no longer used. */
+  private void recycleFrames(TracedVariables variables, TracedStack stack) {
+    if (recycleFrames) {
+      TracedFramePool.get().recycle(variables, stack);
+    }
+  }
+
   /** Initializes the data structures for the variables, stack, etc. */
   private void initializeParameters(
       Clazz clazz, Method method, CodeAttribute codeAttribute, TracedVariables variables) {
@@ -0,0 +1,198 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package proguard.evaluation;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import proguard.classfile.Method;
+import proguard.classfile.attribute.CodeAttribute;
+import proguard.classfile.attribute.ExceptionInfo;
+import proguard.evaluation.value.InstructionOffsetValue;
+
+/**
+ * This class caches the results of a {@link PartialEvaluator}, so evaluating the same code of the
+ * same method again returns the earlier results immediately. The results are stored per method,
+ * together with a copy of its code and exception table, so they are ignored once the code has been
+ * modified. The least recently used results are evicted when the cache grows beyond its maximum
+ * size.
+ *
+ * <p>A cache should only be used by partial evaluators with the same configuration, whose results
+ * only depend on the code of the evaluated method, for instance not on values collected from other
+ * methods by the invocation unit. The evaluator doesn't pass cached code to its extra instruction
+ * visitor or state tracker. Changes to the constant pool or to referenced classes aren't detected,
+ * so the cache should be cleared after such changes. The cached stacks and variables are shared,
+ * so they should not be modified.
+ *
+ * <p>The cache can be shared between threads.
+ */
+public class PartialEvaluatorCache {
+  private final int maximumSize;
+  private final Map<Method, Result> results;
+
+  private long hitCount;
+  private long missCount;
+
+  /**
+   * Creates a new PartialEvaluatorCache.
+   *
+   * @param maximumSize the maximum number of methods for which results are kept.
+   */
+  public PartialEvaluatorCache(int maximumSize) {
+    if (maximumSize < 1) {
+      throw new IllegalArgumentException("Invalid maximum cache size [" + maximumSize + "]");
+    }
+
+    this.maximumSize = maximumSize;
+    this.results =
+        new LinkedHashMap<Method, Result>(16, 0.75f, true) {
+          @Override
+          protected boolean removeEldestEntry(Map.Entry<Method, Result> eldest) {
+            return size() > PartialEvaluatorCache.this.maximumSize;
+          }
+        };
+  }
+
+  /** Returns the number of methods for which results are cached. */
+  public synchronized int size() {
+    return results.size();
+  }
+
+  /** Returns the number of evaluations for which cached results were found. */
+  public synchronized long getHitCount() {
+    return hitCount;
+  }
+
+  /** Returns the number of evaluations for which no cached results were found. */
+  public synchronized long getMissCount() {
+    return missCount;
+  }
+
+  /** Removes all cached results. */
+  public synchronized void clear() {
+    results.clear();
+  }
+
+  /** Removes any cached results of the given method. */
+  public synchronized void remove(Method method) {
+    results.remove(method);
+  }
+
+  /**
+   * Returns the cached results of the given method with the given code, or null if there aren't
+   * any.
+   */
+  synchronized Result get(Method method, CodeAttribute codeAttribute) {
+    Result result = results.get(method);
+    if (result != null && result.matches(codeAttribute)) {
+      hitCount++;
+      return result;
+    }
+
+    missCount++;
+    return null;
+  }
+
+  /** Caches the given results of the given method with the given code. */
+  synchronized void put(Method method, CodeAttribute codeAttribute, Result result) {
+    result.setCode(codeAttribute);
+    results.put(method, result);
+  }
+
+  /**
+   * The results of the partial evaluation of a method, with the code that was evaluated. The arrays
+   * are shared with the evaluator, so they may be longer than the code.
+   */
+  static class Result {
+    final int codeLength;
+    final InstructionOffsetValue[] branchOriginValues;
+    final InstructionOffsetValue[] branchTargetValues;
+    final TracedVariables[] variablesBefore;
+    final TracedStack[] stacksBefore;
+    final TracedVariables[] variablesAfter;
+    final TracedStack[] stacksAfter;
+    final boolean[] generalizedContexts;
+    final int[] evaluationCounts;
+
+    private byte[] code;
+    private int maxStack;
+    private int maxLocals;
+    private int[] exceptionTable;
+
+    Result(
+        int codeLength,
+        InstructionOffsetValue[] branchOriginValues,
+        InstructionOffsetValue[] branchTargetValues,
+        TracedVariables[] variablesBefore,
+        TracedStack[] stacksBefore,
+        TracedVariables[] variablesAfter,
+        TracedStack[] stacksAfter,
+        boolean[] generalizedContexts,
+        int[] evaluationCounts) {
+      this.codeLength = codeLength;
+      this.branchOriginValues = branchOriginValues;
+      this.branchTargetValues = branchTargetValues;
+      this.variablesBefore = variablesBefore;
+      this.stacksBefore = stacksBefore;
+      this.variablesAfter = variablesAfter;
+      this.stacksAfter = stacksAfter;
+      this.generalizedContexts = generalizedContexts;
+      this.evaluationCounts = evaluationCounts;
+    }
+
+    /** Remembers the given code, to check whether it's still the same later on. */
+    private void setCode(CodeAttribute codeAttribute) {
+      code = Arrays.copyOf(codeAttribute.code, codeAttribute.u4codeLength);
+      maxStack = codeAttribute.u2maxStack;
+      maxLocals = codeAttribute.u2maxLocals;
+      exceptionTable = exceptionTable(codeAttribute);
+    }
+
+    /** Returns whether the given code is the same as the code that was evaluated. */
+    private boolean matches(CodeAttribute codeAttribute) {
+      return codeAttribute.u4codeLength == code.length
+          && codeAttribute.u2maxStack == maxStack
+          && codeAttribute.u2maxLocals == maxLocals
+          && Arrays.equals(exceptionTable, exceptionTable(codeAttribute))
+          && rangeEquals(codeAttribute.code, code);
+    }
+
+    // Small utility methods.
+
+    private static int[] exceptionTable(CodeAttribute codeAttribute) {
+      int[] exceptionTable = new int[codeAttribute.u2exceptionTableLength * 4];
+      for (int index = 0; index < codeAttribute.u2exceptionTableLength; index++) {
+        ExceptionInfo exceptionInfo = codeAttribute.exceptionTable[index];
+        exceptionTable[index * 4] = exceptionInfo.u2startPC;
+        exceptionTable[index * 4 + 1] = exceptionInfo.u2endPC;
+        exceptionTable[index * 4 + 2] = exceptionInfo.u2handlerPC;
+        exceptionTable[index * 4 + 3] = exceptionInfo.u2catchType;
+      }
+      return exceptionTable;
+    }
+
+    private static boolean rangeEquals(byte[] code, byte[] evaluatedCode) {
+      for (int index = 0; index < evaluatedCode.length; index++) {
+        if (code[index] != evaluatedCode[index]) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+}
@@ -0,0 +1,147 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package proguard.evaluation;
+
+import java.util.ArrayDeque;
+import proguard.evaluation.value.Value;
+
+/**
+ * This class recycles the {@link TracedVariables} and {@link TracedStack} frames with which a
+ * {@link PartialEvaluator} evaluates its instruction blocks, so it doesn't need to create new
+ * frames for every block. Each thread has its own pool, which is shared by all partial evaluators
+ * on that thread, across methods.
+ *
+ * <p>Recycled frames have exactly the same capacity as newly created ones, so the evaluation
+ * behaves the same way, including for stack overflows in invalid code.
+ */
+final class TracedFramePool {
+  // The maximum number of unused frames of each kind that are kept.
+  private static final int MAX_POOL_SIZE = 64;
+
+  private static final ThreadLocal<TracedFramePool> POOLS =
+      ThreadLocal.withInitial(TracedFramePool::new);
+
+  private final ArrayDeque<TracedVariables> variablesPool = new ArrayDeque<>();
+  private final ArrayDeque<TracedStack> stackPool = new ArrayDeque<>();
+
+  private TracedFramePool() {}
+
+  /** Returns the pool of the current thread. */
+  static TracedFramePool get() {
+    return POOLS.get();
+  }
+
+  /** Returns empty variables with the given size, like a new {@link TracedVariables}. */
+  TracedVariables createVariables(int size) {
+    TracedVariables variables = pollVariables(size);
+    if (variables == null) {
+      return new TracedVariables(size);
+    }
+
+    variables.reset(size);
+    variables.setProducerValue((Value) null);
+
+    return variables;
+  }
+
+  /** Returns a copy of the given variables, like a new {@link TracedVariables}. */
+  TracedVariables copyVariables(TracedVariables other) {
+    TracedVariables variables = pollVariables(other.size);
+    if (variables == null) {
+      return new TracedVariables(other);
+    }
+
+    variables.reset(other.size);
+    variables.initialize(other);
+    variables.setProducerValue((Value) null);
+
+    return variables;
+  }
+
+  /** Returns an empty stack with the given maximum size, like a new {@link TracedStack}. */
+  TracedStack createStack(int maxSize) {
+    TracedStack stack = pollStack(maxSize);
+    if (stack == null) {
+      return new TracedStack(maxSize);
+    }
+
+    stack.reset(maxSize);
+    stack.setProducerValue(null);
+
+    return stack;
+  }
+
+  /** Returns a copy of the given stack, like a new {@link TracedStack}. */
+  TracedStack copyStack(TracedStack other) {
+    TracedStack stack = pollStack(other.values.length);
+    if (stack == null) {
+      return new TracedStack(other);
+    }
+
+    stack.copy(other);
+    stack.setProducerValue(null);
+
+    return stack;
+  }
+
+  /**
+   * Returns the given frames to this pool. They may not be used anymore afterwards, for instance
+   * by state trackers that have received them.
+   */
+  void recycle(TracedVariables variables, TracedStack stack) {
+    if (variablesPool.size() < MAX_POOL_SIZE) {
+      variablesPool.push(variables);
+    }
+
+    if (stackPool.size() < MAX_POOL_SIZE) {
+      stackPool.push(stack);
+    }
+  }
+
+  // Small utility methods.
+
+  /**
+   * Returns pooled variables with the given capacity, or null if there aren't any. Pooled variables
+   * with other capacities, typically from other methods, are discarded along the way.
+   */
+  private TracedVariables pollVariables(int capacity) {
+    while (!variablesPool.isEmpty()) {
+      TracedVariables variables = variablesPool.pop();
+      if (variables.values.length == capacity) {
+        return variables;
+      }
+    }
+
+    return null;
+  }
+
+  /**
+   * Returns a pooled stack with the given capacity, or null if there isn't any. Pooled stacks with
+   * other capacities, typically from other methods, are discarded along the way.
+   */
+  private TracedStack pollStack(int capacity) {
+    while (!stackPool.isEmpty()) {
+      TracedStack stack = stackPool.pop();
+      if (stack.values.length == capacity) {
+        return stack;
+      }
+    }
+
+    return null;
+  }
+}
@@ -36,11 +36,27 @@ public class DataEntryCopier implements DataEntryReader {
   private static final Logger logger = LogManager.getLogger(DataEntryCopier.class);
 
   private final DataEntryWriter dataEntryWriter;
+  private final boolean copyCompressedData;
   private final byte[] buffer = new byte[BUFFER_SIZE];
 
   /** Creates a new DataEntryCopier. */
   public DataEntryCopier(DataEntryWriter dataEntryWriter) {
+    this(dataEntryWriter, false);
+  }
+
+  /**
+   * Creates a new DataEntryCopier that can optionally copy the data of compressed zip entries
+   * without decompressing and recompressing them. This is only possible if the zip entries are read
+   * from a zip file, with a {@link JarReader}, and written unmodified as compressed zip entries,
+   * with a {@link ZipWriter}. The resulting entries then keep their original compression.
+   *
+   * @param dataEntryWriter the writer to which the data entries are written.
+   * @param copyCompressedData specifies whether compressed data should be copied as they are, when
+   *     possible.
+   */
+  public DataEntryCopier(DataEntryWriter dataEntryWriter, boolean copyCompressedData) {
     this.dataEntryWriter = dataEntryWriter;
+    this.copyCompressedData = copyCompressedData;
   }
 
   // Implementations for DataEntryReader.
@@ -55,17 +71,20 @@ public class DataEntryCopier implements DataEntryReader {
         OutputStream outputStream = dataEntryWriter.createOutputStream(dataEntry);
         if (outputStream != null) {
           try {
-            InputStream inputStream = dataEntry.getInputStream();
-
-            try {
-              // Copy the data from the input entry to the output entry.
-              copyData(inputStream, outputStream);
-
-              // Flush the output stream, just to be sure.
-              outputStream.flush();
-            } finally {
-              // Close the input stream.
-              dataEntry.closeInputStream();
+            // Can we copy the compressed data as they are?
+            if (!copyCompressedData(dataEntry, outputStream)) {
+              InputStream inputStream = dataEntry.getInputStream();
+
+              try {
+                // Copy the data from the input entry to the output entry.
+                copyData(inputStream, outputStream);
+
+                // Flush the output stream, just to be sure.
+                outputStream.flush();
+              } finally {
+                // Close the input stream.
+                dataEntry.closeInputStream();
+              }
             }
           } finally {
             // Close the output stream.
@@ -99,6 +118,23 @@ public class DataEntryCopier implements DataEntryReader {
     }
   }
 
+  // Small utility methods.
+
+  /**
+   * Copies the compressed data of the given data entry to the given output stream, if this is
+   * enabled and possible.
+   *
+   * @return whether the data were copied.
+   */
+  private boolean copyCompressedData(DataEntry dataEntry, OutputStream outputStream)
+      throws IOException {
+    return copyCompressedData
+        && dataEntry instanceof ZipFileDataEntry
+        && outputStream instanceof ZipOutput.CompressedDataOutputStream
+        && ((ZipOutput.CompressedDataOutputStream) outputStream)
+            .copyCompressedData((ZipFileDataEntry) dataEntry);
+  }
+
   /** A main method for testing file/archive/directory copying. */
   public static void main(String[] args) {
     try {
@@ -63,6 +63,10 @@ public class JarReader implements DataEntryReader {
 
       ZipFile zipFile = new ZipFile(fileDataEntry.getFile(), StandardCharsets.UTF_8);
 
+      // Provide access to the compressed data of the entries as well.
+      ZipFileCentralDirectory centralDirectory =
+          new ZipFileCentralDirectory(fileDataEntry.getFile());
+
       try {
         Enumeration entries = zipFile.entries();
 
@@ -71,9 +75,11 @@ public class JarReader implements DataEntryReader {
           ZipEntry zipEntry = (ZipEntry) entries.nextElement();
 
           // Delegate the actual reading to the data entry reader.
-          dataEntryReader.read(new ZipFileDataEntry(dataEntry, zipEntry, zipFile));
+          dataEntryReader.read(
+              new ZipFileDataEntry(dataEntry, zipEntry, zipFile, centralDirectory));
         }
       } finally {
+        centralDirectory.close();
         zipFile.close();
       }
     } else {
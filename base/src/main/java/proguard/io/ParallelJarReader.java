@@ -0,0 +1,217 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package proguard.io;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import proguard.classfile.Clazz;
+import proguard.classfile.visitor.ClassCollector;
+import proguard.classfile.visitor.ClassVisitor;
+
+/**
+ * This {@link DataEntryReader} reads the entries of jar and zip files on a pool of threads, like a
+ * {@link JarReader}. Each thread inflates entries and passes them to its own data entry reader,
+ * created with {@link EntryReaderFactory#createDataEntryReader(ClassVisitor)}, typically a chain
+ * ending in a {@link ClassReader}. The classes that these readers produce are passed to the given
+ * class visitor on the calling thread, in the order of the entries in the archive, so the result
+ * is the same as when reading the entries one by one. At most a fixed number of entries is
+ * processed ahead of the class visitor, to bound the memory used for pending classes.
+ *
+ * <p>The data entry readers should only hand over their results through the class visitors they
+ * are created with, since anything else they do happens on the worker threads. Archives that are
+ * nested in other archives, and can therefore only be read as a stream, are read on the calling
+ * thread.
+ */
+public class ParallelJarReader implements DataEntryReader {
+  private static final int PENDING_ENTRIES_PER_THREAD = 16;
+
+  /** A factory for the {@link DataEntryReader} objects used on each of the threads. */
+  public interface EntryReaderFactory {
+    /**
+     * Creates a DataEntryReader that reads jar entries and passes any classes to the given class
+     * visitor.
+     */
+    DataEntryReader createDataEntryReader(ClassVisitor classVisitor);
+  }
+
+  private final boolean jmod;
+  private final EntryReaderFactory entryReaderFactory;
+  private final ClassVisitor classVisitor;
+  private final int threadCount;
+  private final int maxPendingEntryCount;
+
+  /**
+   * Creates a new ParallelJarReader that uses as many threads as there are available processors.
+   *
+   * @param entryReaderFactory the factory of the readers that process the jar entries.
+   * @param classVisitor the visitor of the classes read from the jar entries.
+   */
+  public ParallelJarReader(EntryReaderFactory entryReaderFactory, ClassVisitor classVisitor) {
+    this(
+        false,
+        entryReaderFactory,
+        classVisitor,
+        Runtime.getRuntime().availableProcessors(),
+        Runtime.getRuntime().availableProcessors() * PENDING_ENTRIES_PER_THREAD);
+  }
+
+  /**
+   * Creates a new ParallelJarReader.
+   *
+   * @param jmod specifies whether the input jar is actually a jmod file.
+   * @param entryReaderFactory the factory of the readers that process the jar entries.
+   * @param classVisitor the visitor of the classes read from the jar entries.
+   * @param threadCount the number of threads reading entries. With a single thread, entries are
+   *     read on the calling thread.
+   * @param maxPendingEntryCount the maximum number of entries read ahead of the class visitor.
+   */
+  public ParallelJarReader(
+      boolean jmod,
+      EntryReaderFactory entryReaderFactory,
+      ClassVisitor classVisitor,
+      int threadCount,
+      int maxPendingEntryCount) {
+    if (threadCount < 1 || maxPendingEntryCount < 1) {
+      throw new IllegalArgumentException(
+          "Invalid thread count ["
+              + threadCount
+              + "] or maximum pending entry count ["
+              + maxPendingEntryCount
+              + "]");
+    }
+
+    this.jmod = jmod;
+    this.entryReaderFactory = entryReaderFactory;
+    this.classVisitor = classVisitor;
+    this.threadCount = threadCount;
+    this.maxPendingEntryCount = maxPendingEntryCount;
+  }
+
+  // Implementation for DataEntryReader.
+
+  @Override
+  public void read(DataEntry dataEntry) throws IOException {
+    // We can only read entries in parallel when we can access them randomly.
+    if (threadCount == 1 || !(dataEntry instanceof FileDataEntry)) {
+      new JarReader(jmod, entryReaderFactory.createDataEntryReader(classVisitor)).read(dataEntry);
+      return;
+    }
+
+    FileDataEntry fileDataEntry = (FileDataEntry) dataEntry;
+    ZipFile zipFile = new ZipFile(fileDataEntry.getFile(), StandardCharsets.UTF_8);
+    ExecutorService executor = Executors.newFixedThreadPool(threadCount, new MyThreadFactory());
+
+    try {
+      Deque<Future<List<Clazz>>> pendingEntries = new ArrayDeque<>(maxPendingEntryCount);
+
+      Enumeration<? extends ZipEntry> entries = zipFile.entries();
+      while (entries.hasMoreElements()) {
+        ZipEntry zipEntry = entries.nextElement();
+
+        // Make room for the entry, by waiting for the oldest one.
+        if (pendingEntries.size() == maxPendingEntryCount) {
+          visitClasses(pendingEntries.removeFirst());
+        }
+
+        pendingEntries.addLast(
+            executor.submit(
+                () -> {
+                  MyEntryReaderThread thread = (MyEntryReaderThread) Thread.currentThread();
+                  return thread.read(new ZipFileDataEntry(dataEntry, zipEntry, zipFile));
+                }));
+      }
+
+      while (!pendingEntries.isEmpty()) {
+        visitClasses(pendingEntries.removeFirst());
+      }
+    } finally {
+      // Make sure no thread is still reading from the zip file before closing it.
+      executor.shutdownNow();
+      try {
+        executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      zipFile.close();
+    }
+  }
+
+  // Small utility methods.
+
+  /** Waits for the classes read from an entry and passes them to the class visitor. */
+  private void visitClasses(Future<List<Clazz>> pendingEntry) throws IOException {
+    try {
+      for (Clazz clazz : pendingEntry.get()) {
+        clazz.accept(classVisitor);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while reading jar entries", e);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      }
+      throw cause instanceof RuntimeException
+          ? (RuntimeException) cause
+          : new RuntimeException(cause);
+    }
+  }
+
+  private class MyThreadFactory implements ThreadFactory {
+    private int threadCounter = 0;
+
+    public Thread newThread(Runnable runnable) {
+      return new MyEntryReaderThread(++threadCounter, runnable);
+    }
+  }
+
+  /** A thread with its own data entry reader, collecting the classes it reads. */
+  private class MyEntryReaderThread extends Thread {
+    private final List<Clazz> classes = new ArrayList<>();
+    private final DataEntryReader dataEntryReader =
+        entryReaderFactory.createDataEntryReader(new ClassCollector(classes));
+
+    public MyEntryReaderThread(int counter, Runnable runnable) {
+      super(runnable, "Parallel Jar Reader " + counter);
+      setDaemon(true);
+    }
+
+    public List<Clazz> read(DataEntry dataEntry) throws IOException {
+      try {
+        dataEntryReader.read(dataEntry);
+        return new ArrayList<>(classes);
+      } finally {
+        classes.clear();
+      }
+    }
+  }
+}
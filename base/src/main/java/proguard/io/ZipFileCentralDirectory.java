@@ -0,0 +1,268 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package proguard.io;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+
+/**
+ * This class reads the central directory of a zip file, so it can provide the raw data of its
+ * entries, as they are stored in the file, possibly still compressed. It complements {@link
+ * java.util.zip.ZipFile}, which only provides uncompressed data. The file is only opened when the
+ * data of an entry are first requested.
+ *
+ * <p>Zip64 archives, duplicate entry names, and entries that don't match the central directory
+ * aren't supported; their data offsets are simply unknown.
+ */
+final class ZipFileCentralDirectory implements Closeable {
+  private static final int MAGIC_LOCAL_FILE_HEADER = 0x04034b50;
+  private static final int MAGIC_CENTRAL_DIRECTORY_FILE_HEADER = 0x02014b50;
+  private static final int MAGIC_END_OF_CENTRAL_DIRECTORY = 0x06054b50;
+
+  private static final int LOCAL_FILE_HEADER_SIZE = 30;
+  private static final int CENTRAL_DIRECTORY_FILE_HEADER_SIZE = 46;
+  private static final int END_OF_CENTRAL_DIRECTORY_SIZE = 22;
+  private static final int MAX_COMMENT_SIZE = 0xffff;
+
+  private final File file;
+
+  private FileChannel channel;
+  private Map<String, CentralDirectoryEntry> entries;
+
+  /** Creates a new ZipFileCentralDirectory for the given zip file. */
+  ZipFileCentralDirectory(File file) {
+    this.file = file;
+  }
+
+  /**
+   * Returns the offset of the compressed data of the given entry in the zip file, or -1 if it is
+   * unknown.
+   */
+  synchronized long getDataOffset(ZipEntry zipEntry) throws IOException {
+    if (entries == null) {
+      readEntries();
+    }
+
+    CentralDirectoryEntry entry = entries.get(zipEntry.getName());
+    if (entry == null
+        || entry.compressedSize != zipEntry.getCompressedSize()
+        || entry.crc != (int) zipEntry.getCrc()) {
+      return -1L;
+    }
+
+    if (entry.dataOffset < 0L) {
+      // Skip the local file header, whose extra field may differ from
+      // the one in the central directory.
+      ByteBuffer header = read(entry.localHeaderOffset, LOCAL_FILE_HEADER_SIZE);
+      if (header == null || header.getInt(0) != MAGIC_LOCAL_FILE_HEADER) {
+        return -1L;
+      }
+
+      entry.dataOffset =
+          entry.localHeaderOffset
+              + LOCAL_FILE_HEADER_SIZE
+              + (header.getShort(26) & 0xffff)
+              + (header.getShort(28) & 0xffff);
+    }
+
+    return entry.dataOffset;
+  }
+
+  /** Transfers the given range of the zip file to the given channel. */
+  void transferData(long offset, long size, WritableByteChannel target) throws IOException {
+    FileChannel channel = channel();
+    while (size > 0L) {
+      long count = channel.transferTo(offset, size, target);
+      if (count <= 0L) {
+        throw new EOFException("Unexpected end of zip file [" + file + "]");
+      }
+
+      offset += count;
+      size -= count;
+    }
+  }
+
+  /** Returns the given range of the zip file. */
+  byte[] readData(long offset, int size) throws IOException {
+    ByteBuffer buffer = read(offset, size);
+    if (buffer == null) {
+      throw new EOFException("Unexpected end of zip file [" + file + "]");
+    }
+
+    return buffer.array();
+  }
+
+  /** Maps the given range of the zip file into memory. */
+  MappedByteBuffer mapData(long offset, long size) throws IOException {
+    return channel().map(FileChannel.MapMode.READ_ONLY, offset, size);
+  }
+
+  // Implementations for Closeable.
+
+  @Override
+  public synchronized void close() throws IOException {
+    if (channel != null) {
+      channel.close();
+      channel = null;
+    }
+    entries = null;
+  }
+
+  // Small utility methods.
+
+  /** Reads the central directory of the zip file. */
+  private void readEntries() throws IOException {
+    entries = new HashMap<>();
+
+    // Find the end of central directory record, which is followed by an
+    // optional comment.
+    long fileSize = channel().size();
+    int tailSize = (int) Math.min(fileSize, END_OF_CENTRAL_DIRECTORY_SIZE + MAX_COMMENT_SIZE);
+    ByteBuffer tail = read(fileSize - tailSize, tailSize);
+    if (tail == null) {
+      return;
+    }
+
+    int endIndex = tailSize - END_OF_CENTRAL_DIRECTORY_SIZE;
+    while (endIndex >= 0 && tail.getInt(endIndex) != MAGIC_END_OF_CENTRAL_DIRECTORY) {
+      endIndex--;
+    }
+
+    if (endIndex < 0) {
+      return;
+    }
+
+    int entryCount = tail.getShort(endIndex + 10) & 0xffff;
+    long centralDirectorySize = tail.getInt(endIndex + 12) & 0xffffffffL;
+    long centralDirectoryOffset = tail.getInt(endIndex + 16) & 0xffffffffL;
+
+    // Zip64 archives have placeholders here.
+    if (entryCount == 0xffff
+        || centralDirectorySize == 0xffffffffL
+        || centralDirectoryOffset == 0xffffffffL
+        || centralDirectorySize > Integer.MAX_VALUE) {
+      return;
+    }
+
+    // Like ZipFile, account for any data preceding the archive, such as
+    // a jmod header.
+    long centralDirectoryPosition = fileSize - tailSize + endIndex - centralDirectorySize;
+    long archiveStart = centralDirectoryPosition - centralDirectoryOffset;
+    if (archiveStart < 0L) {
+      return;
+    }
+
+    ByteBuffer centralDirectory = read(centralDirectoryPosition, (int) centralDirectorySize);
+    if (centralDirectory == null) {
+      return;
+    }
+
+    Set<String> duplicateNames = new HashSet<>();
+
+    int index = 0;
+    for (int counter = 0; counter < entryCount; counter++) {
+      if (index + CENTRAL_DIRECTORY_FILE_HEADER_SIZE > centralDirectory.limit()
+          || centralDirectory.getInt(index) != MAGIC_CENTRAL_DIRECTORY_FILE_HEADER) {
+        entries.clear();
+        return;
+      }
+
+      int crc = centralDirectory.getInt(index + 16);
+      long compressedSize = centralDirectory.getInt(index + 20) & 0xffffffffL;
+      int nameLength = centralDirectory.getShort(index + 28) & 0xffff;
+      int extraFieldLength = centralDirectory.getShort(index + 30) & 0xffff;
+      int commentLength = centralDirectory.getShort(index + 32) & 0xffff;
+      long localHeaderOffset = centralDirectory.getInt(index + 42) & 0xffffffffL;
+
+      int nameIndex = index + CENTRAL_DIRECTORY_FILE_HEADER_SIZE;
+      if (nameIndex + nameLength > centralDirectory.limit()) {
+        entries.clear();
+        return;
+      }
+
+      String name =
+          new String(centralDirectory.array(), nameIndex, nameLength, StandardCharsets.UTF_8);
+
+      if (!duplicateNames.contains(name)) {
+        if (entries.containsKey(name)) {
+          entries.remove(name);
+          duplicateNames.add(name);
+        } else if (compressedSize != 0xffffffffL && localHeaderOffset != 0xffffffffL) {
+          entries.put(
+              name,
+              new CentralDirectoryEntry(crc, compressedSize, archiveStart + localHeaderOffset));
+        }
+      }
+
+      index = nameIndex + nameLength + extraFieldLength + commentLength;
+    }
+  }
+
+  /**
+   * Returns a little-endian buffer with the given range of the zip file, or null if the range
+   * exceeds the file.
+   */
+  private ByteBuffer read(long offset, int size) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+
+    FileChannel channel = channel();
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer, offset + buffer.position()) < 0) {
+        return null;
+      }
+    }
+
+    buffer.clear();
+
+    return buffer;
+  }
+
+  /** Returns the channel of the zip file, opening it if necessary. */
+  private synchronized FileChannel channel() throws IOException {
+    if (channel == null) {
+      channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+    }
+
+    return channel;
+  }
+
+  /** This class represents an entry of the central directory. */
+  private static class CentralDirectoryEntry {
+    private final int crc;
+    private final long compressedSize;
+    private final long localHeaderOffset;
+    private long dataOffset = -1L;
+
+    private CentralDirectoryEntry(int crc, long compressedSize, long localHeaderOffset) {
+      this.crc = crc;
+      this.compressedSize = compressedSize;
+      this.localHeaderOffset = localHeaderOffset;
+    }
+  }
+}
@@ -18,6 +18,8 @@
 package proguard.io;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
 import java.util.zip.*;
 import proguard.classfile.TypeConstants;
 
@@ -29,14 +31,81 @@ import proguard.classfile.TypeConstants;
 public class ZipFileDataEntry implements DataEntry {
   private final DataEntry parent;
   private final ZipEntry zipEntry;
+  private final ZipFileCentralDirectory centralDirectory;
   private ZipFile zipFile;
   private InputStream zipInputStream;
   private InputStream bufferedInputStream;
 
   public ZipFileDataEntry(DataEntry parent, ZipEntry zipEntry, ZipFile zipFile) {
+    this(parent, zipEntry, zipFile, null);
+  }
+
+  /**
+   * Creates a new ZipFileDataEntry that can also provide its compressed data, from the given
+   * central directory of the zip file.
+   */
+  ZipFileDataEntry(
+      DataEntry parent,
+      ZipEntry zipEntry,
+      ZipFile zipFile,
+      ZipFileCentralDirectory centralDirectory) {
     this.parent = parent;
     this.zipEntry = zipEntry;
     this.zipFile = zipFile;
+    this.centralDirectory = centralDirectory;
+  }
+
+  /**
+   * Returns the data of this entry, mapped into memory from its zip file, or null if this isn't
+   * possible, for instance because the entry is compressed. The mapping remains valid after the zip
+   * file has been closed.
+   */
+  public ByteBuffer mapData() throws IOException {
+    if (centralDirectory == null || zipEntry.getMethod() != ZipEntry.STORED) {
+      return null;
+    }
+
+    long offset = centralDirectory.getDataOffset(zipEntry);
+
+    return offset < 0L ? null : centralDirectory.mapData(offset, zipEntry.getSize());
+  }
+
+  /**
+   * Returns whether the deflated data of this entry are available, which is not the case if the
+   * entry isn't compressed or if its input stream has already been opened, for instance.
+   */
+  boolean hasCompressedData() throws IOException {
+    return centralDirectory != null
+        && zipInputStream == null
+        && zipEntry.getMethod() == ZipEntry.DEFLATED
+        && centralDirectory.getDataOffset(zipEntry) >= 0L;
+  }
+
+  /** Returns the CRC-32 checksum of the uncompressed data of this entry. */
+  int getCrc() {
+    return (int) zipEntry.getCrc();
+  }
+
+  /** Returns the size of the compressed data of this entry. */
+  long getCompressedSize() {
+    return zipEntry.getCompressedSize();
+  }
+
+  /** Returns the size of the uncompressed data of this entry. */
+  long getUncompressedSize() {
+    return zipEntry.getSize();
+  }
+
+  /** Transfers the deflated data of this entry to the given channel. */
+  void transferCompressedData(WritableByteChannel target) throws IOException {
+    centralDirectory.transferData(
+        centralDirectory.getDataOffset(zipEntry), zipEntry.getCompressedSize(), target);
+  }
+
+  /** Returns the deflated data of this entry. */
+  byte[] getCompressedData() throws IOException {
+    return centralDirectory.readData(
+        centralDirectory.getDataOffset(zipEntry), (int) zipEntry.getCompressedSize());
   }
 
   // Implementations for DataEntry.
@@ -18,7 +18,9 @@
 package proguard.io;
 
 import java.io.*;
+import java.nio.channels.Channels;
 import java.util.*;
+import java.util.concurrent.*;
 import java.util.zip.*;
 import proguard.util.*;
 
@@ -34,6 +36,11 @@ import proguard.util.*;
  * <p>The code automatically computes the CRC and lengths of the data, for compressed and
  * uncompressed data.
  *
+ * <p>Compressed entries can optionally be compressed in parallel, by a given executor. Their data
+ * are still written in the order in which their output streams are closed, so the resulting zip
+ * data are the same as with serial compression. The output streams must still be created and
+ * closed on a single thread.
+ *
  * @author Eric Lafortune
  */
 public class ZipOutput {
@@ -55,6 +62,10 @@ public class ZipOutput {
   private static final int ZIP64_EXTENDED_LARGE_EXTRA_INFORMATION_FIELD_SIZE = 24;
   private static final long ZIP64_FIELD_TOO_SMALL_32BIT = 0xFFFFFFFF;
 
+  // The maximum total size of the uncompressed data of entries that are
+  // waiting to be written, before waiting for their compression.
+  private static final long MAX_PENDING_SIZE = 64L * 1024L * 1024L;
+
   private static final boolean DEBUG = false;
 
   protected LargeDataOutputStream outputStream;
@@ -62,10 +73,17 @@ public class ZipOutput {
 
   private final String comment;
   private final boolean useZip64;
+  private final int compressionLevel;
+  private final Executor compressionExecutor;
 
   private List<ZipEntry> zipEntries = new ArrayList<>();
   private Set<String> zipEntryNames = new HashSet<>();
 
+  // The entries whose data still have to be written, in order, while
+  // they are being compressed in parallel.
+  private final Deque<PendingZipEntry> pendingZipEntries = new ArrayDeque<>();
+  private long pendingSize;
+
   // Regular constructors.
 
   /**
@@ -122,6 +140,8 @@ public class ZipOutput {
     this.uncompressedAlignment = uncompressedAlignment;
     this.useZip64 = useZip64;
     this.comment = comment;
+    this.compressionLevel = Deflater.BEST_COMPRESSION;
+    this.compressionExecutor = null;
   }
 
   // These constructors write out a header immediately.
@@ -156,10 +176,50 @@ public class ZipOutput {
       boolean useZip64,
       String comment)
       throws IOException {
+    this(
+        outputStream,
+        header,
+        uncompressedAlignment,
+        useZip64,
+        comment,
+        Deflater.BEST_COMPRESSION,
+        null);
+  }
+
+  /**
+   * Creates a new ZipOutput that aligns uncompressed entries, contains a comment, and compresses
+   * entries with the given compression level, optionally in parallel.
+   *
+   * @param outputStream the output stream to which the zip data will be written.
+   * @param header an optional header for the zip file.
+   * @param uncompressedAlignment the requested alignment of uncompressed data.
+   * @param useZip64 Whether to write out the archive in zip64 format.
+   * @param comment optional comment for the entire zip file.
+   * @param compressionLevel the compression level for compressed entries, from {@link
+   *     Deflater#NO_COMPRESSION} to {@link Deflater#BEST_COMPRESSION}, or {@link
+   *     Deflater#DEFAULT_COMPRESSION}.
+   * @param compressionExecutor an optional executor to compress entries in parallel.
+   */
+  public ZipOutput(
+      OutputStream outputStream,
+      byte[] header,
+      int uncompressedAlignment,
+      boolean useZip64,
+      String comment,
+      int compressionLevel,
+      Executor compressionExecutor)
+      throws IOException {
+    if (compressionLevel < Deflater.DEFAULT_COMPRESSION
+        || compressionLevel > Deflater.BEST_COMPRESSION) {
+      throw new IllegalArgumentException("Invalid compression level [" + compressionLevel + "]");
+    }
+
     this.outputStream = new LargeDataOutputStream(outputStream);
     this.uncompressedAlignment = uncompressedAlignment;
     this.useZip64 = useZip64;
     this.comment = comment;
+    this.compressionLevel = compressionLevel;
+    this.compressionExecutor = compressionExecutor;
     if (header != null) {
       outputStream.write(header);
     }
@@ -246,6 +306,8 @@ public class ZipOutput {
    * stream.
    */
   public void close(long centralDirectoryOffset) throws IOException {
+    writePendingZipEntries(true);
+
     // Write the central directory.
     long centralDirectorySize = writeEntriesOfCentralDirectory();
 
@@ -267,8 +329,13 @@ public class ZipOutput {
     zipEntryNames = null;
   }
 
-  /** Returns the current size of the data written to the output stream. */
+  /**
+   * Returns the current size of the data written to the output stream, after writing any entries
+   * that are still being compressed.
+   */
   protected long size() {
+    writeAllPendingZipEntries();
+
     return outputStream.getLongSize();
   }
 
@@ -282,6 +349,8 @@ public class ZipOutput {
       System.out.println("ZipOutput.writeStartOfCentralDirectory");
     }
 
+    writeAllPendingZipEntries();
+
     // The central directory as such doesn't have a header.
     return outputStream.getLongSize();
   }
@@ -431,9 +500,78 @@ public class ZipOutput {
     }
 
     public OutputStream createOutputStream() throws IOException {
-      return compressed
-          ? new CompressedZipEntryOutputStream()
-          : new UncompressedZipEntryOutputStream();
+      return !compressed
+          ? new UncompressedZipEntryOutputStream()
+          : compressionExecutor == null
+              ? new CompressedZipEntryOutputStream()
+              : new ParallelCompressedZipEntryOutputStream();
+    }
+
+    /** Writes the local file header and the given data to the main zip output stream. */
+    private void writeLocalFileHeaderAndData(byte[] data) throws IOException {
+      offset = outputStream.getLongSize();
+
+      writeLocalFileHeader();
+      outputStream.write(data);
+    }
+
+    /**
+     * Writes the local file header and the deflated data of the given zip file entry to the main
+     * zip output stream, or queues them if preceding entries are still being compressed.
+     *
+     * @return whether the data were available and written or queued.
+     */
+    private boolean writeCompressedData(ZipFileDataEntry dataEntry) throws IOException {
+      if (!dataEntry.hasCompressedData()
+          || !pendingZipEntries.isEmpty() && dataEntry.getCompressedSize() > Integer.MAX_VALUE) {
+        return false;
+      }
+
+      crc = dataEntry.getCrc();
+      compressedSize = dataEntry.getCompressedSize();
+      uncompressedSize = dataEntry.getUncompressedSize();
+
+      if (pendingZipEntries.isEmpty()) {
+        offset = outputStream.getLongSize();
+
+        writeLocalFileHeader();
+        dataEntry.transferCompressedData(Channels.newChannel(outputStream));
+      } else {
+        writeZipEntry(this, dataEntry.getCompressedData());
+      }
+
+      return true;
+    }
+
+    /**
+     * Returns the compressed version of the given data, computing the CRC and the compressed size.
+     */
+    private byte[] compress(byte[] data) {
+      CRC32 crc32 = new CRC32();
+      crc32.update(data, 0, data.length);
+
+      Deflater deflater = new Deflater(compressionLevel, true);
+      try {
+        deflater.setInput(data);
+        deflater.finish();
+
+        ByteArrayOutputStream compressedData = new ByteArrayOutputStream(data.length / 2 + 64);
+        byte[] buffer = new byte[16 * 1024];
+        while (!deflater.finished()) {
+          int length = deflater.deflate(buffer);
+          compressedData.write(buffer, 0, length);
+        }
+
+        byte[] compressedBytes = compressedData.toByteArray();
+
+        crc = (int) crc32.getValue();
+        compressedSize = compressedBytes.length;
+
+        return compressedBytes;
+      } finally {
+        // Make sure the memory is freed. [JDK-4797189]
+        deflater.end();
+      }
     }
 
     /** Writes the local file header, which precedes the data, to the main zip output stream. */
@@ -621,13 +759,11 @@ public class ZipOutput {
 
         byte[] bytes = super.toByteArray();
 
-        offset = outputStream.getLongSize();
         crc = (int) crc32.getValue();
         compressedSize = bytes.length;
         uncompressedSize = bytes.length;
 
-        writeLocalFileHeader();
-        outputStream.write(bytes);
+        writeZipEntry(ZipEntry.this, bytes);
       }
     }
 
@@ -635,13 +771,15 @@ public class ZipOutput {
      * This OutputStream writes its compressed zip entry out to its zip output stream when it is
      * closed.
      */
-    private class CompressedZipEntryOutputStream extends DeflaterOutputStream {
+    private class CompressedZipEntryOutputStream extends DeflaterOutputStream
+        implements CompressedDataOutputStream {
       private CRC32 crc32 = new CRC32();
+      private boolean copied;
 
       private CompressedZipEntryOutputStream() {
         super(
             new ByteArrayOutputStream(16 * 1024),
-            new Deflater(Deflater.BEST_COMPRESSION, true),
+            new Deflater(compressionLevel, true),
             1024);
       }
 
@@ -675,16 +813,121 @@ public class ZipOutput {
         super.def.end();
         super.close();
 
+        if (copied) {
+          // The compressed data have already been written.
+          return;
+        }
+
         ByteArrayOutputStream byteArrayOutputStream = (ByteArrayOutputStream) super.out;
 
         byte[] compressedBytes = byteArrayOutputStream.toByteArray();
 
-        offset = outputStream.getLongSize();
         crc = (int) crc32.getValue();
         compressedSize = compressedBytes.length;
 
-        writeLocalFileHeader();
-        outputStream.write(compressedBytes);
+        writeZipEntry(ZipEntry.this, compressedBytes);
+      }
+
+      // Implementations for CompressedDataOutputStream.
+
+      @Override
+      public boolean copyCompressedData(ZipFileDataEntry dataEntry) throws IOException {
+        if (uncompressedSize > 0L || copied) {
+          return false;
+        }
+
+        copied = writeCompressedData(dataEntry);
+
+        return copied;
+      }
+    }
+
+    /**
+     * This OutputStream collects the data of its zip entry and compresses them with the compression
+     * executor when it is closed. The zip entry is written out to its zip output stream once its
+     * compressed data are ready and all preceding entries have been written.
+     */
+    private class ParallelCompressedZipEntryOutputStream extends ByteArrayOutputStream
+        implements CompressedDataOutputStream {
+      private boolean copied;
+
+      private ParallelCompressedZipEntryOutputStream() {
+        super(16 * 1024);
+      }
+
+      // Overridden methods for OutputStream.
+
+      @Override
+      public void close() throws IOException {
+        super.close();
+
+        if (copied) {
+          // The compressed data have already been written or queued.
+          return;
+        }
+
+        byte[] bytes = super.toByteArray();
+
+        uncompressedSize = bytes.length;
+
+        FutureTask<byte[]> compression = new FutureTask<>(() -> compress(bytes));
+        compressionExecutor.execute(compression);
+
+        queueZipEntry(ZipEntry.this, compression, bytes.length);
+      }
+
+      // Implementations for CompressedDataOutputStream.
+
+      @Override
+      public boolean copyCompressedData(ZipFileDataEntry dataEntry) throws IOException {
+        if (count > 0 || copied) {
+          return false;
+        }
+
+        copied = writeCompressedData(dataEntry);
+
+        return copied;
+      }
+    }
+  }
+
+  /**
+   * This interface lets the output stream of a compressed zip entry receive the deflated data of an
+   * entry of an input zip file, instead of data that still need to be compressed.
+   */
+  interface CompressedDataOutputStream {
+    /**
+     * Copies the deflated data of the given zip file entry as the data of the zip entry, if nothing
+     * has been written to the output stream yet. The output stream still needs to be closed
+     * afterwards.
+     *
+     * @return whether the data were copied.
+     */
+    boolean copyCompressedData(ZipFileDataEntry dataEntry) throws IOException;
+  }
+
+  /** This class represents a zip entry that is waiting to be written, with its future data. */
+  private static class PendingZipEntry {
+    private final ZipEntry zipEntry;
+    private final Future<byte[]> data;
+    private final long size;
+
+    private PendingZipEntry(ZipEntry zipEntry, Future<byte[]> data, long size) {
+      this.zipEntry = zipEntry;
+      this.data = data;
+      this.size = size;
+    }
+
+    /** Returns the data of the zip entry, waiting for them if necessary. */
+    private byte[] getData() throws IOException {
+      try {
+        return data.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException(
+            "Interrupted while compressing zip entry [" + zipEntry.name + "]");
+      } catch (ExecutionException e) {
+        throw new IOException("Can't compress zip entry [" + zipEntry.name + "]", e.getCause());
       }
     }
   }
@@ -718,14 +961,70 @@ public class ZipOutput {
     }
 
     @Override
-    public void write(byte[] b) throws IOException {
-      super.write(b);
-      written += b.length;
+    public synchronized void write(byte[] b, int off, int len) throws IOException {
+      // The super implementation of write(byte[]) delegates to this method.
+      super.write(b, off, len);
+      written += len;
     }
   }
 
   // Small utility methods.
 
+  /**
+   * Writes the given zip entry with its given data to the zip output stream, or queues it if
+   * preceding entries are still being compressed.
+   */
+  private void writeZipEntry(ZipEntry zipEntry, byte[] data) throws IOException {
+    if (pendingZipEntries.isEmpty()) {
+      zipEntry.writeLocalFileHeaderAndData(data);
+    } else {
+      queueZipEntry(zipEntry, CompletableFuture.completedFuture(data), data.length);
+    }
+  }
+
+  /**
+   * Queues the given zip entry, whose data will become available later on, and writes any queued
+   * entries that are ready.
+   *
+   * @param size the uncompressed size of the data.
+   */
+  private void queueZipEntry(ZipEntry zipEntry, Future<byte[]> data, long size)
+      throws IOException {
+    pendingZipEntries.add(new PendingZipEntry(zipEntry, data, size));
+    pendingSize += size;
+
+    writePendingZipEntries(false);
+  }
+
+  /**
+   * Writes the queued zip entries whose data are ready to the zip output stream, in order.
+   *
+   * @param all specifies whether all queued entries should be written, waiting for their data if
+   *     necessary. Otherwise, this method only waits if too much data are pending.
+   */
+  private void writePendingZipEntries(boolean all) throws IOException {
+    while (!pendingZipEntries.isEmpty()) {
+      PendingZipEntry pendingZipEntry = pendingZipEntries.peek();
+      if (!all && pendingSize <= MAX_PENDING_SIZE && !pendingZipEntry.data.isDone()) {
+        break;
+      }
+
+      pendingZipEntries.poll();
+      pendingSize -= pendingZipEntry.size;
+
+      pendingZipEntry.zipEntry.writeLocalFileHeaderAndData(pendingZipEntry.getData());
+    }
+  }
+
+  /** Writes all queued zip entries to the zip output stream. */
+  private void writeAllPendingZipEntries() {
+    try {
+      writePendingZipEntries(true);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
   /** Writes out a little-endian short value to the zip output stream. */
   protected void writeShort(int value) throws IOException {
     outputStream.write(value);
@@ -18,6 +18,8 @@
 package proguard.io;
 
 import java.io.*;
+import java.util.concurrent.Executor;
+import java.util.zip.Deflater;
 import proguard.classfile.TypeConstants;
 import proguard.util.StringMatcher;
 
@@ -34,6 +36,8 @@ public class ZipWriter implements DataEntryWriter {
   private final int extraUncompressedAlignment;
   private final int modificationTime;
   private final byte[] header;
+  private final int compressionLevel;
+  private final Executor compressionExecutor;
   private final DataEntryWriter dataEntryWriter;
 
   private DataEntry currentParentEntry;
@@ -97,14 +101,15 @@ public class ZipWriter implements DataEntryWriter {
       int extraUncompressedAlignment,
       int modificationTime,
       DataEntryWriter dataEntryWriter) {
-    this.uncompressedFilter = uncompressedFilter;
-    this.uncompressedAlignment = uncompressedAlignment;
-    this.useZip64 = useZip64;
-    this.extraUncompressedAlignmentFilter = extraUncompressedAlignmentFilter;
-    this.extraUncompressedAlignment = extraUncompressedAlignment;
-    this.modificationTime = modificationTime;
-    this.header = null;
-    this.dataEntryWriter = dataEntryWriter;
+    this(
+        uncompressedFilter,
+        uncompressedAlignment,
+        useZip64,
+        extraUncompressedAlignmentFilter,
+        extraUncompressedAlignment,
+        modificationTime,
+        null,
+        dataEntryWriter);
   }
 
   /**
@@ -156,14 +161,15 @@ public class ZipWriter implements DataEntryWriter {
       int modificationTime,
       byte[] header,
       DataEntryWriter dataEntryWriter) {
-    this.uncompressedFilter = uncompressedFilter;
-    this.uncompressedAlignment = uncompressedAlignment;
-    this.useZip64 = false;
-    this.extraUncompressedAlignmentFilter = extraUncompressedAlignmentFilter;
-    this.extraUncompressedAlignment = extraUncompressedAlignment;
-    this.modificationTime = modificationTime;
-    this.header = header;
-    this.dataEntryWriter = dataEntryWriter;
+    this(
+        uncompressedFilter,
+        uncompressedAlignment,
+        false,
+        extraUncompressedAlignmentFilter,
+        extraUncompressedAlignment,
+        modificationTime,
+        header,
+        dataEntryWriter);
   }
 
   /**
@@ -189,6 +195,49 @@ public class ZipWriter implements DataEntryWriter {
       int modificationTime,
       byte[] header,
       DataEntryWriter dataEntryWriter) {
+    this(
+        uncompressedFilter,
+        uncompressedAlignment,
+        useZip64,
+        extraUncompressedAlignmentFilter,
+        extraUncompressedAlignment,
+        modificationTime,
+        header,
+        Deflater.BEST_COMPRESSION,
+        null,
+        dataEntryWriter);
+  }
+
+  /**
+   * Creates a new ZipWriter.
+   *
+   * @param uncompressedFilter an optional filter for files that should not be compressed.
+   * @param uncompressedAlignment the desired alignment for the data of uncompressed entries.
+   * @param useZip64 Whether to write out the archive in zip64 format.
+   * @param extraUncompressedAlignmentFilter an optional filter for files that should not be
+   *     compressed and use a different alignment.
+   * @param extraUncompressedAlignment the desired alignment for the data of entries matching
+   *     extraAlignmentFilter.
+   * @param modificationTime the modification date and time of the zip entries, in DOS format.
+   * @param header an optional header for the zip archives.
+   * @param compressionLevel the compression level for compressed entries, e.g. {@link
+   *     Deflater#BEST_COMPRESSION}.
+   * @param compressionExecutor an optional executor to compress entries in parallel, e.g. {@link
+   *     java.util.concurrent.ForkJoinPool#commonPool()}.
+   * @param dataEntryWriter the data entry writer that can provide output streams for the zip
+   *     archives.
+   */
+  public ZipWriter(
+      StringMatcher uncompressedFilter,
+      int uncompressedAlignment,
+      boolean useZip64,
+      StringMatcher extraUncompressedAlignmentFilter,
+      int extraUncompressedAlignment,
+      int modificationTime,
+      byte[] header,
+      int compressionLevel,
+      Executor compressionExecutor,
+      DataEntryWriter dataEntryWriter) {
     this.uncompressedFilter = uncompressedFilter;
     this.uncompressedAlignment = uncompressedAlignment;
     this.useZip64 = useZip64;
@@ -196,6 +245,8 @@ public class ZipWriter implements DataEntryWriter {
     this.extraUncompressedAlignment = extraUncompressedAlignment;
     this.modificationTime = modificationTime;
     this.header = header;
+    this.compressionLevel = compressionLevel;
+    this.compressionExecutor = compressionExecutor;
     this.dataEntryWriter = dataEntryWriter;
   }
 
@@ -309,7 +360,14 @@ public class ZipWriter implements DataEntryWriter {
       boolean useZip64,
       String comment)
       throws IOException {
-    return new ZipOutput(outputStream, header, uncompressedAlignment, useZip64, comment);
+    return new ZipOutput(
+        outputStream,
+        header,
+        uncompressedAlignment,
+        useZip64,
+        comment,
+        compressionLevel,
+        compressionExecutor);
   }
 
   private void finishIfNecessary(DataEntry dataEntry) throws IOException {
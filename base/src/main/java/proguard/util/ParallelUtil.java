@@ -0,0 +1,115 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package proguard.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.ToLongFunction;
+
+/**
+ * This class provides some utility methods for visiting elements in parallel, like the ones of the
+ * {@link proguard.classfile.visitor.ParallelAllClassVisitor} and the {@link
+ * proguard.classfile.attribute.visitor.ParallelAllCodeAttributeVisitor}.
+ */
+public class ParallelUtil {
+  // The number of batches per thread, to balance the load between threads.
+  private static final int BATCHES_PER_THREAD = 4;
+
+  /**
+   * Returns the default number of parallel threads: the number of available processors minus one,
+   * or the number set by the system property {@code parallel.threads}, limited to the number of
+   * available processors. The result may be smaller than 1.
+   */
+  public static int defaultThreadCount() {
+    int availableProcessors = Runtime.getRuntime().availableProcessors();
+
+    String threadCountString = System.getProperty("parallel.threads");
+    if (threadCountString != null) {
+      try {
+        return Math.min(Integer.parseInt(threadCountString), availableProcessors);
+      } catch (NumberFormatException e) {
+        // Fall back to the default number of threads.
+      }
+    }
+
+    return availableProcessors - 1;
+  }
+
+  /**
+   * Creates a pool with the given number of daemon threads, whose names start with the given
+   * prefix.
+   */
+  public static ForkJoinPool createDaemonPool(int threadCount, String threadNamePrefix) {
+    AtomicInteger threadCounter = new AtomicInteger();
+
+    return new ForkJoinPool(
+        threadCount,
+        pool -> {
+          ForkJoinWorkerThread thread =
+              ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+          thread.setName(threadNamePrefix + " " + threadCounter.incrementAndGet());
+          thread.setDaemon(true);
+          return thread;
+        },
+        null,
+        false);
+  }
+
+  /**
+   * Returns the given elements, ordered by decreasing cost, in batches of similar total cost, so
+   * that the given number of threads can share the load. Costly elements end up in batches of
+   * their own.
+   */
+  public static <T> List<List<T>> createBatches(
+      List<T> elements, ToLongFunction<? super T> costFunction, int threadCount) {
+    List<T> sortedElements = new ArrayList<>(elements);
+    sortedElements.sort(
+        (element1, element2) ->
+            Long.compare(costFunction.applyAsLong(element2), costFunction.applyAsLong(element1)));
+
+    long totalCost = 0L;
+    for (T element : sortedElements) {
+      totalCost += costFunction.applyAsLong(element);
+    }
+
+    long batchCost = Math.max(1L, totalCost / ((long) threadCount * BATCHES_PER_THREAD));
+
+    List<List<T>> batches = new ArrayList<>();
+    List<T> batch = new ArrayList<>();
+    long cost = 0L;
+    for (T element : sortedElements) {
+      batch.add(element);
+      cost += costFunction.applyAsLong(element);
+
+      if (cost >= batchCost) {
+        batches.add(batch);
+        batch = new ArrayList<>();
+        cost = 0L;
+      }
+    }
+
+    if (!batch.isEmpty()) {
+      batches.add(batch);
+    }
+
+    return batches;
+  }
+}
@@ -0,0 +1,100 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package proguard.analysis
+
+import io.kotest.core.spec.style.FreeSpec
+import io.kotest.matchers.shouldBe
+import io.kotest.matchers.string.shouldContain
+import proguard.analysis.Metrics.MetricType.MISSING_CLASS
+import proguard.analysis.Metrics.MetricType.SYMBOLIC_CALL
+import proguard.analysis.Metrics.TimerType.CPA_RUN
+import proguard.analysis.cpa.jvm.domain.taint.JvmTaintBamCpaRun
+import proguard.analysis.cpa.jvm.util.CfaUtil
+import proguard.classfile.MethodSignature
+import proguard.testutils.ClassPoolBuilder
+import proguard.testutils.JavaSource
+import kotlin.concurrent.thread
+
+class MetricsTest : FreeSpec({
+
+    beforeTest { Metrics.clear() }
+
+    "Counts from many threads are all collected" {
+        (1..8).map {
+            thread { repeat(10_000) { Metrics.increaseCount(SYMBOLIC_CALL) } }
+        }.forEach { it.join() }
+
+        Metrics.getCount(SYMBOLIC_CALL) shouldBe 80_000L
+        Metrics.getCount(MISSING_CLASS) shouldBe 0L
+    }
+
+    "Durations are collected in histograms" {
+        Metrics.recordDuration(CPA_RUN, 3L)
+        Metrics.recordDuration(CPA_RUN, 1000L)
+        Metrics.recordDuration(CPA_RUN, 1023L)
+
+        Metrics.getDurationCount(CPA_RUN) shouldBe 3L
+        Metrics.getTotalDuration(CPA_RUN) shouldBe 2026L
+        Metrics.toJson() shouldBe
+            "{\"counts\":{},\"timers\":{\"CPA_RUN\":" +
+            "{\"count\":3,\"totalNanos\":2026,\"maxNanos\":1023,\"histogram\":{\"4\":1,\"1024\":2}}}}"
+    }
+
+    "Flushing clears the collected data" {
+        Metrics.increaseCount(MISSING_CLASS)
+        Metrics.recordDuration(CPA_RUN, 5_000_000L)
+
+        val flushed = Metrics.flush()
+        flushed shouldContain "MISSING_CLASS: 1"
+        flushed shouldContain "CPA_RUN: 1 times, total 5 ms, max 5 ms"
+        Metrics.toJson() shouldBe "{\"counts\":{},\"timers\":{}}"
+    }
+
+    "CPA runs are timed once, including their nested block analyses" {
+        val cfa = CfaUtil.createInterproceduralCfaFromClassPool(
+            ClassPoolBuilder.fromSource(
+                JavaSource(
+                    "A.java",
+                    """
+                    class A
+                    {
+                        public void main()
+                        {
+                            callee();
+                        }
+
+                        public static void callee()
+                        {
+                        }
+                    }
+                    """.trimIndent(),
+                ),
+                javacArguments = listOf("-source", "1.8", "-target", "1.8"),
+            ).programClassPool,
+        )
+        JvmTaintBamCpaRun.Builder()
+            .setCfa(cfa)
+            .setMainSignature(MethodSignature("A", "main", "()V"))
+            .build()
+            .execute()
+
+        Metrics.getDurationCount(CPA_RUN) shouldBe 1L
+        cfa.clear()
+    }
+})
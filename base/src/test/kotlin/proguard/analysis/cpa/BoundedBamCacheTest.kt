@@ -0,0 +1,158 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package proguard.analysis.cpa
+
+import io.kotest.core.spec.style.FreeSpec
+import io.kotest.matchers.nulls.shouldBeNull
+import io.kotest.matchers.nulls.shouldNotBeNull
+import io.kotest.matchers.shouldBe
+import proguard.analysis.cpa.bam.BoundedBamCache
+import proguard.analysis.cpa.bam.FileBlockAbstractionStore
+import proguard.analysis.cpa.jvm.domain.taint.JvmTaintBamCpaRun
+import proguard.analysis.cpa.jvm.domain.taint.JvmTaintSource
+import proguard.analysis.cpa.jvm.state.heap.HeapModel
+import proguard.analysis.cpa.jvm.util.CfaUtil
+import proguard.classfile.MethodSignature
+import proguard.testutils.ClassPoolBuilder
+import proguard.testutils.JavaSource
+import proguard.testutils.cpa.SerializableAbstractState
+import proguard.testutils.cpa.SerializableAbstractState.Companion.blockAbstraction
+
+class BoundedBamCacheTest : FreeSpec({
+
+    val signatureA = MethodSignature("A", "a", "()V")
+    val signatureB = MethodSignature("A", "b", "()V")
+
+    "Least recently used block abstractions are evicted" {
+        val cache = BoundedBamCache<MethodSignature>(4)
+        cache.put(SerializableAbstractState(0), null, signatureA, blockAbstraction(1, 2))
+        cache.put(SerializableAbstractState(0), null, signatureB, blockAbstraction(1, 2))
+        cache.get(SerializableAbstractState(0), null, signatureA).shouldNotBeNull()
+        cache.put(SerializableAbstractState(1), null, signatureA, blockAbstraction(1))
+
+        cache.get(SerializableAbstractState(0), null, signatureB).shouldBeNull()
+        cache.get(SerializableAbstractState(0), null, signatureA).shouldNotBeNull()
+        cache.get(SerializableAbstractState(1), null, signatureA).shouldNotBeNull()
+        cache.size() shouldBe 2
+        cache.weight shouldBe 3
+        cache.evictionCount shouldBe 1
+        cache.hitCount shouldBe 3
+        cache.missCount shouldBe 1
+        cache.allMethods shouldBe setOf(signatureA, signatureB)
+    }
+
+    "Locked block abstractions are not evicted" {
+        val cache = BoundedBamCache<MethodSignature>(2)
+        cache.lock(SerializableAbstractState(0), null, signatureA)
+        cache.put(SerializableAbstractState(0), null, signatureA, blockAbstraction(1, 2))
+        cache.put(SerializableAbstractState(0), null, signatureB, blockAbstraction(1, 2))
+
+        cache.get(SerializableAbstractState(0), null, signatureA).shouldNotBeNull()
+        cache.get(SerializableAbstractState(0), null, signatureB).shouldBeNull()
+
+        // The budget may be exceeded while the block abstraction is locked.
+        cache.put(SerializableAbstractState(0), null, signatureA, blockAbstraction(1, 2, 3))
+        cache.size() shouldBe 1
+        cache.unlock(SerializableAbstractState(0), null, signatureA)
+        cache.size() shouldBe 0
+    }
+
+    "Spilled block abstractions are reloaded" {
+        FileBlockAbstractionStore<MethodSignature>().use { store ->
+            val cache = BoundedBamCache<MethodSignature>(
+                2,
+                { it.reachedSet.asCollection().size.toLong() },
+                store,
+            )
+            cache.put(SerializableAbstractState(0), null, signatureA, blockAbstraction(1, 2))
+            cache.put(SerializableAbstractState(0), null, signatureB, blockAbstraction(3))
+
+            val reloaded = cache.get(SerializableAbstractState(0), null, signatureA)
+            reloaded.shouldNotBeNull()
+            reloaded.reachedSet.asCollection() shouldBe
+                setOf(SerializableAbstractState(1), SerializableAbstractState(2))
+            cache.evictionCount shouldBe 2
+            cache.missCount shouldBe 0
+        }
+    }
+
+    "Block abstractions of JVM taint analyses are spilled and reloaded" - {
+        val cfa = CfaUtil.createInterproceduralCfaFromClassPool(
+            ClassPoolBuilder.fromSource(
+                JavaSource(
+                    "A.java",
+                    """
+                    class A
+                    {
+                        private Object field;
+
+                        public void main()
+                        {
+                            A a = new A();
+                            a.field = source();
+                            sink(a.field);
+                        }
+
+                        public static String source()
+                        {
+                            return null;
+                        }
+
+                        public static void sink(Object o)
+                        {
+                        }
+                    }
+                    """.trimIndent(),
+                ),
+                javacArguments = listOf("-source", "1.8", "-target", "1.8"),
+            ).programClassPool,
+        )
+        val mainSignature = cfa.functionEntryNodes.first { it.signature.method == "main" }.signature
+        val source = JvmTaintSource(
+            MethodSignature("A", "source", "()Ljava/lang/String;"),
+            false,
+            true,
+            setOf(),
+            setOf(),
+        )
+
+        listOf(HeapModel.FORGETFUL, HeapModel.TREE, HeapModel.TAINT_TREE).forEach { heapModel ->
+            "With the heap model $heapModel" {
+                val run = JvmTaintBamCpaRun.Builder()
+                    .setCfa(cfa)
+                    .setMainSignature(mainSignature)
+                    .setTaintSources(setOf(source))
+                    .setHeapModel(heapModel)
+                    .build()
+                run.execute()
+                val blockAbstraction = run.cpa.cache.get(mainSignature).first()
+
+                FileBlockAbstractionStore<MethodSignature>(run.createBlockAbstractionCodec()).use { store ->
+                    store.store(SerializableAbstractState(0), null, mainSignature, blockAbstraction) shouldBe true
+
+                    val reloaded = store.load(SerializableAbstractState(0), null, mainSignature)
+                    reloaded.shouldNotBeNull()
+                    reloaded.reachedSet.asCollection().toSet() shouldBe
+                        blockAbstraction.reachedSet.asCollection().toSet()
+                }
+            }
+        }
+        cfa.clear()
+    }
+})
@@ -0,0 +1,149 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package proguard.analysis.cpa
+
+import io.kotest.core.spec.style.FreeSpec
+import io.kotest.matchers.shouldBe
+import io.kotest.matchers.types.shouldBeSameInstanceAs
+import proguard.analysis.cpa.bam.ConcurrentBamCache
+import proguard.analysis.cpa.defaults.BamCpaRun
+import proguard.analysis.cpa.interfaces.CfaNode
+import proguard.analysis.cpa.jvm.cfa.JvmCfa
+import proguard.analysis.cpa.jvm.cfa.nodes.JvmCfaNode
+import proguard.analysis.cpa.jvm.domain.taint.JvmTaintBamCpaRun
+import proguard.analysis.cpa.jvm.util.CfaUtil
+import proguard.classfile.MethodSignature
+import proguard.testutils.ClassPoolBuilder
+import proguard.testutils.JavaSource
+import proguard.testutils.cpa.IntegerAbstractState
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import kotlin.concurrent.thread
+
+class ConcurrentBamCacheTest : FreeSpec({
+
+    val signatureA = MethodSignature("A", "a", "()V")
+    val signatureB = MethodSignature("A", "b", "()V")
+
+    "Locks are reentrant and exclusive" {
+        val cache = ConcurrentBamCache<MethodSignature>()
+        cache.lock(IntegerAbstractState(0), null, signatureA) shouldBe true
+        cache.lock(IntegerAbstractState(0), null, signatureA) shouldBe true
+
+        val acquired = CountDownLatch(1)
+        val other = thread {
+            cache.lock(IntegerAbstractState(0), null, signatureA)
+            acquired.countDown()
+            cache.unlock(IntegerAbstractState(0), null, signatureA)
+        }
+
+        cache.unlock(IntegerAbstractState(0), null, signatureA)
+        acquired.await(100, TimeUnit.MILLISECONDS) shouldBe false
+        cache.unlock(IntegerAbstractState(0), null, signatureA)
+        acquired.await(10, TimeUnit.SECONDS) shouldBe true
+        other.join()
+    }
+
+    "Locks that would result in a deadlock are refused" {
+        val cache = ConcurrentBamCache<MethodSignature>()
+        cache.lock(IntegerAbstractState(0), null, signatureA) shouldBe true
+
+        val lockedB = CountDownLatch(1)
+        var otherLockedA = false
+        val other = thread {
+            cache.lock(IntegerAbstractState(0), null, signatureB)
+            lockedB.countDown()
+            otherLockedA = cache.lock(IntegerAbstractState(0), null, signatureA)
+            if (otherLockedA) {
+                cache.unlock(IntegerAbstractState(0), null, signatureA)
+            }
+            cache.unlock(IntegerAbstractState(0), null, signatureB)
+        }
+        lockedB.await()
+
+        // Whichever thread closes the cycle is refused, the other one eventually gets the lock.
+        val mainLockedB = cache.lock(IntegerAbstractState(0), null, signatureB)
+        if (mainLockedB) {
+            cache.unlock(IntegerAbstractState(0), null, signatureB)
+        }
+        cache.unlock(IntegerAbstractState(0), null, signatureA)
+        other.join()
+
+        (mainLockedB xor otherLockedA) shouldBe true
+    }
+
+    "Exit nodes created concurrently for a shared CFA are unique" {
+        val cfa = JvmCfa()
+        val executor = Executors.newFixedThreadPool(8)
+        val exitNodes = (0 until 100)
+            .map { executor.submit<JvmCfaNode> { cfa.getFunctionExceptionExitNode(signatureA, null) } }
+            .map { it.get() }
+        executor.shutdown()
+
+        val exitNode = cfa.getFunctionNode(signatureA, CfaNode.EXCEPTION_EXIT_NODE_OFFSET)
+        exitNodes.forEach { it shouldBeSameInstanceAs exitNode }
+    }
+
+    "Parallel runs share the block abstractions of common callees" {
+        val interproceduralCfa = CfaUtil.createInterproceduralCfaFromClassPool(
+            ClassPoolBuilder.fromSource(
+                JavaSource(
+                    "A.java",
+                    """
+                    class A
+                    {
+                        public void main1()
+                        {
+                            callee();
+                        }
+
+                        public void main2()
+                        {
+                            callee();
+                        }
+
+                        public static void callee()
+                        {
+                        }
+                    }
+                    """.trimIndent(),
+                ),
+                javacArguments = listOf("-source", "1.8", "-target", "1.8"),
+            ).programClassPool,
+        )
+        val signatures = interproceduralCfa.functionEntryNodes.map { it.signature }
+        val calleeSignature = signatures.first { it.fqn.contains("callee") }
+        val cache = ConcurrentBamCache<MethodSignature>()
+        val runs = signatures
+            .filter { it.fqn.contains("main") }
+            .map {
+                JvmTaintBamCpaRun.Builder()
+                    .setCfa(interproceduralCfa)
+                    .setMainSignature(it)
+                    .setCache(cache)
+                    .build()
+            }
+
+        BamCpaRun.executeInParallel(runs, 2).size shouldBe 2
+
+        runs.forEach { it.cpa.cache shouldBe cache }
+        cache.get(calleeSignature).size shouldBe 1
+    }
+})
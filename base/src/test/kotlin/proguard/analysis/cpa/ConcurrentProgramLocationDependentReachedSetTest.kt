@@ -0,0 +1,96 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package proguard.analysis.cpa
+
+import io.kotest.core.spec.style.FreeSpec
+import io.kotest.matchers.shouldBe
+import io.kotest.matchers.types.shouldBeSameInstanceAs
+import proguard.analysis.cpa.defaults.ConcurrentProgramLocationDependentReachedSet
+import proguard.analysis.cpa.interfaces.AbstractState
+import proguard.analysis.cpa.interfaces.ProgramLocationDependent
+import proguard.analysis.cpa.jvm.cfa.edges.JvmCfaEdge
+import proguard.analysis.cpa.jvm.cfa.nodes.JvmCfaNode
+import proguard.classfile.MethodSignature
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+
+class ConcurrentProgramLocationDependentReachedSetTest : FreeSpec({
+
+    val signature = MethodSignature("A", "m", "()V")
+    val locations = (0 until 16).map { JvmCfaNode(signature, it, null) }
+    val states = (0 until 1000).map { LocatedState(it, locations[it % locations.size]) }
+
+    fun inParallel(action: (LocatedState) -> Unit) {
+        val executor = Executors.newFixedThreadPool(8)
+        states.forEach { state -> executor.execute { action(state) } }
+        executor.shutdown()
+        executor.awaitTermination(1, TimeUnit.MINUTES) shouldBe true
+    }
+
+    "Given a reached set filled and partially emptied from multiple threads" - {
+        val reachedSet = ConcurrentProgramLocationDependentReachedSet<JvmCfaNode, JvmCfaEdge, LocatedState, MethodSignature>()
+        inParallel { reachedSet.add(it) }
+        inParallel { if (it.id % 2 == 1) reachedSet.remove(it) }
+        val remainingStates = states.filter { it.id % 2 == 0 }
+
+        "Then it contains the remaining states" {
+            reachedSet.asCollection().toSet() shouldBe remainingStates.toSet()
+        }
+
+        "Then the states are binned by location" {
+            locations.forEach { location ->
+                reachedSet.getReached(location).toSet() shouldBe
+                    remainingStates.filter { it.programLocation == location }.toSet()
+            }
+        }
+
+        "Then bins can be modified while they are iterated" {
+            val location = locations[0]
+            reachedSet.getReached(location).forEach {
+                val id = (it as LocatedState).id
+                if (id < states.size) {
+                    reachedSet.add(LocatedState(id + states.size, location))
+                }
+            }
+            reachedSet.getReached(location).size shouldBe
+                2 * remainingStates.count { it.programLocation == location }
+        }
+
+        "Then states at the same location share a lock" {
+            reachedSet.getLock(states[0]) shouldBeSameInstanceAs reachedSet.getLock(locations[0])
+        }
+    }
+})
+
+private class LocatedState(val id: Int, private var location: JvmCfaNode) :
+    AbstractState,
+    ProgramLocationDependent<JvmCfaNode, JvmCfaEdge, MethodSignature> {
+
+    override fun getProgramLocation(): JvmCfaNode = location
+
+    override fun setProgramLocation(programLocation: JvmCfaNode) {
+        location = programLocation
+    }
+
+    override fun copy(): LocatedState = LocatedState(id, location)
+
+    override fun equals(other: Any?): Boolean = other is LocatedState && other.id == id
+
+    override fun hashCode(): Int = id
+}
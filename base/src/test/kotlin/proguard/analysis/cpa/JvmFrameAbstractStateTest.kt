@@ -0,0 +1,85 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package proguard.analysis.cpa
+
+import io.kotest.core.spec.style.FreeSpec
+import io.kotest.matchers.shouldBe
+import io.kotest.matchers.types.shouldBeSameInstanceAs
+import proguard.analysis.cpa.jvm.state.JvmFrameAbstractState
+import proguard.testutils.cpa.IntegerAbstractState
+
+class JvmFrameAbstractStateTest : FreeSpec({
+
+    val bottom = IntegerAbstractState(0)
+
+    fun frame(vararg stack: Int): JvmFrameAbstractState<IntegerAbstractState> {
+        val frame = JvmFrameAbstractState<IntegerAbstractState>()
+        frame.setVariable(0, IntegerAbstractState(10), bottom)
+        stack.forEach { frame.push(IntegerAbstractState(it)) }
+        return frame
+    }
+
+    "Copies are independent" {
+        val original = frame(1, 2)
+        val copy = original.copy()
+        val secondCopy = original.copy()
+
+        copy.pop()
+        copy.setVariable(1, IntegerAbstractState(11), bottom)
+        secondCopy.push(IntegerAbstractState(3))
+
+        original.operandStack shouldBe listOf(1, 2).map { IntegerAbstractState(it) }
+        original.localVariables shouldBe listOf(IntegerAbstractState(10))
+        copy.operandStack shouldBe listOf(IntegerAbstractState(1))
+        copy.localVariables shouldBe listOf(IntegerAbstractState(10), IntegerAbstractState(11))
+        secondCopy.operandStack shouldBe listOf(1, 2, 3).map { IntegerAbstractState(it) }
+        secondCopy.localVariables shouldBe listOf(IntegerAbstractState(10))
+    }
+
+    "Reading and copying frames does not modify them" {
+        val original = frame(1)
+        val operandStack = original.operandStack
+        val localVariables = original.localVariables
+        val copy = original.copy()
+
+        copy.operandStack shouldBeSameInstanceAs operandStack
+        copy.localVariables shouldBeSameInstanceAs localVariables
+        original.operandStack shouldBeSameInstanceAs operandStack
+        original.localVariables shouldBeSameInstanceAs localVariables
+
+        copy.clearOperandStack()
+        copy.operandStack shouldBe listOf<IntegerAbstractState>()
+        copy.localVariables shouldBeSameInstanceAs localVariables
+        original.operandStack shouldBe listOf(IntegerAbstractState(1))
+    }
+
+    "Joins do not alias the joined frames" {
+        val smaller = frame(1)
+        val larger = frame(5)
+
+        smaller.join(smaller.copy()) shouldBeSameInstanceAs smaller
+        val join = smaller.join(larger)
+        join shouldBe larger
+
+        join.push(IntegerAbstractState(6))
+        join.setVariable(0, IntegerAbstractState(20), bottom)
+        larger.operandStack shouldBe listOf(IntegerAbstractState(5))
+        larger.localVariables shouldBe listOf(IntegerAbstractState(10))
+    }
+})
@@ -20,9 +20,11 @@ package proguard.analysis.cpa
 
 import io.kotest.core.spec.style.FreeSpec
 import io.kotest.matchers.shouldBe
+import io.kotest.matchers.types.shouldBeSameInstanceAs
 import proguard.analysis.cpa.defaults.DifferentialMapAbstractState
 import proguard.analysis.cpa.defaults.HashMapAbstractState
 import proguard.analysis.cpa.defaults.LimitedHashMapAbstractState
+import proguard.analysis.cpa.defaults.PersistentMapAbstractState
 import proguard.testutils.cpa.IntegerAbstractState
 import java.util.Optional
 
@@ -32,6 +34,7 @@ class MapAbstractStateTest : FreeSpec({
         { HashMapAbstractState<Int, IntegerAbstractState>() },
         { DifferentialMapAbstractState() },
         { LimitedHashMapAbstractState { _, _, _ -> Optional.empty() } },
+        { PersistentMapAbstractState() },
     ).forEach { supplier ->
 
         val stateEmpty = supplier.invoke()
@@ -85,4 +88,60 @@ class MapAbstractStateTest : FreeSpec({
             state3.isLessOrEqual(state1) shouldBe true
         }
     }
+
+    "Persistent map copies are independent" {
+        val original = PersistentMapAbstractState<Int, IntegerAbstractState>()
+        (0 until 100).forEach { original[it] = IntegerAbstractState(it) }
+        val copy = original.copy()
+        copy[0] = IntegerAbstractState(5)
+        copy.remove(1)
+        copy[100] = IntegerAbstractState(100)
+
+        original.size shouldBe 100
+        original[0] shouldBe IntegerAbstractState(0)
+        original[1] shouldBe IntegerAbstractState(1)
+        copy.size shouldBe 100
+        copy[0] shouldBe IntegerAbstractState(5)
+        copy.containsKey(1) shouldBe false
+    }
+
+    "Persistent map joins reuse unchanged operands" {
+        val small = PersistentMapAbstractState<Int, IntegerAbstractState>()
+        (0 until 100).forEach { small[it] = IntegerAbstractState(it) }
+        val large = small.copy()
+        large[50] = IntegerAbstractState(1000)
+
+        small.join(small.copy()) shouldBeSameInstanceAs small
+        small.join(large) shouldBeSameInstanceAs large
+        large.join(small) shouldBeSameInstanceAs large
+        small.isLessOrEqual(large) shouldBe true
+        large.isLessOrEqual(small) shouldBe false
+    }
+
+    "Persistent map values are updated through the entry set" {
+        val state = PersistentMapAbstractState<Int, IntegerAbstractState>()
+        (0 until 100).forEach { state[it] = IntegerAbstractState(it) }
+        val copy = state.copy()
+        state.entries.forEach { it.setValue(it.value.join(IntegerAbstractState(50))) }
+
+        state.size shouldBe 100
+        state[0] shouldBe IntegerAbstractState(50)
+        state[99] shouldBe IntegerAbstractState(99)
+        copy[0] shouldBe IntegerAbstractState(0)
+    }
+
+    "Persistent maps handle colliding hash codes" {
+        val state = PersistentMapAbstractState<CollidingKey, IntegerAbstractState>()
+        (0 until 10).forEach { state[CollidingKey(it)] = IntegerAbstractState(it) }
+        state.remove(CollidingKey(3))
+
+        state.size shouldBe 9
+        state[CollidingKey(4)] shouldBe IntegerAbstractState(4)
+        state.containsKey(CollidingKey(3)) shouldBe false
+        state.keys shouldBe (0 until 10).filter { it != 3 }.map { CollidingKey(it) }.toSet()
+    }
 })
+
+private data class CollidingKey(val id: Int) {
+    override fun hashCode(): Int = 0
+}
@@ -0,0 +1,135 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package proguard.analysis.cpa
+
+import io.kotest.assertions.throwables.shouldThrow
+import io.kotest.core.spec.style.FreeSpec
+import io.kotest.matchers.collections.shouldBeEmpty
+import io.kotest.matchers.shouldBe
+import proguard.analysis.Metrics
+import proguard.analysis.Metrics.TimerType.CPA_RUN
+import proguard.analysis.cpa.algorithms.CpaAlgorithm
+import proguard.analysis.cpa.algorithms.ParallelCpaAlgorithm
+import proguard.analysis.cpa.defaults.BreadthFirstWaitlist
+import proguard.analysis.cpa.defaults.ControllableAbortOperator
+import proguard.analysis.cpa.defaults.CpaRun
+import proguard.analysis.cpa.defaults.DefaultReachedSet
+import proguard.analysis.cpa.defaults.DelegateAbstractDomain
+import proguard.analysis.cpa.defaults.MergeJoinOperator
+import proguard.analysis.cpa.defaults.MergeSepOperator
+import proguard.analysis.cpa.defaults.SimpleCpa
+import proguard.analysis.cpa.defaults.StaticPrecisionAdjustment
+import proguard.analysis.cpa.defaults.StopContainedOperator
+import proguard.analysis.cpa.interfaces.MergeOperator
+import proguard.analysis.cpa.interfaces.StopOperator
+import proguard.analysis.cpa.jvm.cfa.JvmCfa
+import proguard.analysis.cpa.jvm.domain.taint.JvmTaintBamCpaRun
+import proguard.classfile.MethodSignature
+import proguard.testutils.cpa.BoundedAdditiveTransferRelation
+import proguard.testutils.cpa.IntegerAbstractState
+
+class ParallelCpaAlgorithmTest : FreeSpec({
+
+    val abstractDomain = DelegateAbstractDomain<IntegerAbstractState>()
+
+    val transferRelation = BoundedAdditiveTransferRelation(3, 1000)
+
+    val precisionAdjustment = StaticPrecisionAdjustment()
+
+    fun runSequentially(mergeOperator: MergeOperator, stopOperator: StopOperator): Set<Any> {
+        val waitlist = BreadthFirstWaitlist()
+        (0 until 10).forEach { waitlist.add(IntegerAbstractState(it)) }
+        val reachedset = DefaultReachedSet()
+        CpaAlgorithm(
+            SimpleCpa(abstractDomain, transferRelation, mergeOperator, stopOperator, precisionAdjustment),
+        ).run(reachedset, waitlist)
+        return reachedset.toSet()
+    }
+
+    fun runInParallel(mergeOperator: MergeOperator, stopOperator: StopOperator): Set<Any> {
+        val waitlist = BreadthFirstWaitlist()
+        (0 until 10).forEach { waitlist.add(IntegerAbstractState(it)) }
+        val reachedset = DefaultReachedSet()
+        ParallelCpaAlgorithm(
+            SimpleCpa(abstractDomain, transferRelation, mergeOperator, stopOperator, precisionAdjustment),
+            4,
+        ).run(reachedset, waitlist)
+        waitlist.isEmpty shouldBe true
+        return reachedset.toSet()
+    }
+
+    "Parallel reachability coincides with the sequential one" {
+        runInParallel(MergeSepOperator(), StopContainedOperator()) shouldBe
+            runSequentially(MergeSepOperator(), StopContainedOperator())
+    }
+
+    "Parallel merging coincides with the sequential one" {
+        runInParallel(MergeJoinOperator(abstractDomain), StopContainedOperator()) shouldBe
+            runSequentially(MergeJoinOperator(abstractDomain), StopContainedOperator())
+    }
+
+    "CpaRun runs the parallel algorithm when its parallelism is set" {
+        val run = object : CpaRun<SimpleCpa, IntegerAbstractState>() {
+            init {
+                cpa = SimpleCpa(
+                    abstractDomain,
+                    transferRelation,
+                    MergeJoinOperator(abstractDomain),
+                    StopContainedOperator(),
+                    precisionAdjustment,
+                )
+            }
+
+            override fun getInitialStates() = (0 until 10).map { IntegerAbstractState(it) }
+        }
+        run.setParallelism(4)
+        run.parallelism shouldBe 4
+        Metrics.clear()
+        run.execute().toSet() shouldBe runSequentially(MergeJoinOperator(abstractDomain), StopContainedOperator())
+        Metrics.getDurationCount(CPA_RUN) shouldBe 1L
+    }
+
+    "BAM runs refuse to run the parallel algorithm" {
+        val run = JvmTaintBamCpaRun.Builder()
+            .setCfa(JvmCfa())
+            .setMainSignature(MethodSignature("A", "main", "()V"))
+            .build()
+        shouldThrow<IllegalArgumentException> { run.setParallelism(4) }
+        run.parallelism shouldBe 1
+    }
+
+    "Abort operator terminates the analysis" {
+        val waitlist = BreadthFirstWaitlist()
+        waitlist.add(IntegerAbstractState(0))
+        val reachedset = DefaultReachedSet()
+        val abortOperator = ControllableAbortOperator()
+        abortOperator.abort = true
+        ParallelCpaAlgorithm(
+            SimpleCpa(
+                abstractDomain,
+                transferRelation,
+                MergeSepOperator(),
+                StopContainedOperator(),
+                precisionAdjustment,
+            ),
+            4,
+        ).run(reachedset, waitlist, abortOperator)
+        reachedset.shouldBeEmpty()
+    }
+})
@@ -0,0 +1,329 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package proguard.analysis.cpa
+
+import io.kotest.assertions.throwables.shouldThrow
+import io.kotest.core.spec.style.FreeSpec
+import io.kotest.matchers.longs.shouldBeGreaterThan
+import io.kotest.matchers.nulls.shouldBeNull
+import io.kotest.matchers.nulls.shouldNotBeNull
+import io.kotest.matchers.shouldBe
+import io.kotest.matchers.shouldNotBe
+import proguard.analysis.cpa.bam.BamCacheImpl
+import proguard.analysis.cpa.bam.BlockAbstractionCodec
+import proguard.analysis.cpa.bam.ContentAddressedBlockAbstractionStore
+import proguard.analysis.cpa.bam.PersistentBamCache
+import proguard.analysis.cpa.jvm.domain.taint.JvmTaintBamCpaRun
+import proguard.analysis.cpa.jvm.domain.taint.JvmTaintSource
+import proguard.analysis.cpa.jvm.domain.taint.JvmTaintTransformer
+import proguard.analysis.cpa.jvm.state.heap.HeapModel
+import proguard.analysis.cpa.jvm.util.CfaUtil
+import proguard.analysis.cpa.jvm.util.JvmMethodContentHasher
+import proguard.classfile.MethodSignature
+import proguard.testutils.ClassPoolBuilder
+import proguard.testutils.JavaSource
+import proguard.testutils.cpa.SerializableAbstractState
+import proguard.testutils.cpa.SerializableAbstractState.Companion.blockAbstraction
+import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
+import java.io.File
+import java.io.InvalidClassException
+import java.nio.file.Files
+
+class PersistentBamCacheTest : FreeSpec({
+
+    val signatureA = MethodSignature("A", "a", "()V")
+    val signatureB = MethodSignature("A", "b", "()V")
+
+    "Persisted block abstractions are reused while their content hash is unchanged" {
+        val directory = Files.createTempDirectory("bam-store")
+        val contentHashes = mutableMapOf(signatureA to "a1", signatureB to "b1")
+
+        val firstRun = PersistentBamCache(
+            BamCacheImpl(),
+            ContentAddressedBlockAbstractionStore<MethodSignature>(directory, "") { contentHashes[it]!! },
+        )
+        firstRun.put(SerializableAbstractState(0), null, signatureA, blockAbstraction(1, 2))
+        firstRun.put(SerializableAbstractState(0), null, signatureB, blockAbstraction(3))
+        firstRun.persist() shouldBe 2
+
+        // The method b changed in the meantime.
+        contentHashes[signatureB] = "b2"
+        val store = ContentAddressedBlockAbstractionStore<MethodSignature>(directory, "") {
+            contentHashes[it]!!
+        }
+        val secondRun = PersistentBamCache(BamCacheImpl(), store)
+
+        val reused = secondRun.get(SerializableAbstractState(0), null, signatureA)
+        reused.shouldNotBeNull()
+        reused.reachedSet.asCollection() shouldBe
+            setOf(SerializableAbstractState(1), SerializableAbstractState(2))
+        secondRun.get(SerializableAbstractState(1), null, signatureA).shouldBeNull()
+        secondRun.get(SerializableAbstractState(0), null, signatureB).shouldBeNull()
+        secondRun.loadCount shouldBe 1
+        secondRun.size() shouldBe 1
+
+        store.retainAll(listOf(signatureA, signatureB))
+        Files.list(directory).use { configurations ->
+            configurations.toList().single().let { configuration ->
+                Files.list(configuration).use { it.count() } shouldBe 1
+                store.retainAll(emptyList())
+                Files.delete(configuration)
+            }
+        }
+        Files.delete(directory)
+    }
+
+    "Block abstractions of other blocks are removed when persisting" {
+        val directory = Files.createTempDirectory("bam-store")
+        fun cache() = PersistentBamCache(
+            BamCacheImpl(),
+            ContentAddressedBlockAbstractionStore<MethodSignature>(directory, "") { it.method },
+        )
+
+        val firstRun = cache()
+        firstRun.put(SerializableAbstractState(0), null, signatureA, blockAbstraction(1))
+        firstRun.put(SerializableAbstractState(0), null, signatureB, blockAbstraction(2))
+        firstRun.persist() shouldBe 2
+
+        // The method b was removed in the meantime.
+        val secondRun = cache()
+        secondRun.get(SerializableAbstractState(0), null, signatureA).shouldNotBeNull()
+        secondRun.persist(listOf(signatureA)) shouldBe 0
+
+        val thirdRun = cache()
+        thirdRun.get(SerializableAbstractState(0), null, signatureA).shouldNotBeNull()
+        thirdRun.get(SerializableAbstractState(0), null, signatureB).shouldBeNull()
+        directory.toFile().deleteRecursively()
+    }
+
+    "Block abstractions of different configurations are kept apart" {
+        val directory = Files.createTempDirectory("bam-store")
+        fun cache(configuration: String) = PersistentBamCache(
+            BamCacheImpl(),
+            ContentAddressedBlockAbstractionStore<MethodSignature>(directory, configuration) { "a" },
+        )
+
+        val firstRun = cache("sources: x")
+        firstRun.put(SerializableAbstractState(0), null, signatureA, blockAbstraction(1))
+        firstRun.persist() shouldBe 1
+
+        cache("sources: y").get(SerializableAbstractState(0), null, signatureA).shouldBeNull()
+        cache("sources: x").get(SerializableAbstractState(0), null, signatureA).shouldNotBeNull()
+        directory.toFile().deleteRecursively()
+    }
+
+    "Only accepted classes are deserialized" {
+        fun readBack(value: Any): Any {
+            val bytes = ByteArrayOutputStream()
+            val codec = BlockAbstractionCodec.JAVA_SERIALIZATION
+            codec.createOutputStream(bytes).use { it.writeObject(value) }
+            return codec.createInputStream(ByteArrayInputStream(bytes.toByteArray())).use { it.readObject() }
+        }
+
+        readBack(listOf(SerializableAbstractState(1))) shouldBe listOf(SerializableAbstractState(1))
+        (readBack(intArrayOf(1, 2)) as IntArray).toList() shouldBe listOf(1, 2)
+        shouldThrow<InvalidClassException> { readBack(File("a")) }
+        shouldThrow<InvalidClassException> { readBack(arrayOf(File("a"))) }
+    }
+
+    "Block abstractions of JVM taint analyses are persisted and reused" - {
+        val cfa = CfaUtil.createInterproceduralCfaFromClassPool(
+            ClassPoolBuilder.fromSource(
+                JavaSource(
+                    "A.java",
+                    """
+                    class A
+                    {
+                        public void main()
+                        {
+                            sink(callee(source()));
+                        }
+
+                        public static String callee(String s)
+                        {
+                            return s;
+                        }
+
+                        public static String source()
+                        {
+                            return null;
+                        }
+
+                        public static void sink(String s)
+                        {
+                        }
+                    }
+                    """.trimIndent(),
+                ),
+                javacArguments = listOf("-source", "1.8", "-target", "1.8"),
+            ).programClassPool,
+        )
+        val mainSignature = cfa.functionEntryNodes.first { it.signature.method == "main" }.signature
+        val source = JvmTaintSource(
+            MethodSignature("A", "source", "()Ljava/lang/String;"),
+            false,
+            true,
+            setOf(),
+            setOf(),
+        )
+
+        listOf(HeapModel.FORGETFUL, HeapModel.TREE, HeapModel.TAINT_TREE).forEach { heapModel ->
+            "With the heap model $heapModel" {
+                val directory = Files.createTempDirectory("bam-store")
+                fun run(taintSources: Set<JvmTaintSource>): JvmTaintBamCpaRun<*> {
+                    val run = JvmTaintBamCpaRun.Builder()
+                        .setCfa(cfa)
+                        .setMainSignature(mainSignature)
+                        .setTaintSources(taintSources)
+                        .setHeapModel(heapModel)
+                        .setCacheDirectory(directory)
+                        .build()
+                    run.execute()
+                    return run
+                }
+                fun reached(run: JvmTaintBamCpaRun<*>, signature: MethodSignature) =
+                    run.cpa.cache.get(signature).map { it.reachedSet.asCollection().toSet() }.toSet()
+
+                val firstRun = run(setOf(source))
+                (firstRun.cpa.cache as PersistentBamCache<*>).loadCount shouldBe 0L
+
+                val secondRun = run(setOf(source))
+                val secondCache = secondRun.cpa.cache as PersistentBamCache<*>
+                secondCache.loadCount shouldBeGreaterThan 0L
+                reached(secondRun, mainSignature) shouldBe reached(firstRun, mainSignature)
+
+                // Runs with other taint sources do not reuse the block abstractions.
+                (run(setOf()).cpa.cache as PersistentBamCache<*>).loadCount shouldBe 0L
+                directory.toFile().deleteRecursively()
+            }
+        }
+        cfa.clear()
+    }
+
+    "Run configurations cover the values of taint transformers and factories" {
+        val cfa = CfaUtil.createInterproceduralCfaFromClassPool(
+            ClassPoolBuilder.fromSource(
+                JavaSource("A.java", "class A { public void main() { } }"),
+                javacArguments = listOf("-source", "1.8", "-target", "1.8"),
+            ).programClassPool,
+        )
+        val mainSignature = cfa.functionEntryNodes.single { it.signature.method == "main" }.signature
+        fun configuration(transformer: JvmTaintTransformer?) = JvmTaintBamCpaRun.Builder()
+            .setCfa(cfa)
+            .setMainSignature(mainSignature)
+            .setTaintTransformers(transformer?.let { mapOf(mainSignature to it) } ?: mapOf())
+            .build()
+            .configuration
+
+        configuration(null) shouldBe configuration(null)
+        configuration(ConfiguredTransformer(1)) shouldBe configuration(ConfiguredTransformer(1))
+        configuration(ConfiguredTransformer(1)) shouldNotBe configuration(ConfiguredTransformer(2))
+        cfa.clear()
+    }
+
+    "Content hashes change with the code of the method and of its callees" {
+        fun contentHashes(calleeBody: String): Map<String, String> {
+            val cfa = CfaUtil.createInterproceduralCfaFromClassPool(
+                ClassPoolBuilder.fromSource(
+                    JavaSource(
+                        "A.java",
+                        """
+                        class A
+                        {
+                            public static int caller()
+                            {
+                                return callee();
+                            }
+
+                            public static int callee()
+                            {
+                                $calleeBody
+                            }
+
+                            public static int unrelated()
+                            {
+                                return 0;
+                            }
+                        }
+                        """.trimIndent(),
+                    ),
+                    javacArguments = listOf("-source", "1.8", "-target", "1.8"),
+                ).programClassPool,
+            )
+            val hasher = JvmMethodContentHasher(cfa)
+            return cfa.functionEntryNodes.associate {
+                it.signature.method to hasher.apply(it.signature)
+            }
+        }
+
+        val before = contentHashes("return 1;")
+        val after = contentHashes("return 2;")
+
+        after["unrelated"] shouldBe before["unrelated"]
+        after["callee"] shouldNotBe before["callee"]
+        after["caller"] shouldNotBe before["caller"]
+        contentHashes("return 1;") shouldBe before
+    }
+
+    "Content hashes don't depend on the layout of the constant pool" {
+        fun contentHashes(otherMethods: String): Map<String, String> {
+            val cfa = CfaUtil.createInterproceduralCfaFromClassPool(
+                ClassPoolBuilder.fromSource(
+                    JavaSource(
+                        "A.java",
+                        """
+                        class A
+                        {
+                            $otherMethods
+
+                            public static String caller()
+                            {
+                                return callee("caller") + Integer.valueOf(123456);
+                            }
+
+                            public static String callee(String s)
+                            {
+                                return s.trim();
+                            }
+                        }
+                        """.trimIndent(),
+                    ),
+                    javacArguments = listOf("-source", "1.8", "-target", "1.8"),
+                ).programClassPool,
+            )
+            val hasher = JvmMethodContentHasher(cfa)
+            return cfa.functionEntryNodes
+                .filter { it.signature.method == "caller" || it.signature.method == "callee" }
+                .associate { it.signature.method to hasher.apply(it.signature) }
+        }
+
+        // The other method comes first, so it shifts the constant pool indices of the hashed code.
+        contentHashes(
+            """
+            public static String other()
+            {
+                return "other" + Long.valueOf(654321L) + String.valueOf(1.5);
+            }
+            """,
+        ) shouldBe contentHashes("")
+    }
+})
+
+private data class ConfiguredTransformer(val parameter: Int) : JvmTaintTransformer
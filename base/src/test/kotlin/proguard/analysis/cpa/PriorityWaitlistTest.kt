@@ -0,0 +1,93 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package proguard.analysis.cpa
+
+import io.kotest.core.spec.style.FreeSpec
+import io.kotest.matchers.ints.shouldBeGreaterThan
+import io.kotest.matchers.ints.shouldBeLessThan
+import io.kotest.matchers.shouldBe
+import proguard.analysis.cpa.defaults.CfaNodeOrder
+import proguard.analysis.cpa.defaults.PriorityWaitlist
+import proguard.analysis.cpa.interfaces.AbstractState
+import proguard.analysis.cpa.jvm.util.CfaUtil
+import proguard.testutils.ClassPoolBuilder
+import proguard.testutils.JavaSource
+import proguard.testutils.cpa.IntegerAbstractState
+
+class PriorityWaitlistTest : FreeSpec({
+
+    "Priority waitlists pop the smallest state first and ties in insertion order" {
+        // Order by parity only, so that states of the same parity are tied.
+        val waitlist = PriorityWaitlist(compareBy<AbstractState> { (it as IntegerAbstractState).v % 2 })
+        listOf(3, 2, 5, 4, 2).forEach { waitlist.add(IntegerAbstractState(it)) }
+
+        waitlist.size() shouldBe 4
+        waitlist.contains(IntegerAbstractState(5)) shouldBe true
+        waitlist.remove(IntegerAbstractState(5)) shouldBe true
+        waitlist.remove(IntegerAbstractState(5)) shouldBe false
+        waitlist.add(IntegerAbstractState(1))
+
+        generateSequence { if (waitlist.isEmpty) null else (waitlist.pop() as IntegerAbstractState).v }
+            .toList() shouldBe listOf(2, 4, 3, 1)
+    }
+
+    "Reverse postorder and loop depths are computed per function" {
+        val cfa = CfaUtil.createInterproceduralCfaFromClassPool(
+            ClassPoolBuilder.fromSource(
+                JavaSource(
+                    "A.java",
+                    """
+                    class A
+                    {
+                        public static int loop(int n)
+                        {
+                            int s = 0;
+                            for (int i = 0; i < n; i++)
+                            {
+                                s += i;
+                            }
+                            return s;
+                        }
+                    }
+                    """.trimIndent(),
+                ),
+                javacArguments = listOf("-source", "1.8", "-target", "1.8"),
+            ).programClassPool,
+        )
+        val signature = cfa.functionEntryNodes.map { it.signature }.first { it.method == "loop" }
+        val order = CfaNodeOrder(cfa)
+
+        // 4: loop header, 9: loop body, 16: back edge, 19: loop exit
+        val entry = cfa.getFunctionEntryNode(signature)
+        val header = cfa.getFunctionNode(signature, 4)
+        val body = cfa.getFunctionNode(signature, 9)
+        val tail = cfa.getFunctionNode(signature, 16)
+        val exit = cfa.getFunctionNode(signature, 19)
+
+        order.getReversePostorderIndex(entry) shouldBe 0
+        order.getReversePostorderIndex(header) shouldBeLessThan order.getReversePostorderIndex(body)
+        order.getReversePostorderIndex(body) shouldBeLessThan order.getReversePostorderIndex(tail)
+        order.getReversePostorderIndex(exit) shouldBeGreaterThan order.getReversePostorderIndex(header)
+        order.getLoopDepth(entry) shouldBe 0
+        order.getLoopDepth(header) shouldBe 1
+        order.getLoopDepth(body) shouldBe 1
+        order.getLoopDepth(tail) shouldBe 1
+        order.getLoopDepth(exit) shouldBe 0
+    }
+})
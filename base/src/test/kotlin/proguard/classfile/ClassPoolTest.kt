@@ -19,13 +19,17 @@
 package proguard.classfile
 
 import io.kotest.core.spec.style.FreeSpec
+import io.kotest.matchers.shouldBe
 import io.mockk.every
 import io.mockk.justRun
 import io.mockk.mockk
 import io.mockk.verify
 import proguard.classfile.AccessConstants.PUBLIC
 import proguard.classfile.visitor.ClassVisitor
+import proguard.classfile.visitor.ClassNameCollector
 import proguard.util.StringMatcher
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
 
 class ClassPoolTest : FreeSpec({
     "Given a ClassPool filled with classes" - {
@@ -89,4 +93,35 @@ class ClassPoolTest : FreeSpec({
             }
         }
     }
+
+    "Given a ConcurrentClassPool filled from multiple threads" - {
+        val classPool = ConcurrentClassPool()
+        val classNames = (0 until 1000).map { "pkg${it % 10}/Class$it" }
+        val executor = Executors.newFixedThreadPool(8)
+        classNames.forEach { name ->
+            executor.execute { classPool.addClass(LibraryClass(PUBLIC, name, "java/lang/Object")) }
+        }
+        executor.shutdown()
+        executor.awaitTermination(1, TimeUnit.MINUTES)
+
+        "Then all classes must be present" {
+            classPool.size() shouldBe classNames.size
+            classNames.forEach { classPool.contains(classPool.getClass(it)) shouldBe true }
+        }
+
+        "Then the classes must be iterated in sorted order" {
+            classPool.classNames().asSequence().toList() shouldBe classNames.sorted()
+        }
+
+        "Then classes can be visited by prefix" {
+            val visitedNames = mutableListOf<String>()
+            classPool.classesAccept("pkg3/**", ClassNameCollector(visitedNames))
+            visitedNames shouldBe classNames.filter { it.startsWith("pkg3/") }.sorted()
+        }
+
+        "Then removing an absent class returns null" {
+            classPool.removeClass("pkg3/Absent") shouldBe null
+            classPool.size() shouldBe classNames.size
+        }
+    }
 })
@@ -0,0 +1,142 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package proguard.classfile
+
+import io.kotest.core.spec.style.FreeSpec
+import io.kotest.matchers.nulls.shouldBeNull
+import io.kotest.matchers.shouldBe
+import io.kotest.matchers.types.shouldBeSameInstanceAs
+import proguard.classfile.AccessConstants.PUBLIC
+import proguard.classfile.VersionConstants.CLASS_VERSION_1_8
+import proguard.classfile.editor.ClassBuilder
+import proguard.classfile.editor.ClassEditor
+import proguard.classfile.editor.ClassMemberSorter
+import proguard.classfile.editor.ClassReferenceFixer
+import proguard.classfile.editor.ConstantPoolEditor
+import proguard.classfile.util.MemberRenamer
+
+class MemberIndexTest : FreeSpec({
+
+    "Given a program class with many methods" - {
+        val classBuilder = ClassBuilder(CLASS_VERSION_1_8, PUBLIC, "A", "java/lang/Object")
+        (0 until 40).forEach {
+            classBuilder.addMethod(PUBLIC, "m$it", "()V")
+            classBuilder.addMethod(PUBLIC, "m$it", "(I)V")
+        }
+        classBuilder.addMethod(PUBLIC, "r", "(LB;)V")
+        val clazz = classBuilder.programClass
+
+        "Then methods are found by name and descriptor" {
+            clazz.findMethod("m7", "(I)V") shouldBeSameInstanceAs clazz.methods[15]
+            clazz.findMethod("m7", null) shouldBeSameInstanceAs clazz.methods[14]
+            clazz.findMethod("m7", "(J)V").shouldBeNull()
+            clazz.findMethod("n7", null).shouldBeNull()
+        }
+
+        "Then renamed methods are found by their new names only" {
+            val method = clazz.findMethod("m20", "()V")
+            method.getName(clazz) shouldBe "m20"
+            method.accept(clazz, MemberRenamer { _, _ -> "n20" })
+
+            clazz.findMethod("m20", "()V").shouldBeNull()
+            clazz.findMethod("n20", "()V") shouldBeSameInstanceAs method
+        }
+
+        "Then methods renamed directly are found after invalidating the index" {
+            val method = clazz.findMethod("m22", "()V") as ProgramMethod
+            method.u2nameIndex = ConstantPoolEditor(clazz).addUtf8Constant("n22")
+            clazz.invalidateMemberIndices()
+
+            clazz.findMethod("m22", "()V").shouldBeNull()
+            clazz.findMethod("n22", "()V") shouldBeSameInstanceAs method
+        }
+
+        "Then methods renamed directly are found without invalidating the index" {
+            val method = clazz.findMethod("m26", "()V") as ProgramMethod
+            method.u2nameIndex = ConstantPoolEditor(clazz).addUtf8Constant("n26")
+
+            clazz.findMethod("m26", "()V").shouldBeNull()
+            clazz.findMethod("n26", "()V") shouldBeSameInstanceAs method
+        }
+
+        "Then methods renamed by a reference fixer are found by their new names only" {
+            val method = clazz.findMethod("r", "(LB;)V") as ProgramMethod
+            method.referencedClasses = arrayOf(LibraryClass(PUBLIC, "C", "java/lang/Object"))
+            clazz.accept(ClassReferenceFixer { _, _, _, _ -> "s" })
+
+            clazz.findMethod("r", null).shouldBeNull()
+            clazz.findMethod("s", "(LC;)V") shouldBeSameInstanceAs method
+        }
+
+        "Then reordered methods are found" {
+            val method = clazz.findMethod("m24", "()V")
+            val editor = ClassEditor(clazz)
+            editor.removeMethod(method)
+            editor.addMethod(method)
+            clazz.findMethod("m24", "()V") shouldBeSameInstanceAs method
+
+            clazz.accept(ClassMemberSorter())
+            clazz.findMethod("m24", "()V") shouldBeSameInstanceAs method
+            clazz.findMethod("m25", "(I)V")!!.getDescriptor(clazz) shouldBe "(I)V"
+        }
+
+        "Then removed methods are no longer found" {
+            val method = clazz.findMethod("m30", "()V")
+            ClassEditor(clazz).removeMethod(method)
+
+            clazz.findMethod("m30", "()V").shouldBeNull()
+            clazz.findMethod("m30", "(I)V")!!.getName(clazz) shouldBe "m30"
+        }
+    }
+
+    "Given a library class with many fields" - {
+        val clazz = LibraryClass(PUBLIC, "A", "java/lang/Object")
+        clazz.fields = Array(40) { LibraryField(PUBLIC, "f$it", "I") }
+
+        "Then fields are found by name and descriptor" {
+            clazz.findField("f7", "I") shouldBeSameInstanceAs clazz.fields[7]
+            clazz.findField("f7", "J").shouldBeNull()
+        }
+
+        "Then renamed fields are found by their new names only" {
+            clazz.findField("f8", null)
+            clazz.fields[8].accept(clazz, MemberRenamer { _, _ -> "g8" })
+
+            clazz.findField("f8", null).shouldBeNull()
+            clazz.findField("g8", null) shouldBeSameInstanceAs clazz.fields[8]
+        }
+
+        "Then fields renamed directly are found after invalidating the index" {
+            clazz.findField("f9", null)
+            clazz.fields[9].name = "g9"
+            clazz.invalidateMemberIndices()
+
+            clazz.findField("f9", null).shouldBeNull()
+            clazz.findField("g9", null) shouldBeSameInstanceAs clazz.fields[9]
+        }
+
+        "Then fields renamed directly are found without invalidating the index" {
+            clazz.findField("f10", null)
+            clazz.fields[10].name = "g10"
+
+            clazz.findField("f10", null).shouldBeNull()
+            clazz.findField("g10", null) shouldBeSameInstanceAs clazz.fields[10]
+        }
+    }
+})
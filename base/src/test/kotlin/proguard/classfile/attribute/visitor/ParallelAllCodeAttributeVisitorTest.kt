@@ -0,0 +1,136 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package proguard.classfile.attribute.visitor
+
+import io.kotest.assertions.throwables.shouldThrow
+import io.kotest.core.spec.style.FreeSpec
+import io.kotest.matchers.shouldBe
+import proguard.classfile.AccessConstants.PUBLIC
+import proguard.classfile.Clazz
+import proguard.classfile.Method
+import proguard.classfile.ProgramClass
+import proguard.classfile.VersionConstants.CLASS_VERSION_1_8
+import proguard.classfile.attribute.Attribute
+import proguard.classfile.attribute.CodeAttribute
+import proguard.classfile.editor.ClassBuilder
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ForkJoinPool
+import java.util.concurrent.ForkJoinTask
+
+class ParallelAllCodeAttributeVisitorTest : FreeSpec({
+
+    fun createClass(methodCount: Int): ProgramClass {
+        val classBuilder = ClassBuilder(CLASS_VERSION_1_8, PUBLIC, "Test", "java/lang/Object")
+        for (index in 0 until methodCount) {
+            classBuilder.addMethod(PUBLIC, "method$index", "()V", 1000) { code ->
+                repeat(index) { code.nop() }
+                code.return_()
+            }
+        }
+        return classBuilder.programClass
+    }
+
+    class CodeAttributeCounter(
+        private val visitCounts: MutableMap<String, Int>,
+        private val failingMethodName: String? = null,
+    ) : AttributeVisitor {
+        override fun visitAnyAttribute(clazz: Clazz, attribute: Attribute) {}
+
+        override fun visitCodeAttribute(clazz: Clazz, method: Method, codeAttribute: CodeAttribute) {
+            val name = method.getName(clazz)
+            if (name == failingMethodName) throw IllegalStateException()
+            visitCounts.merge(name, 1, Int::plus)
+        }
+    }
+
+    val forkJoinPool = ForkJoinPool(4)
+
+    "All code attributes of a large class are visited once" {
+        val visitCounts = ConcurrentHashMap<String, Int>()
+        val visitorThreads = ConcurrentHashMap.newKeySet<Thread>()
+
+        createClass(200).accept(
+            ParallelAllCodeAttributeVisitor({
+                visitorThreads.add(Thread.currentThread())
+                CodeAttributeCounter(visitCounts)
+            }, forkJoinPool),
+        )
+
+        visitCounts.keys shouldBe (0 until 200).map { "method$it" }.toSet()
+        visitCounts.values.toSet() shouldBe setOf(1)
+        visitorThreads.none { it == Thread.currentThread() } shouldBe true
+    }
+
+    "The code attributes of a small class are visited on the calling thread" {
+        val visitCounts = ConcurrentHashMap<String, Int>()
+        val visitorThreads = ConcurrentHashMap.newKeySet<Thread>()
+
+        createClass(3).accept(
+            ParallelAllCodeAttributeVisitor({
+                visitorThreads.add(Thread.currentThread())
+                CodeAttributeCounter(visitCounts)
+            }, forkJoinPool),
+        )
+
+        visitCounts.keys shouldBe setOf("method0", "method1", "method2")
+        visitorThreads shouldBe setOf(Thread.currentThread())
+    }
+
+    "Exceptions are passed on" {
+        shouldThrow<IllegalStateException> {
+            createClass(200).accept(
+                ParallelAllCodeAttributeVisitor({
+                    CodeAttributeCounter(ConcurrentHashMap(), "method100")
+                }, forkJoinPool),
+            )
+        }
+    }
+
+    "Attribute visitors are created for each visited class" {
+        val visitedClasses = ConcurrentHashMap<AttributeVisitor, MutableSet<Clazz>>()
+        val visitor = ParallelAllCodeAttributeVisitor({
+            object : AttributeVisitor {
+                override fun visitAnyAttribute(clazz: Clazz, attribute: Attribute) {}
+
+                override fun visitCodeAttribute(clazz: Clazz, method: Method, codeAttribute: CodeAttribute) {
+                    visitedClasses.computeIfAbsent(this) { ConcurrentHashMap.newKeySet() }.add(clazz)
+                }
+            }
+        }, forkJoinPool)
+
+        val classes = listOf(createClass(200), createClass(200), createClass(3), createClass(3))
+        classes.forEach { it.accept(visitor) }
+
+        visitedClasses.values.flatten().toSet() shouldBe classes.toSet()
+        visitedClasses.values.map { it.size }.toSet() shouldBe setOf(1)
+    }
+
+    "Large classes are visited on a dedicated pool by default" {
+        val visitorPools = ConcurrentHashMap.newKeySet<ForkJoinPool>()
+
+        createClass(200).accept(
+            ParallelAllCodeAttributeVisitor({
+                ForkJoinTask.getPool()?.let { visitorPools.add(it) }
+                CodeAttributeCounter(ConcurrentHashMap())
+            }),
+        )
+
+        visitorPools.none { it == ForkJoinPool.commonPool() } shouldBe true
+    }
+})
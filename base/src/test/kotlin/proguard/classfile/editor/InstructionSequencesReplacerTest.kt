@@ -0,0 +1,141 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package proguard.classfile.editor
+
+import io.kotest.core.spec.style.FreeSpec
+import io.kotest.matchers.shouldBe
+import proguard.classfile.AccessConstants.PUBLIC
+import proguard.classfile.AccessConstants.STATIC
+import proguard.classfile.Clazz
+import proguard.classfile.Method
+import proguard.classfile.ProgramClass
+import proguard.classfile.VersionConstants.CLASS_VERSION_1_8
+import proguard.classfile.attribute.CodeAttribute
+import proguard.classfile.attribute.visitor.AllAttributeVisitor
+import proguard.classfile.editor.InstructionSequenceReplacer.A
+import proguard.classfile.instruction.Instruction
+import proguard.classfile.instruction.visitor.AllInstructionVisitor
+import proguard.classfile.instruction.visitor.InstructionVisitor
+import proguard.classfile.instruction.visitor.MultiInstructionVisitor
+import proguard.classfile.util.BranchTargetFinder
+
+class InstructionSequencesReplacerTest : FreeSpec({
+
+    fun createClass(): ProgramClass = ClassBuilder(CLASS_VERSION_1_8, PUBLIC, "Test", "java/lang/Object")
+        .addMethod(PUBLIC or STATIC, "test", "(I)I", 50) {
+            it.nop()
+                .iload_0().iload_0().iadd()
+                .iconst_0().iadd()
+                .istore_1()
+                .iload_1().istore_1()
+                .sipush(1005).pop()
+                .iload_1().iload_0().iadd()
+                .ireturn()
+        }
+        .programClass
+
+    // A few patterns that match, followed by many patterns that don't.
+    val builder = InstructionSequenceBuilder()
+    val sequences = listOf(
+        arrayOf(
+            builder.iload(A).iload(A).iadd().instructions(),
+            builder.iload(A).iconst_1().ishl().instructions(),
+        ),
+        arrayOf(builder.iconst_0().iadd().instructions()),
+        arrayOf(builder.nop().instructions()),
+        arrayOf(builder.iload(A).istore(A).instructions()),
+    ) + (0 until 200).map { arrayOf(builder.sipush(1000 + it).pop().instructions()) }
+    val instructionSequences = sequences.toTypedArray()
+    val constants = builder.constants()
+
+    fun replace(
+        createReplacer: (BranchTargetFinder, CodeAttributeEditor) -> InstructionVisitor,
+    ): List<String> {
+        val clazz = createClass()
+        val branchTargetFinder = BranchTargetFinder()
+        val codeAttributeEditor = CodeAttributeEditor()
+        clazz.methodsAccept(
+            AllAttributeVisitor(
+                PeepholeEditor(
+                    branchTargetFinder,
+                    codeAttributeEditor,
+                    createReplacer(branchTargetFinder, codeAttributeEditor),
+                ),
+            ),
+        )
+
+        val instructions = mutableListOf<String>()
+        clazz.methodsAccept(
+            AllAttributeVisitor(
+                AllInstructionVisitor(
+                    object : InstructionVisitor {
+                        override fun visitAnyInstruction(
+                            clazz: Clazz,
+                            method: Method,
+                            codeAttribute: CodeAttribute,
+                            offset: Int,
+                            instruction: Instruction,
+                        ) {
+                            instructions.add(instruction.toString())
+                        }
+                    },
+                ),
+            ),
+        )
+        return instructions
+    }
+
+    "Given many instruction sequences" - {
+        val replaced = replace { branchTargetFinder, codeAttributeEditor ->
+            InstructionSequencesReplacer(constants, instructionSequences, branchTargetFinder, codeAttributeEditor)
+        }
+
+        "Then the matching sequences are replaced" {
+            replaced shouldBe listOf(
+                "iload_0 v0",
+                "iconst_1",
+                "ishl",
+                "istore_1 v1",
+                "iload_1 v1",
+                "iload_0 v0",
+                "iadd",
+                "ireturn",
+            )
+        }
+
+        "Then the result is the same as with separate replacers" {
+            val separatelyReplaced = replace { branchTargetFinder, codeAttributeEditor ->
+                MultiInstructionVisitor(
+                    *instructionSequences.map {
+                        InstructionSequenceReplacer(
+                            constants,
+                            it[0],
+                            constants,
+                            if (it.size > 1) it[1] else arrayOf(),
+                            branchTargetFinder,
+                            codeAttributeEditor,
+                        )
+                    }.toTypedArray(),
+                )
+            }
+
+            replaced shouldBe separatelyReplaced
+        }
+    }
+})
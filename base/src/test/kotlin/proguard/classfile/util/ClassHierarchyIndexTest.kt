@@ -0,0 +1,73 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package proguard.classfile.util
+
+import io.kotest.core.spec.style.FreeSpec
+import io.kotest.matchers.collections.shouldContainExactlyInAnyOrder
+import io.kotest.matchers.shouldBe
+import proguard.classfile.Clazz
+import proguard.testutils.ClassPoolBuilder
+import proguard.testutils.JavaSource
+
+class ClassHierarchyIndexTest : FreeSpec({
+
+    "Given a class hierarchy with interfaces and default methods" - {
+        val (programClassPool, libraryClassPool) = ClassPoolBuilder.fromSource(
+            JavaSource(
+                "Test.java",
+                """
+                interface I1 { default void m() {} }
+                interface I2 extends I1 { default void m() {} }
+                interface I3 { void n(); }
+                class A implements I2 {}
+                class B extends A implements I3 { public void n() {} }
+                class C { public void m() {} }
+                class D extends C implements I1 {}
+                """.trimIndent(),
+            ),
+            javacArguments = listOf("-source", "1.8", "-target", "1.8"),
+        )
+        val index = ClassHierarchyIndex(programClassPool, libraryClassPool)
+        val classes = listOf("I1", "I2", "I3", "A", "B", "C", "D").map { programClassPool.getClass(it) }
+        fun names(classes: Iterable<Clazz>) = classes.map { it.name }
+
+        "Then subtype queries agree with the class hierarchy" {
+            for (clazz in classes) {
+                for (superType in classes) {
+                    index.isSubtypeOf(clazz, superType) shouldBe clazz.extendsOrImplements(superType)
+                }
+            }
+        }
+
+        "Then the transitive superinterfaces and subtypes are known" {
+            val superInterfaces = index.getSuperInterfaces(programClassPool.getClass("B"))
+            names(superInterfaces) shouldContainExactlyInAnyOrder listOf("I1", "I2", "I3")
+            val subtypes = index.getSubtypes(programClassPool.getClass("I1"))
+            names(subtypes) shouldContainExactlyInAnyOrder listOf("I2", "A", "B", "D")
+            names(index.getSubtypes(programClassPool.getClass("A"))) shouldBe listOf("B")
+        }
+
+        "Then virtual calls resolve to the most specific implementation" {
+            index.resolveVirtual(programClassPool.getClass("B"), "m", "()V") shouldBe setOf("I2")
+            index.resolveVirtual(programClassPool.getClass("B"), "n", "()V") shouldBe setOf("B")
+            index.resolveVirtual(programClassPool.getClass("D"), "m", "()V") shouldBe setOf("C")
+            index.resolveVirtual(programClassPool.getClass("C"), "x", "()V") shouldBe emptySet()
+        }
+    }
+})
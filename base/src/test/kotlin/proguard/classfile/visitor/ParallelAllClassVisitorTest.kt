@@ -0,0 +1,87 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package proguard.classfile.visitor
+
+import io.kotest.assertions.throwables.shouldThrow
+import io.kotest.core.spec.style.FreeSpec
+import io.kotest.matchers.ints.shouldBeLessThanOrEqual
+import io.kotest.matchers.shouldBe
+import proguard.classfile.AccessConstants.PUBLIC
+import proguard.classfile.ClassPool
+import proguard.classfile.Clazz
+import proguard.classfile.VersionConstants.CLASS_VERSION_1_8
+import proguard.classfile.editor.ClassBuilder
+import java.util.concurrent.CancellationException
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicInteger
+
+class ParallelAllClassVisitorTest : FreeSpec({
+
+    // Classes with increasing amounts of code.
+    val classPool = ClassPool()
+    for (index in 0 until 200) {
+        classPool.addClass(
+            ClassBuilder(CLASS_VERSION_1_8, PUBLIC, "Class$index", "java/lang/Object")
+                .addMethod(PUBLIC, "method", "()V", 1000) { code ->
+                    repeat(index) { code.nop() }
+                    code.return_()
+                }
+                .programClass,
+        )
+    }
+
+    "All classes are visited once, with one visitor per thread" {
+        val visitCounts = ConcurrentHashMap<String, Int>()
+        val visitorCount = AtomicInteger()
+
+        classPool.accept(
+            ParallelAllClassVisitor({
+                visitorCount.incrementAndGet()
+                ClassVisitor { clazz -> visitCounts.merge(clazz.name, 1, Int::plus) }
+            }, 4),
+        )
+
+        visitCounts.keys shouldBe classPool.classNames().asSequence().toSet()
+        visitCounts.values.toSet() shouldBe setOf(1)
+        visitorCount.get() shouldBeLessThanOrEqual 4
+    }
+
+    "Exceptions are passed on" {
+        shouldThrow<IllegalStateException> {
+            classPool.accept(
+                ParallelAllClassVisitor({
+                    ClassVisitor { clazz: Clazz ->
+                        if (clazz.name == "Class100") throw IllegalStateException()
+                    }
+                }, 4),
+            )
+        }
+    }
+
+    "Visiting can be cancelled" {
+        lateinit var parallelAllClassVisitor: ParallelAllClassVisitor
+        parallelAllClassVisitor = ParallelAllClassVisitor({
+            ClassVisitor { parallelAllClassVisitor.cancel() }
+        }, 4)
+
+        shouldThrow<CancellationException> {
+            classPool.accept(parallelAllClassVisitor)
+        }
+    }
+})
@@ -0,0 +1,175 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package proguard.evaluation
+
+import io.kotest.core.spec.style.FreeSpec
+import io.kotest.matchers.ints.shouldBeLessThan
+import io.kotest.matchers.shouldBe
+import proguard.classfile.AccessConstants.PUBLIC
+import proguard.classfile.AccessConstants.STATIC
+import proguard.classfile.ClassPool
+import proguard.classfile.Clazz
+import proguard.classfile.Method
+import proguard.classfile.ProgramMethod
+import proguard.classfile.VersionConstants.CLASS_VERSION_1_8
+import proguard.classfile.attribute.CodeAttribute
+import proguard.classfile.editor.ClassBuilder
+import proguard.classfile.instruction.Instruction
+import proguard.classfile.util.BranchTargetFinder
+import proguard.classfile.util.ClassInitializer
+import proguard.evaluation.util.PartialEvaluatorStateTracker
+
+class BasicBlockOrderTest : FreeSpec({
+
+    // A loop with two conditional branches in its body:
+    //   [0] iconst_0
+    //   [1] istore_1
+    //   [2] iload_1
+    //   [3] bipush 10
+    //   [5] if_icmpge 40
+    //   [8] iload_0
+    //   [9] ifeq 18
+    //  [12] iinc 0 1
+    //  [15] goto 21
+    //  [18] iinc 0 2
+    //  [21] iload_0
+    //  [22] ifne 31
+    //  [25] iinc 0 3
+    //  [28] goto 34
+    //  [31] iinc 0 4
+    //  [34] iinc 1 1
+    //  [37] goto 2
+    //  [40] iload_0
+    //  [41] ireturn
+    val clazz = ClassBuilder(CLASS_VERSION_1_8, PUBLIC, "Test", "java/lang/Object")
+        .addMethod(PUBLIC or STATIC, "test", "(I)I", 50) {
+            val loop = it.createLabel()
+            val else1 = it.createLabel()
+            val join1 = it.createLabel()
+            val else2 = it.createLabel()
+            val join2 = it.createLabel()
+            val end = it.createLabel()
+            it.iconst_0()
+                .istore_1()
+                .label(loop)
+                .iload_1()
+                .bipush(10)
+                .ificmpge(end)
+                .iload_0()
+                .ifeq(else1)
+                .iinc(0, 1)
+                .goto_(join1)
+                .label(else1)
+                .iinc(0, 2)
+                .label(join1)
+                .iload_0()
+                .ifne(else2)
+                .iinc(0, 3)
+                .goto_(join2)
+                .label(else2)
+                .iinc(0, 4)
+                .label(join2)
+                .iinc(1, 1)
+                .goto_(loop)
+                .label(end)
+                .iload_0()
+                .ireturn()
+        }
+        .programClass
+
+    clazz.accept(ClassInitializer(ClassPool(clazz), ClassPool()))
+
+    val method = clazz.findMethod("test", null) as ProgramMethod
+    val codeAttribute = method.attributes[0] as CodeAttribute
+
+    "Given the basic blocks of a method with a loop" - {
+        val branchTargetFinder = BranchTargetFinder()
+        codeAttribute.accept(clazz, method, branchTargetFinder)
+
+        val basicBlockOrder = BasicBlockOrder()
+        basicBlockOrder.computeOrder(codeAttribute, branchTargetFinder)
+
+        "Then the instructions of a block have the same rank" {
+            basicBlockOrder.rank(3) shouldBe basicBlockOrder.rank(2)
+            basicBlockOrder.rank(15) shouldBe basicBlockOrder.rank(12)
+        }
+
+        "Then blocks come before their successors, except for the loop header" {
+            basicBlockOrder.rank(0) shouldBeLessThan basicBlockOrder.rank(2)
+            basicBlockOrder.rank(2) shouldBeLessThan basicBlockOrder.rank(8)
+            basicBlockOrder.rank(8) shouldBeLessThan basicBlockOrder.rank(12)
+            basicBlockOrder.rank(8) shouldBeLessThan basicBlockOrder.rank(18)
+            basicBlockOrder.rank(12) shouldBeLessThan basicBlockOrder.rank(21)
+            basicBlockOrder.rank(18) shouldBeLessThan basicBlockOrder.rank(21)
+            basicBlockOrder.rank(25) shouldBeLessThan basicBlockOrder.rank(34)
+            basicBlockOrder.rank(31) shouldBeLessThan basicBlockOrder.rank(34)
+            basicBlockOrder.rank(2) shouldBeLessThan basicBlockOrder.rank(40)
+        }
+    }
+
+    "Given partial evaluators with and without worklist evaluation" - {
+        fun evaluate(worklistEvaluation: Boolean): Pair<Int, List<String>> {
+            var instructionEvaluationCount = 0
+            val partialEvaluator = PartialEvaluator.Builder.create()
+                .setWorklistEvaluation(worklistEvaluation)
+                .setStateTracker(
+                    object : PartialEvaluatorStateTracker {
+                        override fun startInstructionEvaluation(
+                            clazz: Clazz,
+                            method: Method,
+                            instructionOffset: Int,
+                            instruction: Instruction,
+                            variablesBefore: TracedVariables,
+                            stackBefore: TracedStack,
+                            evaluationCount: Int,
+                        ) {
+                            instructionEvaluationCount++
+                        }
+                    },
+                )
+                .build()
+
+            partialEvaluator.visitCodeAttribute(clazz, method, codeAttribute)
+
+            val values = (0 until codeAttribute.u4codeLength)
+                .filter { partialEvaluator.isTraced(it) }
+                .map { offset ->
+                    val variables = partialEvaluator.getVariablesAfter(offset)
+                    val stack = partialEvaluator.getStackAfter(offset)
+                    "$offset " +
+                        (0 until variables.size()).joinToString { variables.getValue(it).toString() } +
+                        " / " +
+                        (0 until stack.size()).joinToString { stack.getTop(it).toString() }
+                }
+
+            return Pair(instructionEvaluationCount, values)
+        }
+
+        val (depthFirstEvaluationCount, depthFirstValues) = evaluate(false)
+        val (worklistEvaluationCount, worklistValues) = evaluate(true)
+
+        "Then the worklist evaluation results in the same values" {
+            worklistValues shouldBe depthFirstValues
+        }
+
+        "Then the worklist evaluation evaluates fewer instructions" {
+            worklistEvaluationCount shouldBeLessThan depthFirstEvaluationCount
+        }
+    }
+})
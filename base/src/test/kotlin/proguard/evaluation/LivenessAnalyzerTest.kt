@@ -0,0 +1,84 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package proguard.evaluation
+
+import io.kotest.core.spec.style.FreeSpec
+import io.kotest.matchers.shouldBe
+import proguard.classfile.AccessConstants.PUBLIC
+import proguard.classfile.AccessConstants.STATIC
+import proguard.classfile.ClassPool
+import proguard.classfile.VersionConstants.CLASS_VERSION_1_8
+import proguard.classfile.attribute.visitor.AllAttributeVisitor
+import proguard.classfile.editor.ClassBuilder
+import proguard.classfile.util.ClassInitializer
+
+class LivenessAnalyzerTest : FreeSpec({
+
+    // A method with 152 variables, using the variables 100 and 150:
+    //   [0] iconst_1
+    //   [1] istore 100
+    //   [3] lconst_1
+    //   [4] lstore 150
+    //   [6] iload 100
+    //   [8] i2l
+    //   [9] lload 150
+    //  [11] ladd
+    //  [12] lreturn
+    val clazz = ClassBuilder(CLASS_VERSION_1_8, PUBLIC, "Test", "java/lang/Object")
+        .addMethod(PUBLIC or STATIC, "test", "()J", 50) {
+            it.iconst_1()
+                .istore(100)
+                .lconst_1()
+                .lstore(150)
+                .iload(100)
+                .i2l()
+                .lload(150)
+                .ladd()
+                .lreturn()
+        }
+        .programClass
+
+    clazz.accept(ClassInitializer(ClassPool(clazz), ClassPool()))
+
+    val livenessAnalyzer = LivenessAnalyzer()
+    clazz.methodsAccept(AllAttributeVisitor(livenessAnalyzer))
+
+    "Variables beyond the first 64 are analyzed precisely" - {
+        "An int variable is only alive between its store and its load" {
+            livenessAnalyzer.isAliveBefore(1, 100) shouldBe false
+            livenessAnalyzer.isAliveAfter(1, 100) shouldBe true
+            livenessAnalyzer.isAliveBefore(6, 100) shouldBe true
+            livenessAnalyzer.isAliveAfter(6, 100) shouldBe false
+        }
+
+        "A long variable is alive with its second entry" {
+            livenessAnalyzer.isAliveBefore(4, 150) shouldBe false
+            livenessAnalyzer.isAliveAfter(4, 150) shouldBe true
+            livenessAnalyzer.isAliveAfter(4, 151) shouldBe true
+            livenessAnalyzer.isCategory2(9, 150) shouldBe true
+            livenessAnalyzer.isAliveAfter(9, 150) shouldBe false
+        }
+
+        "Other variables are not alive" {
+            livenessAnalyzer.isAliveBefore(6, 99) shouldBe false
+            livenessAnalyzer.isAliveBefore(6, 128) shouldBe false
+            livenessAnalyzer.isAliveBefore(9, 140) shouldBe false
+        }
+    }
+})
@@ -0,0 +1,102 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package proguard.evaluation
+
+import io.kotest.core.spec.style.FreeSpec
+import io.kotest.matchers.shouldBe
+import proguard.classfile.AccessConstants.PUBLIC
+import proguard.classfile.AccessConstants.STATIC
+import proguard.classfile.ClassPool
+import proguard.classfile.ProgramMethod
+import proguard.classfile.VersionConstants.CLASS_VERSION_1_8
+import proguard.classfile.attribute.CodeAttribute
+import proguard.classfile.editor.ClassBuilder
+import proguard.classfile.instruction.Instruction
+import proguard.classfile.util.ClassInitializer
+
+class PartialEvaluatorCacheTest : FreeSpec({
+
+    val clazz = ClassBuilder(CLASS_VERSION_1_8, PUBLIC, "Test", "java/lang/Object")
+        .addMethod(PUBLIC or STATIC, "test", "(I)I", 50) {
+            it.iload_0().iconst_1().iadd().ireturn()
+        }
+        .addMethod(PUBLIC or STATIC, "other", "(I)I", 50) {
+            it.iload_0().iconst_2().imul().iconst_3().iadd().ireturn()
+        }
+        .programClass
+
+    clazz.accept(ClassInitializer(ClassPool(clazz), ClassPool()))
+
+    val method = clazz.findMethod("test", null) as ProgramMethod
+    val otherMethod = clazz.findMethod("other", null) as ProgramMethod
+    val codeAttribute = method.attributes[0] as CodeAttribute
+    val otherCodeAttribute = otherMethod.attributes[0] as CodeAttribute
+
+    "Given a partial evaluator with a cache" - {
+        val cache = PartialEvaluatorCache(10)
+        val partialEvaluator = PartialEvaluator.Builder.create()
+            .setEvaluationCache(cache)
+            .build()
+
+        partialEvaluator.visitCodeAttribute(clazz, method, codeAttribute)
+        val stackAfter = partialEvaluator.getStackAfter(2).toString()
+        partialEvaluator.visitCodeAttribute(clazz, otherMethod, otherCodeAttribute)
+
+        "When the same method is evaluated again" - {
+            partialEvaluator.visitCodeAttribute(clazz, method, codeAttribute)
+
+            "Then the cached results are returned" {
+                cache.hitCount shouldBe 1L
+                cache.missCount shouldBe 2L
+                partialEvaluator.getStackAfter(2).toString() shouldBe stackAfter
+                partialEvaluator.isTraced(3) shouldBe true
+                partialEvaluator.isInstruction(1) shouldBe true
+            }
+        }
+
+        "When the code of the method has been modified" - {
+            codeAttribute.code[1] = Instruction.OP_ICONST_2
+
+            partialEvaluator.visitCodeAttribute(clazz, method, codeAttribute)
+
+            "Then the method is evaluated again" {
+                cache.hitCount shouldBe 1L
+                cache.missCount shouldBe 3L
+                cache.size() shouldBe 2
+            }
+        }
+    }
+
+    "Given a cache with room for a single method" - {
+        val cache = PartialEvaluatorCache(1)
+        val partialEvaluator = PartialEvaluator.Builder.create()
+            .setEvaluationCache(cache)
+            .build()
+
+        partialEvaluator.visitCodeAttribute(clazz, method, codeAttribute)
+        partialEvaluator.visitCodeAttribute(clazz, otherMethod, otherCodeAttribute)
+        partialEvaluator.visitCodeAttribute(clazz, method, codeAttribute)
+
+        "Then the least recently used results are evicted" {
+            cache.size() shouldBe 1
+            cache.hitCount shouldBe 0L
+            cache.missCount shouldBe 3L
+        }
+    }
+})
@@ -0,0 +1,123 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package proguard.evaluation
+
+import io.kotest.core.spec.style.FreeSpec
+import io.kotest.matchers.shouldBe
+import proguard.classfile.AccessConstants.PUBLIC
+import proguard.classfile.AccessConstants.STATIC
+import proguard.classfile.ClassPool
+import proguard.classfile.Clazz
+import proguard.classfile.Method
+import proguard.classfile.ProgramClass
+import proguard.classfile.VersionConstants.CLASS_VERSION_1_8
+import proguard.classfile.attribute.Attribute
+import proguard.classfile.attribute.CodeAttribute
+import proguard.classfile.attribute.visitor.AllAttributeVisitor
+import proguard.classfile.attribute.visitor.AttributeVisitor
+import proguard.classfile.editor.ClassBuilder
+import proguard.classfile.util.ClassInitializer
+import proguard.evaluation.value.ParticularValueFactory
+
+class TracedFramePoolTest : FreeSpec({
+
+    val clazz = ClassBuilder(CLASS_VERSION_1_8, PUBLIC, "Test", "java/lang/Object")
+        .addMethod(PUBLIC or STATIC, "loop", "(I)I", 50) {
+            val start = it.createLabel()
+            val loop = it.createLabel()
+            val end = it.createLabel()
+            it.iconst_0()
+                .istore_1()
+                .label(start)
+                .label(loop)
+                .iload_0()
+                .ifeq(end)
+                .iinc(1, 1)
+                .iinc(0, -1)
+                .goto_(loop)
+                .label(end)
+                .iload_1()
+                .ireturn()
+                .catch_(start, end, "java/lang/RuntimeException", null)
+                .astore_2()
+                .iconst_m1()
+                .ireturn()
+        }
+        .addMethod(PUBLIC or STATIC, "wide", "(JJ)J", 50) {
+            val other = it.createLabel()
+            it.lload_0()
+                .lload_2()
+                .lcmp()
+                .ifeq(other)
+                .lload_0()
+                .lreturn()
+                .label(other)
+                .lload_2()
+                .lconst_1()
+                .ladd()
+                .lreturn()
+        }
+        .programClass
+
+    clazz.accept(ClassInitializer(ClassPool(clazz), ClassPool()))
+
+    fun evaluate(clazz: ProgramClass, recycleFrames: Boolean): List<String> {
+        val partialEvaluator = PartialEvaluator.Builder.create()
+            .setValueFactory(ParticularValueFactory())
+            .setRecycleFrames(recycleFrames)
+            .build()
+
+        val results = mutableListOf<String>()
+        clazz.methodsAccept(
+            AllAttributeVisitor(
+                object : AttributeVisitor {
+                    override fun visitAnyAttribute(clazz: Clazz, attribute: Attribute) {}
+
+                    override fun visitCodeAttribute(clazz: Clazz, method: Method, codeAttribute: CodeAttribute) {
+                        partialEvaluator.visitCodeAttribute(clazz, method, codeAttribute)
+                        for (offset in 0 until codeAttribute.u4codeLength) {
+                            if (partialEvaluator.isTraced(offset)) {
+                                results.add(
+                                    "$offset ${partialEvaluator.getVariablesBefore(offset)} " +
+                                        "${partialEvaluator.getStackBefore(offset)} " +
+                                        "${partialEvaluator.getVariablesAfter(offset)} " +
+                                        "${partialEvaluator.getStackAfter(offset)}",
+                                )
+                            }
+                        }
+                    }
+                },
+            ),
+        )
+        return results
+    }
+
+    "Given a partial evaluator that recycles its frames" - {
+        val expected = evaluate(clazz, false)
+
+        "Then the results are the same as without recycling" {
+            evaluate(clazz, true) shouldBe expected
+        }
+
+        "Then the results stay the same when the recycled frames are reused" {
+            evaluate(clazz, true) shouldBe expected
+            evaluate(clazz, true) shouldBe expected
+        }
+    }
+})
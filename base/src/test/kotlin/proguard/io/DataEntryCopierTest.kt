@@ -0,0 +1,117 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package proguard.io
+
+import io.kotest.core.spec.style.FreeSpec
+import io.kotest.matchers.shouldBe
+import proguard.util.ExtensionMatcher
+import java.io.File
+import java.util.zip.CRC32
+import java.util.zip.Deflater
+import java.util.zip.ZipEntry
+import java.util.zip.ZipFile
+import java.util.zip.ZipOutputStream
+import kotlin.random.Random
+
+class DataEntryCopierTest : FreeSpec({
+
+    // Mildly compressible contents of different sizes.
+    val random = Random(42)
+    val entries = (0 until 50).associate { index ->
+        "dir${index % 5}/file$index.${if (index % 7 == 0) "png" else "txt"}" to
+            ByteArray(random.nextInt(20000)) { "abcdefgh"[random.nextInt(8)].code.toByte() }
+    }
+
+    // An input jar with quickly compressed and stored entries.
+    val inputFile = File.createTempFile("input", ".jar").apply { deleteOnExit() }
+    ZipOutputStream(inputFile.outputStream()).use { zip ->
+        zip.setLevel(Deflater.BEST_SPEED)
+        entries.entries.forEachIndexed { index, (name, data) ->
+            val zipEntry = ZipEntry(name)
+            if (index % 5 == 0) {
+                zipEntry.method = ZipEntry.STORED
+                zipEntry.size = data.size.toLong()
+                zipEntry.crc = CRC32().apply { update(data) }.value
+            }
+            zip.putNextEntry(zipEntry)
+            zip.write(data)
+            zip.closeEntry()
+        }
+    }
+
+    fun copy(copyCompressedData: Boolean): File {
+        val outputFile = File.createTempFile("output", ".jar").apply { deleteOnExit() }
+        val zipWriter = ZipWriter(
+            ExtensionMatcher(".png"),
+            1,
+            false,
+            0,
+            ByteArray(0),
+            FixedFileWriter(outputFile),
+        )
+        FileSource(inputFile)
+            .pumpDataEntries(JarReader(DataEntryCopier(zipWriter, copyCompressedData)))
+        zipWriter.close()
+        return outputFile
+    }
+
+    fun readZip(file: File): Map<String, Pair<Long, ByteArray>> =
+        ZipFile(file).use { zipFile ->
+            zipFile.entries().toList().associate { entry ->
+                entry.name to
+                    Pair(entry.compressedSize, zipFile.getInputStream(entry).use { it.readBytes() })
+            }
+        }
+
+    "Given a jar with compressed and stored entries" - {
+        val inputEntries = readZip(inputFile)
+
+        "When copying it with the compressed data" - {
+            val outputEntries = readZip(copy(true))
+
+            "Then it contains all entries with their original data" {
+                outputEntries.keys.toList() shouldBe entries.keys.toList()
+                outputEntries.forEach { (name, entry) -> entry.second shouldBe entries[name] }
+            }
+
+            "Then the compressed entries keep their original compressed data" {
+                entries.keys.forEachIndexed { index, name ->
+                    if (index % 5 != 0 && !name.endsWith(".png")) {
+                        outputEntries[name]!!.first shouldBe inputEntries[name]!!.first
+                    }
+                }
+            }
+
+            "Then the entries that must not be compressed are stored" {
+                entries.keys.filter { it.endsWith(".png") }.forEach { name ->
+                    outputEntries[name]!!.first shouldBe entries[name]!!.size.toLong()
+                }
+            }
+        }
+
+        "When copying it without the compressed data" - {
+            val outputEntries = readZip(copy(false))
+
+            "Then it contains all entries with their original data" {
+                outputEntries.keys.toList() shouldBe entries.keys.toList()
+                outputEntries.forEach { (name, entry) -> entry.second shouldBe entries[name] }
+            }
+        }
+    }
+})
@@ -0,0 +1,85 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package proguard.io
+
+import io.kotest.core.spec.style.FreeSpec
+import io.kotest.matchers.shouldBe
+import proguard.classfile.AccessConstants.PUBLIC
+import proguard.classfile.VersionConstants.CLASS_VERSION_1_8
+import proguard.classfile.editor.ClassBuilder
+import proguard.classfile.io.ProgramClassWriter
+import proguard.classfile.visitor.ClassNameCollector
+import java.io.DataOutputStream
+import java.io.File
+import java.util.zip.ZipEntry
+import java.util.zip.ZipOutputStream
+
+class ParallelJarReaderTest : FreeSpec({
+
+    "Given a jar with many classes" - {
+        // Deliberately not in sorted order.
+        val classNames = (0 until 500).map { "pkg${it % 7}/Class$it" }.shuffled()
+        val jarFile = File.createTempFile("classes", ".jar").apply { deleteOnExit() }
+        ZipOutputStream(jarFile.outputStream()).use { zip ->
+            zip.putNextEntry(ZipEntry("META-INF/MANIFEST.MF"))
+            zip.closeEntry()
+            classNames.forEach { name ->
+                zip.putNextEntry(ZipEntry("$name.class"))
+                ClassBuilder(CLASS_VERSION_1_8, PUBLIC, name, "java/lang/Object")
+                    .programClass
+                    .accept(ProgramClassWriter(DataOutputStream(zip)))
+                zip.closeEntry()
+            }
+        }
+
+        fun readClassNames(threadCount: Int, maxPendingEntryCount: Int): List<String> {
+            val readClassNames = mutableListOf<String>()
+            val reader = ParallelJarReader(
+                false,
+                { classVisitor ->
+                    NameFilteredDataEntryReader(
+                        "**.class",
+                        ClassReader(false, false, false, false, null, classVisitor),
+                    )
+                },
+                ClassNameCollector(readClassNames),
+                threadCount,
+                maxPendingEntryCount,
+            )
+            FileSource(jarFile).pumpDataEntries(reader)
+            return readClassNames
+        }
+
+        "When reading it on multiple threads" - {
+            val readClassNames = readClassNames(4, 8)
+
+            "Then the classes are visited in the order of the entries" {
+                readClassNames shouldBe classNames
+            }
+        }
+
+        "When reading it on a single thread" - {
+            val readClassNames = readClassNames(1, 1)
+
+            "Then the classes are visited in the order of the entries" {
+                readClassNames shouldBe classNames
+            }
+        }
+    }
+})
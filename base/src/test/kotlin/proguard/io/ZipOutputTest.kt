@@ -0,0 +1,123 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package proguard.io
+
+import io.kotest.assertions.throwables.shouldThrow
+import io.kotest.core.spec.style.FreeSpec
+import io.kotest.matchers.shouldBe
+import java.io.ByteArrayOutputStream
+import java.io.File
+import java.io.OutputStream
+import java.util.concurrent.Executor
+import java.util.concurrent.Executors
+import java.util.zip.Deflater
+import java.util.zip.ZipFile
+import kotlin.random.Random
+
+class ZipOutputTest : FreeSpec({
+
+    // Mildly compressible contents of different sizes.
+    val random = Random(42)
+    val entries = (0 until 100).associate { index ->
+        "dir${index % 5}/file$index.txt" to
+            ByteArray(random.nextInt(20000)) { "abcdefgh"[random.nextInt(8)].code.toByte() }
+    }
+
+    fun writeZip(
+        compressionLevel: Int,
+        executor: Executor?,
+        closeInReverse: Boolean = false,
+    ): ByteArray {
+        val bytes = ByteArrayOutputStream()
+        val zipOutput = ZipOutput(bytes, null, 4, false, null, compressionLevel, executor)
+        val outputStreams = mutableListOf<OutputStream>()
+        entries.entries.forEachIndexed { index, (name, data) ->
+            val outputStream = zipOutput.createOutputStream(name, index % 10 != 0, 0)
+            outputStream.write(data)
+            if (closeInReverse) outputStreams.add(outputStream) else outputStream.close()
+        }
+        outputStreams.asReversed().forEach(OutputStream::close)
+        zipOutput.close()
+        return bytes.toByteArray()
+    }
+
+    fun readZip(bytes: ByteArray): Map<String, ByteArray> {
+        val file = File.createTempFile("output", ".zip").apply { deleteOnExit() }
+        file.writeBytes(bytes)
+        return ZipFile(file).use { zipFile ->
+            zipFile.entries().toList().associate { entry ->
+                entry.name to zipFile.getInputStream(entry).use { it.readBytes() }
+            }
+        }
+    }
+
+    "Given a thread pool for compressing zip entries" - {
+        val executor = Executors.newFixedThreadPool(4)
+
+        "When writing a zip archive in parallel" - {
+            val parallelBytes = writeZip(Deflater.BEST_COMPRESSION, executor)
+
+            "Then it is the same as the archive written serially" {
+                parallelBytes shouldBe writeZip(Deflater.BEST_COMPRESSION, null)
+            }
+
+            "Then it contains all entries in the original order" {
+                val readEntries = readZip(parallelBytes)
+                readEntries.keys.toList() shouldBe entries.keys.toList()
+                readEntries.forEach { (name, data) -> data shouldBe entries[name] }
+            }
+        }
+
+        "When closing the zip entries in a different order" - {
+            val parallelBytes = writeZip(Deflater.BEST_COMPRESSION, executor, true)
+
+            "Then the archive is the same as the archive written serially" {
+                parallelBytes shouldBe writeZip(Deflater.BEST_COMPRESSION, null, true)
+            }
+
+            "Then it contains all entries" {
+                val readEntries = readZip(parallelBytes)
+                readEntries.keys.toList() shouldBe entries.keys.toList()
+                readEntries.forEach { (name, data) -> data shouldBe entries[name] }
+            }
+        }
+
+        "When writing a zip archive with a lower compression level" - {
+            val fastBytes = writeZip(Deflater.BEST_SPEED, executor)
+
+            "Then it contains all entries" {
+                readZip(fastBytes).forEach { (name, data) -> data shouldBe entries[name] }
+            }
+
+            "Then it is the same as the archive written serially with that level" {
+                fastBytes shouldBe writeZip(Deflater.BEST_SPEED, null)
+            }
+        }
+
+        "When specifying an invalid compression level" - {
+            "Then the zip output can't be created" {
+                shouldThrow<IllegalArgumentException> {
+                    ZipOutput(ByteArrayOutputStream(), null, 4, false, null, 10, executor)
+                }
+            }
+        }
+
+        executor.shutdown()
+    }
+})
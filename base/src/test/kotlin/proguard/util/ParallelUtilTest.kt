@@ -0,0 +1,52 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package proguard.util
+
+import io.kotest.core.spec.style.FreeSpec
+import io.kotest.matchers.shouldBe
+
+class ParallelUtilTest : FreeSpec({
+
+    "Given elements with different costs" - {
+        val elements = listOf(1L, 100L, 2L, 50L, 3L)
+
+        "When they are batched for two threads" - {
+            val batches = ParallelUtil.createBatches(elements, { it }, 2)
+
+            "Then the costly elements are in batches of their own, first" {
+                batches shouldBe listOf(listOf(100L), listOf(50L), listOf(3L, 2L, 1L))
+            }
+
+            "Then the given elements are left unchanged" {
+                elements shouldBe listOf(1L, 100L, 2L, 50L, 3L)
+            }
+        }
+    }
+
+    "Given a daemon pool" - {
+        val pool = ParallelUtil.createDaemonPool(2, "Test Pool")
+
+        "Then its threads are named daemon threads" {
+            val thread = pool.submit<Thread> { Thread.currentThread() }.get()
+            thread.isDaemon shouldBe true
+            thread.name.startsWith("Test Pool ") shouldBe true
+            pool.shutdown()
+        }
+    }
+})
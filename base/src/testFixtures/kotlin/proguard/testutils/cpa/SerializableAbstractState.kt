@@ -0,0 +1,46 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package proguard.testutils.cpa
+
+import proguard.analysis.cpa.bam.BlockAbstraction
+import proguard.analysis.cpa.defaults.BreadthFirstWaitlist
+import proguard.analysis.cpa.defaults.DefaultReachedSet
+import proguard.analysis.cpa.interfaces.AbstractState
+import java.io.Serializable
+
+class SerializableAbstractState(val v: Int) : AbstractState, Serializable {
+
+    override fun copy(): AbstractState = SerializableAbstractState(v)
+
+    override fun equals(other: Any?): Boolean = other is SerializableAbstractState && v == other.v
+
+    override fun hashCode(): Int = v
+
+    override fun toString(): String = v.toString()
+
+    companion object {
+
+        /** Returns a block abstraction reaching the states with the given values. */
+        fun blockAbstraction(vararg values: Int): BlockAbstraction {
+            val reachedSet = DefaultReachedSet()
+            values.forEach { reachedSet.add(SerializableAbstractState(it)) }
+            return BlockAbstraction(reachedSet, BreadthFirstWaitlist())
+        }
+    }
+}